@@ -3,8 +3,22 @@ package org.arx;
 /**
  * Contains data to be exchanged between ARX applications and servers. A data
  * object contains an optional mime type and option content.
+ * <p>
+ * Additionally, a data object can carry the version of the resource it
+ * belongs to. Versions are assigned by the server and increase with every
+ * modification of a resource. Data that is returned by a READ request or sent
+ * to subscribers contains the version of the resource, if the backend
+ * supports versions. Data that is sent with an UPDATE or SAVE request may
+ * contain the version that the resource is expected to have. In this case the
+ * request is only executed if the resource still has this version (optimistic
+ * concurrency control).
  */
 public interface Data {
+	/**
+	 * The version value that specifies that no version is known or expected.
+	 */
+	long NO_VERSION = 0;
+
 	/**
 	 * Returns the mime type of this data object or null if the mime type is not
 	 * specified.
@@ -38,4 +52,22 @@ public interface Data {
 	 *            the content of this data object
 	 */
 	void setContent(byte[] content);
+
+	/**
+	 * Returns the version of the resource this data object belongs to or
+	 * {@link #NO_VERSION}, if no version is specified.
+	 * 
+	 * @return the version of the resource this data object belongs to or
+	 *         {@link #NO_VERSION}, if no version is specified
+	 */
+	long getVersion();
+
+	/**
+	 * Sets the version of the resource this data object belongs to.
+	 * 
+	 * @param version
+	 *            the version of the resource or {@link #NO_VERSION}, if no
+	 *            version shall be specified
+	 */
+	void setVersion(long version);
 }
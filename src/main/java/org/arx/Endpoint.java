@@ -1,6 +1,7 @@
 package org.arx;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * An endpoint is an object that allows asynchronous access to resources. Every
@@ -13,6 +14,12 @@ import java.io.IOException;
  * backend layer.
  */
 public interface Endpoint extends Runnable {
+	/**
+	 * The mime type of a JSON merge patch (see
+	 * {@link #patch(Credentials, Resource, Data, Map, Observer) patch(...)}).
+	 */
+	String MERGE_PATCH_MIME_TYPE = "application/merge-patch+json";
+
 	/**
 	 * Creates a single resource. If the credentials allow to create the
 	 * specified resource, the resource is created and populated with the
@@ -59,15 +66,21 @@ public interface Endpoint extends Runnable {
 	 * {@link Observer#onSuccess Observer.onSuccess(...)}, if the request could
 	 * be finished successfully, or by calling {@link Observer#onError
 	 * Observer.onError(...)}, if an error occurred during execution of the
-	 * request. The following error codes can occur (specified as {@link MessageType}
-	 * ):
+	 * request. If the data specifies a version (see {@link Data#getVersion()}),
+	 * the update is conditional: a single resource is only updated if it
+	 * currently has the specified version. The following error codes can occur
+	 * (specified as {@link MessageType}):
 	 * 
 	 * <ul>
+	 * <li>BAD_REQUEST: if the data specifies a version and a resource pattern
+	 * has been specified instead of a single resource
 	 * <li>FORBIDDEN: if the credentials do not allow to update the specified
 	 * resources
 	 * <li>INTERNAL_SERVER_ERROR: if an error occurred while updating the
 	 * resources
 	 * <li>NOT_FOUND: if a single resource can not be found
+	 * <li>PRECONDITION_FAILED: if the data specifies a version and the resource
+	 * has a different version
 	 * </ul>
 	 * 
 	 * @param credentials
@@ -93,14 +106,20 @@ public interface Endpoint extends Runnable {
 	 * {@link Observer#onSuccess Observer.onSuccess(...)}, if the request could
 	 * be finished successfully, or by calling {@link Observer#onError
 	 * Observer.onError(...)}, if an error occurred during execution of the
-	 * request. The following error codes can occur (specified as {@link MessageType}
-	 * ):
+	 * request. If the data specifies a version (see {@link Data#getVersion()}),
+	 * the save is conditional: a single resource is only saved if it exists and
+	 * currently has the specified version. The following error codes can occur
+	 * (specified as {@link MessageType}):
 	 * 
 	 * <ul>
+	 * <li>BAD_REQUEST: if the data specifies a version and a resource pattern
+	 * has been specified instead of a single resource
 	 * <li>FORBIDDEN: if the credentials do not allow to create and update the
 	 * specified resources
 	 * <li>INTERNAL_SERVER_ERROR: if an error occurred while writing the
 	 * resources
+	 * <li>PRECONDITION_FAILED: if the data specifies a version and the resource
+	 * does not exist or has a different version
 	 * </ul>
 	 * 
 	 * @param credentials
@@ -117,6 +136,106 @@ public interface Endpoint extends Runnable {
 	 */
 	void save(Credentials credentials, Resource resourcePattern, Data data, Observer observer) throws IOException;
 
+	/**
+	 * Changes a part of the content of a single resource. If the credentials
+	 * allow to update the specified resource the patch is applied to the
+	 * resource, so that only the changed part has to be transmitted. The
+	 * following kinds of patches are supported:
+	 * 
+	 * <ul>
+	 * <li>JSON merge patch: if the mime type of the patch is
+	 * {@value #MERGE_PATCH_MIME_TYPE}, the content of the patch is merged into
+	 * the JSON document of the resource as specified by RFC 7396.
+	 * <li>Byte range: otherwise the content of the patch replaces the bytes of
+	 * the resource starting at the position specified with the option
+	 * {@link Options#OFFSET}. The resource grows, if the patch ends behind the
+	 * end of the resource.
+	 * </ul>
+	 * 
+	 * The specified observer is then notified about the outcome of the patch
+	 * request by calling either {@link Observer#onSuccess
+	 * Observer.onSuccess(...)}, if the request could be finished successfully,
+	 * or by calling {@link Observer#onError Observer.onError(...)}, if an error
+	 * occurred during execution of the request. If the patch specifies a
+	 * version (see {@link Data#getVersion()}), the patch is conditional: the
+	 * resource is only patched if it currently has the specified version.
+	 * Subscribers of the resource are notified as for an update. The following
+	 * error codes can occur (specified as {@link MessageType}):
+	 * 
+	 * <ul>
+	 * <li>BAD_REQUEST: if a resource pattern has been specified, if the offset
+	 * of a byte range is missing or illegal or if the patch or the resource is
+	 * not a valid JSON document
+	 * <li>FORBIDDEN: if the credentials do not allow to update the specified
+	 * resource
+	 * <li>INTERNAL_SERVER_ERROR: if an error occurred while patching the
+	 * resource
+	 * <li>NOT_FOUND: if the resource can not be found
+	 * <li>PRECONDITION_FAILED: if the patch specifies a version and the
+	 * resource has a different version
+	 * </ul>
+	 * <p>
+	 * The default implementation does not support patches and notifies the
+	 * observer with the error code BAD_REQUEST.
+	 * 
+	 * @param credentials
+	 *            credentials used to determine whether the update of the
+	 *            specified resource is allowed
+	 * @param resource
+	 *            resource to be patched
+	 * @param patch
+	 *            the patch to be applied to the resource
+	 * @param options
+	 *            the request options (see {@link Options}) or null
+	 * @param observer
+	 *            observer to be notified about the outcome of the request
+	 * @throws IOException
+	 *             if an IO error occurs while handling the request.
+	 */
+	default void patch(Credentials credentials, Resource resource, Data patch, Map<String, String> options,
+			Observer observer) throws IOException {
+		observer.onError(MessageType.PATCH, resource, MessageType.BAD_REQUEST);
+	}
+
+	/**
+	 * Appends data to the end of a single resource, for example an entry of an
+	 * event log. The cost of the request does not depend on the size of the
+	 * resource. If the data specifies a version (see {@link Data#getVersion()}),
+	 * the data is only appended if the resource currently has the specified
+	 * version. Subscribers with the option {@link Options#TAIL} receive only
+	 * the appended bytes, all other subscribers are notified as for an update.
+	 * The following error codes can occur (specified as {@link MessageType}):
+	 * 
+	 * <ul>
+	 * <li>BAD_REQUEST: if a resource pattern has been specified
+	 * <li>FORBIDDEN: if the credentials do not allow to update the specified
+	 * resource
+	 * <li>INTERNAL_SERVER_ERROR: if an error occurred while appending the data
+	 * <li>NOT_FOUND: if the resource can not be found
+	 * <li>PRECONDITION_FAILED: if the data specifies a version and the
+	 * resource has a different version
+	 * </ul>
+	 * <p>
+	 * The default implementation does not support appending and notifies the
+	 * observer with the error code BAD_REQUEST.
+	 * 
+	 * @param credentials
+	 *            credentials used to determine whether the update of the
+	 *            specified resource is allowed
+	 * @param resource
+	 *            resource the data shall be appended to
+	 * @param data
+	 *            the data to be appended
+	 * @param observer
+	 *            observer to be notified about the outcome of the request
+	 * @throws IOException
+	 *             if an IO error occurs while handling the request.
+	 */
+	default void append(Credentials credentials, Resource resource, Data data, Observer observer)
+			throws IOException {
+		observer.onError(MessageType.APPEND, resource, MessageType.BAD_REQUEST);
+	}
+
 	/**
 	 * Deletes a single resource or all resources of a resource pattern. If the
 	 * credentials allow to delete the specified resources the resources are
@@ -179,6 +298,51 @@ public interface Endpoint extends Runnable {
 	 */
 	void read(Credentials credentials, Resource resourcePattern, Observer observer) throws IOException;
 
+	/**
+	 * Reads a single resource or all resources of a resource pattern with the
+	 * specified request options. This method behaves like
+	 * {@link #read(Credentials, Resource, Observer) read(...)}, but the options
+	 * can refine the request. With the option {@link Options#IF_NONE_MATCH} a
+	 * client can specify the version of the resource it already has. If a
+	 * single resource still has this version, the method
+	 * {@link Observer#onData Observer.onData(...)} is called with the reason
+	 * {@link Reason#NOT_MODIFIED} and without data. For a resource pattern
+	 * only the resources that have been modified after this version are
+	 * returned. With the options {@link Options#OFFSET},
+	 * {@link Options#LENGTH} and {@link Options#CHUNK_SIZE} a client can read
+	 * a range of a single resource or receive its content in parts of a
+	 * limited size, which are sent with the reason {@link Reason#PARTIAL}
+	 * before the method {@link Observer#onSuccess Observer.onSuccess(...)} is
+	 * called. Additionally to the error codes of read(...) the following
+	 * error code can occur (specified as {@link MessageType}):
+	 * 
+	 * <ul>
+	 * <li>BAD_REQUEST: if an option has an illegal value
+	 * <li>PRECONDITION_FAILED: if a resource that is read in parts is patched
+	 * (see {@link #patch(Credentials, Resource, Data, Map, Observer)
+	 * patch(...)}) before all parts have been read
+	 * </ul>
+	 * <p>
+	 * The default implementation ignores the options and calls
+	 * {@link #read(Credentials, Resource, Observer) read(...)}.
+	 * 
+	 * @param credentials
+	 *            credentials used to determine whether the reading of the
+	 *            specified resources is allowed
+	 * @param resourcePattern
+	 *            resources to be read
+	 * @param options
+	 *            the request options (see {@link Options}) or null
+	 * @param observer
+	 *            observer to be notified about the outcome of the request
+	 * @throws IOException
+	 *             if an IO error occurs while handling the request.
+	 */
+	default void read(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) throws IOException {
+		read(credentials, resourcePattern, observer);
+	}
+
 	/**
 	 * Subscribes to a single resource or to all resources of a resource
 	 * pattern. If the credentials allow to read the specified resources the
@@ -225,6 +389,52 @@ public interface Endpoint extends Runnable {
 	 */
 	void subscribe(Credentials credentials, Resource resourcePattern, Observer observer) throws IOException;
 
+	/**
+	 * Subscribes to a single resource or to all resources of a resource
+	 * pattern with the specified request options. This method behaves like
+	 * {@link #subscribe(Credentials, Resource, Observer) subscribe(...)}, but
+	 * the options can refine the request. With the option
+	 * {@link Options#RESUME_AFTER} a subscriber can specify the sequence number
+	 * of the last change it has received before it has been disconnected. The
+	 * endpoint then sends every subscribed resource that has been changed
+	 * after this sequence number once with its latest state in the order of
+	 * the changes, before it continues with new changes. If the endpoint no
+	 * longer knows all changes after this sequence number, it sends the
+	 * current content of the subscribed resources with the reason
+	 * {@link Reason#INITIAL} instead, like
+	 * {@link #subscribeStatus(Credentials, Resource, Observer)
+	 * subscribeStatus(...)}. In this case, the subscriber has to replace its
+	 * state of the subscribed resources. Additionally to the error codes of
+	 * subscribe(...) the following error code can occur (specified as
+	 * {@link MessageType}):
+	 * 
+	 * <ul>
+	 * <li>BAD_REQUEST: if an option has an illegal value
+	 * <li>PRECONDITION_FAILED: if a resource that is read in parts is patched
+	 * (see {@link #patch(Credentials, Resource, Data, Map, Observer)
+	 * patch(...)}) before all parts have been read
+	 * </ul>
+	 * <p>
+	 * The default implementation ignores the options and calls
+	 * {@link #subscribe(Credentials, Resource, Observer) subscribe(...)}.
+	 * 
+	 * @param credentials
+	 *            credentials used to determine whether the reading of the
+	 *            specified resources is allowed
+	 * @param resourcePattern
+	 *            resources to be subscribed
+	 * @param options
+	 *            the request options (see {@link Options}) or null
+	 * @param observer
+	 *            observer to be notified about the outcome of the request
+	 * @throws IOException
+	 *             if an IO error occurs while handling the request.
+	 */
+	default void subscribe(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) throws IOException {
+		subscribe(credentials, resourcePattern, observer);
+	}
+
 	/**
 	 * Subscribes to a single resource or to all resources of a resource
 	 * pattern. In addition to future changes of resources, also the initial
@@ -306,6 +516,27 @@ public interface Endpoint extends Runnable {
 	 */
 	void unsubscribeAll(Credentials credentials, Observer observer) throws IOException;
 
+	/**
+	 * Cancels all subscriptions for the specified observer, because it cannot
+	 * receive messages anymore, e.g. when the connection to a client has been
+	 * closed. In contrast to {@link #unsubscribeAll unsubscribeAll(...)}, the
+	 * observer is not notified. Endpoints must call this method when a client
+	 * disconnects, since the subscriptions of the client would otherwise be
+	 * notified forever.
+	 * <p>
+	 * The default implementation calls {@link #unsubscribeAll
+	 * unsubscribeAll(...)} without credentials.
+	 * 
+	 * @param observer
+	 *            the observer used to identify the subscriptions to be
+	 *            cancelled
+	 * @throws IOException
+	 *             if an IO error occurs while handling the request.
+	 */
+	default void disconnect(Observer observer) throws IOException {
+		unsubscribeAll(null, observer);
+	}
+
 	/**
 	 * Sends a ping request. As a result of this operation the method
 	 * {@link Observer#onSuccess Observer.onSuccess(...)} is called.
@@ -53,6 +53,15 @@ public enum MessageType {
 	 * Endpoint.unsubscribeAll(...)}.
 	 */
 	UNSUBSCRIBE_ALL,
+	/**
+	 * Message type for a request to {@link Endpoint#patch Endpoint.patch(...)}.
+	 */
+	PATCH,
+	/**
+	 * Message type for a request to {@link Endpoint#append
+	 * Endpoint.append(...)}.
+	 */
+	APPEND,
 	/**
 	 * Message type for a response message that corresponds to a successfully
 	 * finished request.
@@ -103,7 +112,14 @@ public enum MessageType {
 	 * finished with error. It is used if the server detects that a subscription
 	 * (previous SUBSCRIBE or SUBSCRIBE_STATUS request) is out of sync.
 	 */
-	OUT_OF_SYNC;
+	OUT_OF_SYNC,
+	/**
+	 * Message type for a response message that corresponds to a request
+	 * finished with error. It is used if an UPDATE or SAVE request specifies
+	 * the version the resource is expected to have, but the resource has a
+	 * different version or does not exist.
+	 */
+	PRECONDITION_FAILED;
 
 	/**
 	 * Code for the enum constant PING.
@@ -145,6 +161,14 @@ public enum MessageType {
 	 * Code for the enum constant UNSUBSCRIBE_ALL.
 	 */
 	public static final short UNSUBSCRIBE_ALL_CODE = 9;
+	/**
+	 * Code for the enum constant PATCH.
+	 */
+	public static final short PATCH_CODE = 10;
+	/**
+	 * Code for the enum constant APPEND.
+	 */
+	public static final short APPEND_CODE = 11;
 	/**
 	 * Code for the enum constant SUCCESS.
 	 */
@@ -169,6 +193,10 @@ public enum MessageType {
 	 * Code for the enum constant ALREADY_EXISTS.
 	 */
 	public static final short ALREADY_EXISTS_CODE = 403;
+	/**
+	 * Code for the enum constant PRECONDITION_FAILED.
+	 */
+	public static final short PRECONDITION_FAILED_CODE = 404;
 	/**
 	 * Code for the enum constant INTERNAL_SERVER_ERROR.
 	 */
@@ -207,6 +235,10 @@ public enum MessageType {
 			return SUBSCRIBE_STATUS_CODE;
 		case UNSUBSCRIBE_ALL:
 			return UNSUBSCRIBE_ALL_CODE;
+		case PATCH:
+			return PATCH_CODE;
+		case APPEND:
+			return APPEND_CODE;
 		case SUCCESS:
 			return SUCCESS_CODE;
 		case DATA:
@@ -219,6 +251,8 @@ public enum MessageType {
 			return NOT_FOUND_CODE;
 		case ALREADY_EXISTS:
 			return ALREADY_EXISTS_CODE;
+		case PRECONDITION_FAILED:
+			return PRECONDITION_FAILED_CODE;
 		case INTERNAL_SERVER_ERROR:
 			return INTERNAL_SERVER_ERROR_CODE;
 		case OUT_OF_SYNC:
@@ -289,6 +323,10 @@ public enum MessageType {
 			return SUBSCRIBE_STATUS;
 		case UNSUBSCRIBE_ALL_CODE:
 			return UNSUBSCRIBE_ALL;
+		case PATCH_CODE:
+			return PATCH;
+		case APPEND_CODE:
+			return APPEND;
 		case SUCCESS_CODE:
 			return SUCCESS;
 		case DATA_CODE:
@@ -301,6 +339,8 @@ public enum MessageType {
 			return NOT_FOUND;
 		case ALREADY_EXISTS_CODE:
 			return ALREADY_EXISTS;
+		case PRECONDITION_FAILED_CODE:
+			return PRECONDITION_FAILED;
 		case INTERNAL_SERVER_ERROR_CODE:
 			return INTERNAL_SERVER_ERROR;
 		case OUT_OF_SYNC_CODE:
@@ -9,6 +9,12 @@ import java.io.IOException;
  * results of the method calls to the client interface .
  */
 public interface Observer {
+	/**
+	 * The sequence value that specifies that a notification does not belong to
+	 * a sequence of changes.
+	 */
+	long NO_SEQUENCE = 0;
+
 	/**
 	 * Receives the response of a successfully finished request to the interface
 	 * {@link Endpoint}.
@@ -31,9 +37,9 @@ public interface Observer {
 	 * previously sent READ, SUBSCRIBE or SUBSCRIBE_STATUS request. The
 	 * parameter reason specifies, why this method has been called and the
 	 * parameter affectedResource specifies the resource that has been affected
-	 * by the corresponding request. If the reason specifies DELETED the data
-	 * parameter is null, otherwise it contains the created, updated or
-	 * initially read content of the affected resource.
+	 * by the corresponding request. If the reason specifies DELETED or
+	 * NOT_MODIFIED the data parameter is null, otherwise it contains the
+	 * created, updated or initially read content of the affected resource.
 	 * 
 	 * @param request
 	 *            the request type previously sent to the Endpoint interface
@@ -47,13 +53,50 @@ public interface Observer {
 	 *            request
 	 * @param data
 	 *            the newly created, updated or initially read data or null, if
-	 *            the reason specifies DELETED
+	 *            the reason specifies DELETED or NOT_MODIFIED
 	 * @throws IOException
 	 *             if an IO error occurs while handling the response
 	 */
 	void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data)
 			throws IOException;
 
+	/**
+	 * Receives data or information about resources like
+	 * {@link #onData(MessageType, Resource, Reason, Resource, Data)
+	 * onData(...)}, but additionally receives the sequence number of the
+	 * change. Endpoints that keep a journal of changes assign a unique and
+	 * increasing sequence number to every change of a resource. A subscriber
+	 * can use the sequence number of the last received notification to resume
+	 * a subscription after a disconnect (see {@link Options#RESUME_AFTER}).
+	 * <p>
+	 * The default implementation ignores the sequence number and calls
+	 * {@link #onData(MessageType, Resource, Reason, Resource, Data)
+	 * onData(...)}.
+	 * 
+	 * @param request
+	 *            the request type previously sent to the Endpoint interface
+	 * @param resource
+	 *            the resource or resource pattern that was part of the
+	 *            corresponding request
+	 * @param reason
+	 *            the reason why this method has been called
+	 * @param affectedResource
+	 *            the resource that has been affected by the corresponding
+	 *            request
+	 * @param data
+	 *            the newly created, updated or initially read data or null, if
+	 *            the reason specifies DELETED or NOT_MODIFIED
+	 * @param sequence
+	 *            the sequence number of the change or {@link #NO_SEQUENCE}, if
+	 *            the notification does not belong to a sequence of changes
+	 * @throws IOException
+	 *             if an IO error occurs while handling the response
+	 */
+	default void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data,
+			long sequence) throws IOException {
+		onData(request, resource, reason, affectedResource, data);
+	}
+
 	/**
 	 * Receives the response of a request to the interface {@link Endpoint} that
 	 * resulted in an error.
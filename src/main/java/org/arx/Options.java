@@ -0,0 +1,113 @@
+package org.arx;
+
+/**
+ * Contains the names of request options. Request options are key-value pairs
+ * of strings that refine the behavior of a request, for example
+ * {@link Endpoint#read(Credentials, Resource, java.util.Map, Observer)
+ * Endpoint.read(...)}. Protocols transmit request options as header fields of
+ * the same name. Therefore, the names of options are case insensitive.
+ * Endpoints ignore options they do not support.
+ */
+public final class Options {
+	/**
+	 * Name of the option that specifies the version of a resource the client
+	 * already has (see {@link Data#getVersion()}). If a READ request specifies
+	 * this option for a single resource that still has this version, its
+	 * observer is notified with the reason {@link Reason#NOT_MODIFIED} instead
+	 * of the content of the resource. For a resource pattern, only the
+	 * resources that have been modified after this version are returned.
+	 */
+	public static final String IF_NONE_MATCH = "If-None-Match";
+	/**
+	 * Name of the option that specifies the sequence number of the last change
+	 * a subscriber has received (see
+	 * {@link Observer#onData(MessageType, Resource, Reason, Resource, Data, long)
+	 * Observer.onData(...)}). If a SUBSCRIBE request specifies this option, the
+	 * changes of the subscribed resources after this sequence number are sent
+	 * before any new change. If these changes are no longer available, the
+	 * current content of the subscribed resources is sent with the reason
+	 * {@link Reason#INITIAL} instead.
+	 */
+	public static final String RESUME_AFTER = "Resume-After";
+	/**
+	 * Name of the option that enables delta-encoded notifications of a
+	 * subscription. If a SUBSCRIBE request specifies this option, updates of a
+	 * resource whose previous content has been sent to the subscriber may be
+	 * sent with the reason {@link Reason#DELTA} and a delta instead of the new
+	 * content. The value of the option is the maximum size of a delta in
+	 * percent of the size of the new content (1 to 100). If a delta is larger,
+	 * the new content is sent instead.
+	 */
+	public static final String DELTA = "Delta";
+	/**
+	 * Name of the option that specifies the position of the first byte to be
+	 * read from or written to a single resource. If a READ request specifies
+	 * this option, the content of the resource is sent in parts with the
+	 * reason {@link Reason#PARTIAL}, starting at this position. The default is
+	 * 0. A PATCH request with a byte range writes its content at this position
+	 * (see {@link Endpoint#patch(Credentials, Resource, Data, java.util.Map, Observer)
+	 * Endpoint.patch(...)}).
+	 */
+	public static final String OFFSET = "Offset";
+	/**
+	 * Name of the option that specifies the maximum number of bytes to be read
+	 * from a single resource. If a READ request specifies this option, the
+	 * content of the resource is sent in parts with the reason
+	 * {@link Reason#PARTIAL}. The default is the rest of the resource.
+	 */
+	public static final String LENGTH = "Length";
+	/**
+	 * Name of the option that specifies the maximum number of bytes in a part
+	 * of a single resource. If a READ request specifies this option, the
+	 * content of the resource is sent in parts with the reason
+	 * {@link Reason#PARTIAL}, each of them containing at most this number of
+	 * bytes. The transfer is completed by a SUCCESS response. Endpoints may
+	 * use smaller parts than requested.
+	 */
+	public static final String CHUNK_SIZE = "Chunk-Size";
+	/**
+	 * Name of the option that turns a subscription into a tail subscription of
+	 * stream resources, whose content only grows by
+	 * {@link Endpoint#append(Credentials, Resource, Data, Observer)
+	 * Endpoint.append(...)} requests. If a SUBSCRIBE request specifies this
+	 * option, only the bytes behind the end the subscriber already knows are
+	 * sent with the reason {@link Reason#APPENDED}. The value of the option is
+	 * this end for every subscribed resource, usually the end of the last
+	 * part of a READ request (see {@link #OFFSET}). If a subscribed resource
+	 * is shorter than the known end, its whole content is sent with the
+	 * reason UPDATED instead. Tail subscriptions ignore the options
+	 * {@link #RESUME_AFTER} and {@link #DELTA}.
+	 */
+	public static final String TAIL = "Tail";
+	/**
+	 * Name of the option that requests notifications without content. If a
+	 * SUBSCRIBE request specifies this option with the value true, the
+	 * subscribed resources are not read, when they are changed. Instead, the
+	 * data of a notification is a {@link org.arx.util.Metadata} that contains
+	 * the version and the size of the resource. Metadata-only subscriptions
+	 * ignore the options {@link #TAIL} and {@link #DELTA}.
+	 */
+	public static final String METADATA_ONLY = "Metadata-Only";
+	/**
+	 * Name of the option that filters the notifications of a subscription by
+	 * their reason. If a SUBSCRIBE request specifies this option, only changes
+	 * with one of the listed reasons are sent. The value is a comma separated
+	 * list of the reasons CREATED, UPDATED and DELETED, for example
+	 * "CREATED,DELETED".
+	 */
+	public static final String REASONS = "Reasons";
+	/**
+	 * Name of the option that filters the notifications of a subscription by
+	 * the content of the changed resources. If a SUBSCRIBE request specifies
+	 * this option, a created or updated resource is only sent, if its content
+	 * matches the filter, for example "/temperature &gt; 30" or
+	 * "starts-with \"ERROR\"" (see {@link org.arx.util.ContentFilter}). The
+	 * filter is compiled once per subscription and evaluated by the endpoint
+	 * before the notification is sent. Deletions are always sent and tail
+	 * subscriptions (see {@link #TAIL}) are not filtered.
+	 */
+	public static final String FILTER = "Filter";
+
+	private Options() {
+	}
+}
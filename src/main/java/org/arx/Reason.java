@@ -31,7 +31,41 @@ public enum Reason {
 	 * This reason will be used to notify an {@link Observer} of a deleted
 	 * resource.
 	 */
-	DELETED;
+	DELETED,
+	/**
+	 * This reason will be used, if a resource has not been modified since the
+	 * version specified with the option {@link Options#IF_NONE_MATCH} of a
+	 * {@link Endpoint#read(Credentials, Resource, java.util.Map, Observer)
+	 * Endpoint.read(...)} request. No data is sent with this reason.
+	 */
+	NOT_MODIFIED,
+	/**
+	 * This reason will be used, if a part of the content of a resource has
+	 * been read in response to a
+	 * {@link Endpoint#read(Credentials, Resource, java.util.Map, Observer)
+	 * Endpoint.read(...)} request with the options {@link Options#OFFSET},
+	 * {@link Options#LENGTH} or {@link Options#CHUNK_SIZE}. The parts of a
+	 * resource are sent in order and the first part starts at the requested
+	 * offset. Every part is a {@link org.arx.util.StreamData} that contains
+	 * the position of its first byte in the resource.
+	 */
+	PARTIAL,
+	/**
+	 * This reason will be used, if the data of an updated resource contains a
+	 * delta (see {@link org.arx.util.Delta}) instead of the new content. The
+	 * delta transforms the content that has been sent last for the affected
+	 * resource in the same subscription into the new content. It is only sent
+	 * to subscriptions with the option {@link Options#DELTA}.
+	 */
+	DELTA,
+	/**
+	 * This reason will be used, if bytes have been appended to a subscribed
+	 * resource. The data is a {@link org.arx.util.StreamData} that contains
+	 * only the appended bytes and their position in the resource, so that the
+	 * new end of the resource is the position plus the number of bytes. It is
+	 * only sent to subscriptions with the option {@link Options#TAIL}.
+	 */
+	APPENDED;
 
 	/**
 	 * Code for the enum constant INITIAL.
@@ -49,6 +83,22 @@ public enum Reason {
 	 * Code for the enum constant DELETED.
 	 */
 	public static final byte DELETED_CODE = 3;
+	/**
+	 * Code for the enum constant NOT_MODIFIED.
+	 */
+	public static final byte NOT_MODIFIED_CODE = 4;
+	/**
+	 * Code for the enum constant PARTIAL.
+	 */
+	public static final byte PARTIAL_CODE = 5;
+	/**
+	 * Code for the enum constant DELTA.
+	 */
+	public static final byte DELTA_CODE = 6;
+	/**
+	 * Code for the enum constant APPENDED.
+	 */
+	public static final byte APPENDED_CODE = 7;
 
 	/**
 	 * Returns the code for this enum constant.
@@ -67,6 +117,14 @@ public enum Reason {
 			return UPDATED_CODE;
 		case DELETED:
 			return DELETED_CODE;
+		case NOT_MODIFIED:
+			return NOT_MODIFIED_CODE;
+		case PARTIAL:
+			return PARTIAL_CODE;
+		case DELTA:
+			return DELTA_CODE;
+		case APPENDED:
+			return APPENDED_CODE;
 		default:
 			throw new IllegalStateException();
 		}
@@ -92,6 +150,14 @@ public enum Reason {
 			return UPDATED;
 		case DELETED_CODE:
 			return DELETED;
+		case NOT_MODIFIED_CODE:
+			return NOT_MODIFIED;
+		case PARTIAL_CODE:
+			return PARTIAL;
+		case DELTA_CODE:
+			return DELTA;
+		case APPENDED_CODE:
+			return APPENDED;
 		default:
 			throw new IllegalArgumentException();
 		}
@@ -0,0 +1,96 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Resource;
+import org.arx.backend.file.ResourceFiles.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append request is used to asynchronously append data to the end of a
+ * single resource. Only the appended bytes are written, so that the cost of
+ * the request does not depend on the size of the resource.
+ */
+class AppendRequest implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AppendRequest.class);
+	private static final String RESOURCE_NOT_FOUND_FORMAT = "Resource %1$s not found";
+	private static final String APPEND_SUCCESS_FORMAT = "Successfully appended to resource %1$s, new end %2$d";
+	private static final String APPEND_ERROR_FORMAT = "Cannot append to resource %1$s";
+	private static final String FORBIDDEN_FORMAT = "Forbidden to append to resource %1$s";
+	private static final String PATTERN_ERROR_FORMAT = "Cannot append to resource pattern %1$s";
+	private static final String PRECONDITION_FAILED_FORMAT = "Cannot append to resource %1$s: %2$s";
+	private Credentials credentials;
+	private Resource resource;
+	private Data data;
+	private Observer observer;
+	private Durability durability;
+
+	/**
+	 * Creates an append request for the specified parameters.
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the UPDATE access
+	 *            right is granted for the specified resource.
+	 * @param resource
+	 *            the resource the data shall be appended to
+	 * @param data
+	 *            the data to be appended
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param durability
+	 *            the durability that is used to make written files durable
+	 */
+	public AppendRequest(Credentials credentials, Resource resource, Data data, Observer observer,
+			Durability durability) {
+		this.credentials = credentials;
+		this.resource = resource;
+		this.data = data;
+		this.observer = observer;
+		this.durability = durability;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			if (!credentials.canUpdate(resource)) {
+				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
+				observer.onError(MessageType.APPEND, resource, MessageType.FORBIDDEN);
+			} else if (resource.isPattern()) {
+				LOGGER.error(String.format(PATTERN_ERROR_FORMAT, resource));
+				observer.onError(MessageType.APPEND, resource, MessageType.BAD_REQUEST);
+			} else {
+				Path path = FileSystemFactory.getPath(resource);
+				try {
+					long end = ResourceFiles.append(path, data.getContent(), data.getVersion());
+					LOGGER.debug(String.format(APPEND_SUCCESS_FORMAT, resource, end));
+					durability.commit(Arrays.asList(path),
+							Durability.success(MessageType.APPEND, resource, observer, resource));
+				} catch (VersionMismatchException e) {
+					LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resource, e.getMessage()));
+					observer.onError(MessageType.APPEND, resource, MessageType.PRECONDITION_FAILED);
+				} catch (NoSuchFileException e) {
+					LOGGER.error(String.format(RESOURCE_NOT_FOUND_FORMAT, resource));
+					observer.onError(MessageType.APPEND, resource, MessageType.NOT_FOUND);
+				} catch (IOException e) {
+					LOGGER.error(String.format(APPEND_ERROR_FORMAT, resource), e);
+					observer.onError(MessageType.APPEND, resource, MessageType.INTERNAL_SERVER_ERROR);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error(String.format(APPEND_ERROR_FORMAT, resource), e);
+		}
+	}
+}
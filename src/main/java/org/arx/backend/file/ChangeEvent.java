@@ -0,0 +1,96 @@
+package org.arx.backend.file;
+
+import java.nio.file.Path;
+
+/**
+ * A change that has been detected by a change source, but not yet reported to
+ * its listener.
+ */
+class ChangeEvent {
+	private final Kind kind;
+	private final Path path;
+	private final long detected;
+
+	/**
+	 * Creates a change event for the specified parameters.
+	 *
+	 * @param kind
+	 *            the kind of change
+	 * @param path
+	 *            the path of the changed file or directory
+	 * @param detected
+	 *            the time in milliseconds, when the change has been detected
+	 */
+	ChangeEvent(Kind kind, Path path, long detected) {
+		this.kind = kind;
+		this.path = path;
+		this.detected = detected;
+	}
+
+	/**
+	 * Returns the kind of change.
+	 *
+	 * @return the kind of change
+	 */
+	Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the path of the changed file or directory.
+	 *
+	 * @return the path of the changed file or directory
+	 */
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Reports this change to the specified listener and records it in the
+	 * specified statistics.
+	 *
+	 * @param listener
+	 *            the listener
+	 * @param statistics
+	 *            the statistics of the change source
+	 */
+	void dispatch(ChangeSource.Listener listener, ChangeStatistics statistics) {
+		switch (kind) {
+		case CREATED:
+			listener.created(path);
+			break;
+		case MODIFIED:
+			listener.modified(path);
+			break;
+		case DELETED:
+			listener.deleted(path);
+			break;
+		default:
+			listener.overflow(path);
+			break;
+		}
+		statistics.record(detected);
+	}
+
+	/**
+	 * The kinds of changes.
+	 */
+	enum Kind {
+		/**
+		 * A file or directory has been created.
+		 */
+		CREATED,
+		/**
+		 * A file has been modified.
+		 */
+		MODIFIED,
+		/**
+		 * A file or directory has been deleted.
+		 */
+		DELETED,
+		/**
+		 * Changes of a directory may have been lost.
+		 */
+		OVERFLOW
+	}
+}
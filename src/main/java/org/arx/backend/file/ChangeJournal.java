@@ -0,0 +1,191 @@
+package org.arx.backend.file;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.arx.Reason;
+import org.arx.Resource;
+
+/**
+ * A change journal is an append-only journal of the changes of resources. It
+ * assigns a unique and increasing sequence number to every change and retains
+ * the most recent changes up to a configurable number. Subscribers that have
+ * been disconnected can use the journal to receive only the changes they have
+ * missed (see {@link #getChanges(long, Resource)}).
+ * <p>
+ * The journal is not persistent. In order to prevent that sequence numbers of
+ * a previous run of the server are mistaken for sequence numbers of the
+ * current run, the first sequence number is derived from the current time in
+ * microseconds.
+ */
+class ChangeJournal {
+	private final int capacity;
+	private final Deque<Change> changes;
+	private long sequence;
+	private long floor;
+
+	/**
+	 * Creates an empty change journal.
+	 *
+	 * @param capacity
+	 *            the maximum number of changes that are retained
+	 */
+	ChangeJournal(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(Integer.toString(capacity));
+		}
+		this.capacity = capacity;
+		this.changes = new ArrayDeque<Change>();
+		this.sequence = System.currentTimeMillis() * 1000;
+		this.floor = sequence;
+	}
+
+	/**
+	 * Appends a change to the journal. If the journal is full, the oldest
+	 * change is discarded.
+	 *
+	 * @param resource
+	 *            the resource that has been changed
+	 * @param reason
+	 *            the kind of change (CREATED, UPDATED or DELETED)
+	 * @return the sequence number of the change
+	 */
+	synchronized long append(Resource resource, Reason reason) {
+		if (changes.size() == capacity) {
+			floor = changes.removeFirst().getSequence();
+		}
+		changes.addLast(new Change(++sequence, resource, reason));
+		return sequence;
+	}
+
+	/**
+	 * Discards all changes of the journal. It is called when changes may have
+	 * been lost, so that no subscriber resumes from a sequence number before
+	 * the loss.
+	 */
+	synchronized void reset() {
+		changes.clear();
+		floor = ++sequence;
+	}
+
+	/**
+	 * Returns the sequence number of the last change.
+	 *
+	 * @return the sequence number of the last change
+	 */
+	synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the changes of the resources that match the specified resource
+	 * pattern after the specified sequence number. Only the last change of
+	 * every resource is returned. The changes are ordered by their sequence
+	 * numbers.
+	 *
+	 * @param after
+	 *            the sequence number of the last change a subscriber has
+	 *            received
+	 * @param resourcePattern
+	 *            the resource pattern of the subscription
+	 * @return the changes after the specified sequence number or null, if the
+	 *         journal does not contain all changes after the sequence number
+	 */
+	synchronized List<Change> getChanges(long after, Resource resourcePattern) {
+		if (after < floor || after > sequence) {
+			return null;
+		}
+		Map<Resource, Change> latest = new LinkedHashMap<Resource, Change>();
+		for (Change change : changes) {
+			if (change.getSequence() > after && matches(resourcePattern, change.getResource())) {
+				// Re-insert to keep the map ordered by the last change
+				latest.remove(change.getResource());
+				latest.put(change.getResource(), change);
+			}
+		}
+		return new ArrayList<Change>(latest.values());
+	}
+
+	/**
+	 * Returns true, if the specified resource matches the specified resource
+	 * pattern.
+	 *
+	 * @param resourcePattern
+	 *            the resource pattern
+	 * @param resource
+	 *            the resource
+	 * @return true, if the resource matches the resource pattern
+	 */
+	static boolean matches(Resource resourcePattern, Resource resource) {
+		String[] patternLevels = resourcePattern.getLevels();
+		String[] levels = resource.getLevels();
+		for (int i = 0; i < patternLevels.length; ++i) {
+			if (Resource.MULTI_LEVEL_WILDCARD.equals(patternLevels[i])) {
+				return true;
+			}
+			if (i >= levels.length) {
+				return false;
+			}
+			if (!Resource.SINGLE_LEVEL_WILDCARD.equals(patternLevels[i]) && !patternLevels[i].equals(levels[i])) {
+				return false;
+			}
+		}
+		return patternLevels.length == levels.length;
+	}
+
+	/**
+	 * A change of a resource.
+	 */
+	static class Change {
+		private final long sequence;
+		private final Resource resource;
+		private final Reason reason;
+
+		/**
+		 * Creates a change for the specified parameters.
+		 *
+		 * @param sequence
+		 *            the sequence number of the change
+		 * @param resource
+		 *            the resource that has been changed
+		 * @param reason
+		 *            the kind of change
+		 */
+		Change(long sequence, Resource resource, Reason reason) {
+			this.sequence = sequence;
+			this.resource = resource;
+			this.reason = reason;
+		}
+
+		/**
+		 * Returns the sequence number of the change.
+		 *
+		 * @return the sequence number of the change
+		 */
+		long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the resource that has been changed.
+		 *
+		 * @return the resource that has been changed
+		 */
+		Resource getResource() {
+			return resource;
+		}
+
+		/**
+		 * Returns the kind of change (CREATED, UPDATED or DELETED).
+		 *
+		 * @return the kind of change
+		 */
+		Reason getReason() {
+			return reason;
+		}
+	}
+}
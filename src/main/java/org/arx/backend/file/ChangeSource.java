@@ -0,0 +1,111 @@
+package org.arx.backend.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * A change source detects changes of files in watched directories and reports
+ * them to a {@link Listener}. The file system backend uses a change source to
+ * notify subscribers. The change source is selected with the parameter
+ * {@link FileSystemFactory#CHANGE_SOURCE_KEY}. Besides the change sources of
+ * this package, a change source can be any class that implements this
+ * interface and has a public constructor with the parameters
+ * {@link java.util.concurrent.Executor} and {@link java.util.Map} (the
+ * backend-specific parameters).
+ * <p>
+ * Every change source keeps {@link ChangeStatistics} about the number of
+ * reported changes and the latency between the detection of a change and the
+ * return of the listener.
+ */
+public interface ChangeSource extends Closeable {
+	/**
+	 * Starts watching the files of the specified directory. Subdirectories are
+	 * not watched, but their creation and deletion is reported.
+	 * 
+	 * @param directory
+	 *            the directory to be watched
+	 * @throws IOException
+	 *             if the directory cannot be watched
+	 */
+	void watch(Path directory) throws IOException;
+
+	/**
+	 * Stops watching the specified directory.
+	 * 
+	 * @param directory
+	 *            the directory that shall no longer be watched
+	 */
+	void unwatch(Path directory);
+
+	/**
+	 * Returns true, if the specified directory is watched.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @return true, if the directory is watched
+	 */
+	boolean isWatched(Path directory);
+
+	/**
+	 * Returns the watched directories.
+	 * 
+	 * @return the watched directories
+	 */
+	Set<Path> getWatchedDirectories();
+
+	/**
+	 * Reports changes to the specified listener until this change source is
+	 * closed or the calling thread is interrupted. The listener is always
+	 * called by the calling thread.
+	 * 
+	 * @param listener
+	 *            the listener to be notified about changes
+	 */
+	void run(Listener listener);
+
+	/**
+	 * Returns the statistics of this change source.
+	 * 
+	 * @return the statistics of this change source
+	 */
+	ChangeStatistics getStatistics();
+
+	/**
+	 * A listener that is notified about changes of files and directories.
+	 */
+	interface Listener {
+		/**
+		 * Called when a file or directory has been created.
+		 * 
+		 * @param path
+		 *            the path of the created file or directory
+		 */
+		void created(Path path);
+
+		/**
+		 * Called when a file has been modified.
+		 * 
+		 * @param path
+		 *            the path of the modified file
+		 */
+		void modified(Path path);
+
+		/**
+		 * Called when a file or directory has been deleted.
+		 * 
+		 * @param path
+		 *            the path of the deleted file or directory
+		 */
+		void deleted(Path path);
+
+		/**
+		 * Called when changes of a directory may have been lost.
+		 * 
+		 * @param directory
+		 *            the directory whose changes may have been lost
+		 */
+		void overflow(Path directory);
+	}
+}
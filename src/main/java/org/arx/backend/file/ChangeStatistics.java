@@ -0,0 +1,120 @@
+package org.arx.backend.file;
+
+import java.util.Map;
+
+import org.arx.util.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Statistics of a {@link ChangeSource}. For every reported change, the
+ * latency between the time the change has been detected and the time the
+ * listener has returned is recorded. Change sources that detect changes late,
+ * like polling change sources, use the last modified time of a file as
+ * detection time. The statistics are logged periodically (see
+ * {@link FileSystemFactory#STATISTICS_INTERVAL_KEY}).
+ */
+public class ChangeStatistics {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStatistics.class);
+	private static final String REPORT_FORMAT = "%1$s: %2$d changes, %3$.1f changes/s, "
+			+ "average latency %4$d ms, maximum latency %5$d ms";
+	private static final int DEFAULT_INTERVAL = 60;
+	private final String name;
+	private final long interval;
+	private final long start;
+	private long changes;
+	private long totalLatency;
+	private long maxLatency;
+	private long reportTime;
+	private long reportChanges;
+
+	/**
+	 * Creates empty statistics.
+	 * 
+	 * @param name
+	 *            the name of the change source used for logging
+	 * @param interval
+	 *            the interval in milliseconds, in which the statistics are
+	 *            logged, or 0, if they shall not be logged
+	 */
+	public ChangeStatistics(String name, long interval) {
+		this.name = name;
+		this.interval = interval;
+		this.start = System.currentTimeMillis();
+		this.reportTime = start;
+	}
+
+	/**
+	 * Creates empty statistics whose logging interval is read from the
+	 * specified backend-specific parameters or the configuration.
+	 * 
+	 * @param name
+	 *            the name of the change source used for logging
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @return the statistics
+	 */
+	static ChangeStatistics create(String name, Map<String, String> parameters) {
+		int interval = Configuration.getInstance().getIntParameter(parameters,
+				FileSystemFactory.STATISTICS_INTERVAL_KEY, DEFAULT_INTERVAL);
+		return new ChangeStatistics(name, interval * 1000L);
+	}
+
+	/**
+	 * Records a reported change.
+	 * 
+	 * @param detected
+	 *            the time in milliseconds, when the change has been detected
+	 */
+	public synchronized void record(long detected) {
+		long now = System.currentTimeMillis();
+		long latency = Math.max(0, now - detected);
+		++changes;
+		totalLatency += latency;
+		maxLatency = Math.max(maxLatency, latency);
+		if (interval > 0 && now - reportTime >= interval) {
+			double throughput = (changes - reportChanges) * 1000.0 / (now - reportTime);
+			LOGGER.info(String.format(REPORT_FORMAT, name, changes, throughput, getAverageLatency(), maxLatency));
+			reportTime = now;
+			reportChanges = changes;
+		}
+	}
+
+	/**
+	 * Returns the number of reported changes.
+	 * 
+	 * @return the number of reported changes
+	 */
+	public synchronized long getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Returns the average number of reported changes per second since the
+	 * creation of the statistics.
+	 * 
+	 * @return the average number of reported changes per second
+	 */
+	public synchronized double getThroughput() {
+		long time = Math.max(1, System.currentTimeMillis() - start);
+		return changes * 1000.0 / time;
+	}
+
+	/**
+	 * Returns the average latency of the reported changes in milliseconds.
+	 * 
+	 * @return the average latency of the reported changes in milliseconds
+	 */
+	public synchronized long getAverageLatency() {
+		return changes == 0 ? 0 : totalLatency / changes;
+	}
+
+	/**
+	 * Returns the maximum latency of the reported changes in milliseconds.
+	 * 
+	 * @return the maximum latency of the reported changes in milliseconds
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+}
@@ -3,6 +3,7 @@ package org.arx.backend.file;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 import org.arx.Credentials;
 import org.arx.Data;
@@ -26,6 +27,7 @@ class CreateRequest implements Runnable {
 	private Resource resource;
 	private Data data;
 	private Observer observer;
+	private Durability durability;
 
 	/**
 	 * Creates a create request object for the specified parameters.
@@ -41,10 +43,31 @@ class CreateRequest implements Runnable {
 	 *            the observer that is used for the response message
 	 */
 	public CreateRequest(Credentials credentials, Resource resource, Data data, Observer observer) {
+		this(credentials, resource, data, observer, Durability.NONE);
+	}
+
+	/**
+	 * Creates a create request object for the specified parameters.
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the CREATE access
+	 *            right is granted for the specified resource.
+	 * @param resource
+	 *            the resource to be created
+	 * @param data
+	 *            the data content for the resource that shall be created
+	 * @param observer
+	 *            the observer that is used for the response message
+	 * @param durability
+	 *            the durability that is used to make written files durable
+	 */
+	public CreateRequest(Credentials credentials, Resource resource, Data data, Observer observer,
+			Durability durability) {
 		this.credentials = credentials;
 		this.resource = resource;
 		this.data = data;
 		this.observer = observer;
+		this.durability = durability;
 	}
 
 	/* (non-Javadoc)
@@ -67,9 +90,10 @@ class CreateRequest implements Runnable {
 						parent.toFile().mkdirs();
 					}
 					try {
-						Files.write(path, data.getContent());
+						ResourceFiles.write(path, data.getContent(), Data.NO_VERSION);
 						LOGGER.debug(String.format(CREATE_SUCCESS_FORMAT, resource));
-						observer.onSuccess(MessageType.CREATE, resource, resource);
+						durability.commit(Arrays.asList(path, parent),
+								Durability.success(MessageType.CREATE, resource, observer, resource));
 					} catch (IOException e) {
 						LOGGER.error(String.format(CREATE_ERROR_FORMAT, resource), e);
 						observer.onError(MessageType.CREATE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -10,7 +10,7 @@ import org.arx.Credentials;
 import org.arx.Resource;
 import org.arx.Observer;
 import org.arx.MessageType;
-import org.arx.util.ResourceVisitor;
+import org.arx.util.ResourceProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,13 +59,18 @@ class DeleteRequest implements Runnable {
 				final List<Resource> affectedResources = new LinkedList<Resource>();
 				FileSystemWalker walker = new FileSystemWalker();
 				try {
-					walker.walkResource(resource, new ResourceVisitor() {
+					walker.walkResource(resource, new ResourceProcessor<Resource>() {
 						@Override
-						public void visitResource(Resource res) throws IOException {
+						public Resource process(Resource res) throws IOException {
 							Path path = FileSystemFactory.getPath(res);
 							Files.delete(path);
 							LOGGER.debug(DELETE_SUCCESS_FORMAT, res);
-							affectedResources.add(res);
+							return res;
+						}
+
+						@Override
+						public void complete(Resource res, Resource affectedResource) {
+							affectedResources.add(affectedResource);
 						}
 					});
 					observer.onSuccess(MessageType.DELETE, resource,
@@ -0,0 +1,363 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Resource;
+import org.arx.util.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes written files durable according to the configured durability mode
+ * before the success of a write request is reported:
+ * <ul>
+ * <li>{@link Mode#NONE}: Files are not forced to the storage device. Success
+ * is reported immediately.</li>
+ * <li>{@link Mode#FSYNC}: Every write request forces its files to the storage
+ * device before success is reported.</li>
+ * <li>{@link Mode#GROUP}: Write requests are collected in batches. One task
+ * forces the files of a whole batch, where every file is forced only once,
+ * and reports success to all requests of the batch afterwards. While a batch
+ * is forced, the next batch is collected. Thus, the batch size adapts to the
+ * load and the request threads never wait for the storage device.</li>
+ * </ul>
+ * In group commit mode, the success of a write request may be reported after
+ * responses of requests that were executed later.
+ */
+class Durability implements Runnable {
+	/**
+	 * A durability object that does not force any files.
+	 */
+	static final Durability NONE = new Durability(Mode.NONE, null, 1, 0);
+	private static final Logger LOGGER = LoggerFactory.getLogger(Durability.class);
+	private static final String MODE_ERROR_FORMAT = "Illegal durability mode %1$s";
+	private static final String SYNC_ERROR_FORMAT = "Cannot force %1$s to the storage device";
+	private static final String CALLBACK_ERROR = "Cannot report durability of write request";
+	private static final String BATCH_FORMAT = "Forced %1$d files of %2$d write requests";
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	private static final int DEFAULT_INTERVAL = 0;
+	private final Mode mode;
+	private final Executor executor;
+	private final int batchSize;
+	private final long interval;
+	private final Queue<Commit> pending;
+	private final AtomicBoolean flushing;
+
+	/**
+	 * Creates a durability object for the specified parameters.
+	 *
+	 * @param mode
+	 *            the durability mode
+	 * @param executor
+	 *            the executor that executes the task that forces a batch in
+	 *            group commit mode
+	 * @param batchSize
+	 *            the maximum number of write requests of a batch
+	 * @param interval
+	 *            the time in milliseconds to wait for further write requests
+	 *            before a batch is forced
+	 */
+	Durability(Mode mode, Executor executor, int batchSize, long interval) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException(Integer.toString(batchSize));
+		}
+		this.mode = mode;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.interval = interval;
+		this.pending = new ConcurrentLinkedQueue<Commit>();
+		this.flushing = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Creates a durability object from the specified backend-specific
+	 * parameters. Parameters that are not specified are read from the
+	 * configuration.
+	 *
+	 * @param executor
+	 *            the executor that executes the task that forces a batch in
+	 *            group commit mode
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @return the durability object
+	 */
+	static Durability create(Executor executor, Map<String, String> parameters) {
+		Configuration configuration = Configuration.getInstance();
+		String value = configuration.getParameter(parameters, FileSystemFactory.DURABILITY_KEY);
+		Mode mode;
+		try {
+			mode = value == null ? Mode.NONE : Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format(MODE_ERROR_FORMAT, value), e);
+		}
+		if (mode == Mode.NONE) {
+			return NONE;
+		}
+		int batchSize = configuration.getIntParameter(parameters, FileSystemFactory.GROUP_COMMIT_SIZE_KEY,
+				DEFAULT_BATCH_SIZE);
+		int interval = configuration.getIntParameter(parameters, FileSystemFactory.GROUP_COMMIT_INTERVAL_KEY,
+				DEFAULT_INTERVAL);
+		return new Durability(mode, executor, batchSize, interval);
+	}
+
+	/**
+	 * Returns a callback that reports the success of a write request to its
+	 * observer when the written files are durable and an internal server
+	 * error otherwise.
+	 *
+	 * @param request
+	 *            the request type
+	 * @param resource
+	 *            the resource or resource pattern of the request
+	 * @param observer
+	 *            the observer of the request
+	 * @param affectedResources
+	 *            the resources that have been written
+	 * @return the callback
+	 */
+	static Callback success(final MessageType request, final Resource resource, final Observer observer,
+			final Resource... affectedResources) {
+		return new Callback() {
+			@Override
+			public void durable() throws IOException {
+				observer.onSuccess(request, resource, affectedResources);
+			}
+
+			@Override
+			public void failed(IOException e) throws IOException {
+				LOGGER.error(String.format(SYNC_ERROR_FORMAT, resource), e);
+				observer.onError(request, resource, MessageType.INTERNAL_SERVER_ERROR);
+			}
+		};
+	}
+
+	/**
+	 * Returns the paths of the files of the specified resources.
+	 *
+	 * @param resources
+	 *            the resources
+	 * @param withParents
+	 *            true, if the directories that contain the files shall be
+	 *            returned too, because the files have been created or replaced
+	 * @return the paths of the files of the resources
+	 */
+	static Collection<Path> getPaths(Collection<Resource> resources, boolean withParents) {
+		Set<Path> paths = new LinkedHashSet<Path>();
+		for (Resource resource : resources) {
+			Path path = FileSystemFactory.getPath(resource);
+			paths.add(path);
+			if (withParents) {
+				paths.add(path.getParent());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Returns the durability mode.
+	 *
+	 * @return the durability mode
+	 */
+	Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Makes the specified files durable and calls the callback afterwards.
+	 * Depending on the durability mode, the callback is called by the calling
+	 * thread or later by another thread.
+	 *
+	 * @param paths
+	 *            the written files and the directories that contain them
+	 * @param callback
+	 *            the callback that is called when the files are durable or
+	 *            cannot be made durable
+	 * @throws IOException
+	 *             if the callback is called by the calling thread and throws
+	 *             an IO exception
+	 */
+	void commit(Collection<Path> paths, Callback callback) throws IOException {
+		switch (mode) {
+		case NONE:
+			callback.durable();
+			break;
+		case FSYNC:
+			try {
+				for (Path path : paths) {
+					sync(path);
+				}
+			} catch (IOException e) {
+				callback.failed(e);
+				return;
+			}
+			callback.durable();
+			break;
+		default:
+			pending.add(new Commit(paths, callback));
+			if (flushing.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			if (interval > 0) {
+				try {
+					Thread.sleep(interval);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			List<Commit> batch = new ArrayList<Commit>();
+			Commit commit;
+			while (batch.size() < batchSize && (commit = pending.poll()) != null) {
+				batch.add(commit);
+			}
+			if (batch.isEmpty()) {
+				flushing.set(false);
+				// A commit may have been added after the queue was drained
+				if (pending.isEmpty() || !flushing.compareAndSet(false, true)) {
+					return;
+				}
+			} else {
+				flush(batch);
+			}
+		}
+	}
+
+	private void flush(List<Commit> batch) {
+		Map<Path, IOException> synced = new HashMap<Path, IOException>();
+		for (Commit commit : batch) {
+			for (Path path : commit.paths) {
+				if (!synced.containsKey(path)) {
+					try {
+						sync(path);
+						synced.put(path, null);
+					} catch (IOException e) {
+						synced.put(path, e);
+					}
+				}
+			}
+		}
+		LOGGER.debug(String.format(BATCH_FORMAT, synced.size(), batch.size()));
+		for (Commit commit : batch) {
+			IOException error = null;
+			for (Path path : commit.paths) {
+				if (error == null) {
+					error = synced.get(path);
+				}
+			}
+			try {
+				if (error == null) {
+					commit.callback.durable();
+				} else {
+					commit.callback.failed(error);
+				}
+			} catch (IOException e) {
+				LOGGER.error(CALLBACK_ERROR, e);
+			}
+		}
+	}
+
+	private static void sync(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				channel.force(true);
+			} catch (IOException e) {
+				// Directories cannot be forced on all platforms
+				LOGGER.debug(String.format(SYNC_ERROR_FORMAT, path), e);
+			}
+		} else {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+		}
+	}
+
+	/**
+	 * The durability modes.
+	 */
+	enum Mode {
+		/**
+		 * Files are not forced to the storage device.
+		 */
+		NONE,
+		/**
+		 * Every write request forces its files to the storage device.
+		 */
+		FSYNC,
+		/**
+		 * Files of concurrent write requests are forced in batches.
+		 */
+		GROUP
+	}
+
+	/**
+	 * A callback of a write request that is called when its files are durable.
+	 */
+	interface Callback {
+		/**
+		 * Called when the files of the write request are durable.
+		 *
+		 * @throws IOException
+		 *             if an IO error occurs while sending the response
+		 */
+		void durable() throws IOException;
+
+		/**
+		 * Called when the files of the write request cannot be made durable.
+		 *
+		 * @param e
+		 *            the IO exception that occurred while forcing a file
+		 * @throws IOException
+		 *             if an IO error occurs while sending the response
+		 */
+		void failed(IOException e) throws IOException;
+	}
+
+	/**
+	 * The files and the callback of a write request.
+	 */
+	private static class Commit {
+		private final Collection<Path> paths;
+		private final Callback callback;
+
+		/**
+		 * Creates a commit for the specified parameters.
+		 *
+		 * @param paths
+		 *            the files to be forced
+		 * @param callback
+		 *            the callback of the write request
+		 */
+		public Commit(Collection<Path> paths, Callback callback) {
+			this.paths = paths;
+			this.callback = callback;
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file index caches the last modified time and the size of all files below
+ * the root directory as they have been reported to subscribers. When a watch
+ * service loses events (OVERFLOW), a directory can be rescanned against the
+ * index in order to determine the files that have actually been created,
+ * updated or deleted (see {@link #rescan(Path, ChangeHandler)}). Thus, only
+ * these changes have to be sent to subscribers instead of forcing all
+ * subscribers to read all resources again.
+ * <p>
+ * Temporary files (see {@link ResourceFiles#isTempFile(Path)}) are never
+ * indexed.
+ */
+class FileIndex {
+	private final Map<Path, FileState> files;
+
+	/**
+	 * Creates an empty file index.
+	 */
+	FileIndex() {
+		this.files = new ConcurrentHashMap<Path, FileState>();
+	}
+
+	/**
+	 * Adds the specified file with the specified attributes to the index.
+	 * Directories and temporary files are ignored.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param attributes
+	 *            the attributes of the file
+	 */
+	void put(Path path, BasicFileAttributes attributes) {
+		if (attributes.isRegularFile() && !ResourceFiles.isTempFile(path)) {
+			files.put(path.normalize(), new FileState(attributes));
+		}
+	}
+
+	/**
+	 * Updates the index entry of the specified file from the file system. If
+	 * the file does not exist anymore, its entry is removed.
+	 *
+	 * @param path
+	 *            the path of the file
+	 */
+	void update(Path path) {
+		try {
+			put(path, Files.readAttributes(path, BasicFileAttributes.class));
+		} catch (IOException e) {
+			remove(path);
+		}
+	}
+
+	/**
+	 * Removes the index entry of the specified file.
+	 *
+	 * @param path
+	 *            the path of the file
+	 */
+	void remove(Path path) {
+		files.remove(path.normalize());
+	}
+
+	/**
+	 * Removes the index entries of the files in the specified directory. The
+	 * entries of files in subdirectories are kept.
+	 *
+	 * @param directory
+	 *            the directory
+	 */
+	void removeFiles(Path directory) {
+		Path root = directory.normalize();
+		for (Path path : files.keySet()) {
+			if (root.equals(path.getParent())) {
+				files.remove(path);
+			}
+		}
+	}
+
+	/**
+	 * Returns the indexed files below the specified directory.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @return the indexed files below the directory
+	 */
+	List<Path> getFiles(Path directory) {
+		Path root = directory.normalize();
+		List<Path> result = new ArrayList<Path>();
+		for (Path path : files.keySet()) {
+			if (path.startsWith(root)) {
+				result.add(path);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of indexed files.
+	 *
+	 * @return the number of indexed files
+	 */
+	int size() {
+		return files.size();
+	}
+
+	/**
+	 * Compares the files below the specified directory with the index, reports
+	 * every difference to the handler and updates the index accordingly.
+	 * Directories that are found are reported as well, so that the caller can
+	 * watch directories it has missed.
+	 *
+	 * @param directory
+	 *            the directory to be rescanned
+	 * @param handler
+	 *            the handler that is notified about the differences
+	 * @throws IOException
+	 *             if an IO error occurs while scanning the directory
+	 */
+	void rescan(Path directory, final ChangeHandler handler) throws IOException {
+		final Path root = directory.normalize();
+		final Set<Path> found = new HashSet<Path>();
+		final List<Path> created = new ArrayList<Path>();
+		final List<Path> updated = new ArrayList<Path>();
+		final List<Path> directories = new ArrayList<Path>();
+		if (Files.isDirectory(root)) {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					directories.add(dir);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile() && !ResourceFiles.isTempFile(file)) {
+						Path path = file.normalize();
+						found.add(path);
+						FileState state = new FileState(attrs);
+						FileState old = files.put(path, state);
+						if (old == null) {
+							created.add(path);
+						} else if (!old.equals(state)) {
+							updated.add(path);
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+					if (exc instanceof NoSuchFileException) {
+						// Deleted while scanning
+						return FileVisitResult.CONTINUE;
+					}
+					throw exc;
+				}
+			});
+		}
+		List<Path> deleted = new ArrayList<Path>();
+		for (Path path : getFiles(root)) {
+			if (!found.contains(path)) {
+				deleted.add(path);
+			}
+		}
+		for (Path path : deleted) {
+			files.remove(path);
+		}
+		for (Path dir : directories) {
+			handler.directory(dir);
+		}
+		for (Path path : deleted) {
+			handler.deleted(path);
+		}
+		for (Path path : created) {
+			handler.created(path);
+		}
+		for (Path path : updated) {
+			handler.updated(path);
+		}
+	}
+
+	/**
+	 * A handler that is notified about the differences between the file system
+	 * and the index.
+	 */
+	interface ChangeHandler {
+		/**
+		 * Called for every directory that has been scanned.
+		 *
+		 * @param directory
+		 *            the path of the directory
+		 */
+		void directory(Path directory);
+
+		/**
+		 * Called for every file that is not contained in the index.
+		 *
+		 * @param path
+		 *            the path of the created file
+		 */
+		void created(Path path);
+
+		/**
+		 * Called for every file whose last modified time or size differs from
+		 * the index.
+		 *
+		 * @param path
+		 *            the path of the updated file
+		 */
+		void updated(Path path);
+
+		/**
+		 * Called for every indexed file that does not exist anymore.
+		 *
+		 * @param path
+		 *            the path of the deleted file
+		 */
+		void deleted(Path path);
+	}
+
+	/**
+	 * The last modified time and size of a file.
+	 */
+	static class FileState {
+		private final long modified;
+		private final long size;
+		private final boolean directory;
+
+		/**
+		 * Creates the state of a file from its attributes.
+		 *
+		 * @param attributes
+		 *            the attributes of the file
+		 */
+		public FileState(BasicFileAttributes attributes) {
+			this.modified = attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+			this.size = attributes.size();
+			this.directory = attributes.isDirectory();
+		}
+
+		/**
+		 * Returns the last modified time of the file in milliseconds.
+		 *
+		 * @return the last modified time of the file in milliseconds
+		 */
+		public long getModified() {
+			return modified / 1000;
+		}
+
+		/**
+		 * Returns true, if the file is a directory.
+		 *
+		 * @return true, if the file is a directory
+		 */
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof FileState) {
+				FileState other = (FileState) obj;
+				return modified == other.modified && size == other.size;
+			}
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (int) (modified ^ (modified >>> 32) ^ size);
+		}
+	}
+}
@@ -1,25 +1,21 @@
 package org.arx.backend.file;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
-
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.arx.Endpoint;
 import org.arx.MessageType;
@@ -28,6 +24,8 @@ import org.arx.Data;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.Observer;
+import org.arx.util.Configuration;
+import org.arx.util.StripedExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,15 +38,69 @@ import org.slf4j.LoggerFactory;
  * directory for changes. Thus, changes to files can be communicated to
  * subscribers. In order to watch the file changes in background the file system
  * backend must be executed after creation.
+ * <p>
+ * Requests are executed in stripes that are determined by the resource or
+ * resource pattern of the request. Thus, requests for the same resource are
+ * executed in the order of their arrival, while requests for different
+ * resources are executed in parallel.
+ * <p>
+ * Written files are made durable according to the configured durability mode
+ * (see {@link FileSystemFactory#DURABILITY_KEY}) before the success of a write
+ * request is reported.
+ * <p>
+ * Optionally, unconditional SAVE requests for the same resource are merged
+ * within a time window (see {@link FileSystemFactory#COALESCE_WINDOW_KEY}), so
+ * that only the last data is written.
+ * <p>
+ * Changes are detected by a {@link ChangeSource} that is selected with
+ * {@link FileSystemFactory#CHANGE_SOURCE_KEY}. By default, the watch service of
+ * the file system is used.
+ * <p>
+ * Every change that is detected by the change source is appended to a
+ * {@link ChangeJournal} and sent to subscribers with its sequence number. A
+ * subscriber can resume a subscription with the changes it has missed (see
+ * {@link org.arx.Options#RESUME_AFTER}). The notifications of a subscriber
+ * are delivered in the order of their sequence numbers.
+ * <p>
+ * If the change source loses events of a directory (OVERFLOW), the directory is
+ * rescanned against a {@link FileIndex} of the last known modification times
+ * and sizes of all files. The actual changes are sent to subscribers like all
+ * other changes.
+ * <p>
+ * By default, all directories below the root directory are watched from
+ * startup. In lazy watch mode (see {@link FileSystemFactory#WATCH_MODE_KEY}),
+ * only the directories covered by subscribed resource patterns are watched.
+ * They are registered in background and in parallel when a resource pattern
+ * is subscribed for the first time and released when its last subscription is
+ * removed. Thus, startup does not depend on the size of the directory tree.
  */
 public class FileSystemBackend implements Endpoint {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemBackend.class);
 	private static final String REGISTER_ERROR_FORMAT = "Error during registration of directory %1$s";
-	private static final String CLOSE_ERROR = "Error while closing watch service";
-	private Executor executor;
+	private static final String CLOSE_ERROR = "Error while closing change source";
+	private static final String OVERFLOW_FORMAT = "Events lost for directory %1$s, rescanning";
+	private static final String RESYNC_ERROR_FORMAT = "Cannot rescan directory %1$s";
+	private static final String WATCH_MODE_ERROR_FORMAT = "Illegal watch mode %1$s";
+	private static final String WATCH_COUNT_FORMAT = "Watching %1$d directories after %2$d ms";
+	private static final String WATCHING_FORMAT = "Watching %1$d directories";
+	private static final String WATCH_ERROR_FORMAT = "Cannot watch directory %1$s";
+	private static final String RELEASE_FORMAT = "Released %1$d directories, watching %2$d directories";
+	private static final String DISCONNECT_FORMAT = "Removed %1$d subscriptions of a disconnected observer";
+	private static final String EAGER_MODE = "eager";
+	private static final String LAZY_MODE = "lazy";
+	private static final int DEFAULT_STRIPES = 64;
+	private static final int DEFAULT_JOURNAL_SIZE = 10000;
+	private StripedExecutor executor;
 	private Subscriptions subscriptions;
-	private WatchService watcher;
-	private Map<Path, WatchKey> watchKeys;
+	private ChangeSource changeSource;
+	private Durability durability;
+	private SaveCoalescer coalescer;
+	private ChangeJournal journal;
+	private FileIndex index;
+	private boolean lazy;
+	private AtomicInteger pendingWatches;
+	private Map<Resource, ReadRequest> pendingReads;
+	private int maxChunkSize;
 
 	/**
 	 * Creates a file system backend. After a successful creation of the file
@@ -62,23 +114,83 @@ public class FileSystemBackend implements Endpoint {
 	 *             if an IO error occurred during initialization
 	 */
 	public FileSystemBackend(Executor executor) throws IOException {
-		this.executor = executor;
+		this(executor, null);
+	}
+
+	/**
+	 * Creates a file system backend with the specified backend-specific
+	 * parameters. Parameters that are not specified are read from the
+	 * configuration. After a successful creation of the file system backend it
+	 * must be executed by an {@link java.util.concurrent.Executor} in order to
+	 * watch changes to the file system.
+	 * 
+	 * @param executor
+	 *            the executor that shall be used to execute asynchronous tasks.
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @throws IOException
+	 *             if an IO error occurred during initialization
+	 */
+	public FileSystemBackend(Executor executor, Map<String, String> parameters) throws IOException {
+		int stripes = Configuration.getInstance().getIntParameter(parameters, FileSystemFactory.STRIPES_KEY,
+				DEFAULT_STRIPES);
+		this.executor = new StripedExecutor(executor, stripes);
 		this.subscriptions = new Subscriptions();
-		this.watcher = FileSystems.getDefault().newWatchService();
-		this.watchKeys = new HashMap<Path, WatchKey>();
-		Path root = FileSystemFactory.getRoot();
-		register(root);
-		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-				register(dir);
-				return FileVisitResult.CONTINUE;
-			}
-		    @Override
-		    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-		    	return FileVisitResult.CONTINUE;
-		    }
-		});
+		this.journal = new ChangeJournal(Configuration.getInstance().getIntParameter(parameters,
+				FileSystemFactory.JOURNAL_SIZE_KEY, DEFAULT_JOURNAL_SIZE));
+		this.changeSource = FileSystemFactory.createChangeSource(executor, parameters);
+		this.index = new FileIndex();
+		this.pendingWatches = new AtomicInteger();
+		this.pendingReads = new HashMap<Resource, ReadRequest>();
+		this.maxChunkSize = Configuration.getInstance().getIntParameter(parameters, FileSystemFactory.CHUNK_SIZE_KEY,
+				ReadRequest.DEFAULT_CHUNK_SIZE);
+		this.durability = Durability.create(executor, parameters);
+		int window = Configuration.getInstance().getIntParameter(parameters, FileSystemFactory.COALESCE_WINDOW_KEY,
+				0);
+		if (window > 0) {
+			this.coalescer = new SaveCoalescer(this.executor, durability, window);
+		}
+		String mode = Configuration.getInstance().getParameter(parameters, FileSystemFactory.WATCH_MODE_KEY);
+		this.lazy = isLazy(mode);
+		long start = System.currentTimeMillis();
+		if (lazy) {
+			subscriptions.setListener(new Subscriptions.Listener() {
+				@Override
+				public void subscribed(Resource resourcePattern) {
+					watch(FileSystemFactory.getRoot(), Collections.singleton(resourcePattern));
+				}
+
+				@Override
+				public void unsubscribed(Resource resourcePattern) {
+					FileSystemBackend.this.executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							release();
+						}
+					});
+				}
+			});
+		} else {
+			Path root = FileSystemFactory.getRoot();
+			register(root);
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					register(dir);
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					index.put(file, attrs);
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		LOGGER.info(String.format(WATCH_COUNT_FORMAT, getWatchCount(), System.currentTimeMillis() - start));
 	}
 
 	/*
@@ -103,8 +215,10 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void create(Credentials credentials, Resource resource, Data data, Observer observer) {
-		Runnable request = new CreateRequest(credentials, resource, data, observer);
-		executor.execute(request);
+		closePendingReads(resource);
+		flush(resource);
+		Runnable request = new CreateRequest(credentials, resource, data, observer, durability);
+		executor.execute(resource, request);
 	}
 
 	/*
@@ -115,8 +229,10 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void update(Credentials credentials, Resource resourcePattern, Data data, Observer observer) {
-		Runnable request = new UpdateRequest(credentials, resourcePattern, data, observer);
-		executor.execute(request);
+		closePendingReads(resourcePattern);
+		flush(resourcePattern);
+		Runnable request = new UpdateRequest(credentials, resourcePattern, data, observer, durability);
+		executor.execute(resourcePattern, request);
 	}
 
 	/*
@@ -127,8 +243,43 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void save(Credentials credentials, Resource resourcePattern, Data data, Observer observer) {
-		Runnable request = new SaveRequest(credentials, resourcePattern, data, observer);
-		executor.execute(request);
+		closePendingReads(resourcePattern);
+		if (coalescer != null && SaveCoalescer.canCoalesce(resourcePattern, data)) {
+			coalescer.save(credentials, resourcePattern, data, observer);
+			return;
+		}
+		flush(resourcePattern);
+		Runnable request = new SaveRequest(credentials, resourcePattern, data, observer, durability);
+		executor.execute(resourcePattern, request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#patch(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void patch(Credentials credentials, Resource resource, Data patch, Map<String, String> options,
+			Observer observer) {
+		closePendingReads(resource);
+		flush(resource);
+		Runnable request = new PatchRequest(credentials, resource, patch, options, observer, durability);
+		executor.execute(resource, request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#append(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, org.arx.Observer)
+	 */
+	@Override
+	public void append(Credentials credentials, Resource resource, Data data, Observer observer) {
+		closePendingReads(resource);
+		flush(resource);
+		Runnable request = new AppendRequest(credentials, resource, data, observer, durability);
+		executor.execute(resource, request);
 	}
 
 	/*
@@ -139,8 +290,10 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void delete(Credentials credentials, Resource resourcePattern, Observer observer) {
+		closePendingReads(resourcePattern);
+		flush(resourcePattern);
 		Runnable request = new DeleteRequest(credentials, resourcePattern, observer);
-		executor.execute(request);
+		executor.execute(resourcePattern, request);
 	}
 
 	/*
@@ -151,8 +304,33 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void read(Credentials credentials, Resource resourcePattern, Observer observer) {
-		Runnable request = new ReadRequest(credentials, resourcePattern, observer);
-		executor.execute(request);
+		read(credentials, resourcePattern, null, observer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#read(org.arx.Credentials, org.arx.Resource,
+	 * java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void read(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) {
+		flush(resourcePattern);
+		if (resourcePattern.isPattern()) {
+			executor.execute(resourcePattern,
+					new ReadRequest(credentials, resourcePattern, options, observer, null, maxChunkSize));
+			return;
+		}
+		synchronized (pendingReads) {
+			ReadRequest pending = pendingReads.get(resourcePattern);
+			if (pending != null && pending.attach(credentials, options, observer)) {
+				return;
+			}
+			pending = new ReadRequest(credentials, resourcePattern, options, observer, pendingReads, maxChunkSize);
+			pendingReads.put(resourcePattern, pending);
+			executor.execute(resourcePattern, pending);
+		}
 	}
 
 	/*
@@ -163,7 +341,20 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void subscribe(Credentials credentials, Resource resourcePattern, Observer observer) {
-		Runnable request = new SubscribeRequest(credentials, false, resourcePattern, observer, subscriptions);
+		subscribe(credentials, resourcePattern, null, observer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#subscribe(org.arx.Credentials, org.arx.Resource,
+	 * java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void subscribe(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) {
+		Runnable request = new SubscribeRequest(credentials, false, resourcePattern, options, observer,
+				subscriptions, journal);
 		executor.execute(request);
 	}
 
@@ -175,7 +366,8 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void subscribeStatus(Credentials credentials, Resource resourcePattern, Observer observer) {
-		Runnable request = new SubscribeRequest(credentials, true, resourcePattern, observer, subscriptions);
+		Runnable request = new SubscribeRequest(credentials, true, resourcePattern, null, observer, subscriptions,
+				journal);
 		executor.execute(request);
 	}
 
@@ -203,6 +395,17 @@ public class FileSystemBackend implements Endpoint {
 		executor.execute(request);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#disconnect(org.arx.Observer)
+	 */
+	@Override
+	public void disconnect(Observer observer) {
+		Set<SubscriptionObserver> subs = subscriptions.unsubscribeAll(observer);
+		LOGGER.debug(String.format(DISCONNECT_FORMAT, subs.size()));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -210,92 +413,356 @@ public class FileSystemBackend implements Endpoint {
 	 */
 	@Override
 	public void run() {
-		WatchKey key;
-		try {
-			while ((key = watcher.take()) != null) {
-				Path directory = (Path) key.watchable();
-				List<WatchEvent<?>> events = key.pollEvents();
-				for (WatchEvent<?> event : events) {
-					if (event.kind() == OVERFLOW) {
-						Path path = (Path) event.context();
-						Path fullPath = directory.resolve(path);
-						Resource resource = FileSystemFactory.createResource(fullPath);
-						LOGGER.error("Overflow: " + resource);
-						Set<SubscriptionObserver> subs = subscriptions.match(resource);
-						for (SubscriptionObserver sub : subs) {
-							executor.execute(new SubscriptionOutOfSyncResponse(subscriptions, sub));
-						}
-					} else if (event.kind() == ENTRY_CREATE) {
-						Path path = (Path) event.context();
-						Path fullPath = directory.resolve(path);
-						Resource resource = FileSystemFactory.createResource(fullPath);
-						LOGGER.debug("Created: " + resource);
-						if (Files.isDirectory(fullPath)) {
-							register(fullPath);
-						} else {
-							Set<SubscriptionObserver> subs = subscriptions.match(resource);
-							for (SubscriptionObserver sub : subs) {
-								if (sub.getCredentials().canRead(sub.getResourcePattern())) {
-									subscriptions.unsubscribe(sub);
-								}
-								executor.execute(new SubscriptionDataResponse(sub,resource,Reason.CREATED));
-							}
-						}
-					} else if (event.kind() == ENTRY_MODIFY) {
-						Path path = (Path) event.context();
-						Path fullPath = directory.resolve(path);
-						Resource resource = FileSystemFactory.createResource(fullPath);
-						LOGGER.debug("Modified: " + resource);
-						if (!Files.isDirectory(fullPath)) {
-							Set<SubscriptionObserver> subs = subscriptions.match(resource);
-							for (SubscriptionObserver sub : subs) {
-								executor.execute(new SubscriptionDataResponse(sub,resource,Reason.UPDATED));
-							}
+		changeSource.run(new ChangeSource.Listener() {
+			@Override
+			public void created(Path fullPath) {
+				if (ResourceFiles.isTempFile(fullPath)) {
+					// Temporary files of writes in progress are never reported
+					return;
+				}
+				if (ResourceFiles.wasReplaced(fullPath)) {
+					// Files that have been replaced atomically are modified
+					modified(fullPath);
+					return;
+				}
+				Resource resource = FileSystemFactory.createResource(fullPath);
+				LOGGER.debug("Created: " + resource);
+				if (Files.isDirectory(fullPath)) {
+					if (lazy) {
+						watch(fullPath, subscriptions.getResourcePatterns());
+					} else {
+						register(fullPath);
+					}
+				} else {
+					index.update(fullPath);
+					long sequence = journal.append(resource, Reason.CREATED);
+					Set<SubscriptionObserver> subs = subscriptions.match(resource);
+					for (SubscriptionObserver sub : subs) {
+						if (sub.getCredentials().canRead(sub.getResourcePattern())) {
+							subscriptions.unsubscribe(sub);
 						}
-					} else if (event.kind() == ENTRY_DELETE) {
-						Path path = (Path) event.context();
-						Path fullPath = directory.resolve(path);
-						Resource resource = FileSystemFactory.createResource(fullPath);
-						LOGGER.debug("Deleted: " + resource);
-						if (Files.isDirectory(fullPath)) {
-							unregister(fullPath);
-						} else {
-							Set<SubscriptionObserver> subs = subscriptions.match(resource);
-							for (SubscriptionObserver sub : subs) {
-								executor.execute(
-										new SubscriptionDataDeletedResponse(sub, resource));
-							}
+						if (sub.accepts(Reason.CREATED)) {
+							sub.deliver(executor,
+									new SubscriptionDataResponse(sub, resource, Reason.CREATED, sequence));
 						}
 					}
 				}
-				key.reset();
 			}
-		} catch (InterruptedException e) {
-			// Do nothing
+
+			@Override
+			public void modified(Path fullPath) {
+				if (ResourceFiles.isTempFile(fullPath)) {
+					return;
+				}
+				Resource resource = FileSystemFactory.createResource(fullPath);
+				LOGGER.debug("Modified: " + resource);
+				if (!Files.isDirectory(fullPath)) {
+					index.update(fullPath);
+					notifySubscribers(resource, Reason.UPDATED);
+				}
+			}
+
+			@Override
+			public void deleted(Path fullPath) {
+				if (ResourceFiles.isTempFile(fullPath)) {
+					return;
+				}
+				Resource resource = FileSystemFactory.createResource(fullPath);
+				LOGGER.debug("Deleted: " + resource);
+				if (Files.isDirectory(fullPath)) {
+					unregister(fullPath);
+				} else {
+					index.remove(fullPath);
+					notifySubscribers(resource, Reason.DELETED);
+				}
+			}
+
+			@Override
+			public void overflow(Path directory) {
+				LOGGER.error(String.format(OVERFLOW_FORMAT, directory));
+				resync(directory);
+			}
+		});
+		if (coalescer != null) {
+			coalescer.close();
 		}
 		try {
-			watcher.close();
+			changeSource.close();
 		} catch (IOException e) {
 			LOGGER.error(CLOSE_ERROR, e);
 		}
+	}
 
+	/**
+	 * Notifies all subscribers of the specified resource about a change.
+	 * 
+	 * @param resource
+	 *            the resource that has been changed
+	 * @param reason
+	 *            the kind of change (CREATED, UPDATED or DELETED)
+	 */
+	private void notifySubscribers(Resource resource, Reason reason) {
+		long sequence = journal.append(resource, reason);
+		Set<SubscriptionObserver> subs = subscriptions.match(resource);
+		for (SubscriptionObserver sub : subs) {
+			if (!sub.accepts(reason)) {
+				// Filtered changes are neither read nor queued
+				continue;
+			}
+			if (reason == Reason.DELETED) {
+				sub.deliver(executor, new SubscriptionDataDeletedResponse(sub, resource, sequence));
+			} else {
+				sub.deliver(executor, new SubscriptionDataResponse(sub, resource, reason, sequence));
+			}
+		}
+	}
+
+	/**
+	 * Determines the changes below the specified directory after events have
+	 * been lost by rescanning the directory against the file index and
+	 * notifies the subscribers of the changed resources only. Only if the
+	 * directory cannot be rescanned, the subscribers of the indexed resources
+	 * below the directory are notified that they are out of sync. This method
+	 * is called by the thread that executes the backend.
+	 * 
+	 * @param directory
+	 *            the directory whose events have been lost
+	 */
+	void resync(Path directory) {
+		try {
+			index.rescan(directory, new FileIndex.ChangeHandler() {
+				@Override
+				public void directory(Path dir) {
+					if (!changeSource.isWatched(dir)
+							&& (!lazy || isCovered(dir, subscriptions.getResourcePatterns()))) {
+						register(dir);
+					}
+				}
+
+				@Override
+				public void created(Path path) {
+					notifySubscribers(FileSystemFactory.createResource(path), Reason.CREATED);
+				}
+
+				@Override
+				public void updated(Path path) {
+					notifySubscribers(FileSystemFactory.createResource(path), Reason.UPDATED);
+				}
+
+				@Override
+				public void deleted(Path path) {
+					notifySubscribers(FileSystemFactory.createResource(path), Reason.DELETED);
+				}
+			});
+		} catch (IOException e) {
+			LOGGER.error(String.format(RESYNC_ERROR_FORMAT, directory), e);
+			// Changes have been lost, so no subscriber can resume from a
+			// previous change
+			journal.reset();
+			Set<SubscriptionObserver> subs = new HashSet<SubscriptionObserver>();
+			for (Path path : index.getFiles(directory)) {
+				subs.addAll(subscriptions.match(FileSystemFactory.createResource(path)));
+			}
+			for (SubscriptionObserver sub : subs) {
+				sub.deliver(executor, new SubscriptionOutOfSyncResponse(subscriptions, sub));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of directories that are currently watched.
+	 * 
+	 * @return the number of directories that are currently watched
+	 */
+	public int getWatchCount() {
+		return changeSource.getWatchedDirectories().size();
+	}
+
+	/**
+	 * Returns the change source of this backend. It can be used to access the
+	 * statistics of the change source or to inject changes into a
+	 * {@link SyntheticChangeSource}.
+	 * 
+	 * @return the change source of this backend
+	 */
+	public ChangeSource getChangeSource() {
+		return changeSource;
+	}
+
+	/**
+	 * Returns true, if the specified directory must be watched for the
+	 * specified resource patterns. A directory must be watched, if it may
+	 * contain subscribed resources or subscribed resources may be created
+	 * below it.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @param resourcePatterns
+	 *            the subscribed resource patterns
+	 * @return true, if the directory must be watched
+	 */
+	static boolean isCovered(Path directory, Collection<Resource> resourcePatterns) {
+		Path relative = FileSystemFactory.getRoot().relativize(directory.normalize());
+		int num = relative.toString().isEmpty() ? 0 : relative.getNameCount();
+		for (Resource resourcePattern : resourcePatterns) {
+			String[] levels = resourcePattern.getLevels();
+			boolean covered = true;
+			for (int i = 0; i < num && covered; ++i) {
+				if (i < levels.length && Resource.MULTI_LEVEL_WILDCARD.equals(levels[i])) {
+					break;
+				}
+				// The last level of a pattern specifies files
+				covered = i + 1 < levels.length && (Resource.SINGLE_LEVEL_WILDCARD.equals(levels[i])
+						|| levels[i].equals(relative.getName(i).toString()));
+			}
+			if (covered) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLazy(String mode) {
+		if (mode == null || mode.trim().equalsIgnoreCase(EAGER_MODE)) {
+			return false;
+		}
+		if (mode.trim().equalsIgnoreCase(LAZY_MODE)) {
+			return true;
+		}
+		throw new IllegalArgumentException(String.format(WATCH_MODE_ERROR_FORMAT, mode));
+	}
+
+	/**
+	 * Watches the specified directory and all directories below it that are
+	 * covered by the specified resource patterns in background. The
+	 * directories are registered in parallel.
+	 * 
+	 * @param directory
+	 *            the directory to be watched
+	 * @param resourcePatterns
+	 *            the resource patterns whose directories shall be watched
+	 */
+	private void watch(Path directory, Collection<Resource> resourcePatterns) {
+		pendingWatches.incrementAndGet();
+		executor.execute(new WatchTask(directory, resourcePatterns));
+	}
+
+	/**
+	 * Stops watching all directories that are no longer covered by the
+	 * subscribed resource patterns.
+	 */
+	private void release() {
+		Set<Resource> resourcePatterns = subscriptions.getResourcePatterns();
+		int released = 0;
+		for (Path path : changeSource.getWatchedDirectories()) {
+			if (!isCovered(path, resourcePatterns)) {
+				unregister(path);
+				index.removeFiles(path);
+				++released;
+			}
+		}
+		LOGGER.info(String.format(RELEASE_FORMAT, released, getWatchCount()));
+	}
+
+	/**
+	 * Closes the pending read requests for the specified resource or for all
+	 * resources, if a resource pattern is specified. Read requests that arrive
+	 * after a write request must not be attached to a read request that is
+	 * executed before the write request.
+	 * 
+	 * @param resource
+	 *            the resource or resource pattern of a write request
+	 */
+	private void closePendingReads(Resource resource) {
+		synchronized (pendingReads) {
+			if (resource.isPattern()) {
+				pendingReads.clear();
+			} else {
+				pendingReads.remove(resource);
+			}
+		}
+	}
+
+	private void flush(Resource resource) {
+		if (coalescer != null) {
+			coalescer.flush(resource);
+		}
 	}
 
 	private void register(Path path) {
 		try {
-			WatchKey key = path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-			watchKeys.put(path.normalize(), key);
+			changeSource.watch(path);
 		} catch (IOException e) {
 			LOGGER.error(String.format(REGISTER_ERROR_FORMAT, path), e);
 		}
 	}
 
-	private void unregister(Path path) {
-		WatchKey key = watchKeys.get(path.normalize());
-		if (key != null) {
-			key.cancel();
-			watchKeys.remove(path.normalize());
+	/**
+	 * A watch task registers a directory, indexes its files and starts a watch
+	 * task for every subdirectory that is covered by the subscribed resource
+	 * patterns.
+	 */
+	private class WatchTask implements Runnable {
+		private final Path directory;
+		private final Collection<Resource> resourcePatterns;
+
+		/**
+		 * Creates a watch task for the specified parameters.
+		 * 
+		 * @param directory
+		 *            the directory to be watched
+		 * @param resourcePatterns
+		 *            the subscribed resource patterns
+		 */
+		public WatchTask(Path directory, Collection<Resource> resourcePatterns) {
+			this.directory = directory;
+			this.resourcePatterns = resourcePatterns;
 		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			try {
+				if (Files.isDirectory(directory) && isCovered(directory, resourcePatterns)) {
+					boolean registered = changeSource.isWatched(directory);
+					if (!registered) {
+						// Register before listing, so that no change is missed
+						register(directory);
+					}
+					try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+						for (Path path : stream) {
+							BasicFileAttributes attributes;
+							try {
+								attributes = Files.readAttributes(path, BasicFileAttributes.class);
+							} catch (NoSuchFileException e) {
+								// Deleted while listing
+								continue;
+							}
+							if (attributes.isDirectory()) {
+								pendingWatches.incrementAndGet();
+								executor.execute(new WatchTask(path, resourcePatterns));
+							} else if (!registered) {
+								index.put(path, attributes);
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.error(String.format(WATCH_ERROR_FORMAT, directory), e);
+			} finally {
+				if (pendingWatches.decrementAndGet() == 0) {
+					LOGGER.info(String.format(WATCHING_FORMAT, getWatchCount()));
+				}
+			}
+		}
+	}
+
+	private void unregister(Path path) {
+		changeSource.unwatch(path);
 	}
 
 }
@@ -1,6 +1,7 @@
 package org.arx.backend.file;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.Executor;
@@ -18,6 +19,88 @@ import org.arx.util.SimpleResource;
  * for a file system backed implementation of a resource backend.
  */
 public class FileSystemFactory implements BackendFactory {
+	/**
+	 * Key of the parameter that specifies how many resources of a resource
+	 * pattern are processed in parallel. A value of 1 or less disables parallel
+	 * processing.
+	 */
+	public static final String PARALLELISM_KEY = "org.arx.backend.file.parallelism";
+	/**
+	 * Key of the parameter that specifies the number of stripes that are used
+	 * to execute requests for the same resource in arrival order.
+	 */
+	public static final String STRIPES_KEY = "org.arx.backend.file.stripes";
+	/**
+	 * Key of the parameter that specifies the durability mode of written
+	 * files: none, fsync or group.
+	 */
+	public static final String DURABILITY_KEY = "org.arx.backend.file.durability";
+	/**
+	 * Key of the parameter that specifies the maximum number of write requests
+	 * that are made durable together in group commit mode.
+	 */
+	public static final String GROUP_COMMIT_SIZE_KEY = "org.arx.backend.file.groupCommitSize";
+	/**
+	 * Key of the parameter that specifies the time in milliseconds to wait for
+	 * further write requests before a batch is made durable in group commit
+	 * mode.
+	 */
+	public static final String GROUP_COMMIT_INTERVAL_KEY = "org.arx.backend.file.groupCommitInterval";
+	/**
+	 * Key of the parameter that specifies the time window in milliseconds,
+	 * during which unconditional SAVE requests for the same resource are
+	 * merged. A value of 0 disables merging.
+	 */
+	public static final String COALESCE_WINDOW_KEY = "org.arx.backend.file.coalesceWindow";
+	/**
+	 * Key of the parameter that specifies the maximum number of changes that
+	 * are retained in the change journal. Subscribers that have missed more
+	 * changes receive the current content of the subscribed resources instead.
+	 */
+	public static final String JOURNAL_SIZE_KEY = "org.arx.backend.file.journalSize";
+	/**
+	 * Key of the parameter that specifies when directories are watched for
+	 * changes: eager (all directories are registered at startup) or lazy (only
+	 * directories covered by subscribed resource patterns are registered in
+	 * background, when the first subscription of a pattern is added, and
+	 * released, when its last subscription is removed).
+	 */
+	public static final String WATCH_MODE_KEY = "org.arx.backend.file.watchMode";
+	/**
+	 * Key of the parameter that specifies the source of file changes: watch
+	 * (native change notifications of the file system), poll (periodic
+	 * listing of the watched directories), synthetic (injected or generated
+	 * changes for load tests) or the fully qualified name of a class that
+	 * implements {@link ChangeSource}.
+	 */
+	public static final String CHANGE_SOURCE_KEY = "org.arx.backend.file.changeSource";
+	/**
+	 * Key of the parameter that specifies the interval in milliseconds, in
+	 * which the watched directories are listed by the polling change source.
+	 */
+	public static final String POLL_INTERVAL_KEY = "org.arx.backend.file.pollInterval";
+	/**
+	 * Key of the parameter that specifies the number of changes per second
+	 * that are generated by the synthetic change source. A value of 0 disables
+	 * the generation, so that only injected changes are reported.
+	 */
+	public static final String SYNTHETIC_RATE_KEY = "org.arx.backend.file.syntheticRate";
+	/**
+	 * Key of the parameter that specifies the interval in seconds, in which
+	 * the statistics of the change source are logged. A value of 0 disables
+	 * logging.
+	 */
+	public static final String STATISTICS_INTERVAL_KEY = "org.arx.backend.file.statisticsInterval";
+	/**
+	 * Key of the parameter that specifies the maximum number of bytes in a
+	 * part of a resource that is read in parts. Larger part sizes requested by
+	 * clients are reduced to this value.
+	 */
+	public static final String CHUNK_SIZE_KEY = "org.arx.backend.file.chunkSize";
+	private static final String WATCH_SOURCE = "watch";
+	private static final String POLL_SOURCE = "poll";
+	private static final String SYNTHETIC_SOURCE = "synthetic";
+	private static final String CHANGE_SOURCE_ERROR_FORMAT = "Illegal change source %1$s";
 	private static final String ROOT_PATH = "htdocs";
 
 	/*
@@ -28,7 +111,7 @@ public class FileSystemFactory implements BackendFactory {
 	 */
 	@Override
 	public Endpoint createBackend(Executor executor, Map<String, String> parameters) throws IOException {
-		return new FileSystemBackend(executor);
+		return new FileSystemBackend(executor, parameters);
 	}
 
 	/*
@@ -51,6 +134,43 @@ public class FileSystemFactory implements BackendFactory {
 		return new ByteArrayData(mimeType, data);
 	}
 
+	/**
+	 * Creates the change source that is configured by
+	 * {@link #CHANGE_SOURCE_KEY}.
+	 * 
+	 * @param executor
+	 *            the executor of the backend
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @return the configured change source
+	 * @throws IOException
+	 *             if the change source cannot be created
+	 */
+	static ChangeSource createChangeSource(Executor executor, Map<String, String> parameters) throws IOException {
+		String name = Configuration.getInstance().getParameter(parameters, CHANGE_SOURCE_KEY);
+		if (name == null || name.trim().equalsIgnoreCase(WATCH_SOURCE)) {
+			return new WatchServiceChangeSource(executor, parameters);
+		}
+		name = name.trim();
+		if (name.equalsIgnoreCase(POLL_SOURCE)) {
+			return new PollingChangeSource(executor, parameters);
+		}
+		if (name.equalsIgnoreCase(SYNTHETIC_SOURCE)) {
+			return new SyntheticChangeSource(executor, parameters);
+		}
+		try {
+			Class<? extends ChangeSource> type = Class.forName(name).asSubclass(ChangeSource.class);
+			return type.getConstructor(Executor.class, Map.class).newInstance(executor, parameters);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalArgumentException(String.format(CHANGE_SOURCE_ERROR_FORMAT, name), e.getCause());
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException(String.format(CHANGE_SOURCE_ERROR_FORMAT, name), e);
+		}
+	}
+
 	/**
 	 * Creates a resource from a Path object
 	 * 
@@ -3,24 +3,53 @@ package org.arx.backend.file;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import org.arx.Resource;
+import org.arx.util.Configuration;
+import org.arx.util.ResourceProcessor;
 import org.arx.util.ResourceVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A file system based resource walker. Only regular files will be visited.
+ * Temporary files of writes in progress are never visited.
+ * <p>
+ * Resources can either be visited one after another by a
+ * {@link ResourceVisitor} or they can be handed to a {@link ResourceProcessor}.
+ * If the walker has been created with a fork-join pool, subtrees of the
+ * resource pattern are walked in parallel and the process step of the resource
+ * processor is executed concurrently by the pool. The complete step is always
+ * executed by the calling thread in lexicographic depth-first order of the
+ * resources.
  */
 public class FileSystemWalker {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemWalker.class);
 	private static final String WALK_ERROR = "Error while walking file tree";
+	private static final String PARALLELISM_ERROR_FORMAT = "Illegal parallelism %1$s";
+	private static final int WINDOW_FACTOR = 4;
+	private static ForkJoinPool defaultPool;
 	private boolean onlyExistingFiles;
+	private ForkJoinPool pool;
 
 	/**
 	 * Creates a file system walker that only visits existing files.
@@ -31,14 +60,42 @@ public class FileSystemWalker {
 
 	/**
 	 * Creates a file system walker that implements the specified visiting
-	 * strategy.
+	 * strategy. The walker uses the parallelism configured with the parameter
+	 * {@link FileSystemFactory#PARALLELISM_KEY}.
 	 * 
 	 * @param onlyExistingFiles
 	 *            if false, existing and non-existing files will be visited.
 	 *            Otherwise only existing files will be visited
 	 */
 	public FileSystemWalker(boolean onlyExistingFiles) {
+		this(onlyExistingFiles, getDefaultPool());
+	}
+
+	/**
+	 * Creates a file system walker that implements the specified visiting
+	 * strategy and uses the specified fork-join pool for parallel processing.
+	 * 
+	 * @param onlyExistingFiles
+	 *            if false, existing and non-existing files will be visited.
+	 *            Otherwise only existing files will be visited
+	 * @param pool
+	 *            the fork-join pool used to walk and process resources in
+	 *            parallel or null, if resources shall be processed
+	 *            sequentially
+	 */
+	public FileSystemWalker(boolean onlyExistingFiles, ForkJoinPool pool) {
 		this.onlyExistingFiles = onlyExistingFiles;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns true, if this walker processes resources in parallel.
+	 * 
+	 * @return true, if this walker processes resources in parallel or false
+	 *         otherwise
+	 */
+	public boolean isParallel() {
+		return pool != null;
 	}
 
 	/**
@@ -55,6 +112,99 @@ public class FileSystemWalker {
 		walkResources(resource, visitor, 0);
 	}
 
+	/**
+	 * Starts walking the specified resources and hands every visited resource
+	 * to the specified processor. If this walker is parallel, at most a bounded
+	 * number of resources are processed concurrently and the results are
+	 * completed in lexicographic depth-first order. Processing stops at the
+	 * first resource whose processing fails.
+	 * 
+	 * @param resource
+	 *            the resources to be processed
+	 * @param processor
+	 *            the processor that is used for the resources
+	 * @param <T>
+	 *            the type of the results of the processor
+	 * @throws IOException
+	 *             if an IO error occurs during the resource walk or while
+	 *             processing a resource
+	 */
+	public <T> void walkResource(Resource resource, final ResourceProcessor<T> processor) throws IOException {
+		if (pool == null) {
+			walkResources(resource, new ResourceVisitor() {
+				@Override
+				public void visitResource(Resource res) throws IOException {
+					processor.complete(res, processor.process(res));
+				}
+			}, 0);
+			return;
+		}
+		List<Resource> resources;
+		try {
+			resources = pool.invoke(new CollectTask(resource, 0));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		int window = pool.getParallelism() * WINDOW_FACTOR;
+		Iterator<Resource> iterator = resources.iterator();
+		Deque<ProcessTask<T>> pending = new ArrayDeque<ProcessTask<T>>(window);
+		try {
+			while (iterator.hasNext() || !pending.isEmpty()) {
+				while (iterator.hasNext() && pending.size() < window) {
+					ProcessTask<T> task = new ProcessTask<T>(iterator.next(), processor);
+					pool.execute(task);
+					pending.add(task);
+				}
+				ProcessTask<T> task = pending.poll();
+				processor.complete(task.getResource(), task.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (ProcessTask<T> task : pending) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Returns the fork-join pool that is shared by all walkers using the
+	 * configured parallelism or null, if parallel processing is not
+	 * configured.
+	 * 
+	 * @return the shared fork-join pool or null, if parallel processing is not
+	 *         configured
+	 */
+	static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null) {
+			String parallelism = Configuration.getInstance().getParameter(FileSystemFactory.PARALLELISM_KEY);
+			if (parallelism != null) {
+				try {
+					int num = Integer.decode(parallelism.trim());
+					if (num > 1) {
+						defaultPool = new ForkJoinPool(num);
+					}
+				} catch (NumberFormatException e) {
+					LOGGER.error(String.format(PARALLELISM_ERROR_FORMAT, parallelism), e);
+				}
+			}
+		}
+		return defaultPool;
+	}
+
 	private void walkResources(Resource resource, final ResourceVisitor visitor, int part) throws IOException {
 		Resource parent = resource.subresource(0, part);
 		Path parentPath = FileSystemFactory.getPath(parent);
@@ -69,8 +219,10 @@ public class FileSystemWalker {
 						Files.walkFileTree(FileSystemFactory.getPath(parent), new SimpleFileVisitor<Path>() {
 							@Override
 							public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-								Resource res = FileSystemFactory.createResource(file);
-								visitor.visitResource(res);
+								if (!ResourceFiles.isTempFile(file)) {
+									Resource res = FileSystemFactory.createResource(file);
+									visitor.visitResource(res);
+								}
 								return FileVisitResult.CONTINUE;
 							}
 						});
@@ -85,7 +237,7 @@ public class FileSystemWalker {
 					String[] directories = parentPath.toFile().list(new FilenameFilter() {
 						@Override
 						public boolean accept(File current, String name) {
-							return !(new File(current, name).isDirectory());
+							return !(new File(current, name).isDirectory()) && !ResourceFiles.isTempFile(name);
 						}
 					});
 					for (String directory : directories) {
@@ -96,8 +248,7 @@ public class FileSystemWalker {
 				break;
 			default:
 				// Retrieve file for current resource
-				Path path = FileSystemFactory.getPath(resource);
-				if (!onlyExistingFiles || (Files.isRegularFile(path) && Files.exists(path))) {
+				if (isExpected(FileSystemFactory.getPath(resource))) {
 					visitor.visitResource(resource);
 				}
 				break;
@@ -129,4 +280,214 @@ public class FileSystemWalker {
 		}
 	}
 
+	private boolean isExpected(Path path) {
+		return !onlyExistingFiles || (Files.isRegularFile(path) && Files.exists(path));
+	}
+
+	private static String[] list(Path directory, boolean directories) {
+		List<String> names = new ArrayList<String>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path entry : stream) {
+				if (Files.isDirectory(entry) == directories && !ResourceFiles.isTempFile(entry)) {
+					names.add(entry.getFileName().toString());
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error(WALK_ERROR, e);
+		}
+		String[] result = names.toArray(new String[names.size()]);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * A task that collects all resources matching a resource pattern starting
+	 * at a specific level of the pattern. Subtrees are collected in parallel.
+	 */
+	private class CollectTask extends RecursiveTask<List<Resource>> {
+		private static final long serialVersionUID = 2695233735658306046L;
+		private Resource resource;
+		private int part;
+
+		/**
+		 * Creates a collect task for the specified resource pattern and level.
+		 * 
+		 * @param resource
+		 *            the resource pattern to be collected
+		 * @param part
+		 *            the level of the resource pattern to start with
+		 */
+		public CollectTask(Resource resource, int part) {
+			this.resource = resource;
+			this.part = part;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected List<Resource> compute() {
+			List<Resource> result = new LinkedList<Resource>();
+			Resource parent = resource.subresource(0, part);
+			Path parentPath = FileSystemFactory.getPath(parent);
+			boolean isDirectory = Files.isDirectory(parentPath);
+			if (part + 1 == resource.getLevels().length) {
+				// Last part of resource name
+				switch (resource.getLevels()[part]) {
+				case "#":
+					// Retrieve all files in parent directory and recursively in
+					// all subdirectories
+					if (isDirectory) {
+						result.addAll(new DirectoryTask(parentPath).compute());
+					}
+					break;
+				case "+":
+					// Retrieve all files in parent directory
+					if (isDirectory) {
+						for (String file : list(parentPath, false)) {
+							result.add(parent.resolve(file));
+						}
+					}
+					break;
+				default:
+					// Retrieve file for current resource
+					if (isExpected(FileSystemFactory.getPath(resource))) {
+						result.add(resource);
+					}
+					break;
+				}
+			} else {
+				// Intermediate part of resource name
+				switch (resource.getLevels()[part]) {
+				case "+":
+					// Collect resources of all subdirectories in parallel
+					if (isDirectory) {
+						List<CollectTask> tasks = new ArrayList<CollectTask>();
+						for (String directory : list(parentPath, true)) {
+							tasks.add(new CollectTask(resource.replaceLevel(part, directory), part + 1));
+						}
+						for (CollectTask task : invokeAll(tasks)) {
+							result.addAll(task.join());
+						}
+					}
+					break;
+				default:
+					// Collect resources for next subdirectory level
+					result.addAll(new CollectTask(resource, part + 1).compute());
+					break;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A task that collects all files of a directory and recursively of all its
+	 * subdirectories. Subdirectories are collected in parallel.
+	 */
+	private static class DirectoryTask extends RecursiveTask<List<Resource>> {
+		private static final long serialVersionUID = -4263312394958470781L;
+		private Path directory;
+
+		/**
+		 * Creates a directory task for the specified directory.
+		 * 
+		 * @param directory
+		 *            the directory to be collected
+		 */
+		public DirectoryTask(Path directory) {
+			this.directory = directory;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected List<Resource> compute() {
+			List<Path> entries = new ArrayList<Path>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path entry : stream) {
+					entries.add(entry);
+				}
+			} catch (IOException e) {
+				LOGGER.error(WALK_ERROR, e);
+			}
+			entries.sort(null);
+			List<Object> parts = new ArrayList<Object>(entries.size());
+			List<DirectoryTask> tasks = new ArrayList<DirectoryTask>();
+			for (Path entry : entries) {
+				if (Files.isDirectory(entry)) {
+					DirectoryTask task = new DirectoryTask(entry);
+					tasks.add(task);
+					parts.add(task);
+				} else if (!ResourceFiles.isTempFile(entry)) {
+					parts.add(FileSystemFactory.createResource(entry));
+				}
+			}
+			invokeAll(tasks);
+			List<Resource> result = new LinkedList<Resource>();
+			for (Object part : parts) {
+				if (part instanceof DirectoryTask) {
+					result.addAll(((DirectoryTask) part).join());
+				} else {
+					result.add((Resource) part);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A task that executes the process step of a resource processor for a
+	 * single resource.
+	 *
+	 * @param <T>
+	 *            the type of the result of the processor
+	 */
+	private static class ProcessTask<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 8108129577468618163L;
+		private Resource resource;
+		private transient ResourceProcessor<T> processor;
+
+		/**
+		 * Creates a process task for the specified resource and processor.
+		 * 
+		 * @param resource
+		 *            the resource to be processed
+		 * @param processor
+		 *            the processor to be used
+		 */
+		public ProcessTask(Resource resource, ResourceProcessor<T> processor) {
+			this.resource = resource;
+			this.processor = processor;
+		}
+
+		/**
+		 * Returns the resource to be processed by this task.
+		 * 
+		 * @return the resource to be processed by this task
+		 */
+		public Resource getResource() {
+			return resource;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected T compute() {
+			try {
+				return processor.process(resource);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 }
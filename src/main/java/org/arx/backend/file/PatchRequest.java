@@ -0,0 +1,135 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.Endpoint;
+import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Options;
+import org.arx.Resource;
+import org.arx.backend.file.ResourceFiles.VersionMismatchException;
+import org.arx.util.JsonMergePatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A patch request is used to asynchronously change a part of a single
+ * resource. A byte range is written in place, so that the cost of the request
+ * depends on the size of the change. A JSON merge patch is merged into the
+ * current content of the resource, which is then written atomically.
+ */
+class PatchRequest implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PatchRequest.class);
+	private static final String RESOURCE_NOT_FOUND_FORMAT = "Resource %1$s not found";
+	private static final String PATCH_SUCCESS_FORMAT = "Successfully patched resource %1$s";
+	private static final String PATCH_ERROR_FORMAT = "Cannot patch resource %1$s";
+	private static final String FORBIDDEN_FORMAT = "Forbidden to patch resource %1$s";
+	private static final String PATTERN_ERROR_FORMAT = "Resource pattern %1$s cannot be patched";
+	private static final String BAD_PATCH_FORMAT = "Illegal patch of resource %1$s: %2$s";
+	private static final String PRECONDITION_FAILED_FORMAT = "Cannot patch resource %1$s: %2$s";
+	private Credentials credentials;
+	private Resource resource;
+	private Data patch;
+	private Map<String, String> options;
+	private Observer observer;
+	private Durability durability;
+
+	/**
+	 * Creates a patch request for the specified parameters.
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the UPDATE access
+	 *            right is granted for the specified resource.
+	 * @param resource
+	 *            the resource to be patched
+	 * @param patch
+	 *            the patch to be applied to the resource
+	 * @param options
+	 *            the request options or null
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param durability
+	 *            the durability that is used to make written files durable
+	 */
+	public PatchRequest(Credentials credentials, Resource resource, Data patch, Map<String, String> options,
+			Observer observer, Durability durability) {
+		this.credentials = credentials;
+		this.resource = resource;
+		this.patch = patch;
+		this.options = options;
+		this.observer = observer;
+		this.durability = durability;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			if (!credentials.canUpdate(resource)) {
+				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
+				observer.onError(MessageType.PATCH, resource, MessageType.FORBIDDEN);
+			} else if (resource.isPattern()) {
+				LOGGER.error(String.format(PATTERN_ERROR_FORMAT, resource));
+				observer.onError(MessageType.PATCH, resource, MessageType.BAD_REQUEST);
+			} else {
+				Path path = FileSystemFactory.getPath(resource);
+				try {
+					if (Endpoint.MERGE_PATCH_MIME_TYPE.equalsIgnoreCase(patch.getMimeType())) {
+						merge(path);
+					} else {
+						ResourceFiles.patch(path, getOffset(), patch.getContent(), patch.getVersion());
+					}
+					LOGGER.debug(String.format(PATCH_SUCCESS_FORMAT, resource));
+					durability.commit(Arrays.asList(path, path.getParent()),
+							Durability.success(MessageType.PATCH, resource, observer, resource));
+				} catch (IllegalArgumentException e) {
+					LOGGER.error(String.format(BAD_PATCH_FORMAT, resource, e.getMessage()));
+					observer.onError(MessageType.PATCH, resource, MessageType.BAD_REQUEST);
+				} catch (VersionMismatchException e) {
+					LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resource, e.getMessage()));
+					observer.onError(MessageType.PATCH, resource, MessageType.PRECONDITION_FAILED);
+				} catch (NoSuchFileException e) {
+					LOGGER.error(String.format(RESOURCE_NOT_FOUND_FORMAT, resource));
+					observer.onError(MessageType.PATCH, resource, MessageType.NOT_FOUND);
+				} catch (IOException e) {
+					LOGGER.error(String.format(PATCH_ERROR_FORMAT, resource), e);
+					observer.onError(MessageType.PATCH, resource, MessageType.INTERNAL_SERVER_ERROR);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error(String.format(PATCH_ERROR_FORMAT, resource), e);
+		}
+	}
+
+	private void merge(Path path) throws IllegalArgumentException, IOException {
+		Data current = ResourceFiles.read(path, null);
+		if (patch.getVersion() != Data.NO_VERSION && patch.getVersion() != current.getVersion()) {
+			throw new VersionMismatchException(path, patch.getVersion(), current.getVersion());
+		}
+		byte[] content = JsonMergePatch.apply(current.getContent(), patch.getContent());
+		// Fails, if the file has been modified by somebody else in the meantime
+		ResourceFiles.write(path, content, current.getVersion());
+	}
+
+	private long getOffset() throws IllegalArgumentException {
+		String offset = options == null ? null : options.get(Options.OFFSET);
+		if (offset == null) {
+			throw new IllegalArgumentException(Options.OFFSET + " missing");
+		}
+		long result = Long.parseLong(offset.trim());
+		if (result < 0) {
+			throw new IllegalArgumentException(Options.OFFSET + " " + result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,264 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.arx.util.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A polling change source detects changes by periodically listing the watched
+ * directories and comparing the last modified time and size of their files
+ * with the previous listing. It can be used on file systems that do not
+ * support native change notifications, e.g. network file systems. The
+ * directories are listed in parallel by the shared fork-join pool of the file
+ * system backend (see {@link FileSystemFactory#PARALLELISM_KEY}). The interval
+ * is configured with {@link FileSystemFactory#POLL_INTERVAL_KEY}.
+ * <p>
+ * Since changes are detected late, the last modified time of a file is used
+ * as detection time in the statistics.
+ */
+class PollingChangeSource implements ChangeSource {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PollingChangeSource.class);
+	private static final String SCAN_ERROR_FORMAT = "Cannot scan directory %1$s";
+	private static final int DEFAULT_INTERVAL = 1000;
+	private final long interval;
+	private final Map<Path, Map<Path, FileIndex.FileState>> directories;
+	private final ChangeStatistics statistics;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a polling change source.
+	 *
+	 * @param executor
+	 *            the executor of the backend (not used)
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 */
+	public PollingChangeSource(Executor executor, Map<String, String> parameters) {
+		this.interval = Configuration.getInstance().getIntParameter(parameters, FileSystemFactory.POLL_INTERVAL_KEY,
+				DEFAULT_INTERVAL);
+		this.directories = new ConcurrentHashMap<Path, Map<Path, FileIndex.FileState>>();
+		this.statistics = ChangeStatistics.create(PollingChangeSource.class.getSimpleName(), parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#watch(java.nio.file.Path)
+	 */
+	@Override
+	public void watch(Path directory) throws IOException {
+		Path dir = directory.normalize();
+		directories.put(dir, list(dir));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#unwatch(java.nio.file.Path)
+	 */
+	@Override
+	public void unwatch(Path directory) {
+		directories.remove(directory.normalize());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#isWatched(java.nio.file.Path)
+	 */
+	@Override
+	public boolean isWatched(Path directory) {
+		return directories.containsKey(directory.normalize());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getWatchedDirectories()
+	 */
+	@Override
+	public Set<Path> getWatchedDirectories() {
+		return directories.keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.arx.backend.file.ChangeSource#run(org.arx.backend.file.ChangeSource.
+	 * Listener)
+	 */
+	@Override
+	public void run(Listener listener) {
+		try {
+			while (!closed) {
+				Thread.sleep(interval);
+				poll(listener);
+			}
+		} catch (InterruptedException e) {
+			// Do nothing
+		}
+	}
+
+	/**
+	 * Lists all watched directories once and reports the differences to the
+	 * previous listing to the specified listener.
+	 *
+	 * @param listener
+	 *            the listener to be notified about changes
+	 * @throws InterruptedException
+	 *             if the calling thread has been interrupted
+	 */
+	void poll(Listener listener) throws InterruptedException {
+		List<Path> dirs = new ArrayList<Path>(directories.keySet());
+		ForkJoinPool pool = FileSystemWalker.getDefaultPool();
+		List<List<ChangeEvent>> results = new ArrayList<List<ChangeEvent>>();
+		if (pool == null || dirs.size() < 2) {
+			for (Path dir : dirs) {
+				results.add(scan(dir));
+			}
+		} else {
+			List<Future<List<ChangeEvent>>> futures = new ArrayList<Future<List<ChangeEvent>>>();
+			for (final Path dir : dirs) {
+				futures.add(pool.submit(new Callable<List<ChangeEvent>>() {
+					@Override
+					public List<ChangeEvent> call() {
+						return scan(dir);
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); ++i) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					LOGGER.error(String.format(SCAN_ERROR_FORMAT, dirs.get(i)), e.getCause());
+				}
+			}
+		}
+		// Changes are reported by the calling thread in a stable order
+		for (List<ChangeEvent> changes : results) {
+			for (ChangeEvent change : changes) {
+				change.dispatch(listener, statistics);
+			}
+		}
+	}
+
+	/**
+	 * Lists the specified directory and determines the differences to its
+	 * previous listing. Directories are only reported, if they have been
+	 * created or deleted.
+	 *
+	 * @param directory
+	 *            the watched directory
+	 * @return the changes of the directory
+	 */
+	private List<ChangeEvent> scan(Path directory) {
+		List<ChangeEvent> changes = new ArrayList<ChangeEvent>();
+		Map<Path, FileIndex.FileState> previous = directories.get(directory);
+		if (previous == null) {
+			// Unwatched in the meantime
+			return changes;
+		}
+		Map<Path, FileIndex.FileState> current;
+		try {
+			current = list(directory);
+		} catch (NoSuchFileException e) {
+			// The directory has been deleted, its deletion is reported by its
+			// parent directory
+			current = Collections.emptyMap();
+			directories.remove(directory);
+		} catch (IOException e) {
+			LOGGER.error(String.format(SCAN_ERROR_FORMAT, directory), e);
+			changes.add(new ChangeEvent(ChangeEvent.Kind.OVERFLOW, directory, System.currentTimeMillis()));
+			return changes;
+		}
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Path, FileIndex.FileState> entry : current.entrySet()) {
+			Path path = entry.getKey();
+			FileIndex.FileState state = entry.getValue();
+			FileIndex.FileState old = previous.get(path);
+			if (old == null) {
+				changes.add(new ChangeEvent(ChangeEvent.Kind.CREATED, path, state.getModified()));
+			} else if (!old.equals(state) && !state.isDirectory()) {
+				// Atomic replacements are seen as modifications
+				ResourceFiles.wasReplaced(path);
+				changes.add(new ChangeEvent(ChangeEvent.Kind.MODIFIED, path, state.getModified()));
+			}
+		}
+		for (Path path : previous.keySet()) {
+			if (!current.containsKey(path)) {
+				changes.add(new ChangeEvent(ChangeEvent.Kind.DELETED, path, now));
+			}
+		}
+		// Only if the directory has not been unwatched in the meantime
+		directories.replace(directory, previous, current);
+		return changes;
+	}
+
+	/**
+	 * Lists the files of the specified directory with their states. Temporary
+	 * files are ignored.
+	 *
+	 * @param directory
+	 *            the directory to be listed
+	 * @return the files of the directory with their states
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	private static Map<Path, FileIndex.FileState> list(Path directory) throws IOException {
+		Map<Path, FileIndex.FileState> files = new HashMap<Path, FileIndex.FileState>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				if (ResourceFiles.isTempFile(path)) {
+					continue;
+				}
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					files.put(path.normalize(), new FileIndex.FileState(attributes));
+				} catch (NoSuchFileException e) {
+					// Deleted while listing
+				}
+			}
+		}
+		return files;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getStatistics()
+	 */
+	@Override
+	public ChangeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+	}
+}
@@ -2,21 +2,30 @@ package org.arx.backend.file;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.arx.Credentials;
 import org.arx.Data;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.Observer;
+import org.arx.Options;
 import org.arx.MessageType;
-import org.arx.util.ByteArrayData;
-import org.arx.util.ResourceVisitor;
+import org.arx.backend.file.ResourceFiles.VersionMismatchException;
+import org.arx.util.ResourceProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A read request is used to asynchronously read resources.
+ * A read request is used to asynchronously read resources. A single resource
+ * can be read in parts (see {@link Options#CHUNK_SIZE}), so that only one part
+ * of a large resource has to be kept in memory at a time. Read requests for
+ * the same single resource that arrive while a read request is pending can be
+ * attached to it, so that the resource is read only once for all of them.
  */
 class ReadRequest implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ReadRequest.class);
@@ -24,9 +33,23 @@ class ReadRequest implements Runnable {
 	private static final String READ_SUCCESS_FORMAT = "Successfully read resource %1$s";
 	private static final String READ_ERROR_FORMAT = "Cannot read resource %1$s";
 	private static final String FORBIDDEN_FORMAT = "Forbidden to read resource %1$s";
+	private static final String NOT_MODIFIED_FORMAT = "Resource %1$s not modified";
+	private static final String OPTION_ERROR_FORMAT = "Illegal value %2$s of option %1$s";
+	private static final String SHARED_FORMAT = "Read of resource %2$s shared by %1$d requests";
+	private static final String PATCHED_FORMAT = "Resource %1$s patched while being read: %2$s";
+	private static final String PARTIAL_SUCCESS_FORMAT = "Successfully read %2$d bytes of resource %1$s";
+	/**
+	 * The default maximum number of bytes in a part of a resource that is
+	 * read in parts.
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
 	private Credentials credentials;
 	private Resource resource;
+	private Map<String, String> options;
 	private Observer observer;
+	private Map<Resource, ReadRequest> pendingReads;
+	private List<Reader> attached;
+	private int maxChunkSize;
 
 	/**
 	 * Creates a read request for the specified parameters
@@ -40,58 +63,299 @@ class ReadRequest implements Runnable {
 	 *            the observer that is used for the response messages
 	 */
 	public ReadRequest(Credentials credentials, Resource resourcePattern, Observer observer) {
+		this(credentials, resourcePattern, null, observer);
+	}
+
+	/**
+	 * Creates a read request for the specified parameters
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the READ access
+	 *            right is granted for the specified resources.
+	 * @param resourcePattern
+	 *            the resources to be created
+	 * @param options
+	 *            the request options or null
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 */
+	public ReadRequest(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) {
+		this(credentials, resourcePattern, options, observer, null, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a read request for the specified parameters that is registered
+	 * as pending read request, until it is executed. While it is pending,
+	 * further read requests for the same resource can be attached to it (see
+	 * {@link #attach(Credentials, Map, Observer)}).
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the READ access
+	 *            right is granted for the specified resources.
+	 * @param resourcePattern
+	 *            the resources to be created
+	 * @param options
+	 *            the request options or null
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param pendingReads
+	 *            the pending read requests by resource or null, if requests
+	 *            cannot be attached
+	 * @param maxChunkSize
+	 *            the maximum number of bytes in a part of a resource that is
+	 *            read in parts (see {@link Options#CHUNK_SIZE})
+	 */
+	public ReadRequest(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer, Map<Resource, ReadRequest> pendingReads, int maxChunkSize) {
 		this.credentials = credentials;
 		this.resource = resourcePattern;
+		this.options = options;
 		this.observer = observer;
+		this.pendingReads = pendingReads;
+		this.attached = new ArrayList<Reader>();
+		this.maxChunkSize = maxChunkSize;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
 	@Override
 	public void run() {
+		List<Reader> readers = new ArrayList<Reader>();
+		readers.add(new Reader(credentials, observer));
+		if (pendingReads != null) {
+			synchronized (pendingReads) {
+				// Later requests must not attach to this request anymore
+				pendingReads.remove(resource, this);
+				readers.addAll(attached);
+			}
+		}
+		final long knownVersion;
+		final long offset;
+		final long length;
+		final int chunkSize;
+		try {
+			knownVersion = getOption(Options.IF_NONE_MATCH, Data.NO_VERSION, Long.MIN_VALUE);
+			offset = getOption(Options.OFFSET, 0, 0);
+			length = getOption(Options.LENGTH, Long.MAX_VALUE, 0);
+			chunkSize = (int) Math.min(getOption(Options.CHUNK_SIZE, maxChunkSize, 1), maxChunkSize);
+		} catch (IllegalArgumentException e) {
+			LOGGER.error(e.getMessage());
+			for (Reader reader : readers) {
+				reader.error(MessageType.BAD_REQUEST);
+			}
+			return;
+		}
+		if (resource.isPattern()) {
+			readPattern(knownVersion);
+		} else if (isPartial(options)) {
+			// Partial requests are never attached
+			readParts(knownVersion, offset, length, chunkSize);
+		} else {
+			readResource(readers, knownVersion);
+		}
+	}
+
+	/**
+	 * Attaches a read request for the same resource to this request, so that
+	 * the resource is read only once for both requests. Only requests for the
+	 * complete content of single resources with the same known version can be
+	 * attached. This
+	 * method must be called while holding the lock of the pending read
+	 * requests.
+	 * 
+	 * @param credentials
+	 *            the credentials of the attached request
+	 * @param options
+	 *            the request options of the attached request or null
+	 * @param observer
+	 *            the observer of the attached request
+	 * @return true, if the request has been attached
+	 */
+	boolean attach(Credentials credentials, Map<String, String> options, Observer observer) {
+		String knownVersion = this.options == null ? null : this.options.get(Options.IF_NONE_MATCH);
+		String version = options == null ? null : options.get(Options.IF_NONE_MATCH);
+		if (resource.isPattern() || isPartial(this.options) || isPartial(options)
+				|| (knownVersion == null ? version != null : !knownVersion.equals(version))) {
+			return false;
+		}
+		attached.add(new Reader(credentials, observer));
+		return true;
+	}
+
+	private void readPattern(final long knownVersion) {
 		try {
 			if (!credentials.canRead(resource)) {
 				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
 				observer.onError(MessageType.READ, resource, MessageType.FORBIDDEN);
-			} else if (resource.isPattern()) {
-				FileSystemWalker walker = new FileSystemWalker();
-				try {
-					walker.walkResource(resource, new ResourceVisitor() {
-						@Override
-						public void visitResource(Resource res) throws IOException {
-							Path path = FileSystemFactory.getPath(res);
-							byte[] bytes = Files.readAllBytes(path);
-							String mimeType = FileSystemFactory.getMimeType(res);
-							Data data = new ByteArrayData(mimeType, bytes);
+				return;
+			}
+			FileSystemWalker walker = new FileSystemWalker();
+			try {
+				walker.walkResource(resource, new ResourceProcessor<Data>() {
+					@Override
+					public Data process(Resource res) throws IOException {
+						Path path = FileSystemFactory.getPath(res);
+						// Only check the version of unmodified resources
+						// without reading their content
+						if (knownVersion != Data.NO_VERSION && ResourceFiles.getVersion(path) <= knownVersion) {
+							return null;
+						}
+						return ResourceFiles.read(path, FileSystemFactory.getMimeType(res));
+					}
+
+					@Override
+					public void complete(Resource res, Data data) throws IOException {
+						if (data != null) {
 							observer.onData(MessageType.READ, resource, Reason.INITIAL, res, data);
 							LOGGER.debug(READ_SUCCESS_FORMAT, res);
 						}
-					});
-					observer.onSuccess(MessageType.READ, resource);
+					}
+				});
+				observer.onSuccess(MessageType.READ, resource);
+			} catch (IOException e) {
+				LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+				observer.onError(MessageType.READ, resource, MessageType.INTERNAL_SERVER_ERROR);
+			}
+		} catch (IOException e) {
+			LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+		}
+	}
+
+	private void readResource(List<Reader> readers, long knownVersion) {
+		Path path = FileSystemFactory.getPath(resource);
+		boolean exists = Files.exists(path);
+		Data data = null;
+		if (readers.size() > 1) {
+			LOGGER.debug(String.format(SHARED_FORMAT, readers.size(), resource));
+		}
+		for (Reader reader : readers) {
+			if (!reader.credentials.canRead(resource)) {
+				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
+				reader.error(MessageType.FORBIDDEN);
+			} else if (!exists) {
+				LOGGER.error(String.format(RESOURCE_NOT_FOUND_FORMAT, resource));
+				reader.error(MessageType.NOT_FOUND);
+			} else {
+				try {
+					if (knownVersion != Data.NO_VERSION && ResourceFiles.getVersion(path) == knownVersion) {
+						reader.observer.onData(MessageType.READ, resource, Reason.NOT_MODIFIED, resource, null);
+						LOGGER.debug(String.format(NOT_MODIFIED_FORMAT, resource));
+					} else {
+						if (data == null) {
+							data = ResourceFiles.read(path, FileSystemFactory.getMimeType(resource));
+						}
+						reader.observer.onData(MessageType.READ, resource, Reason.INITIAL, resource, data);
+						LOGGER.debug(String.format(READ_SUCCESS_FORMAT, resource));
+					}
+					reader.observer.onSuccess(MessageType.READ, resource);
 				} catch (IOException e) {
 					LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
-					observer.onError(MessageType.READ, resource, MessageType.INTERNAL_SERVER_ERROR);
+					reader.error(MessageType.INTERNAL_SERVER_ERROR);
 				}
+			}
+		}
+	}
+
+	private void readParts(long knownVersion, long offset, long length, int chunkSize) {
+		Path path = FileSystemFactory.getPath(resource);
+		try {
+			if (!credentials.canRead(resource)) {
+				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
+				observer.onError(MessageType.READ, resource, MessageType.FORBIDDEN);
+			} else if (!Files.exists(path)) {
+				LOGGER.error(String.format(RESOURCE_NOT_FOUND_FORMAT, resource));
+				observer.onError(MessageType.READ, resource, MessageType.NOT_FOUND);
+			} else if (knownVersion != Data.NO_VERSION && ResourceFiles.getVersion(path) == knownVersion) {
+				observer.onData(MessageType.READ, resource, Reason.NOT_MODIFIED, resource, null);
+				LOGGER.debug(String.format(NOT_MODIFIED_FORMAT, resource));
+				observer.onSuccess(MessageType.READ, resource);
 			} else {
-				Path path = FileSystemFactory.getPath(resource);
-				if (Files.exists(path)) {
-					try {
-						byte[] bytes = Files.readAllBytes(path);
-						String mimeType = FileSystemFactory.getMimeType(resource);
-						Data data = new ByteArrayData(mimeType, bytes);
-						observer.onData(MessageType.READ, resource, Reason.INITIAL, resource, data);
-						LOGGER.debug(String.format(READ_SUCCESS_FORMAT, resource));
-						observer.onSuccess(MessageType.READ, resource);
-					} catch (IOException e) {
-						LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
-						observer.onError(MessageType.READ, resource, MessageType.INTERNAL_SERVER_ERROR);
-					}
-				} else {
-					LOGGER.error(String.format(RESOURCE_NOT_FOUND_FORMAT, resource));
-					observer.onError(MessageType.READ, resource, MessageType.NOT_FOUND);
+				final long[] bytes = new long[1];
+				try {
+					ResourceFiles.read(path, FileSystemFactory.getMimeType(resource), offset, length, chunkSize,
+							new ResourceFiles.PartHandler() {
+								@Override
+								public void part(Data data) throws IOException {
+									bytes[0] += data.getContent().length;
+									observer.onData(MessageType.READ, resource, Reason.PARTIAL, resource, data);
+								}
+							});
+				} catch (VersionMismatchException e) {
+					LOGGER.debug(String.format(PATCHED_FORMAT, resource, e.getMessage()));
+					observer.onError(MessageType.READ, resource, MessageType.PRECONDITION_FAILED);
+					return;
+				} catch (IOException e) {
+					LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+					observer.onError(MessageType.READ, resource,
+							e instanceof NoSuchFileException ? MessageType.NOT_FOUND : MessageType.INTERNAL_SERVER_ERROR);
+					return;
 				}
+				LOGGER.debug(String.format(PARTIAL_SUCCESS_FORMAT, resource, bytes[0]));
+				observer.onSuccess(MessageType.READ, resource);
 			}
 		} catch (IOException e) {
 			LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
 		}
 	}
 
+	private long getOption(String name, long defaultValue, long minimum) throws IllegalArgumentException {
+		String value = options == null ? null : options.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			long result = Long.parseLong(value.trim());
+			if (result >= minimum) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException(String.format(OPTION_ERROR_FORMAT, name, value));
+	}
+
+	private static boolean isPartial(Map<String, String> options) {
+		return options != null && (options.containsKey(Options.OFFSET) || options.containsKey(Options.LENGTH)
+				|| options.containsKey(Options.CHUNK_SIZE));
+	}
+
+	/**
+	 * The credentials and the observer of a read request.
+	 */
+	private class Reader {
+		private final Credentials credentials;
+		private final Observer observer;
+
+		/**
+		 * Creates a reader for the specified parameters.
+		 * 
+		 * @param credentials
+		 *            the credentials of the read request
+		 * @param observer
+		 *            the observer of the read request
+		 */
+		public Reader(Credentials credentials, Observer observer) {
+			this.credentials = credentials;
+			this.observer = observer;
+		}
+
+		/**
+		 * Sends an error response to the observer of the read request.
+		 * 
+		 * @param status
+		 *            the error code
+		 */
+		public void error(MessageType status) {
+			try {
+				observer.onError(MessageType.READ, resource, status);
+			} catch (IOException e) {
+				LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,556 @@
+package org.arx.backend.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.arx.Data;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Metadata;
+import org.arx.util.StreamData;
+
+/**
+ * Provides versioned access to the files of resources. The version of a
+ * resource is the last modified time of its file in microseconds. Since the
+ * resolution of file system time stamps can be coarse, every write of this
+ * class makes sure that the version of the written file is strictly greater
+ * than the version the file had before. Thus, versions of resources that are
+ * only modified by the file system backend increase with every modification.
+ * <p>
+ * Reading, writing and checking the version of a file is done while holding a
+ * lock for the file. Therefore, a conditional write cannot be interleaved with
+ * another write of the same file and the version returned by a read always
+ * belongs to the returned content.
+ * <p>
+ * Files are not written in place. The content is written to a temporary file
+ * in the same directory, which is then atomically moved to the file. Thus,
+ * readers that do not hold the lock (e.g. other processes) always see the
+ * complete old or the complete new content. The only exception are patches
+ * (see {@link #patch(Path, long, byte[], long)}), which write the changed
+ * bytes in place, so that their cost depends on the size of the change and
+ * not on the size of the file. Temporary files are hidden
+ * files with the suffix {@value #TEMP_SUFFIX} and must be ignored by
+ * everybody who lists or watches directories (see {@link #isTempFile(Path)}).
+ * Since an atomic move that replaces a file is reported as creation of the
+ * file by a watch service, replaced files are remembered until the watcher
+ * asks for them (see {@link #wasReplaced(Path)}).
+ * <p>
+ * Concurrent reads of the same file are coalesced: while a file is read,
+ * further readers of the file wait for the result of this read instead of
+ * reading the file themselves (see {@link #read(Path, String)}). Large files can
+ * be read in parts of a limited size instead (see
+ * {@link #read(Path, String, long, long, int, PartHandler)}).
+ */
+final class ResourceFiles {
+	/**
+	 * The suffix of temporary files.
+	 */
+	static final String TEMP_SUFFIX = ".arxtmp";
+	private static final String TEMP_PREFIX = ".";
+	private static final int LOCKS = 64;
+	private static final Object[] locks = new Object[LOCKS];
+	private static final AtomicLong tempFiles = new AtomicLong();
+	private static final Set<Path> replaced = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private static final Map<Path, ReadFlight> flights = new ConcurrentHashMap<Path, ReadFlight>();
+
+	static {
+		for (int i = 0; i < LOCKS; ++i) {
+			locks[i] = new Object();
+		}
+	}
+
+	private ResourceFiles() {
+	}
+
+	/**
+	 * Returns the version of the specified file.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return the version of the specified file or {@link Data#NO_VERSION}, if
+	 *         the file does not exist
+	 * @throws IOException
+	 *             if an IO error occurs while reading the file attributes
+	 */
+	public static long getVersion(Path path) throws IOException {
+		try {
+			return Files.getLastModifiedTime(path).to(TimeUnit.MICROSECONDS);
+		} catch (NoSuchFileException e) {
+			return Data.NO_VERSION;
+		}
+	}
+
+	/**
+	 * Reads the content and the version of the specified file.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param mimeType
+	 *            the mime type of the returned data
+	 * @return the data containing the content and the version of the file
+	 * @throws IOException
+	 *             if an IO error occurs while reading the file
+	 */
+	public static Data read(Path path, String mimeType) throws IOException {
+		Path key = path.toAbsolutePath().normalize();
+		ReadFlight flight = new ReadFlight();
+		ReadFlight current = flights.putIfAbsent(key, flight);
+		if (current != null) {
+			// Share the result of the read that is in flight
+			Data data = current.await();
+			return new ByteArrayData(mimeType, data.getContent(), data.getVersion());
+		}
+		try {
+			Data data;
+			synchronized (lockFor(path)) {
+				try {
+					long version = getVersion(path);
+					byte[] bytes = Files.readAllBytes(path);
+					data = new ByteArrayData(mimeType, bytes, version);
+				} finally {
+					// Removed while holding the lock, so that no reader can
+					// share a result that is older than a completed write
+					flights.remove(key, flight);
+				}
+			}
+			flight.complete(data, null);
+			return data;
+		} catch (IOException | RuntimeException e) {
+			flight.complete(null, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the version and the size of the specified file without reading
+	 * its content.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param mimeType
+	 *            the mime type of the returned metadata
+	 * @return the metadata of the file
+	 * @throws NoSuchFileException
+	 *             if the file does not exist
+	 * @throws IOException
+	 *             if an IO error occurs while reading the attributes
+	 */
+	public static Metadata readMetadata(Path path, String mimeType) throws IOException {
+		synchronized (lockFor(path)) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return new Metadata(mimeType, attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS),
+					attributes.size());
+		}
+	}
+
+	/**
+	 * Reads a range of the content of the specified file in parts of a limited
+	 * size and passes every part with the version of the file to the specified
+	 * handler. At least one part is passed, which is empty if the range starts
+	 * behind the end of the file. The lock of the file is only held while the
+	 * file is opened and while a part is read. If the file is replaced while
+	 * its parts are read, the opened file keeps the content of this version.
+	 * If the file is patched in place instead, reading is aborted.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param mimeType
+	 *            the mime type of the parts
+	 * @param offset
+	 *            the position of the first byte to be read
+	 * @param length
+	 *            the maximum number of bytes to be read
+	 * @param chunkSize
+	 *            the maximum number of bytes of a part
+	 * @param handler
+	 *            the handler of the parts
+	 * @throws VersionMismatchException
+	 *             if the file has been patched while its parts are read
+	 * @throws IOException
+	 *             if an IO error occurs while reading the file or handling a
+	 *             part
+	 */
+	public static void read(Path path, String mimeType, long offset, long length, int chunkSize,
+			PartHandler handler) throws VersionMismatchException, IOException {
+		if (offset < 0 || length < 0 || chunkSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		FileChannel channel;
+		long version;
+		Object fileKey;
+		synchronized (lockFor(path)) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			version = attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+			fileKey = attributes.fileKey();
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+		}
+		try {
+			long end = Math.min(channel.size(), offset + Math.min(length, Long.MAX_VALUE - offset));
+			long position = offset;
+			do {
+				int size = (int) Math.max(0, Math.min(chunkSize, end - position));
+				ByteBuffer buffer = ByteBuffer.allocate(size);
+				synchronized (lockFor(path)) {
+					checkNotPatched(path, fileKey, version);
+					while (buffer.hasRemaining()) {
+						if (channel.read(buffer, position + buffer.position()) < 0) {
+							throw new EOFException(path.toString());
+						}
+					}
+				}
+				handler.part(new StreamData(mimeType, buffer.array(), version, position));
+				position += size;
+			} while (position < end);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the content of the specified file behind the specified position.
+	 * If the file is shorter than the position, because it has been truncated
+	 * or replaced, its whole content is read instead. The position of the
+	 * returned data tells which of both cases applies.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param mimeType
+	 *            the mime type of the returned data
+	 * @param offset
+	 *            the position of the first byte to be read
+	 * @return the data containing the read bytes, their position in the file
+	 *         and the version of the file
+	 * @throws IOException
+	 *             if an IO error occurs while reading the file
+	 */
+	public static StreamData readTail(Path path, String mimeType, long offset) throws IOException {
+		if (offset < 0) {
+			throw new IllegalArgumentException(Long.toString(offset));
+		}
+		synchronized (lockFor(path)) {
+			long version = getVersion(path);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size < offset) {
+					offset = 0;
+				}
+				if (size - offset > Integer.MAX_VALUE) {
+					throw new IOException(path.toString());
+				}
+				ByteBuffer buffer = ByteBuffer.allocate((int) (size - offset));
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						throw new EOFException(path.toString());
+					}
+				}
+				return new StreamData(mimeType, buffer.array(), version, offset);
+			}
+		}
+	}
+
+	/**
+	 * Appends the specified content to the end of the specified file. If an
+	 * expected version is specified, the content is only appended if the file
+	 * currently has this version.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param content
+	 *            the content to be appended
+	 * @param expectedVersion
+	 *            the version the file is expected to have or
+	 *            {@link Data#NO_VERSION}, if the content shall be appended
+	 *            unconditionally
+	 * @return the new end of the file
+	 * @throws VersionMismatchException
+	 *             if the file does not have the expected version
+	 * @throws NoSuchFileException
+	 *             if the file does not exist
+	 * @throws IOException
+	 *             if an IO error occurs while writing the file
+	 */
+	public static long append(Path path, byte[] content, long expectedVersion)
+			throws VersionMismatchException, IOException {
+		synchronized (lockFor(path)) {
+			long version = getVersion(path);
+			if (version == Data.NO_VERSION) {
+				throw new NoSuchFileException(path.toString());
+			}
+			if (expectedVersion != Data.NO_VERSION && expectedVersion != version) {
+				throw new VersionMismatchException(path, expectedVersion, version);
+			}
+			long end;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND)) {
+				ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				end = channel.size();
+			}
+			advanceVersion(path, version);
+			return end;
+		}
+	}
+
+	/**
+	 * Writes the specified content in place to the specified file starting at
+	 * the specified position. The file grows, if the content ends behind the
+	 * end of the file. If an expected version is specified, the file is only
+	 * written if it currently has this version.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param offset
+	 *            the position of the first byte to be written
+	 * @param content
+	 *            the content to be written
+	 * @param expectedVersion
+	 *            the version the file is expected to have or
+	 *            {@link Data#NO_VERSION}, if the file shall be written
+	 *            unconditionally
+	 * @return the new version of the file
+	 * @throws VersionMismatchException
+	 *             if the file does not have the expected version
+	 * @throws NoSuchFileException
+	 *             if the file does not exist
+	 * @throws IOException
+	 *             if an IO error occurs while writing the file
+	 */
+	public static long patch(Path path, long offset, byte[] content, long expectedVersion)
+			throws VersionMismatchException, IOException {
+		if (offset < 0) {
+			throw new IllegalArgumentException(Long.toString(offset));
+		}
+		synchronized (lockFor(path)) {
+			long version = getVersion(path);
+			if (version == Data.NO_VERSION) {
+				throw new NoSuchFileException(path.toString());
+			}
+			if (expectedVersion != Data.NO_VERSION && expectedVersion != version) {
+				throw new VersionMismatchException(path, expectedVersion, version);
+			}
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, offset + buffer.position());
+				}
+			}
+			return advanceVersion(path, version);
+		}
+	}
+
+	/**
+	 * Writes the specified content atomically to the specified file. If an
+	 * expected version is specified, the file is only written if it currently
+	 * has this version.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @param content
+	 *            the content to be written
+	 * @param expectedVersion
+	 *            the version the file is expected to have or
+	 *            {@link Data#NO_VERSION}, if the file shall be written
+	 *            unconditionally
+	 * @return the new version of the file
+	 * @throws VersionMismatchException
+	 *             if the file does not have the expected version
+	 * @throws IOException
+	 *             if an IO error occurs while writing the file
+	 */
+	public static long write(Path path, byte[] content, long expectedVersion)
+			throws VersionMismatchException, IOException {
+		synchronized (lockFor(path)) {
+			long version = getVersion(path);
+			if (expectedVersion != Data.NO_VERSION && expectedVersion != version) {
+				throw new VersionMismatchException(path, expectedVersion, version);
+			}
+			Path temp = path.resolveSibling(
+					TEMP_PREFIX + path.getFileName() + '.' + tempFiles.incrementAndGet() + TEMP_SUFFIX);
+			try {
+				Files.write(temp, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				long newVersion = advanceVersion(temp, version);
+				if (version != Data.NO_VERSION) {
+					replaced.add(path.toAbsolutePath().normalize());
+				}
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+				return newVersion;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Returns true, if the specified file is a temporary file of this class.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return true, if the specified file is a temporary file
+	 */
+	public static boolean isTempFile(Path path) {
+		Path name = path.getFileName();
+		return name != null && isTempFile(name.toString());
+	}
+
+	/**
+	 * Returns true, if the specified file name is the name of a temporary file
+	 * of this class.
+	 *
+	 * @param name
+	 *            the name of the file
+	 * @return true, if the specified file name is the name of a temporary file
+	 */
+	public static boolean isTempFile(String name) {
+		return name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX);
+	}
+
+	/**
+	 * Returns true, if the specified file has been replaced by a write of this
+	 * class since the last call of this method for the file. A replaced file
+	 * has been modified, although a watch service reports its creation.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return true, if the specified file has been replaced
+	 */
+	public static boolean wasReplaced(Path path) {
+		return replaced.remove(path.toAbsolutePath().normalize());
+	}
+
+	private static long advanceVersion(Path path, long oldVersion) throws IOException {
+		long newVersion = getVersion(path);
+		if (newVersion <= oldVersion) {
+			newVersion = oldVersion + 1;
+			Files.setLastModifiedTime(path, FileTime.from(newVersion, TimeUnit.MICROSECONDS));
+		}
+		return newVersion;
+	}
+
+	private static void checkNotPatched(Path path, Object fileKey, long version) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			// Deleted files keep their content while they are open
+			return;
+		}
+		long current = attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+		// Without file keys, a replaced file cannot be told from a patched one
+		if (current != version && (fileKey == null || fileKey.equals(attributes.fileKey()))) {
+			throw new VersionMismatchException(path, version, current);
+		}
+	}
+
+	private static Object lockFor(Path path) {
+		int hash = path.hashCode();
+		hash ^= (hash >>> 16);
+		return locks[hash & (LOCKS - 1)];
+	}
+
+	/**
+	 * A handler of the parts of a file that are read by
+	 * {@link ResourceFiles#read(Path, String, long, long, int, PartHandler)}.
+	 */
+	interface PartHandler {
+		/**
+		 * Handles the next part of a file.
+		 *
+		 * @param data
+		 *            the content of the part and the version of the file
+		 * @throws IOException
+		 *             if an IO error occurs while handling the part
+		 */
+		void part(Data data) throws IOException;
+	}
+
+	/**
+	 * A read of a file that is in flight. Readers that arrive while the file
+	 * is read wait for its result.
+	 */
+	private static class ReadFlight {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private Data data;
+		private Exception error;
+
+		/**
+		 * Completes the read with the specified data or error.
+		 *
+		 * @param data
+		 *            the data that has been read or null
+		 * @param error
+		 *            the error that occurred or null
+		 */
+		public void complete(Data data, Exception error) {
+			this.data = data;
+			this.error = error;
+			done.countDown();
+		}
+
+		/**
+		 * Waits for the result of the read.
+		 *
+		 * @return the data that has been read
+		 * @throws IOException
+		 *             if the read has failed or the waiting thread has been
+		 *             interrupted
+		 */
+		public Data await() throws IOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (error instanceof NoSuchFileException) {
+				throw new NoSuchFileException(error.getMessage());
+			}
+			if (error instanceof IOException) {
+				throw new IOException(error.getMessage(), error);
+			}
+			if (error != null) {
+				throw (RuntimeException) error;
+			}
+			return data;
+		}
+	}
+
+	/**
+	 * Signals that a conditional write has not been executed, because the file
+	 * does not have the expected version.
+	 */
+	static class VersionMismatchException extends IOException {
+		private static final long serialVersionUID = 3402519465212736421L;
+
+		/**
+		 * Creates an exception for the specified parameters.
+		 *
+		 * @param path
+		 *            the path of the file
+		 * @param expected
+		 *            the expected version of the file
+		 * @param actual
+		 *            the actual version of the file
+		 */
+		public VersionMismatchException(Path path, long expected, long actual) {
+			super(String.format("Version %1$d of %2$s does not match expected version %3$d", actual, path, expected));
+		}
+	}
+}
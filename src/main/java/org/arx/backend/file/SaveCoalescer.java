@@ -0,0 +1,264 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Reason;
+import org.arx.Resource;
+import org.arx.util.StripedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A save coalescer merges unconditional SAVE requests for the same resource
+ * that arrive within a time window. The first SAVE request for a resource
+ * opens the window. Subsequent SAVE requests for the resource only replace the
+ * data to be written. When the window closes, the last data is written once
+ * by a {@link SaveRequest} in the stripe of the resource and every merged
+ * request receives its own response. Thus, the number of file writes and
+ * watcher notifications depends on the number of distinct resources and the
+ * window, not on the rate of SAVE requests.
+ * <p>
+ * In order to keep the arrival order of requests for a resource, the pending
+ * SAVE requests of a resource must be flushed before any other request for the
+ * resource is executed (see {@link #flush(Resource)}).
+ */
+class SaveCoalescer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SaveCoalescer.class);
+	private static final String FORBIDDEN_FORMAT = "Forbidden to save resource %1$s";
+	private static final String SEND_ERROR_FORMAT = "Cannot send response for resource %1$s";
+	private static final String COALESCED_FORMAT = "Coalesced %1$d SAVE requests for resource %2$s";
+	private final StripedExecutor executor;
+	private final Durability durability;
+	private final long window;
+	private final ScheduledExecutorService timer;
+	private final Map<Resource, PendingSave> pending;
+
+	/**
+	 * Creates a save coalescer for the specified parameters.
+	 *
+	 * @param executor
+	 *            the striped executor that executes the merged SAVE requests
+	 * @param durability
+	 *            the durability of the merged SAVE requests
+	 * @param window
+	 *            the time window in milliseconds, during which SAVE requests
+	 *            for the same resource are merged
+	 */
+	SaveCoalescer(StripedExecutor executor, Durability durability, long window) {
+		this.executor = executor;
+		this.durability = durability;
+		this.window = window;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, SaveCoalescer.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.pending = new HashMap<Resource, PendingSave>();
+	}
+
+	/**
+	 * Returns true, if the specified SAVE request can be merged with other
+	 * SAVE requests. Only unconditional SAVE requests for single resources can
+	 * be merged.
+	 *
+	 * @param resource
+	 *            the resource of the SAVE request
+	 * @param data
+	 *            the data of the SAVE request
+	 * @return true, if the SAVE request can be merged
+	 */
+	static boolean canCoalesce(Resource resource, Data data) {
+		return !resource.isPattern() && data.getVersion() == Data.NO_VERSION;
+	}
+
+	/**
+	 * Adds a SAVE request for a single resource. If the credentials do not
+	 * grant the SAVE access right, the observer is notified immediately.
+	 *
+	 * @param credentials
+	 *            the credentials of the SAVE request
+	 * @param resource
+	 *            the resource to be saved
+	 * @param data
+	 *            the data to be saved
+	 * @param observer
+	 *            the observer of the SAVE request
+	 */
+	void save(Credentials credentials, final Resource resource, Data data, Observer observer) {
+		if (!credentials.canSave(resource)) {
+			LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
+			try {
+				observer.onError(MessageType.SAVE, resource, MessageType.FORBIDDEN);
+			} catch (IOException e) {
+				LOGGER.error(String.format(SEND_ERROR_FORMAT, resource), e);
+			}
+			return;
+		}
+		synchronized (pending) {
+			PendingSave save = pending.get(resource);
+			if (save == null) {
+				save = new PendingSave(resource);
+				pending.put(resource, save);
+				timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush(resource);
+					}
+				}, window, TimeUnit.MILLISECONDS);
+			}
+			save.add(credentials, data, observer);
+		}
+	}
+
+	/**
+	 * Hands the pending SAVE requests for the specified resource to the
+	 * executor. If a resource pattern is specified, the pending SAVE requests
+	 * of all resources are flushed.
+	 *
+	 * @param resource
+	 *            the resource or resource pattern of another request
+	 */
+	void flush(Resource resource) {
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			if (resource.isPattern()) {
+				for (PendingSave save : pending.values()) {
+					executor.execute(save.resource, save);
+				}
+				pending.clear();
+			} else {
+				PendingSave save = pending.remove(resource);
+				if (save != null) {
+					executor.execute(resource, save);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flushes all pending SAVE requests and stops the timer of this
+	 * coalescer.
+	 */
+	void close() {
+		timer.shutdownNow();
+		synchronized (pending) {
+			for (PendingSave save : pending.values()) {
+				executor.execute(save.resource, save);
+			}
+			pending.clear();
+		}
+	}
+
+	/**
+	 * The merged SAVE requests for a resource. It writes the last data and
+	 * sends the response to the observers of all merged requests.
+	 */
+	private class PendingSave implements Runnable, Observer {
+		private final Resource resource;
+		private final List<Observer> observers;
+		private Credentials credentials;
+		private Data data;
+
+		/**
+		 * Creates the pending SAVE requests for the specified resource.
+		 *
+		 * @param resource
+		 *            the resource to be saved
+		 */
+		public PendingSave(Resource resource) {
+			this.resource = resource;
+			this.observers = new ArrayList<Observer>();
+		}
+
+		/**
+		 * Adds a SAVE request whose data replaces the data of the previous
+		 * requests.
+		 *
+		 * @param credentials
+		 *            the credentials of the SAVE request
+		 * @param data
+		 *            the data of the SAVE request
+		 * @param observer
+		 *            the observer of the SAVE request
+		 */
+		public void add(Credentials credentials, Data data, Observer observer) {
+			this.credentials = credentials;
+			this.data = data;
+			this.observers.add(observer);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			LOGGER.debug(String.format(COALESCED_FORMAT, observers.size(), resource));
+			new SaveRequest(credentials, resource, data, this, durability).run();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.arx.Observer#onSuccess(org.arx.MessageType,
+		 * org.arx.Resource, org.arx.Resource[])
+		 */
+		@Override
+		public void onSuccess(MessageType request, Resource resource, Resource... affectedResources) {
+			for (Observer observer : observers) {
+				try {
+					observer.onSuccess(request, resource, affectedResources);
+				} catch (IOException e) {
+					LOGGER.error(String.format(SEND_ERROR_FORMAT, resource), e);
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.arx.Observer#onError(org.arx.MessageType, org.arx.Resource,
+		 * org.arx.MessageType)
+		 */
+		@Override
+		public void onError(MessageType request, Resource resource, MessageType status) {
+			for (Observer observer : observers) {
+				try {
+					observer.onError(request, resource, status);
+				} catch (IOException e) {
+					LOGGER.error(String.format(SEND_ERROR_FORMAT, resource), e);
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.arx.Observer#onData(org.arx.MessageType, org.arx.Resource,
+		 * org.arx.Reason, org.arx.Resource, org.arx.Data)
+		 */
+		@Override
+		public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource,
+				Data data) {
+			// SAVE requests do not send data
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.arx.backend.file;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -11,7 +12,8 @@ import org.arx.Data;
 import org.arx.Resource;
 import org.arx.Observer;
 import org.arx.MessageType;
-import org.arx.util.ResourceVisitor;
+import org.arx.backend.file.ResourceFiles.VersionMismatchException;
+import org.arx.util.ResourceProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,10 +25,13 @@ class SaveRequest implements Runnable {
 	private static final String SAVE_SUCCESS_FORMAT = "Successfully saved resource %1$s";
 	private static final String SAVE_ERROR_FORMAT = "Cannot save resource %1$s";
 	private static final String FORBIDDEN_FORMAT = "Forbidden to save resource %1$s";
+	private static final String PATTERN_ERROR_FORMAT = "Version of resource pattern %1$s must not be specified";
+	private static final String PRECONDITION_FAILED_FORMAT = "Cannot save resource %1$s: %2$s";
 	private Credentials credentials;
 	private Resource resource;
 	private Data data;
 	private Observer observer;
+	private Durability durability;
 
 	/**
 	 * Creates a save request for the specified parameters
@@ -42,10 +47,31 @@ class SaveRequest implements Runnable {
 	 *            the observer that is used for the response messages
 	 */
 	public SaveRequest(Credentials credentials, Resource resourcePattern, Data data, Observer observer) {
+		this(credentials, resourcePattern, data, observer, Durability.NONE);
+	}
+
+	/**
+	 * Creates a save request for the specified parameters
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the CREATE and
+	 *            UPDATE access rights are granted for the specified resource.
+	 * @param resourcePattern
+	 *            the resources to be saved
+	 * @param data
+	 *            the data content for the resources that shall be saved
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param durability
+	 *            the durability that is used to make written files durable
+	 */
+	public SaveRequest(Credentials credentials, Resource resourcePattern, Data data, Observer observer,
+			Durability durability) {
 		this.credentials = credentials;
 		this.resource = resourcePattern;
 		this.data = data;
 		this.observer = observer;
+		this.durability = durability;
 	}
 
 	/* (non-Javadoc)
@@ -57,25 +83,34 @@ class SaveRequest implements Runnable {
 			if (!credentials.canSave(resource)) {
 				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
 				observer.onError(MessageType.SAVE, resource, MessageType.FORBIDDEN);
+			} else if (resource.isPattern() && data.getVersion() != Data.NO_VERSION) {
+				LOGGER.error(String.format(PATTERN_ERROR_FORMAT, resource));
+				observer.onError(MessageType.SAVE, resource, MessageType.BAD_REQUEST);
 			} else if (resource.isPattern()) {
 				final List<Resource> affectedResources = new LinkedList<Resource>();
 				FileSystemWalker walker = new FileSystemWalker(false);
 				try {
-					walker.walkResource(resource, new ResourceVisitor() {
+					walker.walkResource(resource, new ResourceProcessor<Resource>() {
 						@Override
-						public void visitResource(Resource res) throws IOException {
+						public Resource process(Resource res) throws IOException {
 							Path path = FileSystemFactory.getPath(res);
 							Path parent = path.getParent();
 							if (Files.notExists(parent)) {
 								parent.toFile().mkdirs();
 							}
-							Files.write(path, data.getContent());
+							ResourceFiles.write(path, data.getContent(), Data.NO_VERSION);
 							LOGGER.debug(SAVE_SUCCESS_FORMAT, res);
-							affectedResources.add(res);
+							return res;
+						}
+
+						@Override
+						public void complete(Resource res, Resource affectedResource) {
+							affectedResources.add(affectedResource);
 						}
 					});
-					observer.onSuccess(MessageType.SAVE, resource,
-							affectedResources.toArray(new Resource[affectedResources.size()]));
+					durability.commit(Durability.getPaths(affectedResources, true),
+							Durability.success(MessageType.SAVE, resource, observer,
+									affectedResources.toArray(new Resource[affectedResources.size()])));
 				} catch (IOException e) {
 					LOGGER.error(String.format(SAVE_ERROR_FORMAT, resource), e);
 					observer.onError(MessageType.SAVE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -84,9 +119,13 @@ class SaveRequest implements Runnable {
 				Path path = FileSystemFactory.getPath(resource);
 				if (Files.exists(path)) {
 					try {
-						Files.write(path, data.getContent());
+						ResourceFiles.write(path, data.getContent(), data.getVersion());
 						LOGGER.debug(String.format(SAVE_SUCCESS_FORMAT, resource));
-						observer.onSuccess(MessageType.SAVE, resource, resource);
+						durability.commit(Arrays.asList(path, path.getParent()),
+								Durability.success(MessageType.SAVE, resource, observer, resource));
+					} catch (VersionMismatchException e) {
+						LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resource, e.getMessage()));
+						observer.onError(MessageType.SAVE, resource, MessageType.PRECONDITION_FAILED);
 					} catch (IOException e) {
 						LOGGER.error(String.format(SAVE_ERROR_FORMAT, resource), e);
 						observer.onError(MessageType.SAVE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -97,9 +136,13 @@ class SaveRequest implements Runnable {
 						if (Files.notExists(parent)) {
 							parent.toFile().mkdirs();
 						}
-						Files.write(path, data.getContent());
+						ResourceFiles.write(path, data.getContent(), data.getVersion());
 						LOGGER.debug(SAVE_SUCCESS_FORMAT, resource);
-						observer.onSuccess(MessageType.SAVE, resource, resource);
+						durability.commit(Arrays.asList(path, parent),
+								Durability.success(MessageType.SAVE, resource, observer, resource));
+					} catch (VersionMismatchException e) {
+						LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resource, e.getMessage()));
+						observer.onError(MessageType.SAVE, resource, MessageType.PRECONDITION_FAILED);
 					} catch (IOException e) {
 						LOGGER.error(String.format(SAVE_ERROR_FORMAT, resource), e);
 						observer.onError(MessageType.SAVE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -1,30 +1,61 @@
 package org.arx.backend.file;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.arx.Credentials;
+import org.arx.Data;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.Observer;
+import org.arx.Options;
 import org.arx.MessageType;
-import org.arx.util.ResourceVisitor;
+import org.arx.util.ContentFilter;
+import org.arx.util.ResourceProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A subscribe request is used to subscribe to future changes of resources. It
- * is also possible to read the initial state of the subscribed resources.
+ * is also possible to read the initial state of the subscribed resources or to
+ * resume a subscription with the changes a subscriber has missed (see
+ * {@link Options#RESUME_AFTER}), to receive updates as deltas (see
+ * {@link Options#DELTA}) or to receive only the bytes that are appended to
+ * stream resources (see {@link Options#TAIL}). A tail subscription of a
+ * single resource is sent the bytes behind the known end immediately, if the
+ * resource has already grown. Subscriptions can also be restricted to changes
+ * with certain reasons (see {@link Options#REASONS}), to resources whose
+ * content matches a filter (see {@link Options#FILTER}) and to notifications
+ * without content (see {@link Options#METADATA_ONLY}).
+ * <p>
+ * The initial state is sent as a snapshot at the sequence number of the last
+ * journaled change. Changes that occur while the snapshot is taken are
+ * buffered by the subscription, collapsed per resource and sent after the
+ * snapshot, if they are not contained in the snapshot already.
  */
 class SubscribeRequest implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SubscribeRequest.class);
 	private static final String READ_ERROR_FORMAT = "Cannot read initial state for resource pattern %1$s";
 	private static final String FORBIDDEN_FORMAT = "Forbidden to subscribe to resource %1$s";
+	private static final String OPTION_ERROR_FORMAT = "Illegal value %2$s of option %1$s";
+	private static final String RESUME_FORMAT = "Resuming subscription %1$s with %2$d changes";
+	private static final String SNAPSHOT_FORMAT = "Changes of subscription %1$s not available, sending snapshot";
 	private static final String SEND_ERROR = "Cannot send message to client";
 	private Credentials credentials;
 	private boolean readStatus;
 	private Resource resource;
+	private Map<String, String> options;
 	private Subscriptions subscriptions;
+	private ChangeJournal journal;
 	private SubscriptionObserver subscription;
+	private long resumeAfter;
+	private String optionError;
 
 	/**
 	 * Creates a subscribe request for the specified parameters.
@@ -44,12 +75,43 @@ class SubscribeRequest implements Runnable {
 	 */
 	public SubscribeRequest(Credentials credentials, boolean readStatus, Resource resourcePattern, Observer observer,
 			Subscriptions subscriptions) {
+		this(credentials, readStatus, resourcePattern, null, observer, subscriptions, null);
+	}
+
+	/**
+	 * Creates a subscribe request for the specified parameters.
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the READ access
+	 *            right is granted for the specified resources.
+	 * @param readStatus
+	 *            true, if the initial status of the resources shall be
+	 *            returned, false otherwise
+	 * @param resourcePattern
+	 *            the resources to be created
+	 * @param options
+	 *            the request options or null
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param subscriptions
+	 *            the set of all subscriptions
+	 * @param journal
+	 *            the journal of changes or null, if changes are not journaled
+	 */
+	public SubscribeRequest(Credentials credentials, boolean readStatus, Resource resourcePattern,
+			Map<String, String> options, Observer observer, Subscriptions subscriptions, ChangeJournal journal) {
 		this.credentials = credentials;
 		this.readStatus = readStatus;
 		this.resource = resourcePattern;
+		this.options = options;
 		this.subscriptions = subscriptions;
+		this.journal = journal;
 		this.subscription = new SubscriptionObserver(credentials, observer, resourcePattern, readStatus);
-		this.subscriptions.subscribe(this.subscription);
+		// The options are applied before the subscription receives changes
+		this.optionError = configure();
+		if (optionError == null) {
+			this.subscriptions.subscribe(this.subscription);
+		}
 	}
 
 	/*
@@ -59,6 +121,15 @@ class SubscribeRequest implements Runnable {
 	 */
 	@Override
 	public void run() {
+		if (optionError != null) {
+			try {
+				LOGGER.error(optionError);
+				subscription.onError(subscription.getRequest(), resource, MessageType.BAD_REQUEST);
+			} catch (IOException e) {
+				LOGGER.error(SEND_ERROR, e);
+			}
+			return;
+		}
 		if (!credentials.canRead(resource)) {
 			LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
 			try {
@@ -66,37 +137,202 @@ class SubscribeRequest implements Runnable {
 			} catch (IOException e) {
 				LOGGER.error(SEND_ERROR, e);
 			}
-		} else {
-			if (readStatus) {
+		} else if (readStatus || resumeAfter != Observer.NO_SEQUENCE) {
+			long replayed = Observer.NO_SEQUENCE;
+			try {
+				subscription.startBuffering();
+				if (resumeAfter != Observer.NO_SEQUENCE) {
+					replayed = resume(resumeAfter);
+				} else {
+					replayed = readStatus(journal == null ? Observer.NO_SEQUENCE : journal.getSequence());
+				}
+			} catch (IOException e) {
+				subscriptions.unsubscribe(subscription);
 				try {
-					subscription.startBuffering();
-					FileSystemWalker walker = new FileSystemWalker();
-					walker.walkResource(resource, new ResourceVisitor() {
-						@Override
-						public void visitResource(Resource res) throws IOException {
-							SubscriptionDataResponse response = new SubscriptionDataResponse(subscription, res,
-									Reason.INITIAL);
-							response.execute();
-						}
-
-					});
+					LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+					subscription.onError(subscription.getRequest(), resource, MessageType.INTERNAL_SERVER_ERROR);
+				} catch (IOException e1) {
+					LOGGER.error(SEND_ERROR, e1);
+				}
+			} finally {
+				try {
+					subscription.stopBuffering(replayed);
 				} catch (IOException e) {
-					subscriptions.unsubscribe(subscription);
-					try {
-						LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
-						subscription.onError(subscription.getRequest(), resource, MessageType.INTERNAL_SERVER_ERROR);
-					} catch (IOException e1) {
-						LOGGER.error(SEND_ERROR, e1);
+					LOGGER.error(SEND_ERROR, e);
+				}
+			}
+		} else if (subscription.isTail() && !resource.isPattern()) {
+			try {
+				subscription.tail(resource, FileSystemFactory.getPath(resource), Observer.NO_SEQUENCE);
+			} catch (NoSuchFileException e) {
+				// Nothing to catch up with, before the resource is created
+			} catch (IOException e) {
+				LOGGER.error(String.format(READ_ERROR_FORMAT, resource), e);
+			}
+		}
+	}
+
+	/**
+	 * Sends the changes after the specified sequence number or the current
+	 * content of the subscribed resources, if the changes are not available.
+	 * 
+	 * @param resumeAfter
+	 *            the sequence number of the last change the subscriber has
+	 *            received
+	 * @return the sequence number of the last replayed change or of the
+	 *         snapshot that has been sent instead
+	 * @throws IOException
+	 *             if an IO error occurs while reading the resources
+	 */
+	private long resume(long resumeAfter) throws IOException {
+		List<ChangeJournal.Change> changes;
+		long sequence;
+		synchronized (journal) {
+			changes = journal.getChanges(resumeAfter, resource);
+			sequence = journal.getSequence();
+		}
+		if (changes == null) {
+			LOGGER.debug(String.format(SNAPSHOT_FORMAT, resource));
+			return readStatus(sequence);
+		}
+		LOGGER.debug(String.format(RESUME_FORMAT, resource, changes.size()));
+		for (ChangeJournal.Change change : changes) {
+			Resource res = change.getResource();
+			if (!subscription.accepts(change.getReason())) {
+				continue;
+			}
+			if (change.getReason() == Reason.DELETED) {
+				subscription.replay(Reason.DELETED, res, null, change.getSequence());
+			} else {
+				Path path = FileSystemFactory.getPath(res);
+				// A resource that no longer exists will be reported by a later
+				// change
+				if (Files.exists(path)) {
+					Data data = subscription.read(res, path);
+					if (data != null) {
+						subscription.replay(change.getReason(), res, data, change.getSequence());
 					}
-				} finally {
-					try {
-						subscription.stopBuffering();
-					} catch (IOException e) {
-						LOGGER.error(SEND_ERROR, e);
+				}
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * Sends the current content of the subscribed resources as a snapshot at
+	 * the specified sequence number. The resources are read in parallel, if
+	 * parallel processing is configured (see
+	 * {@link FileSystemFactory#PARALLELISM_KEY}), but sent in a well-defined
+	 * order. Every change up to the sequence number is contained in the
+	 * snapshot, so that only later changes have to be sent after the
+	 * snapshot.
+	 * 
+	 * @param sequence
+	 *            the sequence number of the last journaled change
+	 * @return the sequence number of the snapshot
+	 * @throws IOException
+	 *             if an IO error occurs while reading the resources
+	 */
+	private long readStatus(final long sequence) throws IOException {
+		FileSystemWalker walker = new FileSystemWalker();
+		walker.walkResource(resource, new ResourceProcessor<Data>() {
+			@Override
+			public Data process(Resource res) throws IOException {
+				Path path = FileSystemFactory.getPath(res);
+				try {
+					return subscription.read(res, path);
+				} catch (NoSuchFileException e) {
+					// Deleted while taking the snapshot
+					return null;
+				}
+			}
+
+			@Override
+			public void complete(Resource res, Data data) throws IOException {
+				if (data != null) {
+					subscription.onData(subscription.getRequest(), subscription.getResourcePattern(), Reason.INITIAL,
+							res, data, sequence);
+				}
+			}
+		});
+		return sequence;
+	}
+
+	/**
+	 * Applies the options of this request to the subscription.
+	 * 
+	 * @return the error message, if an option is illegal, or null
+	 */
+	private String configure() {
+		String option = Options.RESUME_AFTER;
+		String value = null;
+		try {
+			value = getOption(option);
+			resumeAfter = getResumeAfter();
+			option = Options.REASONS;
+			value = getOption(option);
+			if (value != null) {
+				Set<Reason> reasons = EnumSet.noneOf(Reason.class);
+				for (String reason : value.split(",")) {
+					Reason accepted = Reason.valueOf(reason.trim().toUpperCase());
+					if (accepted != Reason.CREATED && accepted != Reason.UPDATED && accepted != Reason.DELETED) {
+						return String.format(OPTION_ERROR_FORMAT, option, value);
 					}
+					reasons.add(accepted);
+				}
+				subscription.filterReasons(reasons);
+			}
+			option = Options.METADATA_ONLY;
+			value = getOption(option);
+			if (value != null) {
+				if (value.trim().equalsIgnoreCase(Boolean.TRUE.toString())) {
+					subscription.enableMetadataOnly();
+				} else if (!value.trim().equalsIgnoreCase(Boolean.FALSE.toString())) {
+					return String.format(OPTION_ERROR_FORMAT, option, value);
+				}
+			}
+			option = Options.TAIL;
+			value = getOption(option);
+			if (value != null && !subscription.isMetadataOnly()) {
+				long offset = Long.parseLong(value.trim());
+				if (offset < 0) {
+					return String.format(OPTION_ERROR_FORMAT, option, value);
+				}
+				subscription.enableTail(offset);
+				// Tail subscriptions resume from the known end
+				resumeAfter = Observer.NO_SEQUENCE;
+			}
+			option = Options.DELTA;
+			value = getOption(option);
+			if (value != null && !subscription.isTail() && !subscription.isMetadataOnly()) {
+				int threshold = Integer.parseInt(value.trim());
+				if (threshold < 1 || threshold > 100) {
+					return String.format(OPTION_ERROR_FORMAT, option, value);
 				}
+				subscription.enableDeltas(threshold);
 			}
+			option = Options.FILTER;
+			value = getOption(option);
+			if (value != null) {
+				subscription.filterContent(ContentFilter.compile(value));
+			}
+		} catch (IllegalArgumentException e) {
+			// Thrown for illegal numbers, reasons and content filters
+			return String.format(OPTION_ERROR_FORMAT, option, value);
+		}
+		return null;
+	}
+
+	private String getOption(String name) {
+		return options == null ? null : options.get(name);
+	}
+
+	private long getResumeAfter() throws NumberFormatException {
+		String sequence = options == null ? null : options.get(Options.RESUME_AFTER);
+		if (journal == null || sequence == null) {
+			return Observer.NO_SEQUENCE;
 		}
+		return Long.parseLong(sequence.trim());
 	}
 
 }
@@ -2,6 +2,7 @@ package org.arx.backend.file;
 
 import java.io.IOException;
 
+import org.arx.Observer;
 import org.arx.Resource;
 import org.arx.Reason;
 import org.slf4j.Logger;
@@ -17,6 +18,7 @@ class SubscriptionDataDeletedResponse implements Runnable {
 	private static final String DELETED_ERROR_FORMAT = "Cannot send deleted message for resource %1$s";
 	private SubscriptionObserver subscription;
 	private Resource resource;
+	private long sequence;
 
 	/**
 	 * Creates a subscription data deleted response for the specified
@@ -28,8 +30,25 @@ class SubscriptionDataDeletedResponse implements Runnable {
 	 *            the resource that has been deleted
 	 */
 	public SubscriptionDataDeletedResponse(SubscriptionObserver subscription, Resource resource) {
+		this(subscription, resource, Observer.NO_SEQUENCE);
+	}
+
+	/**
+	 * Creates a subscription data deleted response for the specified
+	 * parameters.
+	 * 
+	 * @param subscription
+	 *            the subscription that is used for the response message
+	 * @param resource
+	 *            the resource that has been deleted
+	 * @param sequence
+	 *            the sequence number of the change or
+	 *            {@link Observer#NO_SEQUENCE}
+	 */
+	public SubscriptionDataDeletedResponse(SubscriptionObserver subscription, Resource resource, long sequence) {
 		this.subscription = subscription;
 		this.resource = resource;
+		this.sequence = sequence;
 	}
 
 	/*
@@ -41,7 +60,7 @@ class SubscriptionDataDeletedResponse implements Runnable {
 	public void run() {
 		try {
 			subscription.onData(subscription.getRequest(), subscription.getResourcePattern(), Reason.DELETED, resource,
-					null);
+					null, sequence);
 			LOGGER.debug(String.format(DELETED_SUCCESS_FORMAT, resource));
 		} catch (IOException e) {
 			LOGGER.error(String.format(DELETED_ERROR_FORMAT, resource), e);
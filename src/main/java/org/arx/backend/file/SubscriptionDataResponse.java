@@ -2,18 +2,23 @@ package org.arx.backend.file;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 
 import org.arx.Data;
+import org.arx.Observer;
 import org.arx.Reason;
 import org.arx.Resource;
-import org.arx.util.ByteArrayData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A subscription data response is sent to an observer whenever a subscribed
- * resource shall be read initially or has been created or updated.
+ * resource shall be read initially or has been created or updated. Tail
+ * subscriptions only receive the bytes they have not received yet and
+ * metadata-only subscriptions only the version and size of the resource.
+ * Nothing is sent, if the content does not match the content filter of the
+ * subscription.
  */
 class SubscriptionDataResponse implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionDataResponse.class);
@@ -22,6 +27,7 @@ class SubscriptionDataResponse implements Runnable {
 	private SubscriptionObserver subscription;
 	private Resource resource;
 	private Reason reason;
+	private long sequence;
 
 	/**
 	 * Creates a subscription data response for the specified parameters
@@ -34,9 +40,28 @@ class SubscriptionDataResponse implements Runnable {
 	 *            the reason for the response (INITIAL, CREATED or UPDATED)
 	 */
 	public SubscriptionDataResponse(SubscriptionObserver subscription, Resource resource, Reason reason) {
+		this(subscription, resource, reason, Observer.NO_SEQUENCE);
+	}
+
+	/**
+	 * Creates a subscription data response for the specified parameters
+	 * 
+	 * @param subscription
+	 *            the subscription that is used for the response message
+	 * @param resource
+	 *            the resource that has been deleted
+	 * @param reason
+	 *            the reason for the response (INITIAL, CREATED or UPDATED)
+	 * @param sequence
+	 *            the sequence number of the change or
+	 *            {@link Observer#NO_SEQUENCE}
+	 */
+	public SubscriptionDataResponse(SubscriptionObserver subscription, Resource resource, Reason reason,
+			long sequence) {
 		this.subscription = subscription;
 		this.resource = resource;
 		this.reason = reason;
+		this.sequence = sequence;
 	}
 
 	/*
@@ -61,11 +86,20 @@ class SubscriptionDataResponse implements Runnable {
 	 */
 	public void execute() throws IOException {
 		Path path = FileSystemFactory.getPath(resource);
-		if (Files.exists(path)) {
-			byte[] bytes = Files.readAllBytes(path);
-			String mimeType = FileSystemFactory.getMimeType(resource);
-			Data data = new ByteArrayData(mimeType, bytes);
-			subscription.onData(subscription.getRequest(), subscription.getResourcePattern(), reason, resource, data);
+		if (subscription.isTail() && reason != Reason.INITIAL) {
+			try {
+				subscription.tail(resource, path, sequence);
+			} catch (NoSuchFileException e) {
+				// Deleted in the meantime, which will be reported separately
+			}
+		} else if (Files.exists(path)) {
+			Data data = subscription.read(resource, path);
+			if (data == null) {
+				// Filtered out by the content filter of the subscription
+				return;
+			}
+			subscription.onData(subscription.getRequest(), subscription.getResourcePattern(), reason, resource, data,
+					sequence);
 			LOGGER.debug(String.format(READ_SUCCESS_FORMAT, subscription.getResourcePattern()));
 		}
 	}
@@ -1,8 +1,13 @@
 package org.arx.backend.file;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.arx.Credentials;
 import org.arx.Data;
@@ -10,20 +15,68 @@ import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.Observer;
 import org.arx.MessageType;
+import org.arx.util.ByteArrayData;
+import org.arx.util.ContentFilter;
+import org.arx.util.Delta;
+import org.arx.util.Metadata;
+import org.arx.util.SerialExecutor;
+import org.arx.util.StreamData;
 
 /**
  * A subscription observer is an observer that is used for subscriptions. It
  * implements an internal queue for ResponseMessages. When a subscription is
  * used to read the initial content of resources all data messages other than
  * those with reason INITIAL will be buffered until the initial read is
- * finished.
+ * finished. The buffer keeps only the last change of every resource, so that
+ * its size is limited by the number of changed resources and not by the rate
+ * of changes. A buffered change is dropped, if the initial content of its
+ * resource already has the version of the change.
+ * <p>
+ * Notifications carry the sequence number of the change, if the backend keeps
+ * a journal of changes. When a subscription is resumed, the changes up to a
+ * sequence number are replayed from the journal (see
+ * {@link #replay(Reason, Resource, Data, long)}) and later notifications of
+ * these changes are dropped.
+ * <p>
+ * Notifications of a subscription are delivered one after another in the
+ * order of their submission (see {@link #deliver(Executor, Runnable)}), so
+ * that a subscriber receives the changes in the order of their sequence
+ * numbers, although notifications of different subscriptions are delivered in
+ * parallel.
+ * <p>
+ * If delta-encoded notifications are enabled (see {@link #enableDeltas(int)}),
+ * the subscription keeps the content it has sent last for every resource and
+ * sends updates of these resources as deltas, if they are small enough.
+ * <p>
+ * A tail subscription (see {@link #enableTail(long)}) keeps the end of every
+ * resource it has sent last and sends only the bytes behind this end, when a
+ * resource is changed (see {@link #tail(Resource, Path, long)}).
+ * <p>
+ * A subscription can be restricted to changes with certain reasons (see
+ * {@link #filterReasons(Set)}) and to notifications without content (see
+ * {@link #enableMetadataOnly()}). Both are examined before a changed resource
+ * is read, so that filtered changes do not cost any IO. A content filter (see
+ * {@link #filterContent(ContentFilter)}) is applied to the content of a
+ * changed resource after it has been read and before it is sent, so that
+ * subscribers only receive the contents they are interested in.
  */
-class SubscriptionObserver implements Observer {
+public class SubscriptionObserver implements Observer {
 	private Credentials credentials;
 	private Observer observer;
 	private Resource resourcePattern;
 	private boolean readStatus;
-	private Queue<BufferEntry> buffer;
+	private Map<Resource, BufferEntry> buffer;
+	private long replayed;
+	private final String name;
+	private final int hash;
+	private final AtomicReference<SerialExecutor> delivery;
+	private volatile Map<Resource, Data> sent;
+	private int deltaThreshold;
+	private volatile Map<Resource, Long> ends;
+	private long tailOffset;
+	private volatile Set<Reason> reasons;
+	private volatile boolean metadataOnly;
+	private volatile ContentFilter filter;
 
 	/**
 	 * Creates a subscription observer for the specified parameters
@@ -46,6 +99,12 @@ class SubscriptionObserver implements Observer {
 		this.resourcePattern = resourcePattern;
 		this.readStatus = readStatus;
 		this.buffer = null;
+		this.replayed = NO_SEQUENCE;
+		// Subscriptions are compared frequently, so their identity is computed
+		// once
+		this.name = resourcePattern.getName();
+		this.hash = 31 * name.hashCode() + observer.hashCode();
+		this.delivery = new AtomicReference<SerialExecutor>();
 	}
 
 	/**
@@ -88,12 +147,194 @@ class SubscriptionObserver implements Observer {
 		return MessageType.SUBSCRIBE;
 	}
 
+	/**
+	 * Delivers a notification of this subscription with the specified
+	 * executor after all notifications that have been delivered before. The
+	 * notifications of a subscription are never executed concurrently, but
+	 * neither a lock nor a thread is held while the subscription has no
+	 * pending notifications.
+	 * 
+	 * @param executor
+	 *            the executor that executes the notifications
+	 * @param notification
+	 *            the notification to be delivered
+	 */
+	public void deliver(Executor executor, Runnable notification) {
+		SerialExecutor queue = delivery.get();
+		if (queue == null) {
+			delivery.compareAndSet(null, new SerialExecutor(executor));
+			queue = delivery.get();
+		}
+		queue.execute(notification);
+	}
+
+	/**
+	 * Enables delta-encoded notifications. From now on, the content sent for
+	 * every resource is kept and an update of a resource is sent with the
+	 * reason {@link Reason#DELTA} instead of UPDATED, if the delta between the
+	 * kept content and the new content is not larger than the specified
+	 * percentage of the new content.
+	 * 
+	 * @param threshold
+	 *            the maximum size of a delta in percent of the size of the new
+	 *            content
+	 */
+	public void enableDeltas(int threshold) {
+		this.deltaThreshold = threshold;
+		this.sent = new HashMap<Resource, Data>();
+	}
+
+	/**
+	 * Restricts the notifications of this subscription to changes with the
+	 * specified reasons.
+	 * 
+	 * @param reasons
+	 *            the reasons of the changes to be sent (CREATED, UPDATED or
+	 *            DELETED)
+	 */
+	public void filterReasons(Set<Reason> reasons) {
+		this.reasons = reasons;
+	}
+
+	/**
+	 * Returns true, if a change with the specified reason shall be sent to
+	 * this subscription.
+	 * 
+	 * @param reason
+	 *            the kind of change (CREATED, UPDATED or DELETED)
+	 * @return true, if a change with the specified reason shall be sent
+	 */
+	public boolean accepts(Reason reason) {
+		Set<Reason> accepted = reasons;
+		return accepted == null || accepted.contains(reason);
+	}
+
+	/**
+	 * Enables notifications without content. From now on, the data of a
+	 * notification only describes the changed resource (see
+	 * {@link ResourceFiles#readMetadata(Path, String)}).
+	 */
+	public void enableMetadataOnly() {
+		this.metadataOnly = true;
+	}
+
+	/**
+	 * Returns true, if notifications of this subscription do not contain the
+	 * content of resources.
+	 * 
+	 * @return true, if notifications do not contain the content of resources
+	 */
+	public boolean isMetadataOnly() {
+		return metadataOnly;
+	}
+
+	/**
+	 * Reads the data of the specified resource that is sent to this
+	 * subscription: its metadata or its content. If a content filter is set,
+	 * the content is read in any case and null is returned, if it does not
+	 * match the filter.
+	 * 
+	 * @param resource
+	 *            the resource to be read
+	 * @param path
+	 *            the path of the file of the resource
+	 * @return the data of the resource or null, if it does not match the
+	 *         content filter
+	 * @throws IOException
+	 *             if an IO error occurs while reading the resource
+	 */
+	public Data read(Resource resource, Path path) throws IOException {
+		String mimeType = FileSystemFactory.getMimeType(resource);
+		ContentFilter contentFilter = filter;
+		if (contentFilter == null) {
+			if (metadataOnly) {
+				return ResourceFiles.readMetadata(path, mimeType);
+			}
+			return ResourceFiles.read(path, mimeType);
+		}
+		Data data = ResourceFiles.read(path, mimeType);
+		if (!contentFilter.matches(data.getContent())) {
+			return null;
+		}
+		if (metadataOnly) {
+			return new Metadata(mimeType, data.getVersion(), data.getContent().length);
+		}
+		return data;
+	}
+
+	/**
+	 * Restricts the notifications of this subscription to resources whose
+	 * content matches the specified filter. Deletions are always sent and
+	 * tail subscriptions are not filtered.
+	 * 
+	 * @param filter
+	 *            the compiled content filter
+	 */
+	public void filterContent(ContentFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Turns this subscription into a tail subscription. From now on, only the
+	 * bytes behind the end that has been sent last for a resource are sent,
+	 * when the resource is changed.
+	 * 
+	 * @param offset
+	 *            the end the subscriber already knows for every resource
+	 */
+	public void enableTail(long offset) {
+		this.tailOffset = offset;
+		this.ends = new HashMap<Resource, Long>();
+	}
+
+	/**
+	 * Returns true, if this subscription is a tail subscription.
+	 * 
+	 * @return true, if this subscription is a tail subscription
+	 */
+	public boolean isTail() {
+		return ends != null;
+	}
+
+	/**
+	 * Sends the bytes of the specified resource behind the end that has been
+	 * sent last with the reason {@link Reason#APPENDED}. If the resource is
+	 * shorter than this end, its whole content is sent with the reason
+	 * {@link Reason#UPDATED}. Nothing is sent, if the resource has not grown.
+	 * 
+	 * @param affectedResource
+	 *            the resource that has been changed
+	 * @param path
+	 *            the path of the file of the resource
+	 * @param sequence
+	 *            the sequence number of the change or {@link #NO_SEQUENCE}
+	 * @throws IOException
+	 *             if the resource cannot be read or the bytes cannot be sent
+	 *             to the observer.
+	 */
+	public void tail(Resource affectedResource, Path path, long sequence) throws IOException {
+		Map<Resource, Long> known = ends;
+		// Reading and sending must not be interleaved, otherwise bytes would
+		// be sent twice
+		synchronized (known) {
+			Long end = known.get(affectedResource);
+			long offset = end == null ? tailOffset : end;
+			StreamData data = ResourceFiles.readTail(path, FileSystemFactory.getMimeType(affectedResource), offset);
+			if (data.getOffset() == offset && data.getContent().length == 0) {
+				return;
+			}
+			known.put(affectedResource, data.getEndOffset());
+			Reason reason = data.getOffset() == offset ? Reason.APPENDED : Reason.UPDATED;
+			observer.onData(getRequest(), resourcePattern, reason, affectedResource, data, sequence);
+		}
+	}
+
 	/**
 	 * Starts buffering of {@link #onData onData(...)} messages that do not have
 	 * INITIAL as reason.
 	 */
 	public synchronized void startBuffering() {
-		this.buffer = new ConcurrentLinkedQueue<BufferEntry>();
+		this.buffer = new LinkedHashMap<Resource, BufferEntry>();
 	}
 
 	/**
@@ -104,11 +345,52 @@ class SubscriptionObserver implements Observer {
 	 *             if the buffered messages cannot be sent to the observer.
 	 */
 	public synchronized void stopBuffering() throws IOException {
-		while (buffer != null && !buffer.isEmpty()) {
-			BufferEntry entry = buffer.poll();
-			sendEntry(entry.getReason(), entry.getResource(), entry.getData());
-		}
+		Map<Resource, BufferEntry> entries = buffer;
 		buffer = null;
+		if (entries != null) {
+			for (BufferEntry entry : entries.values()) {
+				sendEntry(entry.getReason(), entry.getResource(), entry.getData(), entry.getSequence());
+			}
+		}
+	}
+
+	/**
+	 * Stops buffering of {@link #onData onData(...)} messages after changes
+	 * have been replayed from a journal. All buffered messages will be sent to
+	 * the observer, except messages of changes up to the specified sequence
+	 * number, which have been replayed already. Messages of these changes that
+	 * arrive later will be dropped as well.
+	 * 
+	 * @param sequence
+	 *            the sequence number of the last replayed change
+	 * @throws IOException
+	 *             if the buffered messages cannot be sent to the observer.
+	 */
+	public synchronized void stopBuffering(long sequence) throws IOException {
+		if (sequence > replayed) {
+			replayed = sequence;
+		}
+		stopBuffering();
+	}
+
+	/**
+	 * Sends a change that has been replayed from a journal to the observer
+	 * without buffering.
+	 * 
+	 * @param reason
+	 *            the kind of change (CREATED, UPDATED or DELETED)
+	 * @param affectedResource
+	 *            the resource that has been changed
+	 * @param data
+	 *            the current content of the resource or null, if the resource
+	 *            has been deleted
+	 * @param sequence
+	 *            the sequence number of the change
+	 * @throws IOException
+	 *             if the change cannot be sent to the observer.
+	 */
+	public void replay(Reason reason, Resource affectedResource, Data data, long sequence) throws IOException {
+		send(getRequest(), resourcePattern, reason, affectedResource, data, sequence);
 	}
 
 	/*
@@ -132,10 +414,23 @@ class SubscriptionObserver implements Observer {
 	@Override
 	public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data)
 			throws IOException {
+		onData(request, resource, reason, affectedResource, data, NO_SEQUENCE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Observer#onData(org.arx.MessageType, org.arx.Resource,
+	 * org.arx.Reason, org.arx.Resource, org.arx.Data, long)
+	 */
+	@Override
+	public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data,
+			long sequence) throws IOException {
 		if (reason == Reason.INITIAL) {
-			observer.onData(request, resource, reason, affectedResource, data);
+			dropSuperseded(affectedResource, data);
+			send(request, resource, reason, affectedResource, data, sequence);
 		} else {
-			handleEntry(reason, affectedResource, data);
+			handleEntry(reason, affectedResource, data, sequence);
 		}
 	}
 
@@ -160,7 +455,7 @@ class SubscriptionObserver implements Observer {
 	public boolean equals(Object obj) {
 		if (obj instanceof SubscriptionObserver) {
 			SubscriptionObserver other = (SubscriptionObserver) obj;
-			return this.toString().equals(other.toString());
+			return hash == other.hash && name.equals(other.name) && observer.equals(other.observer);
 		}
 		return false;
 	}
@@ -172,7 +467,7 @@ class SubscriptionObserver implements Observer {
 	 */
 	@Override
 	public int hashCode() {
-		return toString().hashCode();
+		return hash;
 	}
 	
 	/* (non-Javadoc)
@@ -180,19 +475,79 @@ class SubscriptionObserver implements Observer {
 	 */
 	@Override
 	public String toString() {
-		return this.resourcePattern.getName() + "#" + observer.toString();
+		return name + "#" + observer.toString();
+	}
+
+	/**
+	 * Drops the buffered change of the specified resource, if the initial
+	 * content of the resource already contains it.
+	 */
+	private synchronized void dropSuperseded(Resource affectedResource, Data data) {
+		if (buffer == null || data == null) {
+			return;
+		}
+		BufferEntry entry = buffer.get(affectedResource);
+		if (entry != null && entry.getData() != null && entry.getData().getVersion() != Data.NO_VERSION
+				&& entry.getData().getVersion() <= data.getVersion()) {
+			buffer.remove(affectedResource);
+		}
 	}
 
-	private synchronized void handleEntry(Reason reason, Resource affectedResource, Data data) throws IOException {
+	private synchronized void handleEntry(Reason reason, Resource affectedResource, Data data, long sequence)
+			throws IOException {
 		if (buffer != null) {
-			buffer.add(new BufferEntry(reason, affectedResource, data));
+			// Re-insert to keep the buffer ordered by the last change
+			buffer.remove(affectedResource);
+			buffer.put(affectedResource, new BufferEntry(reason, affectedResource, data, sequence));
 		} else {
-			sendEntry(reason, affectedResource, data);
+			sendEntry(reason, affectedResource, data, sequence);
 		}
 	}
 
-	private void sendEntry(Reason reason, Resource affectedResource, Data data) throws IOException {
-		observer.onData(getRequest(), resourcePattern, reason, affectedResource, data);
+	private void sendEntry(Reason reason, Resource affectedResource, Data data, long sequence) throws IOException {
+		if (sequence != NO_SEQUENCE && sequence <= replayed) {
+			// The change has been replayed from the journal already
+			return;
+		}
+		send(getRequest(), resourcePattern, reason, affectedResource, data, sequence);
+	}
+
+	private void send(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data,
+			long sequence) throws IOException {
+		Map<Resource, Long> known = ends;
+		if (known != null) {
+			synchronized (known) {
+				if (data == null) {
+					// A resource that is created again starts at the
+					// beginning
+					known.put(affectedResource, 0L);
+				}
+				observer.onData(request, resource, reason, affectedResource, data, sequence);
+			}
+			return;
+		}
+		Map<Resource, Data> contents = sent;
+		if (contents == null) {
+			observer.onData(request, resource, reason, affectedResource, data, sequence);
+			return;
+		}
+		// Kept content and sent messages must not be reordered, otherwise the
+		// subscriber would apply a delta to a different content
+		synchronized (contents) {
+			if (data == null) {
+				contents.remove(affectedResource);
+			} else {
+				Data previous = contents.put(affectedResource, data);
+				if (reason == Reason.UPDATED && previous != null) {
+					byte[] delta = Delta.encode(previous.getContent(), data.getContent());
+					if ((long) delta.length * 100 <= (long) data.getContent().length * deltaThreshold) {
+						reason = Reason.DELTA;
+						data = new ByteArrayData(data.getMimeType(), delta, data.getVersion());
+					}
+				}
+			}
+			observer.onData(request, resource, reason, affectedResource, data, sequence);
+		}
 	}
 
 	/**
@@ -203,6 +558,7 @@ class SubscriptionObserver implements Observer {
 		private Reason reason;
 		private Resource resource;
 		private Data data;
+		private long sequence;
 
 		/**
 		 * Creates a buffer entry for the specified parameters
@@ -213,11 +569,14 @@ class SubscriptionObserver implements Observer {
 		 *            the resource the data message belongs to
 		 * @param data
 		 *            the data of the message
+		 * @param sequence
+		 *            the sequence number of the change
 		 */
-		public BufferEntry(Reason reason, Resource resource, Data data) {
+		public BufferEntry(Reason reason, Resource resource, Data data, long sequence) {
 			this.reason = reason;
 			this.resource = resource;
 			this.data = data;
+			this.sequence = sequence;
 		}
 
 		/**
@@ -247,6 +606,15 @@ class SubscriptionObserver implements Observer {
 			return data;
 		}
 
+		/**
+		 * Returns the sequence number of the change of the buffer entry.
+		 * 
+		 * @return the sequence number of the change of the buffer entry.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
 	}
 
 }
@@ -1,5 +1,6 @@
 package org.arx.backend.file;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -9,11 +10,20 @@ import org.arx.Resource;
 import org.arx.Observer;
 
 /**
- * Stores all subscriptions to resources.
+ * Stores all subscriptions to resources. It is shared by all backends that
+ * notify subscribers themselves. A {@link Listener} can be notified when the
+ * first subscription of a resource pattern is added and when the last one is
+ * removed.
+ * <p>
+ * Additionally, the subscriptions of every observer are indexed, so that all
+ * subscriptions of an observer can be removed without searching the whole
+ * subscription tree (see {@link #unsubscribeAll(Observer)}).
  */
-class Subscriptions {
+public class Subscriptions {
 	private Map<Resource, Subscriptions> subscriptionTree;
 	private Map<Resource, Set<SubscriptionObserver>> subscriptions;
+	private Map<Observer, Set<SubscriptionObserver>> observers;
+	private Listener listener;
 
 	/**
 	 * Creates an empty subscriptions object.
@@ -21,6 +31,7 @@ class Subscriptions {
 	public Subscriptions() {
 		subscriptionTree = new HashMap<Resource, Subscriptions>();
 		subscriptions = new HashMap<Resource, Set<SubscriptionObserver>>();
+		observers = new HashMap<Observer, Set<SubscriptionObserver>>();
 	}
 
 	/**
@@ -30,7 +41,47 @@ class Subscriptions {
 	 *            the subscription to be added
 	 */
 	public synchronized void subscribe(SubscriptionObserver subscription) {
-		subscribe(subscription, subscription.getResourcePattern(), 0);
+		Resource resourcePattern = subscription.getResourcePattern();
+		boolean first = listener != null && !hasSubscriptions(resourcePattern);
+		subscribe(subscription, resourcePattern, 0);
+		Set<SubscriptionObserver> subs = observers.get(subscription.getObserver());
+		if (subs == null) {
+			subs = new HashSet<SubscriptionObserver>();
+			observers.put(subscription.getObserver(), subs);
+		}
+		subs.add(subscription);
+		if (first) {
+			listener.subscribed(resourcePattern);
+		}
+	}
+
+	/**
+	 * Sets the listener that is notified when the first subscription of a
+	 * resource pattern is added and when the last one is removed.
+	 * 
+	 * @param listener
+	 *            the listener or null, if no listener shall be notified
+	 */
+	public synchronized void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the resource patterns that have at least one subscription.
+	 * 
+	 * @return the resource patterns that have at least one subscription
+	 */
+	public synchronized Set<Resource> getResourcePatterns() {
+		Set<Resource> result = new HashSet<Resource>();
+		for (Map.Entry<Resource, Set<SubscriptionObserver>> entry : subscriptions.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				result.add(entry.getKey());
+			}
+		}
+		for (Subscriptions subTree : subscriptionTree.values()) {
+			result.addAll(subTree.getResourcePatterns());
+		}
+		return result;
 	}
 
 	/**
@@ -42,7 +93,18 @@ class Subscriptions {
 	 *         cannot be found
 	 */
 	public synchronized SubscriptionObserver unsubscribe(SubscriptionObserver subscription) {
-		return unsubscribe(subscription, subscription.getResourcePattern(), 0);
+		SubscriptionObserver result = unsubscribe(subscription, subscription.getResourcePattern(), 0);
+		if (result != null) {
+			Set<SubscriptionObserver> subs = observers.get(result.getObserver());
+			if (subs != null) {
+				subs.remove(result);
+				if (subs.isEmpty()) {
+					observers.remove(result.getObserver());
+				}
+			}
+			notifyUnsubscribed(Collections.singleton(result));
+		}
+		return result;
 	}
 
 	/**
@@ -54,23 +116,26 @@ class Subscriptions {
 	 * @return set of removed subscriptions
 	 */
 	public synchronized Set<SubscriptionObserver> unsubscribeAll(Observer observer) {
-		Set<SubscriptionObserver> result = new HashSet<SubscriptionObserver>();
-		for (Map.Entry<Resource, Set<SubscriptionObserver>> entry : subscriptions.entrySet()) {
-			Set<SubscriptionObserver> delete = new HashSet<SubscriptionObserver>();
-			for (SubscriptionObserver subscription : entry.getValue()) {
-				if (subscription.getObserver().equals(observer)) {
-					delete.add(subscription);
-				}
-			}
-			entry.getValue().removeAll(delete);
-			result.addAll(delete);
+		Set<SubscriptionObserver> result = observers.remove(observer);
+		if (result == null) {
+			return new HashSet<SubscriptionObserver>();
 		}
-		for (Map.Entry<Resource, Subscriptions> entry : subscriptionTree.entrySet()) {
-			result.addAll(entry.getValue().unsubscribeAll(observer));
+		for (SubscriptionObserver subscription : result) {
+			unsubscribe(subscription, subscription.getResourcePattern(), 0);
 		}
+		notifyUnsubscribed(result);
 		return result;
 	}
 
+	/**
+	 * Returns the number of observers that have at least one subscription.
+	 * 
+	 * @return the number of observers that have at least one subscription
+	 */
+	public synchronized int getObserverCount() {
+		return observers.size();
+	}
+
 	/**
 	 * Returns all subscriptions that match the specified resource.
 	 * 
@@ -83,6 +148,34 @@ class Subscriptions {
 		return match(resource, 0);
 	}
 
+	private void notifyUnsubscribed(Set<SubscriptionObserver> removed) {
+		if (listener == null) {
+			return;
+		}
+		Set<Resource> resourcePatterns = new HashSet<Resource>();
+		for (SubscriptionObserver subscription : removed) {
+			resourcePatterns.add(subscription.getResourcePattern());
+		}
+		for (Resource resourcePattern : resourcePatterns) {
+			if (!hasSubscriptions(resourcePattern)) {
+				listener.unsubscribed(resourcePattern);
+			}
+		}
+	}
+
+	private boolean hasSubscriptions(Resource resourcePattern) {
+		Subscriptions subTree = this;
+		int num = resourcePattern.getLevels().length;
+		for (int part = 0; part + 1 < num && subTree != null; ++part) {
+			subTree = subTree.subscriptionTree.get(resourcePattern.subresource(0, part + 1));
+		}
+		if (subTree == null) {
+			return false;
+		}
+		Set<SubscriptionObserver> subs = subTree.subscriptions.get(resourcePattern);
+		return subs != null && !subs.isEmpty();
+	}
+
 	private void subscribe(SubscriptionObserver subscription, Resource resourcePattern, int part) {
 		int num = resourcePattern.getLevels().length;
 		if (part + 1 == num) {
@@ -163,4 +256,29 @@ class Subscriptions {
 		return result;
 	}
 
+	/**
+	 * A listener that is notified when the first subscription of a resource
+	 * pattern is added and when the last one is removed. The listener is
+	 * called while the subscriptions are locked and therefore must not block.
+	 */
+	public interface Listener {
+		/**
+		 * Called when the first subscription of a resource pattern has been
+		 * added.
+		 * 
+		 * @param resourcePattern
+		 *            the resource pattern
+		 */
+		void subscribed(Resource resourcePattern);
+
+		/**
+		 * Called when the last subscription of a resource pattern has been
+		 * removed.
+		 * 
+		 * @param resourcePattern
+		 *            the resource pattern
+		 */
+		void unsubscribed(Resource resourcePattern);
+	}
+
 }
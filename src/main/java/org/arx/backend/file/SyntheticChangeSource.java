@@ -0,0 +1,204 @@
+package org.arx.backend.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.arx.util.Configuration;
+
+/**
+ * A synthetic change source reports changes that have not happened in the file
+ * system. It is intended for load tests of the notification path of the file
+ * system backend without the cost and the limits of real file changes.
+ * Changes are either injected explicitly (e.g. {@link #injectModified(Path)})
+ * or generated at a constant rate (see
+ * {@link FileSystemFactory#SYNTHETIC_RATE_KEY}) as modifications of the files
+ * that existed in the watched directories when they have been watched. The
+ * injection time of a change is used as detection time in the statistics.
+ */
+public class SyntheticChangeSource implements ChangeSource {
+	private static final long TICK = 10;
+	private final int rate;
+	private final Map<Path, List<Path>> directories;
+	private final BlockingQueue<ChangeEvent> queue;
+	private final ChangeStatistics statistics;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a synthetic change source.
+	 *
+	 * @param executor
+	 *            the executor of the backend (not used)
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 */
+	public SyntheticChangeSource(Executor executor, Map<String, String> parameters) {
+		this.rate = Configuration.getInstance().getIntParameter(parameters, FileSystemFactory.SYNTHETIC_RATE_KEY, 0);
+		this.directories = new ConcurrentHashMap<Path, List<Path>>();
+		this.queue = new LinkedBlockingQueue<ChangeEvent>();
+		this.statistics = ChangeStatistics.create(SyntheticChangeSource.class.getSimpleName(), parameters);
+	}
+
+	/**
+	 * Injects the creation of the specified file or directory.
+	 *
+	 * @param path
+	 *            the path of the created file or directory
+	 */
+	public void injectCreated(Path path) {
+		inject(ChangeEvent.Kind.CREATED, path);
+	}
+
+	/**
+	 * Injects the modification of the specified file.
+	 *
+	 * @param path
+	 *            the path of the modified file
+	 */
+	public void injectModified(Path path) {
+		inject(ChangeEvent.Kind.MODIFIED, path);
+	}
+
+	/**
+	 * Injects the deletion of the specified file or directory.
+	 *
+	 * @param path
+	 *            the path of the deleted file or directory
+	 */
+	public void injectDeleted(Path path) {
+		inject(ChangeEvent.Kind.DELETED, path);
+	}
+
+	/**
+	 * Injects the loss of changes of the specified directory.
+	 *
+	 * @param directory
+	 *            the directory whose changes have been lost
+	 */
+	public void injectOverflow(Path directory) {
+		inject(ChangeEvent.Kind.OVERFLOW, directory);
+	}
+
+	private void inject(ChangeEvent.Kind kind, Path path) {
+		queue.add(new ChangeEvent(kind, path.normalize(), System.currentTimeMillis()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#watch(java.nio.file.Path)
+	 */
+	@Override
+	public void watch(Path directory) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				if (Files.isRegularFile(path) && !ResourceFiles.isTempFile(path)) {
+					files.add(path.normalize());
+				}
+			}
+		}
+		directories.put(directory.normalize(), files);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#unwatch(java.nio.file.Path)
+	 */
+	@Override
+	public void unwatch(Path directory) {
+		directories.remove(directory.normalize());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#isWatched(java.nio.file.Path)
+	 */
+	@Override
+	public boolean isWatched(Path directory) {
+		return directories.containsKey(directory.normalize());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getWatchedDirectories()
+	 */
+	@Override
+	public Set<Path> getWatchedDirectories() {
+		return directories.keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.arx.backend.file.ChangeSource#run(org.arx.backend.file.ChangeSource.
+	 * Listener)
+	 */
+	@Override
+	public void run(Listener listener) {
+		long start = System.currentTimeMillis();
+		long generated = 0;
+		List<Path> files = new ArrayList<Path>();
+		try {
+			while (!closed) {
+				ChangeEvent change = queue.poll(TICK, TimeUnit.MILLISECONDS);
+				if (change != null) {
+					change.dispatch(listener, statistics);
+				}
+				if (rate > 0) {
+					long due = (System.currentTimeMillis() - start) * rate / 1000;
+					if (generated < due) {
+						files.clear();
+						for (List<Path> paths : directories.values()) {
+							files.addAll(paths);
+						}
+					}
+					while (generated < due && !files.isEmpty()) {
+						Path path = files.get((int) (generated % files.size()));
+						new ChangeEvent(ChangeEvent.Kind.MODIFIED, path, System.currentTimeMillis())
+								.dispatch(listener, statistics);
+						++generated;
+					}
+					// Changes without files are not made up later
+					generated = Math.max(generated, due);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Do nothing
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getStatistics()
+	 */
+	@Override
+	public ChangeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+	}
+}
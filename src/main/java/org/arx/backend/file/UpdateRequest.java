@@ -3,6 +3,7 @@ package org.arx.backend.file;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -11,7 +12,8 @@ import org.arx.Data;
 import org.arx.Resource;
 import org.arx.Observer;
 import org.arx.MessageType;
-import org.arx.util.ResourceVisitor;
+import org.arx.backend.file.ResourceFiles.VersionMismatchException;
+import org.arx.util.ResourceProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,10 +26,13 @@ class UpdateRequest implements Runnable {
 	private static final String UPDATE_SUCCESS_FORMAT = "Successfully updated resource %1$s";
 	private static final String UPDATE_ERROR_FORMAT = "Cannot update resource %1$s";
 	private static final String FORBIDDEN_FORMAT = "Forbidden to delete resource %1$s";
+	private static final String PATTERN_ERROR_FORMAT = "Version of resource pattern %1$s must not be specified";
+	private static final String PRECONDITION_FAILED_FORMAT = "Cannot update resource %1$s: %2$s";
 	private Credentials credentials;
 	private Resource resource;
 	private Data data;
 	private Observer observer;
+	private Durability durability;
 
 	/**
 	 * Creates an update request for the specified parameters.
@@ -43,10 +48,31 @@ class UpdateRequest implements Runnable {
 	 *            the observer that is used for the response messages
 	 */
 	public UpdateRequest(Credentials credentials, Resource resourcePattern, Data data, Observer observer) {
+		this(credentials, resourcePattern, data, observer, Durability.NONE);
+	}
+
+	/**
+	 * Creates an update request for the specified parameters.
+	 * 
+	 * @param credentials
+	 *            the credentials that are used to examine if the UPDATE access
+	 *            right is granted for the specified resources.
+	 * @param resourcePattern
+	 *            the resources to be updated
+	 * @param data
+	 *            the data content for the resource that shall be updated
+	 * @param observer
+	 *            the observer that is used for the response messages
+	 * @param durability
+	 *            the durability that is used to make written files durable
+	 */
+	public UpdateRequest(Credentials credentials, Resource resourcePattern, Data data, Observer observer,
+			Durability durability) {
 		this.credentials = credentials;
 		this.resource = resourcePattern;
 		this.data = data;
 		this.observer = observer;
+		this.durability = durability;
 	}
 
 	/*
@@ -60,21 +86,30 @@ class UpdateRequest implements Runnable {
 			if (!credentials.canUpdate(resource)) {
 				LOGGER.error(String.format(FORBIDDEN_FORMAT, resource));
 				observer.onError(MessageType.UPDATE, resource, MessageType.FORBIDDEN);
+			} else if (resource.isPattern() && data.getVersion() != Data.NO_VERSION) {
+				LOGGER.error(String.format(PATTERN_ERROR_FORMAT, resource));
+				observer.onError(MessageType.UPDATE, resource, MessageType.BAD_REQUEST);
 			} else if (resource.isPattern()) {
 				final List<Resource> affectedResources = new LinkedList<Resource>();
 				FileSystemWalker walker = new FileSystemWalker();
 				try {
-					walker.walkResource(resource, new ResourceVisitor() {
+					walker.walkResource(resource, new ResourceProcessor<Resource>() {
 						@Override
-						public void visitResource(Resource res) throws IOException {
+						public Resource process(Resource res) throws IOException {
 							Path path = FileSystemFactory.getPath(res);
-							Files.write(path, data.getContent());
+							ResourceFiles.write(path, data.getContent(), Data.NO_VERSION);
 							LOGGER.debug(UPDATE_SUCCESS_FORMAT, res);
-							affectedResources.add(res);
+							return res;
+						}
+
+						@Override
+						public void complete(Resource res, Resource affectedResource) {
+							affectedResources.add(affectedResource);
 						}
 					});
-					observer.onSuccess(MessageType.UPDATE, resource,
-							affectedResources.toArray(new Resource[affectedResources.size()]));
+					durability.commit(Durability.getPaths(affectedResources, true),
+							Durability.success(MessageType.UPDATE, resource, observer,
+									affectedResources.toArray(new Resource[affectedResources.size()])));
 				} catch (IOException e) {
 					LOGGER.error(String.format(UPDATE_ERROR_FORMAT, resource), e);
 					observer.onError(MessageType.UPDATE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -83,9 +118,13 @@ class UpdateRequest implements Runnable {
 				Path path = FileSystemFactory.getPath(resource);
 				if (Files.exists(path)) {
 					try {
-						Files.write(path, data.getContent());
+						ResourceFiles.write(path, data.getContent(), data.getVersion());
 						LOGGER.debug(String.format(UPDATE_SUCCESS_FORMAT, resource));
-						observer.onSuccess(MessageType.UPDATE, resource, resource);
+						durability.commit(Arrays.asList(path, path.getParent()),
+								Durability.success(MessageType.UPDATE, resource, observer, resource));
+					} catch (VersionMismatchException e) {
+						LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resource, e.getMessage()));
+						observer.onError(MessageType.UPDATE, resource, MessageType.PRECONDITION_FAILED);
 					} catch (IOException e) {
 						LOGGER.error(String.format(UPDATE_ERROR_FORMAT, resource), e);
 						observer.onError(MessageType.UPDATE, resource, MessageType.INTERNAL_SERVER_ERROR);
@@ -0,0 +1,147 @@
+package org.arx.backend.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A watch service change source reports the changes that are detected by the
+ * {@link WatchService} of the default file system. It is the default change
+ * source of the file system backend.
+ */
+class WatchServiceChangeSource implements ChangeSource {
+	private final WatchService watcher;
+	private final Map<Path, WatchKey> watchKeys;
+	private final ChangeStatistics statistics;
+
+	/**
+	 * Creates a watch service change source.
+	 *
+	 * @param executor
+	 *            the executor of the backend (not used)
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @throws IOException
+	 *             if the watch service cannot be created
+	 */
+	public WatchServiceChangeSource(Executor executor, Map<String, String> parameters) throws IOException {
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.watchKeys = new ConcurrentHashMap<Path, WatchKey>();
+		this.statistics = ChangeStatistics.create(WatchServiceChangeSource.class.getSimpleName(), parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#watch(java.nio.file.Path)
+	 */
+	@Override
+	public void watch(Path directory) throws IOException {
+		WatchKey key = directory.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		watchKeys.put(directory.normalize(), key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#unwatch(java.nio.file.Path)
+	 */
+	@Override
+	public void unwatch(Path directory) {
+		WatchKey key = watchKeys.remove(directory.normalize());
+		if (key != null) {
+			key.cancel();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#isWatched(java.nio.file.Path)
+	 */
+	@Override
+	public boolean isWatched(Path directory) {
+		return watchKeys.containsKey(directory.normalize());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getWatchedDirectories()
+	 */
+	@Override
+	public Set<Path> getWatchedDirectories() {
+		return watchKeys.keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.arx.backend.file.ChangeSource#run(org.arx.backend.file.ChangeSource.
+	 * Listener)
+	 */
+	@Override
+	public void run(Listener listener) {
+		WatchKey key;
+		try {
+			while ((key = watcher.take()) != null) {
+				long detected = System.currentTimeMillis();
+				Path directory = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						listener.overflow(directory);
+					} else {
+						Path path = directory.resolve((Path) event.context());
+						if (event.kind() == ENTRY_CREATE) {
+							listener.created(path);
+						} else if (event.kind() == ENTRY_MODIFY) {
+							listener.modified(path);
+						} else {
+							listener.deleted(path);
+						}
+					}
+					statistics.record(detected);
+				}
+				key.reset();
+			}
+		} catch (InterruptedException e) {
+			// Do nothing
+		} catch (ClosedWatchServiceException e) {
+			// Do nothing
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.file.ChangeSource#getStatistics()
+	 */
+	@Override
+	public ChangeStatistics getStatistics() {
+		return statistics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
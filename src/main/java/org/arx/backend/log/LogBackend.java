@@ -0,0 +1,320 @@
+package org.arx.backend.log;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.arx.Data;
+import org.arx.Resource;
+import org.arx.backend.memory.TrieBackend;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log backend is an implementation of a resource backend that is intended
+ * for millions of small resources. Instead of one file per resource, it appends
+ * every version of a resource as a record to a large segment file (see
+ * {@link Segment}). An in-memory index maps every resource to the location of
+ * its current record, so that a resource is read with a single positional read
+ * and resource patterns are resolved without touching the segments.
+ * <p>
+ * Only the newest segment is written. If it reaches the configured segment
+ * size, it is sealed and a new segment is started. Records of a sealed segment
+ * become obsolete when their resources are modified or deleted. In order to
+ * reclaim the space, the log backend compacts sealed segments with few live
+ * records in background: the live records are appended to the newest segment
+ * and the old segment is deleted. In order to compact segments in background,
+ * the log backend must be executed after creation.
+ * <p>
+ * Records are written to the file system without forcing them to the storage
+ * device. When the log backend is created, it scans all segments in order and
+ * rebuilds the index. A record that has been torn by a crash at the end of the
+ * newest segment is detected by its checksum and truncated.
+ */
+public class LogBackend extends TrieBackend<LogEntry> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogBackend.class);
+	private static final String RECOVERY_FORMAT = "Recovered %1$d resources from %2$d segments in %3$s";
+	private static final String TRUNCATED_FORMAT = "Truncated torn record at the end of segment %1$s";
+	private static final String COMPACTION_FORMAT = "Compacted segment %1$s with %2$d of %3$d bytes in use";
+	private static final String COMPACTION_ERROR = "Cannot compact segments";
+	private static final int DEFAULT_STRIPES = 64;
+	private static final String DEFAULT_DIRECTORY = "log";
+	private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final int DEFAULT_COMPACTION_INTERVAL = 60;
+	private static final int DEFAULT_COMPACTION_THRESHOLD = 50;
+	private Path directory;
+	private long segmentSize;
+	private long compactionInterval;
+	private int compactionThreshold;
+	private NavigableMap<Long, Segment> segments;
+	private volatile Segment active;
+	private final Object appendLock = new Object();
+
+	/**
+	 * Creates a log backend with the specified backend-specific parameters.
+	 * Parameters that are not specified are read from the configuration. All
+	 * existing segments are scanned in order to rebuild the index of the
+	 * resources.
+	 *
+	 * @param executor
+	 *            the executor that shall be used to execute asynchronous tasks.
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @throws IOException
+	 *             if an IO error occurred while reading the segments
+	 */
+	public LogBackend(Executor executor, Map<String, String> parameters) throws IOException {
+		super(executor,
+				Configuration.getInstance().getIntParameter(parameters, LogFactory.STRIPES_KEY, DEFAULT_STRIPES));
+		Configuration configuration = Configuration.getInstance();
+		String dir = configuration.getParameter(parameters, LogFactory.DIRECTORY_KEY);
+		this.directory = configuration.getHome().resolve(dir == null ? DEFAULT_DIRECTORY : dir.trim()).normalize();
+		this.segmentSize = configuration.getIntParameter(parameters, LogFactory.SEGMENT_SIZE_KEY,
+				DEFAULT_SEGMENT_SIZE);
+		this.compactionInterval = TimeUnit.SECONDS.toMillis(configuration.getIntParameter(parameters,
+				LogFactory.COMPACTION_INTERVAL_KEY, DEFAULT_COMPACTION_INTERVAL));
+		this.compactionThreshold = configuration.getIntParameter(parameters, LogFactory.COMPACTION_THRESHOLD_KEY,
+				DEFAULT_COMPACTION_THRESHOLD);
+		this.segments = new ConcurrentSkipListMap<Long, Segment>();
+		Files.createDirectories(directory);
+		recover();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#store(org.arx.Resource,
+	 * org.arx.Data)
+	 */
+	@Override
+	protected LogEntry store(Resource resource, Data data) throws IOException {
+		LogEntry entry;
+		synchronized (appendLock) {
+			entry = active.append(resource, data.getVersion(), data.getMimeType(), data.getContent());
+			rollOver();
+		}
+		entry.getSegment().getLiveBytes().addAndGet(entry.getRecordSize());
+		release(getResources().get(resource));
+		return entry;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#erase(org.arx.Resource,
+	 * java.lang.Object)
+	 */
+	@Override
+	protected void erase(Resource resource, LogEntry value) throws IOException {
+		synchronized (appendLock) {
+			active.appendDeleted(resource, value.getVersion());
+			rollOver();
+		}
+		release(value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#load(org.arx.Resource,
+	 * java.lang.Object)
+	 */
+	@Override
+	protected Data load(Resource resource, LogEntry value) throws IOException {
+		while (true) {
+			try {
+				return new ByteArrayData(value.getMimeType(), value.getSegment().read(value), value.getVersion());
+			} catch (ClosedChannelException e) {
+				// The segment has been compacted, use the new location
+				LogEntry current = getResources().get(resource);
+				if (current == null) {
+					return null;
+				} else if (current == value) {
+					throw e;
+				}
+				value = current;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#getVersion(java.lang.Object)
+	 */
+	@Override
+	protected long getVersion(LogEntry value) {
+		return value.getVersion();
+	}
+
+	/**
+	 * Compacts all sealed segments whose percentage of live records is below
+	 * the configured threshold. The live records of such a segment are
+	 * appended to the newest segment, which is forced to the storage device
+	 * before the compacted segment is deleted.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs while compacting a segment
+	 */
+	public synchronized void compact() throws IOException {
+		for (Segment segment : segments.values()) {
+			if (segment != active && segment.getLiveBytes().get() * 100 < segment.getSize() * compactionThreshold) {
+				compact(segment);
+			}
+		}
+	}
+
+	/**
+	 * Closes all segments. Requests that are executed after the log backend
+	 * has been closed fail.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs while closing a segment
+	 */
+	public void close() throws IOException {
+		synchronized (appendLock) {
+			active.force();
+			for (Segment segment : segments.values()) {
+				segment.close();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				Thread.sleep(compactionInterval);
+				try {
+					compact();
+				} catch (IOException e) {
+					LOGGER.error(COMPACTION_ERROR, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stop compacting
+		}
+	}
+
+	private void compact(final Segment segment) throws IOException {
+		long size = segment.getSize();
+		long liveBytes = segment.getLiveBytes().get();
+		// Deletions must be kept as long as older segments may contain the
+		// deleted resource
+		final boolean keepDeletions = segments.firstKey() < segment.getId();
+		segment.scan(false, new Segment.RecordHandler() {
+			@Override
+			public void data(Resource resource, LogEntry entry) throws IOException {
+				synchronized (getLock(resource)) {
+					LogEntry current = getResources().get(resource);
+					if (current != null && current.getSegment() == segment
+							&& current.getPosition() == entry.getPosition()) {
+						LogEntry moved;
+						synchronized (appendLock) {
+							moved = active.append(resource, current.getVersion(), current.getMimeType(),
+									segment.read(current));
+							rollOver();
+						}
+						moved.getSegment().getLiveBytes().addAndGet(moved.getRecordSize());
+						getResources().put(resource, moved);
+						release(current);
+					}
+				}
+			}
+
+			@Override
+			public void deleted(Resource resource, LogEntry entry) throws IOException {
+				if (keepDeletions) {
+					synchronized (getLock(resource)) {
+						if (getResources().get(resource) == null) {
+							synchronized (appendLock) {
+								active.appendDeleted(resource, entry.getVersion());
+								rollOver();
+							}
+						}
+					}
+				}
+			}
+		});
+		synchronized (appendLock) {
+			active.force();
+		}
+		segments.remove(segment.getId());
+		segment.delete();
+		LOGGER.debug(String.format(COMPACTION_FORMAT, segment, liveBytes, size));
+	}
+
+	/**
+	 * Starts a new segment, if the active segment has reached the segment
+	 * size. Must be called while holding the append lock.
+	 */
+	private void rollOver() throws IOException {
+		if (active.getSize() >= segmentSize) {
+			active.force();
+			Segment segment = Segment.create(directory, active.getId() + 1);
+			segments.put(segment.getId(), segment);
+			active = segment;
+		}
+	}
+
+	private void release(LogEntry entry) {
+		if (entry != null) {
+			entry.getSegment().getLiveBytes().addAndGet(-entry.getRecordSize());
+		}
+	}
+
+	private void recover() throws IOException {
+		TreeMap<Long, Path> files = new TreeMap<Long, Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				if (Segment.isSegment(path)) {
+					files.put(Segment.getId(path), path);
+				}
+			}
+		}
+		Segment.RecordHandler handler = new Segment.RecordHandler() {
+			@Override
+			public void data(Resource resource, LogEntry entry) {
+				entry.getSegment().getLiveBytes().addAndGet(entry.getRecordSize());
+				release(getResources().put(resource, entry));
+				restoreVersion(entry.getVersion());
+			}
+
+			@Override
+			public void deleted(Resource resource, LogEntry entry) {
+				release(getResources().remove(resource));
+				restoreVersion(entry.getVersion());
+			}
+		};
+		for (Map.Entry<Long, Path> file : files.entrySet()) {
+			Segment segment = Segment.open(file.getValue());
+			segments.put(segment.getId(), segment);
+			boolean last = file.getKey().equals(files.lastKey());
+			if (segment.scan(last, handler)) {
+				LOGGER.warn(String.format(TRUNCATED_FORMAT, segment));
+			}
+		}
+		if (segments.isEmpty()) {
+			Segment segment = Segment.create(directory, 1);
+			segments.put(segment.getId(), segment);
+		}
+		active = segments.lastEntry().getValue();
+		LOGGER.info(String.format(RECOVERY_FORMAT, getResources().size(), files.size(), directory));
+	}
+
+}
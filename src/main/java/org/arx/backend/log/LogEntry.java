@@ -0,0 +1,104 @@
+package org.arx.backend.log;
+
+/**
+ * A log entry locates the current data of a resource in a segment. Log
+ * entries are immutable. Every write of a resource creates a new log entry.
+ */
+final class LogEntry {
+	private final Segment segment;
+	private final long position;
+	private final int recordSize;
+	private final int contentLength;
+	private final long version;
+	private final String mimeType;
+
+	/**
+	 * Creates a log entry for the specified parameters.
+	 *
+	 * @param segment
+	 *            the segment that contains the record of the entry
+	 * @param position
+	 *            the position of the record in the segment
+	 * @param recordSize
+	 *            the size of the record in bytes
+	 * @param contentLength
+	 *            the length of the content, which is stored at the end of the
+	 *            record
+	 * @param version
+	 *            the version of the resource
+	 * @param mimeType
+	 *            the mime type of the resource or null
+	 */
+	public LogEntry(Segment segment, long position, int recordSize, int contentLength, long version,
+			String mimeType) {
+		this.segment = segment;
+		this.position = position;
+		this.recordSize = recordSize;
+		this.contentLength = contentLength;
+		this.version = version;
+		this.mimeType = mimeType;
+	}
+
+	/**
+	 * Returns the segment that contains the record of this entry.
+	 *
+	 * @return the segment that contains the record of this entry
+	 */
+	public Segment getSegment() {
+		return segment;
+	}
+
+	/**
+	 * Returns the position of the record in the segment.
+	 *
+	 * @return the position of the record in the segment
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the size of the record in bytes.
+	 *
+	 * @return the size of the record in bytes
+	 */
+	public int getRecordSize() {
+		return recordSize;
+	}
+
+	/**
+	 * Returns the position of the content in the segment.
+	 *
+	 * @return the position of the content in the segment
+	 */
+	public long getContentPosition() {
+		return position + recordSize - contentLength;
+	}
+
+	/**
+	 * Returns the length of the content.
+	 *
+	 * @return the length of the content
+	 */
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Returns the version of the resource.
+	 *
+	 * @return the version of the resource
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the mime type of the resource.
+	 *
+	 * @return the mime type of the resource or null
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+}
@@ -0,0 +1,76 @@
+package org.arx.backend.log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.arx.Data;
+import org.arx.Endpoint;
+import org.arx.Resource;
+import org.arx.backend.BackendFactory;
+import org.arx.util.ByteArrayData;
+import org.arx.util.SimpleResource;
+
+/**
+ * A log factory is an implementation of the interface BackendFactory for a
+ * resource backend that appends all resources to segment files.
+ */
+public class LogFactory implements BackendFactory {
+	/**
+	 * Key of the parameter that specifies the number of stripes that are used
+	 * to execute requests for the same resource in arrival order.
+	 */
+	public static final String STRIPES_KEY = "org.arx.backend.log.stripes";
+	/**
+	 * Key of the parameter that specifies the directory of the segment files
+	 * relative to the home directory of ARX.
+	 */
+	public static final String DIRECTORY_KEY = "org.arx.backend.log.directory";
+	/**
+	 * Key of the parameter that specifies the size in bytes at which a segment
+	 * is sealed and a new segment is started.
+	 */
+	public static final String SEGMENT_SIZE_KEY = "org.arx.backend.log.segmentSize";
+	/**
+	 * Key of the parameter that specifies the interval in seconds between two
+	 * compactions.
+	 */
+	public static final String COMPACTION_INTERVAL_KEY = "org.arx.backend.log.compactionInterval";
+	/**
+	 * Key of the parameter that specifies the percentage of live records below
+	 * which a sealed segment is compacted.
+	 */
+	public static final String COMPACTION_THRESHOLD_KEY = "org.arx.backend.log.compactionThreshold";
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createBackend(java.util.concurrent.
+	 * Executor, java.util.Map)
+	 */
+	@Override
+	public Endpoint createBackend(Executor executor, Map<String, String> parameters) throws IOException {
+		return new LogBackend(executor, parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createResource(java.lang.String)
+	 */
+	@Override
+	public Resource createResource(String name) {
+		return new SimpleResource(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createData(java.lang.String, byte[])
+	 */
+	@Override
+	public Data createData(String mimeType, byte[] data) {
+		return new ByteArrayData(mimeType, data);
+	}
+
+}
@@ -0,0 +1,394 @@
+package org.arx.backend.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.arx.Resource;
+import org.arx.util.SimpleResource;
+
+/**
+ * A segment is an append-only file of records. A record either stores the
+ * data of a resource or marks a resource as deleted. Every record starts with
+ * its length and a CRC32 checksum, so that a record that has been torn by a
+ * crash can be detected when the segment is scanned.
+ * <p>
+ * A record has the following format:
+ *
+ * <pre>
+ * int     length of the record without length and checksum
+ * int     CRC32 checksum of the record without length and checksum
+ * byte    record type (data or deleted)
+ * long    version
+ * UTF     name of the resource
+ * boolean true, if a mime type follows
+ * UTF     mime type
+ * int     length of the content
+ * byte[]  content
+ * </pre>
+ *
+ * Appending records is not thread-safe and must be synchronized by the caller.
+ * Reading records may be done concurrently.
+ */
+final class Segment {
+	private static final int MAGIC = 0x4152584c;
+	private static final int HEADER_SIZE = 4;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final byte DATA_RECORD = 0;
+	private static final byte DELETED_RECORD = 1;
+	private static final String SEGMENT_FORMAT = "%1$016d.log";
+	private static final String CORRUPTED_FORMAT = "Segment %1$s is corrupted at position %2$d";
+	private final long id;
+	private final Path path;
+	private final FileChannel channel;
+	private final AtomicLong liveBytes;
+	private volatile long size;
+
+	private Segment(long id, Path path, FileChannel channel, long size) {
+		this.id = id;
+		this.path = path;
+		this.channel = channel;
+		this.liveBytes = new AtomicLong();
+		this.size = size;
+	}
+
+	/**
+	 * Creates a new, empty segment in the specified directory.
+	 *
+	 * @param directory
+	 *            the directory of the segment
+	 * @param id
+	 *            the id of the segment, which determines the order of the
+	 *            segments
+	 * @return the created segment
+	 * @throws IOException
+	 *             if an IO error occurs while creating the segment file
+	 */
+	public static Segment create(Path directory, long id) throws IOException {
+		Path path = directory.resolve(String.format(SEGMENT_FORMAT, id));
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		return new Segment(id, path, channel, HEADER_SIZE);
+	}
+
+	/**
+	 * Opens an existing segment.
+	 *
+	 * @param path
+	 *            the path of the segment file
+	 * @return the opened segment
+	 * @throws IOException
+	 *             if the file is not a segment or an IO error occurs while
+	 *             opening it
+	 */
+	public static Segment open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		if (header.getInt(0) != MAGIC) {
+			channel.close();
+			throw new StreamCorruptedException(path.toString());
+		}
+		return new Segment(getId(path), path, channel, channel.size());
+	}
+
+	/**
+	 * Returns true, if the specified file is a segment file.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return true, if the specified file is a segment file
+	 */
+	public static boolean isSegment(Path path) {
+		return path.getFileName().toString().matches("[0-9]{16}\\.log");
+	}
+
+	/**
+	 * Returns the id of the segment with the specified path.
+	 *
+	 * @param path
+	 *            the path of a segment file
+	 * @return the id of the segment
+	 */
+	public static long getId(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.indexOf('.')));
+	}
+
+	/**
+	 * Returns the id of this segment.
+	 *
+	 * @return the id of this segment
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the size of this segment in bytes.
+	 *
+	 * @return the size of this segment in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes of this segment that belong to records of
+	 * current resources. The number is maintained by the log backend.
+	 *
+	 * @return the number of bytes of this segment that are still needed
+	 */
+	public AtomicLong getLiveBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * Appends a record with the data of a resource.
+	 *
+	 * @param resource
+	 *            the resource
+	 * @param version
+	 *            the version of the resource
+	 * @param mimeType
+	 *            the mime type of the resource or null
+	 * @param content
+	 *            the content of the resource
+	 * @return the log entry that locates the record
+	 * @throws IOException
+	 *             if an IO error occurs while writing the record
+	 */
+	public LogEntry append(Resource resource, long version, String mimeType, byte[] content) throws IOException {
+		return append(DATA_RECORD, resource, version, mimeType, content);
+	}
+
+	/**
+	 * Appends a record that marks a resource as deleted.
+	 *
+	 * @param resource
+	 *            the deleted resource
+	 * @param version
+	 *            the version of the resource before it has been deleted
+	 * @return the log entry that locates the record
+	 * @throws IOException
+	 *             if an IO error occurs while writing the record
+	 */
+	public LogEntry appendDeleted(Resource resource, long version) throws IOException {
+		return append(DELETED_RECORD, resource, version, null, new byte[0]);
+	}
+
+	/**
+	 * Reads the content of the specified log entry.
+	 *
+	 * @param entry
+	 *            a log entry of this segment
+	 * @return the content of the log entry
+	 * @throws IOException
+	 *             if an IO error occurs while reading the content, in
+	 *             particular a ClosedChannelException if the segment has been
+	 *             closed in the meantime
+	 */
+	public byte[] read(LogEntry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.getContentLength());
+		readFully(channel, buffer, entry.getContentPosition());
+		return buffer.array();
+	}
+
+	/**
+	 * Scans all records of this segment in the order they have been appended.
+	 * If a torn or corrupted record is found, the scan stops and the segment
+	 * is truncated to the records before, if truncate is true. Otherwise, a
+	 * StreamCorruptedException is thrown.
+	 *
+	 * @param truncate
+	 *            true, if the segment shall be truncated at a corrupted record
+	 * @param handler
+	 *            the handler that is called for every record
+	 * @return true, if the segment has been truncated
+	 * @throws IOException
+	 *             if an IO error occurs while reading the segment or the
+	 *             handler throws an IO exception
+	 */
+	public boolean scan(boolean truncate, RecordHandler handler) throws IOException {
+		long position = HEADER_SIZE;
+		long end = channel.size();
+		// The stream is not closed, because this would close the channel
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel.position(HEADER_SIZE))));
+		while (position < end) {
+			byte[] payload;
+			int checksum;
+			try {
+				int length = in.readInt();
+				checksum = in.readInt();
+				if (length <= 0 || length > end - position - RECORD_HEADER_SIZE) {
+					throw new EOFException();
+				}
+				payload = new byte[length];
+				in.readFully(payload);
+			} catch (EOFException e) {
+				return corrupted(truncate, position);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum) {
+				return corrupted(truncate, position);
+			}
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+			byte type = record.readByte();
+			long version = record.readLong();
+			Resource resource = new SimpleResource(record.readUTF());
+			String mimeType = record.readBoolean() ? record.readUTF() : null;
+			int contentLength = record.readInt();
+			LogEntry entry = new LogEntry(this, position, RECORD_HEADER_SIZE + payload.length, contentLength,
+					version, mimeType);
+			if (type == DELETED_RECORD) {
+				handler.deleted(resource, entry);
+			} else {
+				handler.data(resource, entry);
+			}
+			position += entry.getRecordSize();
+		}
+		return false;
+	}
+
+	/**
+	 * Forces all appended records to be written to the storage device.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs
+	 */
+	public void force() throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * Closes this segment. Subsequent reads of this segment fail.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Closes and deletes this segment.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs
+	 */
+	public void delete() throws IOException {
+		close();
+		Files.deleteIfExists(path);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+	private LogEntry append(byte type, Resource resource, long version, String mimeType, byte[] content)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(type);
+		out.writeLong(version);
+		out.writeUTF(resource.getName());
+		out.writeBoolean(mimeType != null);
+		if (mimeType != null) {
+			out.writeUTF(mimeType);
+		}
+		out.writeInt(content.length);
+		out.flush();
+		byte[] prefix = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(prefix);
+		crc.update(content);
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		header.putInt(prefix.length + content.length);
+		header.putInt((int) crc.getValue());
+		header.flip();
+		ByteBuffer[] buffers = new ByteBuffer[] { header, ByteBuffer.wrap(prefix), ByteBuffer.wrap(content) };
+		long position = size;
+		int recordSize = RECORD_HEADER_SIZE + prefix.length + content.length;
+		channel.position(position);
+		long written = 0;
+		while (written < recordSize) {
+			written += channel.write(buffers);
+		}
+		size = position + recordSize;
+		return new LogEntry(this, position, recordSize, content.length, version, mimeType);
+	}
+
+	private boolean corrupted(boolean truncate, long position) throws IOException {
+		if (!truncate) {
+			throw new StreamCorruptedException(String.format(CORRUPTED_FORMAT, path, position));
+		}
+		channel.truncate(position);
+		size = position;
+		return true;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * A handler of the records of a segment.
+	 */
+	interface RecordHandler {
+		/**
+		 * Handles a record with the data of a resource.
+		 *
+		 * @param resource
+		 *            the resource
+		 * @param entry
+		 *            the log entry of the record
+		 * @throws IOException
+		 *             if an IO error occurs
+		 */
+		void data(Resource resource, LogEntry entry) throws IOException;
+
+		/**
+		 * Handles a record that marks a resource as deleted.
+		 *
+		 * @param resource
+		 *            the deleted resource
+		 * @param entry
+		 *            the log entry of the record
+		 * @throws IOException
+		 *             if an IO error occurs
+		 */
+		void deleted(Resource resource, LogEntry entry) throws IOException;
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains classes that implement a log-structured implementation of a
+ * resource backend.
+ */
+package org.arx.backend.log;
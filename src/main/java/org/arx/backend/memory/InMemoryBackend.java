@@ -0,0 +1,226 @@
+package org.arx.backend.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.arx.Data;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.ConcurrentResourceTrie;
+import org.arx.util.Configuration;
+import org.arx.util.SimpleResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory backend is an implementation of a resource backend where
+ * resources are kept in memory. It is intended for ephemeral resources like
+ * presence information, heartbeats or locks that do not need to survive a
+ * restart of the server and shall be exchanged with the lowest possible
+ * latency.
+ * <p>
+ * The data of the resources is stored directly in the trie of the
+ * {@link TrieBackend}. Subscribers are notified directly by the request that
+ * modifies a resource, without watching or re-reading anything.
+ * <p>
+ * Optionally, the in-memory backend periodically writes a snapshot of all
+ * resources to a file, if the parameter {@link InMemoryFactory#SNAPSHOT_KEY}
+ * is specified. The snapshot is read when the backend is created. In order to
+ * write snapshots in background the in-memory backend must be executed after
+ * creation. Data objects that are passed to or received from the in-memory
+ * backend must not be modified.
+ */
+public class InMemoryBackend extends TrieBackend<Data> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryBackend.class);
+	private static final String SNAPSHOT_ERROR = "Cannot write snapshot";
+	private static final String SNAPSHOT_FORMAT = "Wrote snapshot of %1$d resources to %2$s";
+	private static final String SNAPSHOT_LOAD_FORMAT = "Read snapshot of %1$d resources from %2$s";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int SNAPSHOT_MAGIC = 0x41525831;
+	private static final int DEFAULT_STRIPES = 64;
+	private static final int DEFAULT_SNAPSHOT_INTERVAL = 60;
+	private AtomicBoolean modified;
+	private Path snapshotFile;
+	private long snapshotInterval;
+
+	/**
+	 * Creates an in-memory backend with the specified backend-specific
+	 * parameters. Parameters that are not specified are read from the
+	 * configuration. If a snapshot file is configured and exists, the
+	 * resources are read from the snapshot file.
+	 *
+	 * @param executor
+	 *            the executor that shall be used to execute asynchronous tasks.
+	 * @param parameters
+	 *            the backend-specific parameters or null
+	 * @throws IOException
+	 *             if an IO error occurred while reading the snapshot file
+	 */
+	public InMemoryBackend(Executor executor, Map<String, String> parameters) throws IOException {
+		super(executor, Configuration.getInstance().getIntParameter(parameters, InMemoryFactory.STRIPES_KEY,
+				DEFAULT_STRIPES));
+		Configuration configuration = Configuration.getInstance();
+		this.modified = new AtomicBoolean(false);
+		String snapshot = configuration.getParameter(parameters, InMemoryFactory.SNAPSHOT_KEY);
+		if (snapshot != null) {
+			this.snapshotFile = configuration.getHome().resolve(snapshot.trim()).normalize();
+			this.snapshotInterval = TimeUnit.SECONDS.toMillis(configuration.getIntParameter(parameters,
+					InMemoryFactory.SNAPSHOT_INTERVAL_KEY, DEFAULT_SNAPSHOT_INTERVAL));
+			if (Files.exists(snapshotFile)) {
+				readSnapshot();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#store(org.arx.Resource,
+	 * org.arx.Data)
+	 */
+	@Override
+	protected Data store(Resource resource, Data data) {
+		modified.set(true);
+		return data;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#erase(org.arx.Resource,
+	 * java.lang.Object)
+	 */
+	@Override
+	protected void erase(Resource resource, Data value) {
+		modified.set(true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#load(org.arx.Resource,
+	 * java.lang.Object)
+	 */
+	@Override
+	protected Data load(Resource resource, Data value) {
+		return new ByteArrayData(value.getMimeType(), value.getContent(), value.getVersion());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.backend.memory.TrieBackend#getVersion(java.lang.Object)
+	 */
+	@Override
+	protected long getVersion(Data value) {
+		return value.getVersion();
+	}
+
+	/**
+	 * Writes a snapshot of all resources to the snapshot file, if a snapshot
+	 * file is configured. The snapshot is written to a temporary file first,
+	 * which then replaces the snapshot file. Thus, an existing snapshot file is
+	 * never partially overwritten.
+	 *
+	 * @throws IOException
+	 *             if an IO error occurs while writing the snapshot
+	 */
+	public synchronized void snapshot() throws IOException {
+		if (snapshotFile == null) {
+			return;
+		}
+		modified.set(false);
+		Path parent = snapshotFile.getParent();
+		if (parent != null && Files.notExists(parent)) {
+			Files.createDirectories(parent);
+		}
+		Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + TEMP_SUFFIX);
+		final int[] count = new int[1];
+		try (final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			getResources().visit(new SimpleResource(Resource.MULTI_LEVEL_WILDCARD),
+					new ConcurrentResourceTrie.Visitor<Data>() {
+						@Override
+						public void visit(Resource resource, Data data) throws IOException {
+							out.writeBoolean(true);
+							out.writeUTF(resource.getName());
+							out.writeBoolean(data.getMimeType() != null);
+							if (data.getMimeType() != null) {
+								out.writeUTF(data.getMimeType());
+							}
+							out.writeLong(data.getVersion());
+							out.writeInt(data.getContent().length);
+							out.write(data.getContent());
+							++count[0];
+						}
+					});
+			out.writeBoolean(false);
+		}
+		Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.debug(String.format(SNAPSHOT_FORMAT, count[0], snapshotFile));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		if (snapshotFile == null) {
+			return;
+		}
+		try {
+			while (true) {
+				Thread.sleep(snapshotInterval);
+				if (modified.get()) {
+					writeSnapshot();
+				}
+			}
+		} catch (InterruptedException e) {
+			// Write the final snapshot
+			writeSnapshot();
+		}
+	}
+
+	private void writeSnapshot() {
+		try {
+			snapshot();
+		} catch (IOException e) {
+			LOGGER.error(SNAPSHOT_ERROR, e);
+		}
+	}
+
+	private void readSnapshot() throws IOException {
+		int count = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				throw new StreamCorruptedException(snapshotFile.toString());
+			}
+			while (in.readBoolean()) {
+				Resource resource = new SimpleResource(in.readUTF());
+				String mimeType = in.readBoolean() ? in.readUTF() : null;
+				long version = in.readLong();
+				byte[] content = new byte[in.readInt()];
+				in.readFully(content);
+				getResources().put(resource, new ByteArrayData(mimeType, content, version));
+				restoreVersion(version);
+				++count;
+			}
+		}
+		LOGGER.info(String.format(SNAPSHOT_LOAD_FORMAT, count, snapshotFile));
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.arx.backend.memory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.arx.Data;
+import org.arx.Endpoint;
+import org.arx.Resource;
+import org.arx.backend.BackendFactory;
+import org.arx.util.ByteArrayData;
+import org.arx.util.SimpleResource;
+
+/**
+ * An in-memory factory is an implementation of the interface BackendFactory
+ * for a resource backend that keeps all resources in memory.
+ */
+public class InMemoryFactory implements BackendFactory {
+	/**
+	 * Key of the parameter that specifies the number of stripes that are used
+	 * to execute requests for the same resource in arrival order.
+	 */
+	public static final String STRIPES_KEY = "org.arx.backend.memory.stripes";
+	/**
+	 * Key of the parameter that specifies the snapshot file relative to the
+	 * home directory of ARX. If the parameter is not specified, no snapshots
+	 * are written.
+	 */
+	public static final String SNAPSHOT_KEY = "org.arx.backend.memory.snapshot";
+	/**
+	 * Key of the parameter that specifies the interval in seconds between two
+	 * snapshots.
+	 */
+	public static final String SNAPSHOT_INTERVAL_KEY = "org.arx.backend.memory.snapshotInterval";
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createBackend(java.util.concurrent.
+	 * Executor, java.util.Map)
+	 */
+	@Override
+	public Endpoint createBackend(Executor executor, Map<String, String> parameters) throws IOException {
+		return new InMemoryBackend(executor, parameters);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createResource(java.lang.String)
+	 */
+	@Override
+	public Resource createResource(String name) {
+		return new SimpleResource(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.backend.BackendFactory#createData(java.lang.String, byte[])
+	 */
+	@Override
+	public Data createData(String mimeType, byte[] data) {
+		return new ByteArrayData(mimeType, data);
+	}
+
+}
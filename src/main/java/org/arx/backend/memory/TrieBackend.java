@@ -0,0 +1,667 @@
+package org.arx.backend.memory;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.Endpoint;
+import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Options;
+import org.arx.Reason;
+import org.arx.Resource;
+import org.arx.backend.file.SubscriptionObserver;
+import org.arx.backend.file.Subscriptions;
+import org.arx.util.ByteArrayData;
+import org.arx.util.ConcurrentResourceTrie;
+import org.arx.util.StripedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A trie backend is the base class of resource backends that keep an index of
+ * all resources in a {@link ConcurrentResourceTrie}. It implements the
+ * complete semantics of the {@link Endpoint} interface including resource
+ * patterns, versions and subscriptions. Subclasses only decide how the content
+ * of a resource is stored: the trie maps every resource to a value of type T
+ * that is created by {@link #store store(...)} and turned into data again by
+ * {@link #load load(...)}.
+ * <p>
+ * Subscribers are notified directly by the request that modifies a resource,
+ * without watching or re-reading anything. Requests are executed in stripes
+ * that are determined by the resource or resource pattern of the request.
+ * Additionally, every modification of a resource is done while holding a lock
+ * for the resource. Thus, modifications of the same resource by requests of
+ * different stripes (e.g. a request for a resource pattern) are never
+ * interleaved and subclasses see the modifications of a resource in the same
+ * order as the trie.
+ * <p>
+ * Every modification assigns a new version to the resource. Versions are taken
+ * from a counter that is shared by all resources, so that they are strictly
+ * increasing.
+ *
+ * @param <T>
+ *            the type of the values that are stored in the trie
+ */
+public abstract class TrieBackend<T> implements Endpoint {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TrieBackend.class);
+	private static final String RESOURCE_NOT_FOUND_FORMAT = "Resource %1$s not found";
+	private static final String RESOURCE_ALREADY_EXISTS_FORMAT = "Resource %1$s already exists";
+	private static final String PATTERN_ERROR_FORMAT = "Resource pattern %1$s not allowed";
+	private static final String VERSION_ERROR_FORMAT = "Version of resource pattern %1$s must not be specified";
+	private static final String PRECONDITION_FAILED_FORMAT = "Resource %1$s does not have version %2$d";
+	private static final String OPTION_ERROR_FORMAT = "Illegal value %2$s of option %1$s";
+	private static final String FORBIDDEN_FORMAT = "Forbidden to access resource %1$s";
+	private static final String REQUEST_ERROR_FORMAT = "Cannot execute request for resource %1$s";
+	private static final String SEND_ERROR_FORMAT = "Cannot send response for resource %1$s";
+	private static final String DISCONNECT_FORMAT = "Removed %1$d subscriptions of a disconnected observer";
+	private static final int LOCKS = 256;
+	private StripedExecutor executor;
+	private ConcurrentResourceTrie<T> resources;
+	private Subscriptions subscriptions;
+	private AtomicLong versions;
+	private Object[] locks;
+
+	/**
+	 * Creates a trie backend.
+	 *
+	 * @param executor
+	 *            the executor that shall be used to execute asynchronous tasks.
+	 * @param stripes
+	 *            the number of stripes that are used to execute requests
+	 */
+	protected TrieBackend(Executor executor, int stripes) {
+		this.executor = new StripedExecutor(executor, stripes);
+		this.resources = new ConcurrentResourceTrie<T>();
+		this.subscriptions = new Subscriptions();
+		this.versions = new AtomicLong();
+		this.locks = new Object[LOCKS];
+		for (int i = 0; i < LOCKS; ++i) {
+			this.locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Stores the specified data of a resource and returns the value that
+	 * represents the stored data in the trie. This method is called while
+	 * holding the lock for the resource.
+	 *
+	 * @param resource
+	 *            the resource to be stored
+	 * @param data
+	 *            the data of the resource including its new version
+	 * @return the value that represents the stored data
+	 * @throws IOException
+	 *             if an IO error occurs while storing the data
+	 */
+	protected abstract T store(Resource resource, Data data) throws IOException;
+
+	/**
+	 * Erases the stored data of a deleted resource. This method is called while
+	 * holding the lock for the resource after the resource has been removed
+	 * from the trie.
+	 *
+	 * @param resource
+	 *            the deleted resource
+	 * @param value
+	 *            the value that represented the data of the resource
+	 * @throws IOException
+	 *             if an IO error occurs while erasing the data
+	 */
+	protected abstract void erase(Resource resource, T value) throws IOException;
+
+	/**
+	 * Loads the data of a resource.
+	 *
+	 * @param resource
+	 *            the resource to be loaded
+	 * @param value
+	 *            the value that represents the data of the resource
+	 * @return the data of the resource or null, if the resource has been
+	 *         deleted in the meantime
+	 * @throws IOException
+	 *             if an IO error occurs while loading the data
+	 */
+	protected abstract Data load(Resource resource, T value) throws IOException;
+
+	/**
+	 * Returns the version of the data that is represented by the specified
+	 * value.
+	 *
+	 * @param value
+	 *            the value of a resource
+	 * @return the version of the data that is represented by the value
+	 */
+	protected abstract long getVersion(T value);
+
+	/**
+	 * Returns the trie that contains the values of all resources.
+	 *
+	 * @return the trie that contains the values of all resources
+	 */
+	protected ConcurrentResourceTrie<T> getResources() {
+		return resources;
+	}
+
+	/**
+	 * Returns the lock that must be held while modifying the value of the
+	 * specified resource.
+	 *
+	 * @param resource
+	 *            the resource
+	 * @return the lock for the resource
+	 */
+	protected Object getLock(Resource resource) {
+		int hash = resource.hashCode();
+		hash ^= (hash >>> 16);
+		return locks[hash & (LOCKS - 1)];
+	}
+
+	/**
+	 * Makes sure that all versions that are assigned from now on are greater
+	 * than the specified version. Subclasses call this method for restored
+	 * resources.
+	 *
+	 * @param version
+	 *            a version that has been assigned before
+	 */
+	protected void restoreVersion(long version) {
+		long current;
+		while ((current = versions.get()) < version) {
+			if (versions.compareAndSet(current, version)) {
+				break;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#ping(org.arx.Credentials, org.arx.Observer)
+	 */
+	@Override
+	public void ping(Credentials credentials, Observer observer) {
+		try {
+			observer.onSuccess(MessageType.PING, null);
+		} catch (IOException e) {
+			LOGGER.error("Cannot send PING response", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#create(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, org.arx.Observer)
+	 */
+	@Override
+	public void create(final Credentials credentials, final Resource resource, final Data data,
+			final Observer observer) {
+		executor.execute(resource, new Request(MessageType.CREATE, resource, observer) {
+			@Override
+			protected void execute() throws IOException {
+				if (!credentials.canCreate(resource)) {
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (resource.isPattern()) {
+					error(MessageType.BAD_REQUEST, PATTERN_ERROR_FORMAT);
+				} else {
+					Data value;
+					synchronized (getLock(resource)) {
+						if (resources.get(resource) != null) {
+							value = null;
+						} else {
+							value = put(resource, data);
+						}
+					}
+					if (value == null) {
+						error(MessageType.ALREADY_EXISTS, RESOURCE_ALREADY_EXISTS_FORMAT);
+					} else {
+						notifySubscribers(resource, Reason.CREATED, value);
+						observer.onSuccess(MessageType.CREATE, resource, resource);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#update(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, org.arx.Observer)
+	 */
+	@Override
+	public void update(final Credentials credentials, final Resource resourcePattern, final Data data,
+			final Observer observer) {
+		executor.execute(resourcePattern, new Request(MessageType.UPDATE, resourcePattern, observer) {
+			@Override
+			protected void execute() throws IOException {
+				if (!credentials.canUpdate(resourcePattern)) {
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (resourcePattern.isPattern() && data.getVersion() != Data.NO_VERSION) {
+					error(MessageType.BAD_REQUEST, VERSION_ERROR_FORMAT);
+				} else if (resourcePattern.isPattern()) {
+					final List<Resource> affectedResources = new LinkedList<Resource>();
+					resources.visit(resourcePattern, new ConcurrentResourceTrie.Visitor<T>() {
+						@Override
+						public void visit(Resource res, T current) throws IOException {
+							Data value = null;
+							synchronized (getLock(res)) {
+								if (resources.get(res) != null) {
+									value = put(res, data);
+								}
+							}
+							if (value != null) {
+								notifySubscribers(res, Reason.UPDATED, value);
+								affectedResources.add(res);
+							}
+						}
+					});
+					observer.onSuccess(MessageType.UPDATE, resourcePattern,
+							affectedResources.toArray(new Resource[affectedResources.size()]));
+				} else {
+					MessageType status = null;
+					Data value = null;
+					synchronized (getLock(resourcePattern)) {
+						T current = resources.get(resourcePattern);
+						if (current == null) {
+							status = MessageType.NOT_FOUND;
+						} else if (data.getVersion() != Data.NO_VERSION && data.getVersion() != getVersion(current)) {
+							status = MessageType.PRECONDITION_FAILED;
+						} else {
+							value = put(resourcePattern, data);
+						}
+					}
+					if (status == MessageType.NOT_FOUND) {
+						error(MessageType.NOT_FOUND, RESOURCE_NOT_FOUND_FORMAT);
+					} else if (status == MessageType.PRECONDITION_FAILED) {
+						LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resourcePattern, data.getVersion()));
+						observer.onError(MessageType.UPDATE, resourcePattern, MessageType.PRECONDITION_FAILED);
+					} else {
+						notifySubscribers(resourcePattern, Reason.UPDATED, value);
+						observer.onSuccess(MessageType.UPDATE, resourcePattern, resourcePattern);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#save(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, org.arx.Observer)
+	 */
+	@Override
+	public void save(final Credentials credentials, final Resource resourcePattern, final Data data,
+			final Observer observer) {
+		executor.execute(resourcePattern, new Request(MessageType.SAVE, resourcePattern, observer) {
+			@Override
+			protected void execute() throws IOException {
+				if (!credentials.canSave(resourcePattern)) {
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (resourcePattern.isPattern() && data.getVersion() != Data.NO_VERSION) {
+					error(MessageType.BAD_REQUEST, VERSION_ERROR_FORMAT);
+				} else if (resourcePattern.isPattern()) {
+					final List<Resource> affectedResources = new LinkedList<Resource>();
+					resources.visitAll(resourcePattern, new ConcurrentResourceTrie.Visitor<T>() {
+						@Override
+						public void visit(Resource res, T current) throws IOException {
+							Reason reason;
+							Data value;
+							synchronized (getLock(res)) {
+								reason = resources.get(res) == null ? Reason.CREATED : Reason.UPDATED;
+								value = put(res, data);
+							}
+							notifySubscribers(res, reason, value);
+							affectedResources.add(res);
+						}
+					});
+					observer.onSuccess(MessageType.SAVE, resourcePattern,
+							affectedResources.toArray(new Resource[affectedResources.size()]));
+				} else {
+					Reason reason = null;
+					Data value = null;
+					synchronized (getLock(resourcePattern)) {
+						T current = resources.get(resourcePattern);
+						if (data.getVersion() == Data.NO_VERSION
+								|| (current != null && data.getVersion() == getVersion(current))) {
+							reason = current == null ? Reason.CREATED : Reason.UPDATED;
+							value = put(resourcePattern, data);
+						}
+					}
+					if (value == null) {
+						LOGGER.debug(String.format(PRECONDITION_FAILED_FORMAT, resourcePattern, data.getVersion()));
+						observer.onError(MessageType.SAVE, resourcePattern, MessageType.PRECONDITION_FAILED);
+					} else {
+						notifySubscribers(resourcePattern, reason, value);
+						observer.onSuccess(MessageType.SAVE, resourcePattern, resourcePattern);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#delete(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Observer)
+	 */
+	@Override
+	public void delete(final Credentials credentials, final Resource resourcePattern, final Observer observer) {
+		executor.execute(resourcePattern, new Request(MessageType.DELETE, resourcePattern, observer) {
+			@Override
+			protected void execute() throws IOException {
+				if (!credentials.canDelete(resourcePattern)) {
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (resourcePattern.isPattern()) {
+					final List<Resource> affectedResources = new LinkedList<Resource>();
+					resources.visit(resourcePattern, new ConcurrentResourceTrie.Visitor<T>() {
+						@Override
+						public void visit(Resource res, T current) throws IOException {
+							if (remove(res)) {
+								notifySubscribers(res, Reason.DELETED, null);
+								affectedResources.add(res);
+							}
+						}
+					});
+					observer.onSuccess(MessageType.DELETE, resourcePattern,
+							affectedResources.toArray(new Resource[affectedResources.size()]));
+				} else if (!remove(resourcePattern)) {
+					error(MessageType.NOT_FOUND, RESOURCE_NOT_FOUND_FORMAT);
+				} else {
+					notifySubscribers(resourcePattern, Reason.DELETED, null);
+					observer.onSuccess(MessageType.DELETE, resourcePattern, resourcePattern);
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#read(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Observer)
+	 */
+	@Override
+	public void read(Credentials credentials, Resource resourcePattern, Observer observer) {
+		read(credentials, resourcePattern, null, observer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#read(org.arx.Credentials, org.arx.Resource,
+	 * java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void read(final Credentials credentials, final Resource resourcePattern, final Map<String, String> options,
+			final Observer observer) {
+		executor.execute(resourcePattern, new Request(MessageType.READ, resourcePattern, observer) {
+			@Override
+			protected void execute() throws IOException {
+				final long knownVersion;
+				String version = options == null ? null : options.get(Options.IF_NONE_MATCH);
+				try {
+					knownVersion = version == null ? Data.NO_VERSION : Long.parseLong(version.trim());
+				} catch (NumberFormatException e) {
+					LOGGER.error(String.format(OPTION_ERROR_FORMAT, Options.IF_NONE_MATCH, version));
+					observer.onError(MessageType.READ, resourcePattern, MessageType.BAD_REQUEST);
+					return;
+				}
+				if (!credentials.canRead(resourcePattern)) {
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (resourcePattern.isPattern()) {
+					resources.visit(resourcePattern, new ConcurrentResourceTrie.Visitor<T>() {
+						@Override
+						public void visit(Resource res, T current) throws IOException {
+							if (knownVersion == Data.NO_VERSION || getVersion(current) > knownVersion) {
+								Data data = load(res, current);
+								if (data != null) {
+									observer.onData(MessageType.READ, resourcePattern, Reason.INITIAL, res, data);
+								}
+							}
+						}
+					});
+					observer.onSuccess(MessageType.READ, resourcePattern);
+				} else {
+					T current = resources.get(resourcePattern);
+					if (knownVersion != Data.NO_VERSION && current != null && getVersion(current) == knownVersion) {
+						observer.onData(MessageType.READ, resourcePattern, Reason.NOT_MODIFIED, resourcePattern, null);
+						observer.onSuccess(MessageType.READ, resourcePattern);
+						return;
+					}
+					Data data = current == null ? null : load(resourcePattern, current);
+					if (data == null) {
+						error(MessageType.NOT_FOUND, RESOURCE_NOT_FOUND_FORMAT);
+					} else {
+						observer.onData(MessageType.READ, resourcePattern, Reason.INITIAL, resourcePattern, data);
+						observer.onSuccess(MessageType.READ, resourcePattern);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#subscribe(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Observer)
+	 */
+	@Override
+	public void subscribe(Credentials credentials, Resource resourcePattern, Observer observer) {
+		subscribe(credentials, resourcePattern, observer, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#subscribeStatus(org.arx.Credentials,
+	 * org.arx.Resource, org.arx.Observer)
+	 */
+	@Override
+	public void subscribeStatus(Credentials credentials, Resource resourcePattern, Observer observer) {
+		subscribe(credentials, resourcePattern, observer, true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#unsubscribe(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Observer)
+	 */
+	@Override
+	public void unsubscribe(Credentials credentials, final Resource resourcePattern, final Observer observer) {
+		executor.execute(new Request(MessageType.UNSUBSCRIBE, resourcePattern, observer) {
+			@Override
+			protected void execute() throws IOException {
+				SubscriptionObserver sub = subscriptions
+						.unsubscribe(new SubscriptionObserver(null, observer, resourcePattern, false));
+				if (sub != null) {
+					observer.onSuccess(MessageType.UNSUBSCRIBE, resourcePattern);
+					sub.onSuccess(sub.getRequest(), sub.getResourcePattern());
+				} else {
+					observer.onError(MessageType.UNSUBSCRIBE, resourcePattern, MessageType.NOT_FOUND);
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#unsubscribeAll(org.arx.Credentials,
+	 * org.arx.Observer)
+	 */
+	@Override
+	public void unsubscribeAll(Credentials credentials, final Observer observer) {
+		executor.execute(new Request(MessageType.UNSUBSCRIBE_ALL, null, observer) {
+			@Override
+			protected void execute() throws IOException {
+				Set<SubscriptionObserver> subs = subscriptions.unsubscribeAll(observer);
+				observer.onSuccess(MessageType.UNSUBSCRIBE_ALL, null);
+				for (SubscriptionObserver sub : subs) {
+					sub.onSuccess(sub.getRequest(), sub.getResourcePattern());
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.arx.Endpoint#disconnect(org.arx.Observer)
+	 */
+	@Override
+	public void disconnect(Observer observer) {
+		Set<SubscriptionObserver> subs = subscriptions.unsubscribeAll(observer);
+		LOGGER.debug(String.format(DISCONNECT_FORMAT, subs.size()));
+	}
+
+	private void subscribe(final Credentials credentials, final Resource resourcePattern, Observer observer,
+			final boolean readStatus) {
+		final SubscriptionObserver subscription = new SubscriptionObserver(credentials, observer, resourcePattern,
+				readStatus);
+		if (readStatus) {
+			subscription.startBuffering();
+		}
+		subscriptions.subscribe(subscription);
+		executor.execute(new Request(subscription.getRequest(), resourcePattern, subscription) {
+			@Override
+			protected void execute() throws IOException {
+				if (!credentials.canRead(resourcePattern)) {
+					subscriptions.unsubscribe(subscription);
+					error(MessageType.FORBIDDEN, FORBIDDEN_FORMAT);
+				} else if (readStatus) {
+					try {
+						resources.visit(resourcePattern, new ConcurrentResourceTrie.Visitor<T>() {
+							@Override
+							public void visit(Resource res, T current) throws IOException {
+								Data data = load(res, current);
+								if (data != null) {
+									subscription.onData(subscription.getRequest(), resourcePattern, Reason.INITIAL,
+											res, data);
+								}
+							}
+						});
+					} finally {
+						subscription.stopBuffering();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stores the specified data with a new version. Must be called while
+	 * holding the lock for the resource.
+	 */
+	private Data put(Resource resource, Data data) throws IOException {
+		Data value = new ByteArrayData(data.getMimeType(), data.getContent(), versions.incrementAndGet());
+		resources.put(resource, store(resource, value));
+		return value;
+	}
+
+	private boolean remove(Resource resource) throws IOException {
+		synchronized (getLock(resource)) {
+			T old = resources.remove(resource);
+			if (old == null) {
+				return false;
+			}
+			erase(resource, old);
+			return true;
+		}
+	}
+
+	private void notifySubscribers(Resource resource, Reason reason, Data data) {
+		for (SubscriptionObserver sub : subscriptions.match(resource)) {
+			if (sub.getCredentials().canRead(resource)) {
+				try {
+					Data copy = data == null ? null
+							: new ByteArrayData(data.getMimeType(), data.getContent(), data.getVersion());
+					sub.onData(sub.getRequest(), sub.getResourcePattern(), reason, resource, copy);
+				} catch (IOException e) {
+					LOGGER.error(String.format(SEND_ERROR_FORMAT, resource), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A request of a trie backend. It sends an INTERNAL_SERVER_ERROR response
+	 * to its observer, if the backend cannot store or load data.
+	 */
+	private abstract static class Request implements Runnable {
+		private MessageType request;
+		private Resource resource;
+		private Observer observer;
+
+		/**
+		 * Creates a request for the specified parameters.
+		 *
+		 * @param request
+		 *            the request type
+		 * @param resource
+		 *            the resource or resource pattern of the request
+		 * @param observer
+		 *            the observer that is used for the response messages
+		 */
+		public Request(MessageType request, Resource resource, Observer observer) {
+			this.request = request;
+			this.resource = resource;
+			this.observer = observer;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			try {
+				execute();
+			} catch (IOException e) {
+				LOGGER.error(String.format(REQUEST_ERROR_FORMAT, resource), e);
+				try {
+					observer.onError(request, resource, MessageType.INTERNAL_SERVER_ERROR);
+				} catch (IOException e1) {
+					LOGGER.error(String.format(SEND_ERROR_FORMAT, resource), e1);
+				}
+			}
+		}
+
+		/**
+		 * Executes the request.
+		 *
+		 * @throws IOException
+		 *             if an IO error occurs while executing the request
+		 */
+		protected abstract void execute() throws IOException;
+
+		/**
+		 * Logs an error and sends the specified error response to the
+		 * observer.
+		 *
+		 * @param status
+		 *            the error code of the response
+		 * @param format
+		 *            the format of the log message
+		 * @throws IOException
+		 *             if an IO error occurs while sending the response
+		 */
+		protected void error(MessageType status, String format) throws IOException {
+			LOGGER.error(String.format(format, resource));
+			observer.onError(request, resource, status);
+		}
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains classes that implement an in-memory implementation of a resource
+ * backend.
+ */
+package org.arx.backend.memory;
\ No newline at end of file
@@ -128,6 +128,9 @@
  * </pre>
  * 
  * an ARX server with a file system backend and a TCP server (listening to port
- * 6789) will be created and started.
+ * 6789) will be created and started. Ephemeral resources that do not need to
+ * be stored in the file system can be served by the in-memory backend
+ * org.arx.backend.memory.InMemoryFactory instead. Millions of small resources
+ * can be served by the log-structured backend org.arx.backend.log.LogFactory.
  */
 package org.arx;
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,7 +17,9 @@ import org.arx.Endpoint;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.Observer;
+import org.arx.Options;
 import org.arx.MessageType;
+import org.arx.util.Delta;
 import org.arx.util.Header;
 import org.arx.util.Message;
 import org.arx.util.RequestMessage;
@@ -25,12 +28,21 @@ import org.arx.util.ResponseMessage;
 
 /**
  * An ARX application can use a TCP client to access an ARX server via TCP.
+ * <p>
+ * Delta-encoded notifications of subscriptions with the option
+ * {@link Options#DELTA} are applied transparently: the client keeps the last
+ * content of every resource of these subscriptions and delivers the result of
+ * a delta with the reason {@link Reason#UPDATED}. If a delta cannot be
+ * applied, the subscription is cancelled and its observer is notified with the
+ * error code OUT_OF_SYNC.
  */
 public class TcpClient implements Endpoint {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TcpClient.class);
 	private static final String AUTHORIZATION = "Authorization";
 	private static final String PROTOCOL_ERROR = "Protocol error while receiving an observer message";
+	private static final String DELTA_ERROR_FORMAT = "Cannot apply delta of resource %2$s to subscription %1$s";
 	private Map<RequestResource, Observer> responses;
+	private Map<RequestResource, Map<Resource, byte[]>> contents;
 	private Socket socket;
 
 	/**
@@ -48,6 +60,7 @@ public class TcpClient implements Endpoint {
 	 */
 	public TcpClient(String host, int port) throws UnknownHostException, IOException {
 		this.responses = new HashMap<RequestResource, Observer>();
+		this.contents = new ConcurrentHashMap<RequestResource, Map<Resource, byte[]>>();
 		this.socket = new Socket(host, port);
 
 	}
@@ -97,6 +110,30 @@ public class TcpClient implements Endpoint {
 		writeRequest(credentials,MessageType.SAVE, observer, resourcePattern, data);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#patch(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void patch(Credentials credentials, Resource resource, Data patch, Map<String, String> options,
+			Observer observer) throws IOException {
+		writeRequest(credentials, MessageType.PATCH, observer, resource, patch, options);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#append(org.arx.Credentials, org.arx.Resource,
+	 * org.arx.Data, org.arx.Observer)
+	 */
+	@Override
+	public void append(Credentials credentials, Resource resource, Data data, Observer observer)
+			throws IOException {
+		writeRequest(credentials, MessageType.APPEND, observer, resource, data);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -119,6 +156,18 @@ public class TcpClient implements Endpoint {
 		writeRequest(credentials,MessageType.READ, observer, resourcePattern, null);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#read(org.arx.Credentials, org.arx.Resource,
+	 * java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void read(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) throws IOException {
+		writeRequest(credentials, MessageType.READ, observer, resourcePattern, null, options);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -130,6 +179,25 @@ public class TcpClient implements Endpoint {
 		writeRequest(credentials,MessageType.SUBSCRIBE, observer, resourcePattern, null);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Endpoint#subscribe(org.arx.Credentials, org.arx.Resource,
+	 * java.util.Map, org.arx.Observer)
+	 */
+	@Override
+	public void subscribe(Credentials credentials, Resource resourcePattern, Map<String, String> options,
+			Observer observer) throws IOException {
+		Header header = new Header();
+		if (options != null) {
+			header.putAll(options);
+		}
+		if (header.containsKey(Options.DELTA)) {
+			contents.put(new RequestResource(MessageType.SUBSCRIBE, resourcePattern), new HashMap<Resource, byte[]>());
+		}
+		writeRequest(credentials, MessageType.SUBSCRIBE, observer, resourcePattern, null, options);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -184,18 +252,35 @@ public class TcpClient implements Endpoint {
 				Observer observer = null;
 				switch (response) {
 				case SUCCESS:
+					// Notifications may arrive until the subscription is
+					// terminated, so the kept contents are removed here
+					contents.remove(new RequestResource(request, resource));
 					observer = responses.remove(new RequestResource(request, resource));
 					if (observer != null) {
 						observer.onSuccess(request, resource, affectedResources);
 					}
 					break;
 				case DATA:
-					observer = responses.get(new RequestResource(request, resource));
-					if (observer != null) {
-						observer.onData(request, resource, reason, affectedResource, data);
+					RequestResource key = new RequestResource(request, resource);
+					observer = responses.get(key);
+					if (observer == null) {
+						break;
+					}
+					if (keepContent(key, reason, affectedResource, data)) {
+						observer.onData(request, resource, reason == Reason.DELTA ? Reason.UPDATED : reason,
+								affectedResource, data, message.getSequence());
+					} else {
+						// The subscription cannot be continued without the
+						// content the delta belongs to
+						LOGGER.error(String.format(DELTA_ERROR_FORMAT, resource, affectedResource));
+						responses.remove(key);
+						contents.remove(key);
+						writeRequest(null, MessageType.UNSUBSCRIBE, null, resource, null);
+						observer.onError(request, resource, MessageType.OUT_OF_SYNC);
 					}
 					break;
 				default:
+					contents.remove(new RequestResource(request, resource));
 					observer = responses.remove(new RequestResource(request, resource));
 					if (observer != null) {
 						observer.onError(request, resource, response);
@@ -212,11 +297,50 @@ public class TcpClient implements Endpoint {
 
 	}
 
+	/**
+	 * Keeps the content of a data message of a subscription with
+	 * delta-encoded notifications and replaces the delta of a message with
+	 * the reason DELTA by the new content.
+	 * 
+	 * @return false, if the message contains a delta that cannot be applied
+	 */
+	private boolean keepContent(RequestResource key, Reason reason, Resource affectedResource, Data data) {
+		Map<Resource, byte[]> kept = contents.get(key);
+		if (kept == null) {
+			return reason != Reason.DELTA;
+		}
+		if (data == null) {
+			kept.remove(affectedResource);
+			return true;
+		}
+		if (reason == Reason.DELTA) {
+			byte[] previous = kept.get(affectedResource);
+			if (previous == null) {
+				return false;
+			}
+			try {
+				data.setContent(Delta.apply(previous, data.getContent()));
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+		kept.put(affectedResource, data.getContent());
+		return true;
+	}
+
 	private void writeRequest(Credentials credentials,MessageType request, Observer observer, Resource resource, Data data) throws IOException {
+		writeRequest(credentials, request, observer, resource, data, null);
+	}
+
+	private void writeRequest(Credentials credentials, MessageType request, Observer observer, Resource resource,
+			Data data, Map<String, String> options) throws IOException {
 		if (observer != null) {
 			responses.put(new RequestResource(request, resource), observer);
 		}
 		Header header = new Header();
+		if (options != null) {
+			header.putAll(options);
+		}
 		if ( credentials != null ) {
 			header.put(AUTHORIZATION, credentials.serialize());
 		}
@@ -1,6 +1,7 @@
 package org.arx.protocol.tcp;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.Executor;
@@ -21,6 +22,7 @@ public class TcpServer implements Server {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TcpServer.class);
 	private static final String ACCEPT_ERROR = "Error during ServerSocket.accept()";
 	private static final String PORT_FORMAT = "ARX-TcpServer now listening on port %1$s";
+	private static final String ACCEPT_FORMAT = "ARX-TcpServer accepting connections %1$d ms after start of the JVM";
 	private Executor executor;
 	private ServerSocket serverSocket;
 	private Endpoint backend;
@@ -52,6 +54,8 @@ public class TcpServer implements Server {
 	 */
 	@Override
 	public void run() {
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		LOGGER.info(String.format(ACCEPT_FORMAT, uptime));
 		while (true) {
 			try {
 				Socket socket = serverSocket.accept();
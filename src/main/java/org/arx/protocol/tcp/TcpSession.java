@@ -14,6 +14,7 @@ import org.arx.Resource;
 import org.arx.Observer;
 import org.arx.MessageType;
 import org.arx.util.Configuration;
+import org.arx.util.Header;
 import org.arx.util.Message;
 import org.arx.util.RequestMessage;
 import org.arx.util.ResponseMessage;
@@ -79,7 +80,23 @@ public class TcpSession implements Observer, Runnable {
 	@Override
 	public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data)
 			throws IOException {
-		ResponseMessage message = new ResponseMessage(null, MessageType.DATA, request, resource, reason, data,
+		onData(request, resource, reason, affectedResource, data, NO_SEQUENCE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Observer#onData(org.arx.MessageType, org.arx.Resource,
+	 * org.arx.Reason, org.arx.Resource, org.arx.Data, long)
+	 */
+	@Override
+	public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data,
+			long sequence) throws IOException {
+		Header header = new Header();
+		if (sequence != NO_SEQUENCE) {
+			header.put(Message.SEQUENCE_FIELD, Long.toString(sequence));
+		}
+		ResponseMessage message = new ResponseMessage(header, MessageType.DATA, request, resource, reason, data,
 				affectedResource);
 		// Write message to TCP output stream
 		OutputStream out = socket.getOutputStream();
@@ -129,14 +146,20 @@ public class TcpSession implements Observer, Runnable {
 				case SAVE:
 					backend.save(credentials, resource, data, this);
 					break;
+				case PATCH:
+					backend.patch(credentials, resource, data, message.getHeader(), this);
+					break;
+				case APPEND:
+					backend.append(credentials, resource, data, this);
+					break;
 				case DELETE:
 					backend.delete(credentials, resource, this);
 					break;
 				case READ:
-					backend.read(credentials, resource, this);
+					backend.read(credentials, resource, message.getHeader(), this);
 					break;
 				case SUBSCRIBE:
-					backend.subscribe(credentials, resource, this);
+					backend.subscribe(credentials, resource, message.getHeader(), this);
 					break;
 				case UNSUBSCRIBE:
 					backend.unsubscribe(credentials, resource, this);
@@ -155,8 +178,14 @@ public class TcpSession implements Observer, Runnable {
 		} catch (IOException | IllegalArgumentException | SignatureVerificationException | TokenExpiredException
 				| JWTDecodeException | NoSuchAlgorithmException e) {
 			LOGGER.error("Error occurred during execution of a request", e);
+		} finally {
+			// The subscriptions of a closed session can never be notified again
+			try {
+				backend.disconnect(this);
+			} catch (IOException e) {
+				LOGGER.error("Error occurred while removing the subscriptions of the session", e);
+			}
 		}
-
 	}
 
 	private void ping() throws IOException {
@@ -8,6 +8,7 @@ import org.arx.Data;
 public class ByteArrayData implements Data {
 	private String mimeType;
 	private byte[] content;
+	private long version;
 
 	/**
 	 * Constructs a byte array for the specified mime type and content.
@@ -22,6 +23,21 @@ public class ByteArrayData implements Data {
 		setContent(content);
 	}
 
+	/**
+	 * Constructs a byte array for the specified mime type, content and version.
+	 * 
+	 * @param mimeType
+	 *            mime type for this data object
+	 * @param content
+	 *            content for this data object
+	 * @param version
+	 *            version of the resource this data object belongs to
+	 */
+	public ByteArrayData(String mimeType, byte[] content, long version) {
+		this(mimeType, content);
+		setVersion(version);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -66,4 +82,24 @@ public class ByteArrayData implements Data {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Data#getVersion()
+	 */
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.arx.Data#setVersion(long)
+	 */
+	@Override
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 }
@@ -0,0 +1,370 @@
+package org.arx.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.arx.Resource;
+
+/**
+ * A thread-safe object that maps resources to values. The resources are stored
+ * in a trie with one node per level, so that all resources matching a resource
+ * pattern can be found without examining unrelated resources. The characters +
+ * and # are treated as wildcards when resources are visited (+ is a single
+ * level wildcard, # is a multi-level-wildcard).
+ * <p>
+ * Reading a value never blocks. Modifications of a value lock only the node of
+ * the resource. Nodes that neither contain a value nor children are removed
+ * from the trie, so that the trie does not grow with resources that have been
+ * removed.
+ *
+ * @param <T>
+ *            the type of a value
+ */
+public class ConcurrentResourceTrie<T> {
+	private final Node<T> root;
+	private final AtomicInteger size;
+
+	/**
+	 * Constructs an empty resource trie.
+	 */
+	public ConcurrentResourceTrie() {
+		root = new Node<T>(null, null);
+		size = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the number of resources of this trie.
+	 *
+	 * @return the number of resources of this trie
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Returns the value of the specified resource or null, if the resource is
+	 * not contained in this trie.
+	 *
+	 * @param resource
+	 *            the resource whose value is to be returned
+	 * @return the value of the specified resource or null
+	 */
+	public T get(Resource resource) {
+		Node<T> node = find(resource);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * Associates the specified value with the specified resource.
+	 *
+	 * @param resource
+	 *            the resource with which the specified value is to be
+	 *            associated
+	 * @param value
+	 *            the value to be associated with the resource
+	 * @return the previous value of the resource or null, if there was no
+	 *         value
+	 */
+	public T put(Resource resource, T value) {
+		while (true) {
+			Node<T> node = create(resource);
+			synchronized (node) {
+				if (!node.removed) {
+					return set(node, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Associates the specified value with the specified resource, if the
+	 * resource does not have a value yet.
+	 *
+	 * @param resource
+	 *            the resource with which the specified value is to be
+	 *            associated
+	 * @param value
+	 *            the value to be associated with the resource
+	 * @return the current value of the resource or null, if the specified value
+	 *         has been associated with the resource
+	 */
+	public T putIfAbsent(Resource resource, T value) {
+		while (true) {
+			Node<T> node = create(resource);
+			synchronized (node) {
+				if (!node.removed) {
+					if (node.value != null) {
+						return node.value;
+					}
+					return set(node, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the value of the specified resource, if it currently is the
+	 * expected value. Values are compared by identity.
+	 *
+	 * @param resource
+	 *            the resource whose value is to be replaced
+	 * @param expected
+	 *            the value the resource is expected to have
+	 * @param value
+	 *            the new value of the resource
+	 * @return true, if the value has been replaced, false otherwise
+	 */
+	public boolean replace(Resource resource, T expected, T value) {
+		Node<T> node = find(resource);
+		if (node == null) {
+			return false;
+		}
+		synchronized (node) {
+			if (node.removed || node.value != expected) {
+				return false;
+			}
+			set(node, value);
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the value of the specified resource.
+	 *
+	 * @param resource
+	 *            the resource whose value is to be removed
+	 * @return the removed value or null, if the resource had no value
+	 */
+	public T remove(Resource resource) {
+		Node<T> node = find(resource);
+		if (node == null) {
+			return null;
+		}
+		T old;
+		synchronized (node) {
+			old = set(node, null);
+		}
+		prune(node);
+		return old;
+	}
+
+	/**
+	 * Removes the value of the specified resource, if it currently is the
+	 * expected value. Values are compared by identity.
+	 *
+	 * @param resource
+	 *            the resource whose value is to be removed
+	 * @param expected
+	 *            the value the resource is expected to have
+	 * @return true, if the value has been removed, false otherwise
+	 */
+	public boolean remove(Resource resource, T expected) {
+		Node<T> node = find(resource);
+		if (node == null) {
+			return false;
+		}
+		synchronized (node) {
+			if (node.removed || node.value != expected) {
+				return false;
+			}
+			set(node, null);
+		}
+		prune(node);
+		return true;
+	}
+
+	/**
+	 * Visits all resources that match the specified resource pattern and have
+	 * a value. The resources are visited in lexicographic order of their
+	 * levels, where a resource is visited before the resources below it.
+	 * Modifications that take place during the visit may or may not be seen.
+	 *
+	 * @param resourcePattern
+	 *            the resource pattern
+	 * @param visitor
+	 *            the visitor to be called for every matching resource
+	 * @throws IOException
+	 *             if the visitor throws an IO exception
+	 */
+	public void visit(Resource resourcePattern, Visitor<T> visitor) throws IOException {
+		visit(root, resourcePattern.getLevels(), 0, new String[0], true, visitor);
+	}
+
+	/**
+	 * Visits all resources that match the specified resource pattern. Unlike
+	 * {@link #visit(Resource, Visitor)}, all levels of the resource pattern
+	 * that are not wildcards are visited, whether they exist or not. Thus,
+	 * wildcards are only expanded with existing levels and the visitor
+	 * receives null as value for resources without value. A multi-level
+	 * wildcard only matches resources that have a value.
+	 *
+	 * @param resourcePattern
+	 *            the resource pattern
+	 * @param visitor
+	 *            the visitor to be called for every matching resource
+	 * @throws IOException
+	 *             if the visitor throws an IO exception
+	 */
+	public void visitAll(Resource resourcePattern, Visitor<T> visitor) throws IOException {
+		visit(root, resourcePattern.getLevels(), 0, new String[0], false, visitor);
+	}
+
+	private void visit(Node<T> node, String[] pattern, int part, String[] levels, boolean onlyExisting,
+			Visitor<T> visitor) throws IOException {
+		if (part == pattern.length) {
+			T value = node == null ? null : node.value;
+			if (value != null || !onlyExisting) {
+				visitor.visit(new SimpleResource(levels), value);
+			}
+			return;
+		}
+		String level = pattern[part];
+		if (Resource.MULTI_LEVEL_WILDCARD.equals(level)) {
+			if (node != null) {
+				visitDescendants(node, levels, visitor);
+			}
+		} else if (Resource.SINGLE_LEVEL_WILDCARD.equals(level)) {
+			if (node != null) {
+				for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
+					visit(entry.getValue(), pattern, part + 1, append(levels, entry.getKey()), onlyExisting,
+							visitor);
+				}
+			}
+		} else {
+			Node<T> child = node == null ? null : node.children.get(level);
+			if (child != null || !onlyExisting) {
+				visit(child, pattern, part + 1, append(levels, level), onlyExisting, visitor);
+			}
+		}
+	}
+
+	private void visitDescendants(Node<T> node, String[] levels, Visitor<T> visitor) throws IOException {
+		for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
+			String[] childLevels = append(levels, entry.getKey());
+			Node<T> child = entry.getValue();
+			T value = child.value;
+			if (value != null) {
+				visitor.visit(new SimpleResource(childLevels), value);
+			}
+			visitDescendants(child, childLevels, visitor);
+		}
+	}
+
+	private static String[] append(String[] levels, String level) {
+		String[] result = Arrays.copyOf(levels, levels.length + 1);
+		result[levels.length] = level;
+		return result;
+	}
+
+	private T set(Node<T> node, T value) {
+		T old = node.value;
+		node.value = value;
+		if (old == null && value != null) {
+			size.incrementAndGet();
+		} else if (old != null && value == null) {
+			size.decrementAndGet();
+		}
+		return old;
+	}
+
+	private Node<T> find(Resource resource) {
+		Node<T> node = root;
+		for (String level : resource.getLevels()) {
+			node = node.children.get(level);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	private Node<T> create(Resource resource) {
+		retry: while (true) {
+			Node<T> node = root;
+			for (String level : resource.getLevels()) {
+				Node<T> child = node.children.get(level);
+				if (child == null) {
+					synchronized (node) {
+						if (node.removed) {
+							continue retry;
+						}
+						child = node.children.get(level);
+						if (child == null) {
+							child = new Node<T>(node, level);
+							node.children.put(level, child);
+						}
+					}
+				}
+				node = child;
+			}
+			return node;
+		}
+	}
+
+	private void prune(Node<T> node) {
+		while (node.parent != null) {
+			Node<T> parent = node.parent;
+			synchronized (parent) {
+				synchronized (node) {
+					if (node.removed || node.value != null || !node.children.isEmpty()) {
+						return;
+					}
+					node.removed = true;
+					parent.children.remove(node.level, node);
+				}
+			}
+			node = parent;
+		}
+	}
+
+	/**
+	 * A visitor of the resources of a trie.
+	 *
+	 * @param <T>
+	 *            the type of a value
+	 */
+	public interface Visitor<T> {
+		/**
+		 * Visits a resource.
+		 *
+		 * @param resource
+		 *            the visited resource
+		 * @param value
+		 *            the value of the resource
+		 * @throws IOException
+		 *             if an IO error occurs
+		 */
+		void visit(Resource resource, T value) throws IOException;
+	}
+
+	/**
+	 * A node of the trie that represents one level of a resource.
+	 *
+	 * @param <T>
+	 *            the type of a value
+	 */
+	private static class Node<T> {
+		private final Node<T> parent;
+		private final String level;
+		private final Map<String, Node<T>> children;
+		private volatile T value;
+		private boolean removed;
+
+		/**
+		 * Creates a node for the specified parameters.
+		 *
+		 * @param parent
+		 *            the parent node or null for the root node
+		 * @param level
+		 *            the level that is represented by this node
+		 */
+		public Node(Node<T> parent, String level) {
+			this.parent = parent;
+			this.level = level;
+			this.children = new ConcurrentSkipListMap<String, Node<T>>();
+		}
+	}
+}
@@ -135,6 +135,56 @@ public class Configuration implements Runnable {
 		return parameters.get(key);
 	}
 
+	/**
+	 * Retrieves the parameter value for the specified parameter key. The
+	 * parameter is searched in the specified parameters first and then in the
+	 * configuration.
+	 * 
+	 * @param parameters
+	 *            parameters that take precedence over the configuration or
+	 *            null
+	 * @param key
+	 *            the parameter key to be searched for
+	 * @return the parameter value associated to key or null if no value is
+	 *         associated to key
+	 */
+	public String getParameter(Map<String, String> parameters, String key) {
+		String value = null;
+		if (parameters != null) {
+			value = parameters.get(key);
+		}
+		if (value == null) {
+			value = getParameter(key);
+		}
+		return value;
+	}
+
+	/**
+	 * Retrieves the integer value for the specified parameter key. The
+	 * parameter is searched in the specified parameters first and then in the
+	 * configuration.
+	 * 
+	 * @param parameters
+	 *            parameters that take precedence over the configuration or
+	 *            null
+	 * @param key
+	 *            the parameter key to be searched for
+	 * @param defaultValue
+	 *            the value to be returned, if no value is associated to key
+	 * @return the integer value associated to key or defaultValue, if no value
+	 *         is associated to key
+	 * @throws NumberFormatException
+	 *             if the parameter value is not a valid integer
+	 */
+	public int getIntParameter(Map<String, String> parameters, String key, int defaultValue)
+			throws NumberFormatException {
+		String value = getParameter(parameters, key);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Integer.decode(value.trim());
+	}
+
 	/**
 	 * Creates a factory for backend-specific objects. The class to be used for
 	 * the creation is specified with the parameter named "backendFactory" in
@@ -0,0 +1,502 @@
+package org.arx.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A content filter is a compiled predicate on the content of a resource. An
+ * expression is compiled once (see {@link #compile(String)}) and the compiled
+ * filter can be applied to any number of contents without allocating memory
+ * (see {@link #matches(byte[])}). Two kinds of expressions are supported:
+ * <ul>
+ * <li>A comparison of the value at a JSON pointer (RFC 6901) with a JSON
+ * literal, for example <code>/temperature &gt; 30</code> or
+ * <code>/state == "on"</code>. The operators ==, !=, &lt;, &lt;=, &gt; and
+ * &gt;= are supported. Numbers are compared numerically, strings byte by byte
+ * as they are written in the content and true, false and null only by ==
+ * and !=. A value of a different type only matches the operator !=. If the
+ * pointer does not exist or the content is not valid JSON, the content does
+ * not match. The pointer must not contain white space or the characters =,
+ * !, &lt; and &gt;.</li>
+ * <li>A prefix match, for example <code>starts-with "ERROR"</code>. The
+ * content matches, if it starts with the UTF-8 bytes of the JSON string.</li>
+ * </ul>
+ * The content is scanned and not parsed, so that members of objects are
+ * found by comparing their names as they are written in the content.
+ */
+public abstract class ContentFilter {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String PREFIX_KEYWORD = "starts-with";
+	private static final String[] OPERATORS = { "==", "!=", "<=", ">=", "<", ">" };
+	private static final String SYNTAX_ERROR_FORMAT = "Illegal content filter %1$s";
+	private static final String LITERAL_ERROR_FORMAT = "Illegal literal %2$s in content filter %1$s";
+	private static final String POINTER_ERROR_FORMAT = "Illegal JSON pointer %2$s in content filter %1$s";
+	private static final int EQUAL = 0;
+	private static final int NOT_EQUAL = 1;
+	private static final int LESS_OR_EQUAL = 2;
+	private static final int GREATER_OR_EQUAL = 3;
+	private static final int LESS = 4;
+	// Powers of ten that are exactly representable as doubles
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private final String expression;
+
+	private ContentFilter(String expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * Compiles the specified expression into a content filter.
+	 *
+	 * @param expression
+	 *            the expression to be compiled
+	 * @return the compiled content filter
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	public static ContentFilter compile(String expression) throws IllegalArgumentException {
+		String text = expression.trim();
+		if (text.startsWith(PREFIX_KEYWORD)) {
+			String literal = text.substring(PREFIX_KEYWORD.length()).trim();
+			JsonNode value = parseLiteral(expression, literal);
+			if (!value.isTextual()) {
+				throw new IllegalArgumentException(String.format(LITERAL_ERROR_FORMAT, expression, literal));
+			}
+			return new PrefixFilter(expression, value.textValue().getBytes(StandardCharsets.UTF_8));
+		}
+		int end = 0;
+		while (end < text.length() && " \t=!<>".indexOf(text.charAt(end)) < 0) {
+			++end;
+		}
+		String pointer = text.substring(0, end);
+		String rest = text.substring(end).trim();
+		for (int operator = 0; operator < OPERATORS.length; ++operator) {
+			if (rest.startsWith(OPERATORS[operator])) {
+				String literal = rest.substring(OPERATORS[operator].length()).trim();
+				return new PointerFilter(expression, parsePointer(expression, pointer), operator,
+						parseLiteral(expression, literal), literal);
+			}
+		}
+		throw new IllegalArgumentException(String.format(SYNTAX_ERROR_FORMAT, expression));
+	}
+
+	/**
+	 * Returns true, if the specified content matches this filter.
+	 *
+	 * @param content
+	 *            the content of a resource
+	 * @return true, if the content matches this filter
+	 */
+	public abstract boolean matches(byte[] content);
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	private static JsonNode parseLiteral(String expression, String literal) {
+		try {
+			JsonNode value = MAPPER.readTree(literal);
+			if (value == null || value.isMissingNode() || value.isContainerNode()) {
+				throw new IllegalArgumentException(String.format(LITERAL_ERROR_FORMAT, expression, literal));
+			}
+			return value;
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(String.format(LITERAL_ERROR_FORMAT, expression, literal), e);
+		} catch (IOException e) {
+			// Strings cannot cause other IO errors
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String[] parsePointer(String expression, String pointer) {
+		if (pointer.isEmpty()) {
+			return new String[0];
+		}
+		if (!pointer.startsWith("/")) {
+			throw new IllegalArgumentException(String.format(POINTER_ERROR_FORMAT, expression, pointer));
+		}
+		String[] tokens = pointer.substring(1).split("/", -1);
+		for (int i = 0; i < tokens.length; ++i) {
+			tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+		}
+		return tokens;
+	}
+
+	/**
+	 * A filter that matches contents that start with a sequence of bytes.
+	 */
+	private static final class PrefixFilter extends ContentFilter {
+		private final byte[] prefix;
+
+		/**
+		 * Creates a prefix filter.
+		 *
+		 * @param expression
+		 *            the expression of the filter
+		 * @param prefix
+		 *            the bytes a matching content starts with
+		 */
+		PrefixFilter(String expression, byte[] prefix) {
+			super(expression);
+			this.prefix = prefix;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.arx.util.ContentFilter#matches(byte[])
+		 */
+		@Override
+		public boolean matches(byte[] content) {
+			if (content.length < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; ++i) {
+				if (content[i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A filter that compares the value at a JSON pointer with a literal.
+	 */
+	private static final class PointerFilter extends ContentFilter {
+		private final byte[][] names;
+		private final int[] indexes;
+		private final int operator;
+		private final boolean number;
+		private final double numberValue;
+		// The literal as it is written (strings without quotes)
+		private final byte[] literal;
+		private final byte first;
+
+		/**
+		 * Creates a pointer filter.
+		 *
+		 * @param expression
+		 *            the expression of the filter
+		 * @param tokens
+		 *            the unescaped reference tokens of the JSON pointer
+		 * @param operator
+		 *            the index of the comparison operator
+		 * @param value
+		 *            the parsed literal
+		 * @param text
+		 *            the literal as it is written in the expression
+		 */
+		PointerFilter(String expression, String[] tokens, int operator, JsonNode value, String text) {
+			super(expression);
+			this.names = new byte[tokens.length][];
+			this.indexes = new int[tokens.length];
+			for (int i = 0; i < tokens.length; ++i) {
+				names[i] = tokens[i].getBytes(StandardCharsets.UTF_8);
+				indexes[i] = parseIndex(tokens[i]);
+			}
+			this.operator = operator;
+			this.number = value.isNumber();
+			this.numberValue = value.asDouble();
+			if (value.isTextual()) {
+				text = text.substring(1, text.length() - 1);
+			} else if (!number && operator != EQUAL && operator != NOT_EQUAL) {
+				throw new IllegalArgumentException(String.format(SYNTAX_ERROR_FORMAT, expression));
+			}
+			this.literal = text.getBytes(StandardCharsets.UTF_8);
+			this.first = value.isTextual() ? (byte) '"' : literal[0];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.arx.util.ContentFilter#matches(byte[])
+		 */
+		@Override
+		public boolean matches(byte[] content) {
+			int position = skipWhitespace(content, 0);
+			for (int i = 0; i < names.length && position >= 0; ++i) {
+				if (position >= content.length) {
+					return false;
+				}
+				if (content[position] == '{') {
+					position = findMember(content, position, names[i]);
+				} else if (content[position] == '[' && indexes[i] >= 0) {
+					position = findElement(content, position, indexes[i]);
+				} else {
+					return false;
+				}
+			}
+			if (position < 0 || position >= content.length) {
+				return false;
+			}
+			return compare(content, position);
+		}
+
+		private boolean compare(byte[] content, int position) {
+			byte type = content[position];
+			if (number && (type == '-' || (type >= '0' && type <= '9'))) {
+				int end = skipLiteral(content, position);
+				double value = parseNumber(content, position, end);
+				return !Double.isNaN(value) && evaluate(Double.compare(value, numberValue));
+			}
+			if (number || (type == '"') != (first == '"')) {
+				return operator == NOT_EQUAL;
+			}
+			int start = position;
+			int end;
+			if (type == '"') {
+				++start;
+				end = endOfString(content, position);
+			} else {
+				end = skipLiteral(content, position);
+			}
+			if (end < 0) {
+				return false;
+			}
+			return evaluate(compareBytes(content, start, end, literal));
+		}
+
+		private boolean evaluate(int comparison) {
+			switch (operator) {
+			case EQUAL:
+				return comparison == 0;
+			case NOT_EQUAL:
+				return comparison != 0;
+			case LESS_OR_EQUAL:
+				return comparison <= 0;
+			case GREATER_OR_EQUAL:
+				return comparison >= 0;
+			case LESS:
+				return comparison < 0;
+			default:
+				return comparison > 0;
+			}
+		}
+
+		private static int parseIndex(String token) {
+			if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+				return -1;
+			}
+			int index = 0;
+			for (int i = 0; i < token.length(); ++i) {
+				char c = token.charAt(i);
+				if (c < '0' || c > '9') {
+					return -1;
+				}
+				index = index * 10 + c - '0';
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Returns the position of the value of the member with the specified name
+	 * of the object at the specified position.
+	 */
+	private static int findMember(byte[] content, int position, byte[] name) {
+		position = skipWhitespace(content, position + 1);
+		if (position < content.length && content[position] == '}') {
+			return -1;
+		}
+		while (position >= 0 && position < content.length && content[position] == '"') {
+			int end = endOfString(content, position);
+			if (end < 0) {
+				return -1;
+			}
+			boolean found = compareBytes(content, position + 1, end, name) == 0;
+			position = skipWhitespace(content, end + 1);
+			if (position >= content.length || content[position] != ':') {
+				return -1;
+			}
+			position = skipWhitespace(content, position + 1);
+			if (found) {
+				return position;
+			}
+			position = skipWhitespace(content, skipValue(content, position));
+			if (position < 0 || position >= content.length || content[position] != ',') {
+				return -1;
+			}
+			position = skipWhitespace(content, position + 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the element with the specified index of the
+	 * array at the specified position.
+	 */
+	private static int findElement(byte[] content, int position, int index) {
+		position = skipWhitespace(content, position + 1);
+		if (position < content.length && content[position] == ']') {
+			return -1;
+		}
+		for (int i = 0; i < index; ++i) {
+			position = skipWhitespace(content, skipValue(content, position));
+			if (position < 0 || position >= content.length || content[position] != ',') {
+				return -1;
+			}
+			position = skipWhitespace(content, position + 1);
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the position behind the value at the specified position or -1.
+	 */
+	private static int skipValue(byte[] content, int position) {
+		if (position < 0 || position >= content.length) {
+			return -1;
+		}
+		byte type = content[position];
+		if (type == '"') {
+			int end = endOfString(content, position);
+			return end < 0 ? -1 : end + 1;
+		}
+		if (type != '{' && type != '[') {
+			return skipLiteral(content, position);
+		}
+		int depth = 0;
+		while (position < content.length) {
+			byte c = content[position];
+			if (c == '"') {
+				position = endOfString(content, position);
+				if (position < 0) {
+					return -1;
+				}
+			} else if (c == '{' || c == '[') {
+				++depth;
+			} else if ((c == '}' || c == ']') && --depth == 0) {
+				return position + 1;
+			}
+			++position;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position behind the number, true, false or null at the
+	 * specified position.
+	 */
+	private static int skipLiteral(byte[] content, int position) {
+		while (position < content.length) {
+			byte c = content[position];
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+				break;
+			}
+			++position;
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the position of the closing quote of the string at the specified
+	 * position or -1.
+	 */
+	private static int endOfString(byte[] content, int position) {
+		for (int i = position + 1; i < content.length; ++i) {
+			if (content[i] == '\\') {
+				++i;
+			} else if (content[i] == '"') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespace(byte[] content, int position) {
+		if (position < 0) {
+			return -1;
+		}
+		while (position < content.length) {
+			byte c = content[position];
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+				break;
+			}
+			++position;
+		}
+		return position;
+	}
+
+	/**
+	 * Compares the bytes from start to end of the content with the specified
+	 * bytes lexicographically as unsigned values.
+	 */
+	private static int compareBytes(byte[] content, int start, int end, byte[] bytes) {
+		int length = Math.min(end - start, bytes.length);
+		for (int i = 0; i < length; ++i) {
+			int difference = (content[start + i] & 0xff) - (bytes[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return (end - start) - bytes.length;
+	}
+
+	/**
+	 * Parses the number from start to end of the content. Numbers whose
+	 * mantissa and exponent can be represented exactly are parsed without
+	 * allocating memory.
+	 */
+	private static double parseNumber(byte[] content, int start, int end) {
+		int position = start;
+		boolean negative = content[position] == '-';
+		if (negative) {
+			++position;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean fraction = false;
+		while (position < end) {
+			byte c = content[position];
+			if (c >= '0' && c <= '9') {
+				if (mantissa != 0 || c != '0') {
+					++digits;
+				}
+				mantissa = mantissa * 10 + c - '0';
+				if (fraction) {
+					--exponent;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+			++position;
+		}
+		if (position < end && (content[position] == 'e' || content[position] == 'E')) {
+			++position;
+			boolean negativeExponent = position < end && content[position] == '-';
+			if (position < end && (content[position] == '-' || content[position] == '+')) {
+				++position;
+			}
+			int value = 0;
+			while (position < end && content[position] >= '0' && content[position] <= '9' && value < 10000) {
+				value = value * 10 + content[position++] - '0';
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+		if (position != end || digits > 18 || mantissa >= MAX_EXACT_MANTISSA
+				|| exponent < -(POWERS_OF_TEN.length - 1) || exponent > POWERS_OF_TEN.length - 1) {
+			try {
+				return Double.parseDouble(new String(content, start, end - start, StandardCharsets.US_ASCII));
+			} catch (NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+}
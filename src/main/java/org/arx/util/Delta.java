@@ -0,0 +1,285 @@
+package org.arx.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and applies binary deltas. A delta transforms a source into a target
+ * by a sequence of operations that either copy a range of the source or insert
+ * new bytes. Thus, the size of a delta depends on the size of the changes and
+ * not on the size of the target.
+ * <p>
+ * A delta starts with the length and the CRC-32 checksum of the source and the
+ * length of the target, so that a delta cannot be applied to a different
+ * source by mistake. It is followed by the operations: a copy operation
+ * consists of the code {@value #COPY}, the offset in the source and the number
+ * of bytes to be copied, an insert operation consists of the code
+ * {@value #INSERT}, the number of bytes to be inserted and the bytes. All
+ * numbers are 32 bit integers in network byte order.
+ * <p>
+ * The encoder keeps a common prefix and suffix of source and target and
+ * searches the rest of the target for blocks of the source with a rolling
+ * hash. Every match is extended in both directions as far as source and target
+ * are equal.
+ */
+public final class Delta {
+	/**
+	 * The code of a copy operation.
+	 */
+	public static final byte COPY = 0;
+	/**
+	 * The code of an insert operation.
+	 */
+	public static final byte INSERT = 1;
+	private static final int MIN_BLOCK_SIZE = 16;
+	private static final int MAX_BLOCKS = 1 << 16;
+	private static final int HASH_BASE = 31;
+	private static final String SOURCE_ERROR = "Delta does not belong to the source";
+	private static final String FORMAT_ERROR = "Illegal delta";
+
+	private Delta() {
+	}
+
+	/**
+	 * Encodes the delta that transforms the specified source into the
+	 * specified target.
+	 * 
+	 * @param source
+	 *            the source
+	 * @param target
+	 *            the target
+	 * @return the delta
+	 */
+	public static byte[] encode(byte[] source, byte[] target) {
+		Encoder encoder = new Encoder(source, target);
+		int prefix = 0;
+		int max = Math.min(source.length, target.length);
+		while (prefix < max && source[prefix] == target[prefix]) {
+			++prefix;
+		}
+		int suffix = 0;
+		max -= prefix;
+		while (suffix < max && source[source.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+			++suffix;
+		}
+		encoder.copy(0, prefix);
+		encoder.match(prefix, source.length - suffix, prefix, target.length - suffix);
+		encoder.copy(source.length - suffix, suffix);
+		return encoder.toByteArray();
+	}
+
+	/**
+	 * Applies the specified delta to the specified source.
+	 * 
+	 * @param source
+	 *            the source the delta has been encoded for
+	 * @param delta
+	 *            the delta
+	 * @return the target
+	 * @throws IllegalArgumentException
+	 *             if the delta is illegal or does not belong to the source
+	 */
+	public static byte[] apply(byte[] source, byte[] delta) throws IllegalArgumentException {
+		ByteBuffer in = ByteBuffer.wrap(delta);
+		try {
+			if (in.getInt() != source.length || in.getInt() != checksum(source)) {
+				throw new IllegalArgumentException(SOURCE_ERROR);
+			}
+			byte[] target = new byte[in.getInt()];
+			int position = 0;
+			while (in.hasRemaining()) {
+				byte code = in.get();
+				int length;
+				if (code == COPY) {
+					int offset = in.getInt();
+					length = in.getInt();
+					System.arraycopy(source, offset, target, position, length);
+				} else if (code == INSERT) {
+					length = in.getInt();
+					in.get(target, position, length);
+				} else {
+					throw new IllegalArgumentException(FORMAT_ERROR);
+				}
+				position += length;
+			}
+			if (position != target.length) {
+				throw new IllegalArgumentException(FORMAT_ERROR);
+			}
+			return target;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IllegalArgumentException(FORMAT_ERROR, e);
+		}
+	}
+
+	private static int checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Collects the operations of a delta.
+	 */
+	private static class Encoder {
+		private final byte[] source;
+		private final byte[] target;
+		private final List<int[]> operations;
+		private int size;
+
+		/**
+		 * Creates an encoder for the specified source and target.
+		 * 
+		 * @param source
+		 *            the source
+		 * @param target
+		 *            the target
+		 */
+		public Encoder(byte[] source, byte[] target) {
+			this.source = source;
+			this.target = target;
+			this.operations = new ArrayList<int[]>();
+			this.size = 12;
+		}
+
+		/**
+		 * Adds an operation that copies the specified range of the source.
+		 * 
+		 * @param offset
+		 *            the offset of the range in the source
+		 * @param length
+		 *            the length of the range
+		 */
+		public void copy(int offset, int length) {
+			if (length > 0) {
+				operations.add(new int[] { COPY, offset, length });
+				size += 9;
+			}
+		}
+
+		/**
+		 * Adds an operation that inserts the specified range of the target.
+		 * 
+		 * @param offset
+		 *            the offset of the range in the target
+		 * @param length
+		 *            the length of the range
+		 */
+		public void insert(int offset, int length) {
+			if (length > 0) {
+				operations.add(new int[] { INSERT, offset, length });
+				size += 5 + length;
+			}
+		}
+
+		/**
+		 * Adds the operations that transform the specified range of the
+		 * source into the specified range of the target.
+		 * 
+		 * @param sourceStart
+		 *            the start of the range in the source
+		 * @param sourceEnd
+		 *            the end of the range in the source
+		 * @param targetStart
+		 *            the start of the range in the target
+		 * @param targetEnd
+		 *            the end of the range in the target
+		 */
+		public void match(int sourceStart, int sourceEnd, int targetStart, int targetEnd) {
+			int blockSize = Math.max(MIN_BLOCK_SIZE, (sourceEnd - sourceStart) / MAX_BLOCKS + 1);
+			if (sourceEnd - sourceStart < blockSize || targetEnd - targetStart < blockSize) {
+				insert(targetStart, targetEnd - targetStart);
+				return;
+			}
+			Map<Integer, Integer> blocks = new HashMap<Integer, Integer>();
+			for (int offset = sourceStart; offset + blockSize <= sourceEnd; offset += blockSize) {
+				Integer hash = hash(source, offset, blockSize);
+				if (!blocks.containsKey(hash)) {
+					blocks.put(hash, offset);
+				}
+			}
+			int power = 1;
+			for (int i = 1; i < blockSize; ++i) {
+				power *= HASH_BASE;
+			}
+			int pending = targetStart;
+			int position = targetStart;
+			int hash = hash(target, position, blockSize);
+			while (position + blockSize <= targetEnd) {
+				Integer offset = blocks.get(hash);
+				if (offset != null && equals(offset, position, blockSize)) {
+					int start = position;
+					int sourceOffset = offset;
+					int end = position + blockSize;
+					int sourceLimit = offset + blockSize;
+					while (end < targetEnd && sourceLimit < sourceEnd && target[end] == source[sourceLimit]) {
+						++end;
+						++sourceLimit;
+					}
+					while (start > pending && sourceOffset > sourceStart
+							&& target[start - 1] == source[sourceOffset - 1]) {
+						--start;
+						--sourceOffset;
+					}
+					insert(pending, start - pending);
+					copy(sourceOffset, end - start);
+					pending = end;
+					position = end;
+					if (position + blockSize <= targetEnd) {
+						hash = hash(target, position, blockSize);
+					}
+				} else {
+					if (position + blockSize < targetEnd) {
+						hash = (hash - target[position] * power) * HASH_BASE + target[position + blockSize];
+					}
+					++position;
+				}
+			}
+			insert(pending, targetEnd - pending);
+		}
+
+		/**
+		 * Returns the delta.
+		 * 
+		 * @return the delta
+		 */
+		public byte[] toByteArray() {
+			ByteBuffer out = ByteBuffer.allocate(size);
+			out.putInt(source.length);
+			out.putInt(checksum(source));
+			out.putInt(target.length);
+			for (int[] operation : operations) {
+				out.put((byte) operation[0]);
+				if (operation[0] == COPY) {
+					out.putInt(operation[1]);
+				}
+				out.putInt(operation[2]);
+				if (operation[0] == INSERT) {
+					out.put(target, operation[1], operation[2]);
+				}
+			}
+			return out.array();
+		}
+
+		private boolean equals(int sourceOffset, int targetOffset, int length) {
+			for (int i = 0; i < length; ++i) {
+				if (source[sourceOffset + i] != target[targetOffset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int hash(byte[] bytes, int offset, int length) {
+			int hash = 0;
+			for (int i = 0; i < length; ++i) {
+				hash = hash * HASH_BASE + bytes[offset + i];
+			}
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.arx.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Applies JSON merge patches as specified by RFC 7396. A merge patch is a JSON
+ * document that describes the changes of a target document: members of a
+ * patch object replace the members of the target object with the same name,
+ * members with the value null remove them and all other values replace the
+ * target.
+ */
+public final class JsonMergePatch {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String EMPTY_PATCH = "Empty merge patch";
+
+	private JsonMergePatch() {
+	}
+
+	/**
+	 * Applies the specified merge patch to the specified JSON document.
+	 * 
+	 * @param document
+	 *            the JSON document to be patched. An empty document is treated
+	 *            as a missing document.
+	 * @param patch
+	 *            the merge patch
+	 * @return the patched JSON document
+	 * @throws IllegalArgumentException
+	 *             if the document or the patch is not a valid JSON document
+	 */
+	public static byte[] apply(byte[] document, byte[] patch) throws IllegalArgumentException {
+		try {
+			JsonNode target = document.length == 0 ? null : MAPPER.readTree(document);
+			JsonNode changes = MAPPER.readTree(patch);
+			if (changes == null) {
+				throw new IllegalArgumentException(EMPTY_PATCH);
+			}
+			return MAPPER.writeValueAsBytes(merge(target, changes));
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		} catch (IOException e) {
+			// Byte arrays cannot cause other IO errors
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static JsonNode merge(JsonNode target, JsonNode patch) {
+		if (!patch.isObject()) {
+			return patch;
+		}
+		ObjectNode result = target != null && target.isObject() ? (ObjectNode) target : MAPPER.createObjectNode();
+		Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			if (field.getValue().isNull()) {
+				result.remove(field.getKey());
+			} else {
+				result.set(field.getKey(), merge(result.get(field.getKey()), field.getValue()));
+			}
+		}
+		return result;
+	}
+}
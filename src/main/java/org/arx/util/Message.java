@@ -19,6 +19,31 @@ import org.arx.MessageType;
  */
 public abstract class Message {
 	public static final int VERSION = 1;
+	/**
+	 * Name of the header field that contains the version of the resource the
+	 * data of a response message belongs to.
+	 */
+	public static final String VERSION_FIELD = "Version";
+	/**
+	 * Name of the header field that contains the version a resource is
+	 * expected to have for a conditional UPDATE or SAVE request.
+	 */
+	public static final String IF_MATCH_FIELD = "If-Match";
+	/**
+	 * Name of the header field that contains the sequence number of the
+	 * change a data message of a subscription belongs to.
+	 */
+	public static final String SEQUENCE_FIELD = "Sequence";
+	/**
+	 * Name of the header field that contains the position of the data of a
+	 * response message in the resource, if the data is a {@link StreamData}.
+	 */
+	public static final String OFFSET_FIELD = "Offset";
+	/**
+	 * Name of the header field that contains the size of a resource, if the
+	 * data of a response message is a {@link Metadata}.
+	 */
+	public static final String SIZE_FIELD = "Size";
 	protected Header header;
 
 	/**
@@ -213,6 +238,19 @@ public abstract class Message {
 		return new ByteArrayData(mimeType, bytes);
 	}
 
+	protected static void writeVersion(Header header, String key, Data data) {
+		if (data != null && data.getVersion() != Data.NO_VERSION) {
+			header.put(key, Long.toString(data.getVersion()));
+		}
+	}
+
+	protected static void readVersion(Header header, String key, Data data) throws NumberFormatException {
+		String version = header.get(key);
+		if (data != null && version != null) {
+			data.setVersion(Long.parseLong(version));
+		}
+	}
+
 	protected static String readString(ByteBuffer buffer) {
 		byte[] bytes = readByteArray(buffer);
 		return new String(bytes, StandardCharsets.UTF_8);
@@ -0,0 +1,45 @@
+package org.arx.util;
+
+/**
+ * A data object that describes the content of a resource without containing
+ * it. It is sent to subscriptions with the option
+ * {@link org.arx.Options#METADATA_ONLY} and contains the mime type, the
+ * version and the size of the resource, but no content.
+ */
+public class Metadata extends ByteArrayData {
+	private long size;
+
+	/**
+	 * Constructs a metadata object for the specified parameters.
+	 * 
+	 * @param mimeType
+	 *            mime type of the resource
+	 * @param version
+	 *            version of the resource
+	 * @param size
+	 *            size of the content of the resource in bytes
+	 */
+	public Metadata(String mimeType, long version, long size) {
+		super(mimeType, null, version);
+		setSize(size);
+	}
+
+	/**
+	 * Returns the size of the content of the resource in bytes.
+	 * 
+	 * @return the size of the content of the resource in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the size of the content of the resource in bytes.
+	 * 
+	 * @param size
+	 *            the size of the content of the resource in bytes
+	 */
+	public void setSize(long size) {
+		this.size = size;
+	}
+}
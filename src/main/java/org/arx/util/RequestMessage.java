@@ -24,13 +24,16 @@ public class RequestMessage extends Message {
 	 * @param resource
 	 *            the resource of the request message or null
 	 * @param data
-	 *            the data of the request message or null
+	 *            the data of the request message or null. If the data
+	 *            specifies a version, it is transmitted in the header field
+	 *            {@link Message#IF_MATCH_FIELD}.
 	 */
 	public RequestMessage(Header header, MessageType request, Resource resource, Data data) {
 		super(header);
 		this.request = request;
 		this.resource = resource;
 		this.data = data;
+		writeVersion(this.header, IF_MATCH_FIELD, data);
 	}
 
 	/**
@@ -60,9 +63,12 @@ public class RequestMessage extends Message {
 			break;
 		case CREATE: // fall through
 		case UPDATE: // fall through
-		case SAVE:
+		case SAVE: // fall through
+		case PATCH: // fall through
+		case APPEND:
 			resource = readResource(buffer);
 			data = readData(buffer);
+			readVersion(header, IF_MATCH_FIELD, data);
 			break;
 		default:
 			throw new IllegalArgumentException();
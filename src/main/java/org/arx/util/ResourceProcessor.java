@@ -0,0 +1,43 @@
+package org.arx.util;
+
+import java.io.IOException;
+
+import org.arx.Resource;
+
+/**
+ * A processor of resources. Processing a resource is split into two steps: the
+ * {@link #process process(...)} step performs the (possibly blocking) work for
+ * a single resource and may be executed concurrently for different resources.
+ * The {@link #complete complete(...)} step receives the result of the first
+ * step and is always executed sequentially in a well-defined order.
+ *
+ * @param <T>
+ *            the type of the result of the process step
+ */
+public interface ResourceProcessor<T> {
+	/**
+	 * Processes the specified resource. This method may be called concurrently
+	 * for different resources.
+	 *
+	 * @param resource
+	 *            the resource to be processed
+	 * @return the result of processing the resource
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	T process(Resource resource) throws IOException;
+
+	/**
+	 * Completes the processing of the specified resource. This method is never
+	 * called concurrently and it is called in the order the resources are
+	 * visited.
+	 *
+	 * @param resource
+	 *            the resource that has been processed
+	 * @param result
+	 *            the result of {@link #process process(...)} for the resource
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void complete(Resource resource, T result) throws IOException;
+}
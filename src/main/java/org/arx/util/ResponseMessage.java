@@ -3,6 +3,7 @@ package org.arx.util;
 import java.nio.ByteBuffer;
 
 import org.arx.Data;
+import org.arx.Observer;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.MessageType;
@@ -32,7 +33,13 @@ public class ResponseMessage extends Message {
 	 * @param reason
 	 *            the reason for transmitting data
 	 * @param data
-	 *            transmitted data of the response message
+	 *            transmitted data of the response message. If the data
+	 *            specifies a version, it is transmitted in the header field
+	 *            {@link Message#VERSION_FIELD}. If the data is a
+	 *            {@link StreamData}, its offset is transmitted in the header
+	 *            field {@link Message#OFFSET_FIELD}. If the data is a
+	 *            {@link Metadata}, the size of the resource is transmitted in
+	 *            the header field {@link Message#SIZE_FIELD}.
 	 * @param affectedResources
 	 *            the affected resources of the response message
 	 */
@@ -44,6 +51,12 @@ public class ResponseMessage extends Message {
 		this.resource = resource;
 		this.reason = reason;
 		this.data = data;
+		writeVersion(this.header, VERSION_FIELD, data);
+		if (data instanceof StreamData) {
+			this.header.put(OFFSET_FIELD, Long.toString(((StreamData) data).getOffset()));
+		} else if (data instanceof Metadata) {
+			this.header.put(SIZE_FIELD, Long.toString(((Metadata) data).getSize()));
+		}
 		if (affectedResources != null && affectedResources.length == 0) {
 			this.affectedResources = null;
 		} else {
@@ -74,8 +87,17 @@ public class ResponseMessage extends Message {
 				break;
 			case DATA:
 				this.reason = readReason(buffer);
-				if (this.reason != Reason.DELETED) {
+				if (this.reason != Reason.DELETED && this.reason != Reason.NOT_MODIFIED) {
 					this.data = readData(buffer);
+					readVersion(header, VERSION_FIELD, this.data);
+					String offset = header.get(OFFSET_FIELD);
+					String size = header.get(SIZE_FIELD);
+					if (offset != null) {
+						this.data = new StreamData(data.getMimeType(), data.getContent(), data.getVersion(),
+								Long.parseLong(offset));
+					} else if (size != null) {
+						this.data = new Metadata(data.getMimeType(), data.getVersion(), Long.parseLong(size));
+					}
 				}
 				this.affectedResources = readResources(buffer);
 				break;
@@ -133,6 +155,25 @@ public class ResponseMessage extends Message {
 		return data;
 	}
 
+	/**
+	 * Returns the sequence number of the change this response message belongs
+	 * to, which is transmitted in the header field
+	 * {@link Message#SEQUENCE_FIELD}.
+	 * 
+	 * @return the sequence number of the change or
+	 *         {@link Observer#NO_SEQUENCE}, if this response message does not
+	 *         belong to a sequence of changes.
+	 * @throws NumberFormatException
+	 *             if the header field does not contain a number
+	 */
+	public long getSequence() throws NumberFormatException {
+		String sequence = header.get(SEQUENCE_FIELD);
+		if (sequence == null) {
+			return Observer.NO_SEQUENCE;
+		}
+		return Long.parseLong(sequence);
+	}
+
 	/**
 	 * Returns the affected resources of this response message.
 	 * 
@@ -0,0 +1,90 @@
+package org.arx.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A serial executor executes tasks one after another in the order of their
+ * submission with the help of an underlying executor. Submitting a task never
+ * blocks, and the serial executor does not occupy a thread of the underlying
+ * executor while it has no pending tasks. Thus, a serial executor is cheap
+ * enough to be used for every subscriber or every stripe.
+ * <p>
+ * After a batch of tasks, the thread is returned to the underlying executor,
+ * so that other serial executors get a chance to execute their tasks.
+ */
+public class SerialExecutor implements Executor, Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+	private static final String TASK_ERROR = "Error while executing task";
+	private static final int BATCH_SIZE = 64;
+	private Executor executor;
+	private Queue<Runnable> tasks;
+	private AtomicBoolean scheduled;
+
+	/**
+	 * Creates a serial executor for the specified underlying executor.
+	 *
+	 * @param executor
+	 *            the executor that is used to execute the tasks
+	 */
+	public SerialExecutor(Executor executor) {
+		this.executor = executor;
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		this.scheduled = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Executes the specified task after all tasks that have previously been
+	 * submitted to this executor.
+	 *
+	 * @param command
+	 *            the task to be executed
+	 */
+	@Override
+	public void execute(Runnable command) {
+		tasks.add(command);
+		schedule();
+	}
+
+	/**
+	 * Executes a batch of pending tasks. It is called by the underlying
+	 * executor.
+	 */
+	@Override
+	public void run() {
+		try {
+			Runnable task;
+			int executed = 0;
+			// Give other serial executors a chance after a batch of tasks
+			while (executed < BATCH_SIZE && (task = tasks.poll()) != null) {
+				++executed;
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					LOGGER.error(TASK_ERROR, e);
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			if (!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this);
+			} catch (RuntimeException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.arx.util;
+
+/**
+ * A data object that contains a range of the content of a resource, for
+ * example a part of a READ request with the option
+ * {@link org.arx.Options#OFFSET} or the bytes that have been appended to a
+ * stream resource. In addition to the content, it contains the position of
+ * its first byte in the resource.
+ */
+public class StreamData extends ByteArrayData {
+	private long offset;
+
+	/**
+	 * Constructs a stream data object for the specified parameters.
+	 * 
+	 * @param mimeType
+	 *            mime type for this data object
+	 * @param content
+	 *            content for this data object
+	 * @param version
+	 *            version of the resource this data object belongs to
+	 * @param offset
+	 *            position of the first byte of the content in the resource
+	 */
+	public StreamData(String mimeType, byte[] content, long version, long offset) {
+		super(mimeType, content, version);
+		setOffset(offset);
+	}
+
+	/**
+	 * Returns the position of the first byte of the content in the resource.
+	 * 
+	 * @return the position of the first byte of the content in the resource
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Sets the position of the first byte of the content in the resource.
+	 * 
+	 * @param offset
+	 *            the position of the first byte of the content in the
+	 *            resource
+	 */
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * Returns the position behind the last byte of the content in the
+	 * resource. For the bytes that have been appended to a stream resource,
+	 * this is the new end of the resource.
+	 * 
+	 * @return the position behind the last byte of the content in the
+	 *         resource
+	 */
+	public long getEndOffset() {
+		return offset + getContent().length;
+	}
+}
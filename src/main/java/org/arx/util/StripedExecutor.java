@@ -0,0 +1,89 @@
+package org.arx.util;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A striped executor executes tasks with the help of an underlying executor.
+ * Every task that is submitted with a key is assigned to a stripe that is
+ * determined by the hash code of the key. All tasks of a stripe are executed
+ * one after another in the order of their submission, while tasks of
+ * different stripes are executed in parallel. Thus, tasks for the same key are
+ * never executed concurrently and are always executed in arrival order without
+ * the need of a global lock.
+ * <p>
+ * Every stripe is a {@link SerialExecutor}, so a stripe does not occupy a
+ * thread of the underlying executor while it has no pending tasks.
+ */
+public class StripedExecutor implements Executor {
+	private Executor executor;
+	private SerialExecutor[] stripes;
+
+	/**
+	 * Creates a striped executor for the specified underlying executor and
+	 * number of stripes.
+	 *
+	 * @param executor
+	 *            the executor that is used to execute the tasks of all stripes
+	 * @param stripes
+	 *            the minimum number of stripes. It is rounded up to the next
+	 *            power of two.
+	 * @throws IllegalArgumentException
+	 *             if the number of stripes is less than 1
+	 */
+	public StripedExecutor(Executor executor, int stripes) throws IllegalArgumentException {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("The number of stripes must be positive");
+		}
+		int size = 1;
+		while (size < stripes) {
+			size <<= 1;
+		}
+		this.executor = executor;
+		this.stripes = new SerialExecutor[size];
+		for (int i = 0; i < size; ++i) {
+			this.stripes[i] = new SerialExecutor(executor);
+		}
+	}
+
+	/**
+	 * Returns the number of stripes of this executor.
+	 *
+	 * @return the number of stripes of this executor
+	 */
+	public int getStripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Executes the specified task without any ordering guarantees by handing it
+	 * directly to the underlying executor.
+	 *
+	 * @param command
+	 *            the task to be executed
+	 */
+	@Override
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+	/**
+	 * Executes the specified task in the stripe of the specified key. The task
+	 * will be executed after all tasks that have previously been submitted to
+	 * the same stripe.
+	 *
+	 * @param key
+	 *            the key that determines the stripe
+	 * @param command
+	 *            the task to be executed
+	 */
+	public void execute(Object key, Runnable command) {
+		stripes[indexOf(key)].execute(command);
+	}
+
+	private int indexOf(Object key) {
+		int hash = key == null ? 0 : key.hashCode();
+		hash ^= (hash >>> 16);
+		return hash & (stripes.length - 1);
+	}
+
+}
@@ -18,6 +18,8 @@ public class TestMessageType {
 		assertEquals(MessageType.SUBSCRIBE_STATUS_CODE,MessageType.SUBSCRIBE_STATUS.getCode());
 		assertEquals(MessageType.UNSUBSCRIBE_CODE,MessageType.UNSUBSCRIBE.getCode());
 		assertEquals(MessageType.UNSUBSCRIBE_ALL_CODE,MessageType.UNSUBSCRIBE_ALL.getCode());
+		assertEquals(MessageType.PATCH_CODE,MessageType.PATCH.getCode());
+		assertEquals(MessageType.APPEND_CODE,MessageType.APPEND.getCode());
 		assertEquals(MessageType.SUCCESS_CODE,MessageType.SUCCESS.getCode());
 		assertEquals(MessageType.DATA_CODE,MessageType.DATA.getCode());
 		assertEquals(MessageType.BAD_REQUEST_CODE,MessageType.BAD_REQUEST.getCode());
@@ -26,6 +28,7 @@ public class TestMessageType {
 		assertEquals(MessageType.ALREADY_EXISTS_CODE,MessageType.ALREADY_EXISTS.getCode());
 		assertEquals(MessageType.INTERNAL_SERVER_ERROR_CODE,MessageType.INTERNAL_SERVER_ERROR.getCode());
 		assertEquals(MessageType.OUT_OF_SYNC_CODE,MessageType.OUT_OF_SYNC.getCode());
+		assertEquals(MessageType.PRECONDITION_FAILED_CODE,MessageType.PRECONDITION_FAILED.getCode());
 	}
 	
 	@Test
@@ -40,6 +43,8 @@ public class TestMessageType {
 		assertEquals(true,MessageType.SUBSCRIBE_STATUS.isRequest());
 		assertEquals(true,MessageType.UNSUBSCRIBE.isRequest());
 		assertEquals(true,MessageType.UNSUBSCRIBE_ALL.isRequest());
+		assertEquals(true,MessageType.PATCH.isRequest());
+		assertEquals(true,MessageType.APPEND.isRequest());
 		assertEquals(false,MessageType.SUCCESS.isRequest());
 		assertEquals(false,MessageType.DATA.isRequest());
 		assertEquals(false,MessageType.BAD_REQUEST.isRequest());
@@ -48,6 +53,7 @@ public class TestMessageType {
 		assertEquals(false,MessageType.ALREADY_EXISTS.isRequest());
 		assertEquals(false,MessageType.INTERNAL_SERVER_ERROR.isRequest());
 		assertEquals(false,MessageType.OUT_OF_SYNC.isRequest());
+		assertEquals(false,MessageType.PRECONDITION_FAILED.isRequest());
 	}
 
 	@Test
@@ -70,6 +76,7 @@ public class TestMessageType {
 		assertEquals(true,MessageType.ALREADY_EXISTS.isResponse());
 		assertEquals(true,MessageType.INTERNAL_SERVER_ERROR.isResponse());
 		assertEquals(true,MessageType.OUT_OF_SYNC.isResponse());
+		assertEquals(true,MessageType.PRECONDITION_FAILED.isResponse());
 	}
 
 	@Test
@@ -92,6 +99,7 @@ public class TestMessageType {
 		assertEquals(true,MessageType.ALREADY_EXISTS.isError());
 		assertEquals(true,MessageType.INTERNAL_SERVER_ERROR.isError());
 		assertEquals(true,MessageType.OUT_OF_SYNC.isError());
+		assertEquals(true,MessageType.PRECONDITION_FAILED.isError());
 	}
 	
 	@Test
@@ -11,6 +11,10 @@ public class TestReason {
 		assertEquals(Reason.CREATED_CODE,Reason.CREATED.getCode());
 		assertEquals(Reason.UPDATED_CODE,Reason.UPDATED.getCode());
 		assertEquals(Reason.DELETED_CODE,Reason.DELETED.getCode());
+		assertEquals(Reason.NOT_MODIFIED_CODE,Reason.NOT_MODIFIED.getCode());
+		assertEquals(Reason.PARTIAL_CODE,Reason.PARTIAL.getCode());
+		assertEquals(Reason.DELTA_CODE,Reason.DELTA.getCode());
+		assertEquals(Reason.APPENDED_CODE,Reason.APPENDED.getCode());
 	}
 
 	@Test
@@ -0,0 +1,64 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.ResponseMessage;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAppendRequest {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testAppend() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "0123".getBytes());
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			long version = ResourceFiles.getVersion(path);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			new AppendRequest(credentials, resource, new ByteArrayData(null, "4567".getBytes()), observer,
+					Durability.NONE).run();
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.SUCCESS, message.getResponse());
+			assertEquals(MessageType.APPEND, message.getRequest());
+			assertEquals("test", message.getAffectedResource().getName());
+			assertEquals("01234567", Utils.readString("htdocs/test"));
+			// Conditional append with an outdated version
+			Data data = new ByteArrayData(null, "X".getBytes(), version);
+			new AppendRequest(credentials, resource, data, observer, Durability.NONE).run();
+			assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+			// Resource pattern
+			new AppendRequest(credentials, new SimpleResource("+"), new ByteArrayData(null, "X".getBytes()),
+					observer, Durability.NONE).run();
+			assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+			// Missing resource
+			new AppendRequest(credentials, new SimpleResource("tast"), new ByteArrayData(null, "X".getBytes()),
+					observer, Durability.NONE).run();
+			assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+			// Missing access right
+			new AppendRequest(new StringCredentials("# crd"), resource, new ByteArrayData(null, "X".getBytes()),
+					observer, Durability.NONE).run();
+			assertEquals(MessageType.FORBIDDEN, observer.take().getResponse());
+			assertEquals("01234567", Utils.readString("htdocs/test"));
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.arx.Reason;
+import org.arx.util.SimpleResource;
+import org.junit.Test;
+
+public class TestChangeJournal {
+
+	@Test
+	public void testChanges() {
+		ChangeJournal journal = new ChangeJournal(100);
+		long start = journal.getSequence();
+		long first = journal.append(new SimpleResource("a/x"), Reason.CREATED);
+		assertEquals(start + 1, first);
+		journal.append(new SimpleResource("b/x"), Reason.CREATED);
+		journal.append(new SimpleResource("a/y"), Reason.CREATED);
+		long last = journal.append(new SimpleResource("a/x"), Reason.UPDATED);
+		assertEquals(last, journal.getSequence());
+		List<ChangeJournal.Change> changes = journal.getChanges(start, new SimpleResource("a/+"));
+		assertEquals(2, changes.size());
+		assertEquals("a/y", changes.get(0).getResource().getName());
+		assertEquals(Reason.CREATED, changes.get(0).getReason());
+		assertEquals("a/x", changes.get(1).getResource().getName());
+		assertEquals(Reason.UPDATED, changes.get(1).getReason());
+		assertEquals(last, changes.get(1).getSequence());
+		assertEquals(3, journal.getChanges(first, new SimpleResource("#")).size());
+		assertTrue(journal.getChanges(last, new SimpleResource("#")).isEmpty());
+		// Unknown sequence numbers
+		assertNull(journal.getChanges(last + 1, new SimpleResource("#")));
+		assertNull(journal.getChanges(start - 1, new SimpleResource("#")));
+	}
+
+	@Test
+	public void testRetention() {
+		ChangeJournal journal = new ChangeJournal(2);
+		long start = journal.getSequence();
+		long first = journal.append(new SimpleResource("a"), Reason.CREATED);
+		journal.append(new SimpleResource("b"), Reason.CREATED);
+		assertEquals(2, journal.getChanges(start, new SimpleResource("#")).size());
+		journal.append(new SimpleResource("c"), Reason.CREATED);
+		assertNull(journal.getChanges(start, new SimpleResource("#")));
+		assertEquals(2, journal.getChanges(first, new SimpleResource("#")).size());
+		long last = journal.getSequence();
+		journal.reset();
+		assertNull(journal.getChanges(last, new SimpleResource("#")));
+		assertTrue(journal.getChanges(journal.getSequence(), new SimpleResource("#")).isEmpty());
+	}
+
+	@Test
+	public void testMatches() {
+		assertTrue(ChangeJournal.matches(new SimpleResource("a/b"), new SimpleResource("a/b")));
+		assertTrue(ChangeJournal.matches(new SimpleResource("a/+"), new SimpleResource("a/b")));
+		assertTrue(ChangeJournal.matches(new SimpleResource("+/b"), new SimpleResource("a/b")));
+		assertTrue(ChangeJournal.matches(new SimpleResource("a/#"), new SimpleResource("a/b/c")));
+		assertFalse(ChangeJournal.matches(new SimpleResource("a/+"), new SimpleResource("a/b/c")));
+		assertFalse(ChangeJournal.matches(new SimpleResource("a/b/c"), new SimpleResource("a/b")));
+		assertFalse(ChangeJournal.matches(new SimpleResource("a/c"), new SimpleResource("a/b")));
+	}
+}
@@ -0,0 +1,148 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDurability {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testModes() {
+		assertEquals(Durability.Mode.NONE, Durability.create(null, null).getMode());
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(FileSystemFactory.DURABILITY_KEY, "fsync");
+		assertEquals(Durability.Mode.FSYNC, Durability.create(null, parameters).getMode());
+		parameters.put(FileSystemFactory.DURABILITY_KEY, " Group ");
+		assertEquals(Durability.Mode.GROUP, Durability.create(null, parameters).getMode());
+		parameters.put(FileSystemFactory.DURABILITY_KEY, "sometimes");
+		try {
+			Durability.create(null, parameters);
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testFsync() throws IOException {
+		Path file = Files.createTempFile("arx", null);
+		try {
+			Durability durability = new Durability(Durability.Mode.FSYNC, null, 1, 0);
+			Counter counter = new Counter(1);
+			durability.commit(Arrays.asList(file, file.getParent()), counter);
+			assertEquals(1, counter.durable.get());
+			durability.commit(Collections.singletonList(file.resolveSibling("missing")), counter);
+			assertEquals(1, counter.failed.get());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testGroupCommit() throws IOException, InterruptedException {
+		final int requests = 1000;
+		final Path[] files = new Path[10];
+		for (int i = 0; i < files.length; ++i) {
+			files[i] = Files.createTempFile("arx", null);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final Durability durability = new Durability(Durability.Mode.GROUP, executor, 64, 0);
+			final Counter counter = new Counter(requests);
+			for (int i = 0; i < requests; ++i) {
+				final int index = i;
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							durability.commit(Collections.singletonList(files[index % files.length]), counter);
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				});
+			}
+			assertTrue(counter.latch.await(10, TimeUnit.SECONDS));
+			assertEquals(requests, counter.durable.get());
+			assertEquals(0, counter.failed.get());
+		} finally {
+			executor.shutdown();
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testRequests() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Utils.deleteIfExists("htdocs/test");
+			Durability durability = new Durability(Durability.Mode.GROUP, executor, 16, 0);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			Data data = new ByteArrayData(null, "DATA".getBytes());
+			new CreateRequest(credentials, resource, data, observer, durability).run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			new UpdateRequest(credentials, resource, data, observer, durability).run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			new SaveRequest(credentials, resource, data, observer, durability).run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals("DATA", Utils.readString("htdocs/test"));
+		} finally {
+			executor.shutdown();
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	private static class Counter implements Durability.Callback {
+		private final AtomicInteger durable = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final CountDownLatch latch;
+
+		public Counter(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		@Override
+		public void durable() {
+			durable.incrementAndGet();
+			latch.countDown();
+		}
+
+		@Override
+		public void failed(IOException e) {
+			failed.incrementAndGet();
+			latch.countDown();
+		}
+	}
+}
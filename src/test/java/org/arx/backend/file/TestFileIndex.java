@@ -0,0 +1,86 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.arx.util.Utils;
+import org.junit.Test;
+
+public class TestFileIndex {
+
+	@Test
+	public void testRescan() throws IOException {
+		Path dir = Files.createTempDirectory("arx");
+		try {
+			Path unchanged = Files.write(dir.resolve("unchanged"), "DATA".getBytes());
+			Path updated = Files.write(dir.resolve("updated"), "DATA".getBytes());
+			Path deleted = Files.write(dir.resolve("deleted"), "DATA".getBytes());
+			FileIndex index = new FileIndex();
+			for (Path path : new Path[] { unchanged, updated, deleted }) {
+				index.put(path, Files.readAttributes(path, BasicFileAttributes.class));
+			}
+			assertEquals(3, index.size());
+			// Changes that have not been reported
+			Files.write(updated, "MORE DATA".getBytes());
+			Files.setLastModifiedTime(updated, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+			Files.delete(deleted);
+			Path sub = Files.createDirectory(dir.resolve("sub"));
+			Path created = Files.write(sub.resolve("created"), "DATA".getBytes());
+			Files.write(sub.resolve(".created.1" + ResourceFiles.TEMP_SUFFIX), "DATA".getBytes());
+			Recorder recorder = new Recorder();
+			index.rescan(dir, recorder);
+			assertEquals("[" + dir + ", " + sub + "]", recorder.directories.toString());
+			assertEquals("[" + created + "]", recorder.created.toString());
+			assertEquals("[" + updated + "]", recorder.updated.toString());
+			assertEquals("[" + deleted + "]", recorder.deleted.toString());
+			assertEquals(3, index.size());
+			// A second rescan does not find any changes
+			recorder = new Recorder();
+			index.rescan(dir, recorder);
+			assertTrue(recorder.created.isEmpty() && recorder.updated.isEmpty() && recorder.deleted.isEmpty());
+			// All files of a deleted directory are deleted
+			Utils.cleanup(sub.toFile(), true);
+			recorder = new Recorder();
+			index.rescan(sub, recorder);
+			assertEquals("[" + created + "]", recorder.deleted.toString());
+			assertEquals(2, index.size());
+		} finally {
+			Utils.cleanup(dir.toFile(), true);
+		}
+	}
+
+	private static class Recorder implements FileIndex.ChangeHandler {
+		private final List<Path> directories = new ArrayList<Path>();
+		private final List<Path> created = new ArrayList<Path>();
+		private final List<Path> updated = new ArrayList<Path>();
+		private final List<Path> deleted = new ArrayList<Path>();
+
+		@Override
+		public void directory(Path directory) {
+			directories.add(directory);
+		}
+
+		@Override
+		public void created(Path path) {
+			created.add(path);
+		}
+
+		@Override
+		public void updated(Path path) {
+			updated.add(path);
+		}
+
+		@Override
+		public void deleted(Path path) {
+			deleted.add(path);
+		}
+	}
+}
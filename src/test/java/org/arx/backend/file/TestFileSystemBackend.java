@@ -1,10 +1,20 @@
 package org.arx.backend.file;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -13,12 +23,16 @@ import java.util.concurrent.TimeUnit;
 import org.arx.Credentials;
 import org.arx.Data;
 import org.arx.MessageType;
+import org.arx.Observer;
+import org.arx.Options;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.util.ByteArrayData;
 import org.arx.util.Configuration;
+import org.arx.util.Metadata;
 import org.arx.util.ResponseMessage;
 import org.arx.util.SimpleResource;
+import org.arx.util.StreamData;
 import org.arx.util.StringCredentials;
 import org.arx.util.Utils;
 import org.junit.Before;
@@ -408,4 +422,415 @@ public class TestFileSystemBackend {
 			Utils.cleanup("htdocs");
 		}
 	}
+
+	@Test
+	public void testAtomicUpdateNotifications() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			FileSystemBackend backend = new FileSystemBackend(executor);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			backend.subscribe(credentials, resource, subscriber);
+			for (String content : new String[] { "DUTU", "DOTO" }) {
+				backend.update(credentials, resource, new ByteArrayData(null, content.getBytes()), observer);
+				assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+				// Replacing the file is reported as update with the complete
+				// content and the subscription is kept
+				ResponseMessage message = subscriber.take();
+				assertEquals(MessageType.DATA, message.getResponse());
+				assertEquals(Reason.UPDATED, message.getReason());
+				assertEquals(content, new String(message.getData().getContent()));
+			}
+			assertNull(subscriber.poll(500, TimeUnit.MILLISECONDS));
+		} finally {
+			executor.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testResumeSubscription() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			FileSystemBackend backend = new FileSystemBackend(executor);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			backend.subscribe(credentials, resource, subscriber);
+			backend.update(credentials, resource, new ByteArrayData(null, "DUTU".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			long sequence = message.getSequence();
+			assertTrue(sequence != Observer.NO_SEQUENCE);
+			// Changes after the disconnect of a subscriber
+			backend.update(credentials, resource, new ByteArrayData(null, "DOTO".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			message = subscriber.take();
+			assertEquals("DOTO", new String(message.getData().getContent()));
+			assertNull(subscriber.poll(500, TimeUnit.MILLISECONDS));
+			// Resume with the missed changes only
+			Utils.QueingObserver resumed = new Utils.QueingObserver();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.RESUME_AFTER, Long.toString(sequence));
+			backend.subscribe(credentials, resource, options, resumed);
+			message = resumed.take();
+			assertEquals(MessageType.SUBSCRIBE, message.getRequest());
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("DOTO", new String(message.getData().getContent()));
+			assertTrue(message.getSequence() > sequence);
+			assertNull(resumed.poll(500, TimeUnit.MILLISECONDS));
+			// Resume from an unknown sequence number with a snapshot
+			Utils.QueingObserver snapshot = new Utils.QueingObserver();
+			options.put(Options.RESUME_AFTER, "1");
+			backend.subscribe(credentials, resource, options, snapshot);
+			message = snapshot.take();
+			assertEquals(Reason.INITIAL, message.getReason());
+			assertEquals("DOTO", new String(message.getData().getContent()));
+			assertTrue(message.getSequence() > sequence);
+			// Illegal sequence number
+			options.put(Options.RESUME_AFTER, "abc");
+			backend.subscribe(credentials, resource, options, observer);
+			assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+		} finally {
+			executor.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testResync() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/resync/updated", "DATA".getBytes());
+			Utils.write("htdocs/resync/deleted", "DATA".getBytes());
+			Utils.write("htdocs/resync/unchanged", "DATA".getBytes());
+			// The backend is not executed, so that all events are lost
+			FileSystemBackend backend = new FileSystemBackend(executor);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			backend.subscribe(credentials, new SimpleResource("resync/+"), subscriber);
+			Utils.write("htdocs/resync/updated", "DUTU".getBytes());
+			Files.setLastModifiedTime(Utils.HOME_PATH.resolve("htdocs/resync/updated"),
+					FileTime.fromMillis(System.currentTimeMillis() + 10000));
+			Utils.deleteIfExists("htdocs/resync/deleted");
+			Utils.write("htdocs/resync/created", "DATA".getBytes());
+			backend.resync(FileSystemFactory.getRoot());
+			Map<String, Reason> changes = new HashMap<String, Reason>();
+			for (int i = 0; i < 3; ++i) {
+				ResponseMessage message = subscriber.take();
+				assertEquals(MessageType.DATA, message.getResponse());
+				assertTrue(message.getSequence() != Observer.NO_SEQUENCE);
+				changes.put(message.getAffectedResource().getName(), message.getReason());
+			}
+			assertEquals(Reason.UPDATED, changes.get("resync/updated"));
+			assertEquals(Reason.DELETED, changes.get("resync/deleted"));
+			assertEquals(Reason.CREATED, changes.get("resync/created"));
+			assertNull(subscriber.poll(500, TimeUnit.MILLISECONDS));
+		} finally {
+			executor.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testIsCovered() {
+		Path root = FileSystemFactory.getRoot();
+		List<Resource> patterns = Arrays.<Resource> asList(new SimpleResource("a/+/c"));
+		assertTrue(FileSystemBackend.isCovered(root, patterns));
+		assertTrue(FileSystemBackend.isCovered(root.resolve("a"), patterns));
+		assertTrue(FileSystemBackend.isCovered(root.resolve("a/b"), patterns));
+		assertFalse(FileSystemBackend.isCovered(root.resolve("a/b/c"), patterns));
+		assertFalse(FileSystemBackend.isCovered(root.resolve("b"), patterns));
+		patterns = Arrays.<Resource> asList(new SimpleResource("a/#"));
+		assertTrue(FileSystemBackend.isCovered(root.resolve("a/b/c"), patterns));
+		assertFalse(FileSystemBackend.isCovered(root.resolve("b/c"), patterns));
+		patterns = Arrays.<Resource> asList(new SimpleResource("test"));
+		assertTrue(FileSystemBackend.isCovered(root, patterns));
+		assertFalse(FileSystemBackend.isCovered(root.resolve("a"), patterns));
+		assertFalse(FileSystemBackend.isCovered(root, Collections.<Resource> emptyList()));
+	}
+
+	@Test
+	public void testLazyWatchMode() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/lazy/a/test", "DATA".getBytes());
+			Utils.write("htdocs/lazy/b/test", "DATA".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.WATCH_MODE_KEY, "lazy");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			assertEquals(0, backend.getWatchCount());
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Resource pattern = new SimpleResource("lazy/a/+");
+			backend.subscribe(credentials, pattern, subscriber);
+			// Root, lazy and lazy/a are watched
+			awaitWatchCount(backend, 3);
+			Resource resource = new SimpleResource("lazy/a/test");
+			backend.update(credentials, resource, new ByteArrayData(null, "DUTU".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("DUTU", new String(message.getData().getContent()));
+			// Directories are released with the last subscription
+			backend.unsubscribe(credentials, pattern, subscriber);
+			awaitWatchCount(backend, 0);
+		} finally {
+			executor.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testDisconnect() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/disconnect/test", "DATA".getBytes());
+			FileSystemBackend backend = new FileSystemBackend(executor);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			backend.subscribe(credentials, new SimpleResource("disconnect/+"), subscriber);
+			backend.subscribe(credentials, new SimpleResource("disconnect/#"), subscriber);
+			backend.disconnect(subscriber);
+			Resource resource = new SimpleResource("disconnect/test");
+			backend.update(credentials, resource, new ByteArrayData(null, "DUTU".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// The disconnected subscriber is neither notified about the
+			// cancellation nor about changes
+			assertNull(subscriber.poll(500, TimeUnit.MILLISECONDS));
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testPollingChangeSource() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/poll/test", "DATA".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "poll");
+			parameters.put(FileSystemFactory.POLL_INTERVAL_KEY, "20");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			assertTrue(backend.getChangeSource() instanceof PollingChangeSource);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			backend.subscribe(credentials, new SimpleResource("poll/+"), subscriber);
+			Resource resource = new SimpleResource("poll/test");
+			backend.update(credentials, resource, new ByteArrayData(null, "DUTU".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("DUTU", new String(message.getData().getContent()));
+			backend.delete(credentials, resource, observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			message = subscriber.take();
+			assertEquals(Reason.DELETED, message.getReason());
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testPatch() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/patch/test", "DATA".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "poll");
+			parameters.put(FileSystemFactory.POLL_INTERVAL_KEY, "20");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			backend.subscribe(credentials, new SimpleResource("patch/+"), subscriber);
+			Resource resource = new SimpleResource("patch/test");
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.OFFSET, "1");
+			backend.patch(credentials, resource, new ByteArrayData(null, "U".getBytes()), options, observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// Subscribers receive the full content of the patched resource
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("DUTA", new String(message.getData().getContent()));
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testAppend() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/stream/log", "ABCD".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "poll");
+			parameters.put(FileSystemFactory.POLL_INTERVAL_KEY, "20");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("stream/log");
+			// The subscriber already knows the first two bytes
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.TAIL, "2");
+			backend.subscribe(credentials, resource, options, subscriber);
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.APPENDED, message.getReason());
+			StreamData data = (StreamData) message.getData();
+			assertEquals(2, data.getOffset());
+			assertEquals("CD", new String(data.getContent()));
+			backend.append(credentials, resource, new ByteArrayData(null, "EFGH".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// Subscribers receive only the appended bytes and the new end
+			message = subscriber.take();
+			assertEquals(Reason.APPENDED, message.getReason());
+			data = (StreamData) message.getData();
+			assertEquals(4, data.getOffset());
+			assertEquals(8, data.getEndOffset());
+			assertEquals("EFGH", new String(data.getContent()));
+			// Read from an offset
+			options = new HashMap<String, String>();
+			options.put(Options.OFFSET, "6");
+			backend.read(credentials, resource, options, observer);
+			message = observer.take();
+			assertEquals(Reason.PARTIAL, message.getReason());
+			data = (StreamData) message.getData();
+			assertEquals(6, data.getOffset());
+			assertEquals("GH", new String(data.getContent()));
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testMetadataOnly() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/meta/a", "DATA".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "poll");
+			parameters.put(FileSystemFactory.POLL_INTERVAL_KEY, "20");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.METADATA_ONLY, "true");
+			options.put(Options.REASONS, "created, deleted");
+			backend.subscribe(credentials, new SimpleResource("meta/+"), options, subscriber);
+			// Updates are filtered
+			backend.save(credentials, new SimpleResource("meta/a"), new ByteArrayData(null, "DUTU".getBytes()),
+					subscriber);
+			assertEquals(MessageType.SUCCESS, subscriber.take().getResponse());
+			backend.create(credentials, new SimpleResource("meta/b"), new ByteArrayData(null, "DOTO!".getBytes()),
+					subscriber);
+			assertEquals(MessageType.SUCCESS, subscriber.take().getResponse());
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.CREATED, message.getReason());
+			assertEquals("meta/b", message.getAffectedResource().getName());
+			Metadata metadata = (Metadata) message.getData();
+			assertEquals(5, metadata.getSize());
+			assertEquals(ResourceFiles.getVersion(FileSystemFactory.getPath(new SimpleResource("meta/b"))),
+					metadata.getVersion());
+			assertEquals(0, metadata.getContent().length);
+			assertNull(subscriber.poll(100, TimeUnit.MILLISECONDS));
+			// Only changes can be filtered
+			options.put(Options.REASONS, "INITIAL");
+			backend.subscribe(credentials, new SimpleResource("meta/+"), options, subscriber);
+			assertEquals(MessageType.BAD_REQUEST, subscriber.take().getResponse());
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testContentFilter() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/sensors/b", "{\"temperature\": 20}".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "poll");
+			parameters.put(FileSystemFactory.POLL_INTERVAL_KEY, "20");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.FILTER, "/temperature > 30");
+			backend.subscribe(credentials, new SimpleResource("sensors/#"), options, subscriber);
+			// Updates that do not match are not sent
+			backend.save(credentials, new SimpleResource("sensors/b"),
+					new ByteArrayData(null, "{\"temperature\": 25}".getBytes()), subscriber);
+			assertEquals(MessageType.SUCCESS, subscriber.take().getResponse());
+			assertNull(subscriber.poll(200, TimeUnit.MILLISECONDS));
+			backend.save(credentials, new SimpleResource("sensors/b"),
+					new ByteArrayData(null, "{\"temperature\": 32}".getBytes()), subscriber);
+			assertEquals(MessageType.SUCCESS, subscriber.take().getResponse());
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("sensors/b", message.getAffectedResource().getName());
+			assertEquals("{\"temperature\": 32}", new String(message.getData().getContent()));
+			// Illegal filters are rejected
+			options.put(Options.FILTER, "temperature > 30");
+			backend.subscribe(credentials, new SimpleResource("sensors/#"), options, subscriber);
+			assertEquals(MessageType.BAD_REQUEST, subscriber.take().getResponse());
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testSyntheticChangeSource() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Utils.write("htdocs/synthetic/test", "DATA".getBytes());
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(FileSystemFactory.CHANGE_SOURCE_KEY, "synthetic");
+			FileSystemBackend backend = new FileSystemBackend(executor, parameters);
+			SyntheticChangeSource source = (SyntheticChangeSource) backend.getChangeSource();
+			executor.execute(backend);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver subscriber = new Utils.QueingObserver();
+			backend.subscribe(credentials, new SimpleResource("synthetic/+"), subscriber);
+			// The file is not changed, but its subscribers are notified
+			source.injectModified(FileSystemFactory.getPath(new SimpleResource("synthetic/test")));
+			ResponseMessage message = subscriber.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals("DATA", new String(message.getData().getContent()));
+		} finally {
+			executor.shutdownNow();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	private static void awaitWatchCount(FileSystemBackend backend, int count) throws InterruptedException {
+		for (int i = 0; i < 500 && backend.getWatchCount() != count; ++i) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, backend.getWatchCount());
+	}
 }
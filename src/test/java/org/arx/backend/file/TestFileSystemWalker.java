@@ -3,11 +3,16 @@ package org.arx.backend.file;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.arx.Resource;
 import org.arx.util.Configuration;
+import org.arx.util.ResourceProcessor;
 import org.arx.util.ResourceVisitor;
 import org.arx.util.SimpleResource;
 import org.arx.util.Utils;
@@ -43,6 +48,34 @@ public class TestFileSystemWalker {
 		}
 	}
 
+	@Test
+	public void testTempFiles() throws IOException {
+		try {
+			Utils.write("htdocs/a/test", "DATA".getBytes());
+			Utils.write("htdocs/a/.test.1" + ResourceFiles.TEMP_SUFFIX, "DA".getBytes());
+			for (String pattern : new String[] { "a/+", "a/#" }) {
+				for (ForkJoinPool pool : new ForkJoinPool[] { null, new ForkJoinPool(2) }) {
+					final List<String> visited = new LinkedList<String>();
+					new FileSystemWalker(true, pool).walkResource(new SimpleResource(pattern),
+							new ResourceProcessor<Resource>() {
+								@Override
+								public Resource process(Resource res) {
+									return res;
+								}
+
+								@Override
+								public void complete(Resource res, Resource result) {
+									visited.add(result.getName());
+								}
+							});
+					assertEquals(Arrays.asList("a/test"), visited);
+				}
+			}
+		} finally {
+			Utils.cleanup("htdocs");
+		}
+	}
+
 	@Test
 	public void testNotOnlyExisting() throws IOException {
 		try {
@@ -66,4 +99,73 @@ public class TestFileSystemWalker {
 			Utils.cleanup("htdocs");
 		}
 	}
+
+	@Test
+	public void testParallel() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			// Make sure some resources do exist
+			Utils.write("htdocs/a/d/c/test", "DATA".getBytes());
+			Utils.write("htdocs/a/b/c/test", "DATA".getBytes());
+			Utils.write("htdocs/a/b/test", "DATA".getBytes());
+			Utils.write("htdocs/a/x/c/test", "DATA".getBytes());
+			Utils.write("htdocs/a/c/test", "DATA".getBytes());
+			FileSystemWalker walker = new FileSystemWalker(true, pool);
+			assertEquals(true, walker.isParallel());
+			List<String> completed = new LinkedList<String>();
+			walker.walkResource(new SimpleResource("a/#"), new ResourceProcessor<String>() {
+				@Override
+				public String process(Resource res) throws IOException {
+					return res.getName();
+				}
+
+				@Override
+				public void complete(Resource res, String result) throws IOException {
+					assertEquals(res.getName(), result);
+					completed.add(result);
+				}
+			});
+			assertEquals(Arrays.asList("a/b/c/test", "a/b/test", "a/c/test", "a/d/c/test", "a/x/c/test"), completed);
+			completed.clear();
+			walker.walkResource(new SimpleResource("a/+/c/test"), new ResourceProcessor<String>() {
+				@Override
+				public String process(Resource res) throws IOException {
+					return res.getName();
+				}
+
+				@Override
+				public void complete(Resource res, String result) throws IOException {
+					completed.add(result);
+				}
+			});
+			assertEquals(Arrays.asList("a/b/c/test", "a/d/c/test", "a/x/c/test"), completed);
+		} finally {
+			pool.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testParallelError() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			// Make sure some resources do exist
+			Utils.write("htdocs/a/b/test", "DATA".getBytes());
+			Utils.write("htdocs/a/c/test", "DATA".getBytes());
+			FileSystemWalker walker = new FileSystemWalker(true, pool);
+			walker.walkResource(new SimpleResource("a/+/test"), new ResourceProcessor<String>() {
+				@Override
+				public String process(Resource res) throws IOException {
+					throw new IOException();
+				}
+
+				@Override
+				public void complete(Resource res, String result) throws IOException {
+				}
+			});
+		} finally {
+			pool.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
 }
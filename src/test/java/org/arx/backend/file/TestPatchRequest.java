@@ -0,0 +1,93 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.Endpoint;
+import org.arx.MessageType;
+import org.arx.Options;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.ResponseMessage;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPatchRequest {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testByteRange() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "0123456789".getBytes());
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			long version = ResourceFiles.getVersion(path);
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.OFFSET, "8");
+			new PatchRequest(credentials, resource, new ByteArrayData(null, "ABCD".getBytes()), options, observer,
+					Durability.NONE).run();
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.SUCCESS, message.getResponse());
+			assertEquals(MessageType.PATCH, message.getRequest());
+			assertEquals("test", message.getAffectedResource().getName());
+			assertEquals("01234567ABCD", Utils.readString("htdocs/test"));
+			// The version increases with every patch
+			long newVersion = ResourceFiles.getVersion(path);
+			assertEquals(true, newVersion > version);
+			// Conditional patch with an outdated version
+			Data patch = new ByteArrayData(null, "X".getBytes(), version);
+			new PatchRequest(credentials, resource, patch, options, observer, Durability.NONE).run();
+			assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+			// Missing offset
+			new PatchRequest(credentials, resource, new ByteArrayData(null, "X".getBytes()), null, observer,
+					Durability.NONE).run();
+			assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+			// Missing resource
+			new PatchRequest(credentials, new SimpleResource("tast"), new ByteArrayData(null, "X".getBytes()),
+					options, observer, Durability.NONE).run();
+			assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+			// Missing access right
+			new PatchRequest(new StringCredentials("# crd"), resource, new ByteArrayData(null, "X".getBytes()),
+					options, observer, Durability.NONE).run();
+			assertEquals(MessageType.FORBIDDEN, observer.take().getResponse());
+			assertEquals("01234567ABCD", Utils.readString("htdocs/test"));
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+			Utils.deleteIfExists("htdocs/tast");
+		}
+	}
+
+	@Test
+	public void testMergePatch() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test.json", "{\"a\":1,\"b\":{\"c\":2,\"d\":3}}".getBytes());
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test.json");
+			Data patch = new ByteArrayData(Endpoint.MERGE_PATCH_MIME_TYPE, "{\"b\":{\"c\":null,\"e\":4}}".getBytes());
+			new PatchRequest(credentials, resource, patch, null, observer, Durability.NONE).run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals("{\"a\":1,\"b\":{\"d\":3,\"e\":4}}", Utils.readString("htdocs/test.json"));
+			patch = new ByteArrayData(Endpoint.MERGE_PATCH_MIME_TYPE, "{\"b\":".getBytes());
+			new PatchRequest(credentials, resource, patch, null, observer, Durability.NONE).run();
+			assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+		} finally {
+			Utils.deleteIfExists("htdocs/test.json");
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.arx.util.Configuration;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPollingChangeSource {
+
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testPoll() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("arx");
+		PollingChangeSource source = new PollingChangeSource(null, null);
+		try {
+			Path updated = Files.write(dir.resolve("updated"), "DATA".getBytes());
+			Path deleted = Files.write(dir.resolve("deleted"), "DATA".getBytes());
+			source.watch(dir);
+			assertTrue(source.isWatched(dir));
+			Recorder recorder = new Recorder();
+			source.poll(recorder);
+			assertTrue(recorder.isEmpty());
+			Files.write(updated, "MORE DATA".getBytes());
+			Files.setLastModifiedTime(updated, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+			Files.delete(deleted);
+			Path created = Files.write(dir.resolve("created"), "DATA".getBytes());
+			Path sub = Files.createDirectory(dir.resolve("sub"));
+			Files.write(dir.resolve(".created.1" + ResourceFiles.TEMP_SUFFIX), "DATA".getBytes());
+			source.poll(recorder);
+			assertEquals(2, recorder.created.size());
+			assertTrue(recorder.created.contains(created) && recorder.created.contains(sub));
+			assertEquals("[" + updated + "]", recorder.modified.toString());
+			assertEquals("[" + deleted + "]", recorder.deleted.toString());
+			assertEquals(4, source.getStatistics().getChanges());
+			// Changes are reported only once
+			recorder = new Recorder();
+			source.poll(recorder);
+			assertTrue(recorder.isEmpty());
+			// Deleted directories are no longer watched
+			source.watch(sub);
+			Utils.cleanup(sub.toFile(), true);
+			source.poll(recorder);
+			assertEquals("[" + sub + "]", recorder.deleted.toString());
+			assertFalse(source.isWatched(sub));
+			source.unwatch(dir);
+			assertEquals(0, source.getWatchedDirectories().size());
+		} finally {
+			source.close();
+			Utils.cleanup(dir.toFile(), true);
+		}
+	}
+
+	private static class Recorder implements ChangeSource.Listener {
+		private final List<Path> created = new ArrayList<Path>();
+		private final List<Path> modified = new ArrayList<Path>();
+		private final List<Path> deleted = new ArrayList<Path>();
+		private final List<Path> overflows = new ArrayList<Path>();
+
+		public boolean isEmpty() {
+			return created.isEmpty() && modified.isEmpty() && deleted.isEmpty() && overflows.isEmpty();
+		}
+
+		@Override
+		public void created(Path path) {
+			created.add(path);
+		}
+
+		@Override
+		public void modified(Path path) {
+			modified.add(path);
+		}
+
+		@Override
+		public void deleted(Path path) {
+			deleted.add(path);
+		}
+
+		@Override
+		public void overflow(Path directory) {
+			overflows.add(directory);
+		}
+	}
+}
@@ -1,14 +1,22 @@
 package org.arx.backend.file;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.arx.Credentials;
+import org.arx.Data;
 import org.arx.MessageType;
+import org.arx.Options;
 import org.arx.Reason;
 import org.arx.Resource;
+import org.arx.util.ByteArrayData;
 import org.arx.util.Configuration;
 import org.arx.util.ResponseMessage;
 import org.arx.util.SimpleResource;
@@ -133,4 +141,175 @@ public class TestReadRequest {
 		}
 	}
 
+	@Test
+	public void testNotModified() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			new ReadRequest(credentials, resource, observer).run();
+			long version = observer.take().getData().getVersion();
+			observer.take();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.IF_NONE_MATCH, Long.toString(version));
+			new ReadRequest(credentials, resource, options, observer).run();
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.DATA, message.getResponse());
+			assertEquals(Reason.NOT_MODIFIED, message.getReason());
+			assertNull(message.getData());
+			assertEquals("test", message.getAffectedResource().getName());
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// A modified resource is read again
+			new UpdateRequest(credentials, resource, new ByteArrayData(null, "DUTU".getBytes()), observer).run();
+			observer.take();
+			new ReadRequest(credentials, resource, options, observer).run();
+			message = observer.take();
+			assertEquals(Reason.INITIAL, message.getReason());
+			assertEquals("DUTU", new String(message.getData().getContent()));
+			assertTrue(message.getData().getVersion() > version);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testPatternNotModified() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/a/b", "DATA".getBytes());
+			Utils.write("htdocs/a/c", "DATA".getBytes());
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("a/+");
+			new ReadRequest(credentials, resource, observer).run();
+			long version = Math.max(observer.take().getData().getVersion(), observer.take().getData().getVersion());
+			observer.take();
+			new UpdateRequest(credentials, new SimpleResource("a/c"), new ByteArrayData(null, "DUTU".getBytes()),
+					observer).run();
+			observer.take();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.IF_NONE_MATCH, Long.toString(version));
+			new ReadRequest(credentials, resource, options, observer).run();
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.DATA, message.getResponse());
+			assertEquals("a/c", message.getAffectedResource().getName());
+			assertEquals("DUTU", new String(message.getData().getContent()));
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		} finally {
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testIllegalVersion() throws InterruptedException, IOException {
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(Options.IF_NONE_MATCH, "abc");
+		new ReadRequest(credentials, new SimpleResource("test"), options, observer).run();
+		assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+	}
+
+	@Test
+	public void testAttach() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Resource resource = new SimpleResource("test");
+			Map<Resource, ReadRequest> pendingReads = new HashMap<Resource, ReadRequest>();
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Utils.QueingObserver attached = new Utils.QueingObserver();
+			Utils.QueingObserver forbidden = new Utils.QueingObserver();
+			ReadRequest request = new ReadRequest(new StringCredentials("# crud"), resource, null, observer,
+					pendingReads, ReadRequest.DEFAULT_CHUNK_SIZE);
+			pendingReads.put(resource, request);
+			assertTrue(request.attach(new StringCredentials("# crud"), null, attached));
+			assertTrue(request.attach(new StringCredentials("# cud"), null, forbidden));
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.IF_NONE_MATCH, "1");
+			assertFalse(request.attach(new StringCredentials("# crud"), options, attached));
+			request.run();
+			assertTrue(pendingReads.isEmpty());
+			for (Utils.QueingObserver reader : new Utils.QueingObserver[] { observer, attached }) {
+				ResponseMessage message = reader.take();
+				assertEquals(MessageType.DATA, message.getResponse());
+				assertEquals("DATA", new String(message.getData().getContent()));
+				assertEquals(MessageType.SUCCESS, reader.take().getResponse());
+			}
+			assertEquals(MessageType.FORBIDDEN, forbidden.take().getResponse());
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testPartial() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "0123456789".getBytes());
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.OFFSET, "2");
+			options.put(Options.LENGTH, "7");
+			options.put(Options.CHUNK_SIZE, "3");
+			new ReadRequest(credentials, new SimpleResource("test"), options, observer).run();
+			long version = ResourceFiles.getVersion(Utils.HOME_PATH.resolve("htdocs/test"));
+			for (String part : new String[] { "234", "567", "8" }) {
+				ResponseMessage message = observer.take();
+				assertEquals(MessageType.DATA, message.getResponse());
+				assertEquals(Reason.PARTIAL, message.getReason());
+				assertEquals(part, new String(message.getData().getContent()));
+				assertEquals(version, message.getData().getVersion());
+			}
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// The chunk size is limited by the maximum chunk size
+			options.clear();
+			options.put(Options.OFFSET, "8");
+			new ReadRequest(credentials, new SimpleResource("test"), options, observer, null, 1).run();
+			assertEquals("8", new String(observer.take().getData().getContent()));
+			assertEquals("9", new String(observer.take().getData().getContent()));
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			// A range behind the end of the resource results in an empty part
+			options.put(Options.OFFSET, "20");
+			new ReadRequest(credentials, new SimpleResource("test"), options, observer).run();
+			assertEquals(0, observer.take().getData().getContent().length);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			options.put(Options.CHUNK_SIZE, "0");
+			new ReadRequest(credentials, new SimpleResource("test"), options, observer).run();
+			assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testPatchedWhileReading() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "0123456789".getBytes());
+			final Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			Credentials credentials = new StringCredentials("# crud");
+			final Utils.QueingObserver observer = new Utils.QueingObserver();
+			Map<String, String> options = new HashMap<String, String>();
+			options.put(Options.CHUNK_SIZE, "5");
+			// Patch the resource after the first part has been sent
+			new ReadRequest(credentials, new SimpleResource("test"), options, new Utils.QueingObserver() {
+				@Override
+				public void onData(MessageType request, Resource resource, Reason reason,
+						Resource affectedResource, Data data) throws IOException {
+					observer.onData(request, resource, reason, affectedResource, data);
+					ResourceFiles.patch(path, 0, "A".getBytes(), Data.NO_VERSION);
+				}
+
+				@Override
+				public void onError(MessageType request, Resource resource, MessageType status) throws IOException {
+					observer.onError(request, resource, status);
+				}
+			}).run();
+			assertEquals("01234", new String(observer.take().getData().getContent()));
+			assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
 }
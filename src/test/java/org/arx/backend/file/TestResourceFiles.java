@@ -0,0 +1,123 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.arx.Data;
+import org.arx.util.Configuration;
+import org.arx.util.StreamData;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResourceFiles {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testTempFiles() {
+		assertTrue(ResourceFiles.isTempFile(Paths.get("a", ".test.1" + ResourceFiles.TEMP_SUFFIX)));
+		assertFalse(ResourceFiles.isTempFile(Paths.get("a", "test" + ResourceFiles.TEMP_SUFFIX)));
+		assertFalse(ResourceFiles.isTempFile(Paths.get("a", ".test")));
+	}
+
+	@Test
+	public void testAtomicWrite() throws IOException {
+		try {
+			Utils.deleteIfExists("htdocs/test");
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			long version = ResourceFiles.write(path, "DATA".getBytes(), Data.NO_VERSION);
+			// A created file has not been replaced
+			assertFalse(ResourceFiles.wasReplaced(path));
+			long newVersion = ResourceFiles.write(path, "DUTU".getBytes(), version);
+			assertTrue(newVersion > version);
+			assertEquals(newVersion, ResourceFiles.getVersion(path));
+			assertEquals("DUTU", Utils.readString("htdocs/test"));
+			assertTrue(ResourceFiles.wasReplaced(path));
+			assertFalse(ResourceFiles.wasReplaced(path));
+			// No temporary file is left behind
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path.getParent())) {
+				for (Path entry : stream) {
+					assertFalse(ResourceFiles.isTempFile(entry));
+				}
+			}
+		} finally {
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			long version = ResourceFiles.getVersion(path);
+			assertEquals(8, ResourceFiles.append(path, "DUTU".getBytes(), version));
+			assertTrue(ResourceFiles.getVersion(path) > version);
+			assertEquals("DATADUTU", Utils.readString("htdocs/test"));
+			// Only the appended bytes are read
+			StreamData data = ResourceFiles.readTail(path, null, 4);
+			assertEquals(4, data.getOffset());
+			assertEquals(8, data.getEndOffset());
+			assertEquals("DUTU", new String(data.getContent()));
+			// A truncated file is read completely
+			Utils.write("htdocs/test", "DOTO".getBytes());
+			data = ResourceFiles.readTail(path, null, 8);
+			assertEquals(0, data.getOffset());
+			assertEquals("DOTO", new String(data.getContent()));
+		} finally {
+			Utils.cleanup("htdocs");
+		}
+	}
+
+	@Test(expected = NoSuchFileException.class)
+	public void testAppendMissing() throws IOException {
+		ResourceFiles.append(Utils.HOME_PATH.resolve("htdocs/tast"), "DATA".getBytes(), Data.NO_VERSION);
+	}
+
+	@Test
+	public void testConcurrentRead() throws IOException, InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			final Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			List<Future<Data>> results = new ArrayList<Future<Data>>();
+			for (int i = 0; i < 32; ++i) {
+				results.add(executor.submit(new Callable<Data>() {
+					@Override
+					public Data call() throws IOException {
+						return ResourceFiles.read(path, "text/plain");
+					}
+				}));
+			}
+			long version = ResourceFiles.getVersion(path);
+			for (Future<Data> result : results) {
+				assertEquals("DATA", new String(result.get().getContent()));
+				assertEquals(version, result.get().getVersion());
+			}
+			// A read after a write sees the new content
+			ResourceFiles.write(path, "DUTU".getBytes(), Data.NO_VERSION);
+			assertEquals("DUTU", new String(ResourceFiles.read(path, "text/plain").getContent()));
+		} finally {
+			executor.shutdown();
+			Utils.cleanup("htdocs");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.arx.backend.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.ResponseMessage;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSaveCoalescer {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testCanCoalesce() {
+		Data data = new ByteArrayData(null, "DATA".getBytes());
+		assertTrue(SaveCoalescer.canCoalesce(new SimpleResource("test"), data));
+		assertFalse(SaveCoalescer.canCoalesce(new SimpleResource("test/+"), data));
+		Data versioned = new ByteArrayData(null, "DATA".getBytes(), 42);
+		assertFalse(SaveCoalescer.canCoalesce(new SimpleResource("test"), versioned));
+	}
+
+	@Test
+	public void testCoalescedSaves() throws IOException, InterruptedException {
+		final int requests = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Utils.deleteIfExists("htdocs/test");
+			FileSystemBackend backend = new FileSystemBackend(executor, getParameters(60000));
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			for (int i = 0; i < requests; ++i) {
+				backend.save(credentials, resource, new ByteArrayData(null, ("DATA" + i).getBytes()), observer);
+			}
+			// The window is still open, a read flushes the pending requests
+			backend.read(credentials, resource, observer);
+			for (int i = 0; i < requests; ++i) {
+				ResponseMessage message = observer.take();
+				assertEquals(MessageType.SUCCESS, message.getResponse());
+				assertEquals(MessageType.SAVE, message.getRequest());
+				assertEquals("test", message.getAffectedResource().getName());
+			}
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.DATA, message.getResponse());
+			assertEquals("DATA" + (requests - 1), new String(message.getData().getContent()));
+			assertEquals("DATA" + (requests - 1), Utils.readString("htdocs/test"));
+		} finally {
+			executor.shutdown();
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testWindow() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Utils.deleteIfExists("htdocs/test");
+			FileSystemBackend backend = new FileSystemBackend(executor, getParameters(10));
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			backend.save(credentials, resource, new ByteArrayData(null, "DATA1".getBytes()), observer);
+			backend.save(credentials, resource, new ByteArrayData(null, "DATA2".getBytes()), observer);
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals("DATA2", Utils.readString("htdocs/test"));
+			// Other requests keep their order relative to pending saves
+			backend.save(credentials, resource, new ByteArrayData(null, "DATA3".getBytes()), observer);
+			backend.delete(credentials, resource, observer);
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.SAVE, message.getRequest());
+			assertEquals(MessageType.SUCCESS, message.getResponse());
+			message = observer.take();
+			assertEquals(MessageType.DELETE, message.getRequest());
+			assertEquals(MessageType.SUCCESS, message.getResponse());
+			assertEquals(false, Utils.fileExists("htdocs/test"));
+		} finally {
+			executor.shutdown();
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testForbidden() throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			FileSystemBackend backend = new FileSystemBackend(executor, getParameters(60000));
+			Credentials credentials = new StringCredentials("# r");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			backend.save(credentials, new SimpleResource("test"), new ByteArrayData(null, "DATA".getBytes()),
+					observer);
+			assertEquals(MessageType.FORBIDDEN, observer.take().getResponse());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static Map<String, String> getParameters(int window) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(FileSystemFactory.COALESCE_WINDOW_KEY, Integer.toString(window));
+		return parameters;
+	}
+}
@@ -115,4 +115,33 @@ public class TestSaveRequest {
 		}
 	}
 
+	@Test
+	public void testConditionalSave() throws InterruptedException, IOException {
+		try {
+			// Make sure the resource test does not exist
+			Utils.deleteIfExists("htdocs/test");
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			// A conditional save of a missing resource fails
+			SaveRequest request = new SaveRequest(credentials, resource,
+					new ByteArrayData(null, "DATA".getBytes(), 42), observer);
+			request.run();
+			assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+			assertEquals(false, Utils.fileExists("htdocs/test"));
+			// A conditional save with the current version succeeds
+			Utils.write("htdocs/test", "DATA".getBytes());
+			new ReadRequest(credentials, resource, observer).run();
+			long version = observer.take().getData().getVersion();
+			observer.take();
+			request = new SaveRequest(credentials, resource, new ByteArrayData(null, "DUTU".getBytes(), version),
+					observer);
+			request.run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals("DUTU", Utils.readString("htdocs/test"));
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
 }
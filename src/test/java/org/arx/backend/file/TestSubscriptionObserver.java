@@ -3,16 +3,26 @@ package org.arx.backend.file;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.arx.Credentials;
 import org.arx.Data;
 import org.arx.MessageType;
+import org.arx.Observer;
 import org.arx.Reason;
 import org.arx.Resource;
 import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.Delta;
+import org.arx.util.Metadata;
 import org.arx.util.ResponseMessage;
 import org.arx.util.SimpleResource;
+import org.arx.util.StreamData;
 import org.arx.util.StringCredentials;
 import org.arx.util.Utils;
 import org.junit.Test;
@@ -45,6 +55,39 @@ public class TestSubscriptionObserver {
 		assertEquals("test",message.getAffectedResource().getName());
 	}
 
+	@Test
+	public void testDeliver() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			final Resource resource = new SimpleResource("test");
+			final SubscriptionObserver subscription = new SubscriptionObserver(credentials, observer, resource, false);
+			for (int i = 1; i <= 1000; ++i) {
+				final long sequence = i;
+				final Reason reason = i % 2 == 0 ? Reason.DELETED : Reason.UPDATED;
+				subscription.deliver(executor, new Runnable() {
+					@Override
+					public void run() {
+						try {
+							subscription.onData(MessageType.SUBSCRIBE, resource, reason, resource, null, sequence);
+						} catch (IOException e) {
+							fail(e.getMessage());
+						}
+					}
+				});
+			}
+			// Notifications are delivered in the order of their submission
+			for (int i = 1; i <= 1000; ++i) {
+				ResponseMessage message = observer.poll(10, TimeUnit.SECONDS);
+				assertEquals(i, message.getSequence());
+				assertEquals(i % 2 == 0 ? Reason.DELETED : Reason.UPDATED, message.getReason());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void testOnSuccess() throws IOException, InterruptedException {
 		Credentials credentials = new StringCredentials("# crud");
@@ -104,6 +147,141 @@ public class TestSubscriptionObserver {
 		assertEquals("test",message.getAffectedResource().getName());
 	}
 
+	@Test
+	public void testCollapsing() throws IOException, InterruptedException {
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Resource pattern = new SimpleResource("+");
+		Resource a = new SimpleResource("a");
+		Resource b = new SimpleResource("b");
+		Resource c = new SimpleResource("c");
+		SubscriptionObserver subscription = new SubscriptionObserver(credentials, observer, pattern, true);
+		subscription.startBuffering();
+		// Contained in the snapshot at sequence 10
+		subscription.onData(MessageType.SUBSCRIBE_STATUS, pattern, Reason.UPDATED, c, null, 10);
+		for (int i = 1; i <= 100; ++i) {
+			subscription.onData(MessageType.SUBSCRIBE_STATUS, pattern, Reason.UPDATED, a,
+					new ByteArrayData(null, ("A" + i).getBytes(), i), 10 + i);
+		}
+		subscription.onData(MessageType.SUBSCRIBE_STATUS, pattern, Reason.UPDATED, b,
+				new ByteArrayData(null, "B".getBytes(), 7), 111);
+		// The snapshot of b already contains the buffered change
+		subscription.onData(MessageType.SUBSCRIBE_STATUS, pattern, Reason.INITIAL, b,
+				new ByteArrayData(null, "B".getBytes(), 7), 10);
+		assertEquals(Reason.INITIAL, observer.take().getReason());
+		subscription.stopBuffering(10);
+		// Only the last change of a is sent
+		ResponseMessage message = observer.take();
+		assertEquals(Reason.UPDATED, message.getReason());
+		assertEquals("a", message.getAffectedResource().getName());
+		assertEquals("A100", new String(message.getData().getContent()));
+		assertEquals(110, message.getSequence());
+		assertNull(observer.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDeltas() throws IOException, InterruptedException {
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Resource resource = new SimpleResource("test");
+		SubscriptionObserver subscription = new SubscriptionObserver(credentials, observer, resource, false);
+		subscription.enableDeltas(50);
+		byte[] content = new byte[1000];
+		Arrays.fill(content, (byte) 'A');
+		subscription.onData(MessageType.SUBSCRIBE, resource, Reason.CREATED, resource,
+				new ByteArrayData(null, content, 1));
+		assertEquals(Reason.CREATED, observer.take().getReason());
+		// A small change is sent as delta
+		byte[] changed = content.clone();
+		changed[500] = 'B';
+		subscription.onData(MessageType.SUBSCRIBE, resource, Reason.UPDATED, resource,
+				new ByteArrayData(null, changed, 2));
+		ResponseMessage message = observer.take();
+		assertEquals(Reason.DELTA, message.getReason());
+		assertEquals(2, message.getData().getVersion());
+		assertTrue(message.getData().getContent().length < 100);
+		assertArrayEquals(changed, Delta.apply(content, message.getData().getContent()));
+		// A completely different content is sent as it is
+		subscription.onData(MessageType.SUBSCRIBE, resource, Reason.UPDATED, resource,
+				new ByteArrayData(null, "DATA".getBytes(), 3));
+		message = observer.take();
+		assertEquals(Reason.UPDATED, message.getReason());
+		assertEquals("DATA", new String(message.getData().getContent()));
+		// After a deletion, the next content is sent as it is
+		subscription.onData(MessageType.SUBSCRIBE, resource, Reason.DELETED, resource, null);
+		assertEquals(Reason.DELETED, observer.take().getReason());
+		subscription.onData(MessageType.SUBSCRIBE, resource, Reason.UPDATED, resource,
+				new ByteArrayData(null, "DATA".getBytes(), 4));
+		message = observer.take();
+		assertEquals(Reason.UPDATED, message.getReason());
+		assertEquals("DATA", new String(message.getData().getContent()));
+	}
+
+	@Test
+	public void testTail() throws IOException, InterruptedException {
+		try {
+			Configuration.createInstance(Utils.HOME);
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			SubscriptionObserver subscription = new SubscriptionObserver(credentials, observer, resource, false);
+			subscription.enableTail(4);
+			assertTrue(subscription.isTail());
+			// Nothing has been appended
+			subscription.tail(resource, path, Observer.NO_SEQUENCE);
+			assertNull(observer.poll(100, TimeUnit.MILLISECONDS));
+			ResourceFiles.append(path, "DUTU".getBytes(), Data.NO_VERSION);
+			subscription.tail(resource, path, Observer.NO_SEQUENCE);
+			ResponseMessage message = observer.take();
+			assertEquals(Reason.APPENDED, message.getReason());
+			assertEquals(4, ((StreamData) message.getData()).getOffset());
+			assertEquals("DUTU", new String(message.getData().getContent()));
+			// A truncated resource is sent completely
+			Utils.write("htdocs/test", "DOTO".getBytes());
+			subscription.tail(resource, path, Observer.NO_SEQUENCE);
+			message = observer.take();
+			assertEquals(Reason.UPDATED, message.getReason());
+			assertEquals(0, ((StreamData) message.getData()).getOffset());
+			assertEquals("DOTO", new String(message.getData().getContent()));
+			// A resource that is created again starts at the beginning
+			subscription.onData(MessageType.SUBSCRIBE, resource, Reason.DELETED, resource, null);
+			assertEquals(Reason.DELETED, observer.take().getReason());
+			Utils.write("htdocs/test", "DATA".getBytes());
+			subscription.tail(resource, path, Observer.NO_SEQUENCE);
+			message = observer.take();
+			assertEquals(Reason.APPENDED, message.getReason());
+			assertEquals("DATA", new String(message.getData().getContent()));
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testFilters() throws IOException {
+		try {
+			Configuration.createInstance(Utils.HOME);
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Path path = Utils.HOME_PATH.resolve("htdocs/test");
+			Resource resource = new SimpleResource("test");
+			SubscriptionObserver subscription = new SubscriptionObserver(new StringCredentials("# crud"),
+					new Utils.QueingObserver(), resource, false);
+			assertTrue(subscription.accepts(Reason.UPDATED));
+			assertEquals("DATA", new String(subscription.read(resource, path).getContent()));
+			subscription.filterReasons(EnumSet.of(Reason.CREATED, Reason.DELETED));
+			subscription.enableMetadataOnly();
+			assertTrue(subscription.accepts(Reason.CREATED));
+			assertFalse(subscription.accepts(Reason.UPDATED));
+			Metadata metadata = (Metadata) subscription.read(resource, path);
+			assertEquals(4, metadata.getSize());
+			assertEquals(ResourceFiles.getVersion(path), metadata.getVersion());
+			assertEquals(0, metadata.getContent().length);
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
 	@Test
 	public void testQueuingError() throws IOException, InterruptedException {
 		Credentials credentials = new StringCredentials("# crud");
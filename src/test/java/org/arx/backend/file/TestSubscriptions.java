@@ -147,6 +147,64 @@ public class TestSubscriptions {
 		assertEquals(expected,result);
 	}
 
+	@Test
+	public void testListener() {
+		final StringBuilder events = new StringBuilder();
+		Subscriptions subs = new Subscriptions();
+		subs.setListener(new Subscriptions.Listener() {
+			@Override
+			public void subscribed(Resource resourcePattern) {
+				events.append("+").append(resourcePattern.getName());
+			}
+
+			@Override
+			public void unsubscribed(Resource resourcePattern) {
+				events.append("-").append(resourcePattern.getName());
+			}
+		});
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer1 = new Utils.QueingObserver();
+		Utils.QueingObserver observer2 = new Utils.QueingObserver();
+		Resource pattern = new SimpleResource("a/+");
+		SubscriptionObserver sub1 = new SubscriptionObserver(credentials, observer1, pattern, false);
+		SubscriptionObserver sub2 = new SubscriptionObserver(credentials, observer2, pattern, false);
+		subs.subscribe(sub1);
+		subs.subscribe(sub2);
+		subs.subscribe(new SubscriptionObserver(credentials, observer1, new SimpleResource("b"), false));
+		assertEquals(new HashSet<Resource>(Arrays.asList(pattern, new SimpleResource("b"))),
+				subs.getResourcePatterns());
+		subs.unsubscribe(sub1);
+		assertEquals("+a/++b", events.toString());
+		subs.unsubscribe(sub2);
+		assertEquals("+a/++b-a/+", events.toString());
+		subs.unsubscribeAll(observer1);
+		assertEquals("+a/++b-a/+-b", events.toString());
+		assertEquals(0, subs.getResourcePatterns().size());
+	}
+
+	@Test
+	public void testObserverIndex() {
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer1 = new Utils.QueingObserver();
+		Utils.QueingObserver observer2 = new Utils.QueingObserver();
+		Subscriptions subs = new Subscriptions();
+		SubscriptionObserver sub = new SubscriptionObserver(credentials, observer1, new SimpleResource("a/+"), false);
+		subs.subscribe(sub);
+		subs.subscribe(new SubscriptionObserver(credentials, observer1, new SimpleResource("a/b/#"), false));
+		subs.subscribe(new SubscriptionObserver(credentials, observer2, new SimpleResource("a/+"), false));
+		assertEquals(2, subs.getObserverCount());
+		// Subscriptions are identified by their resource pattern and observer
+		assertEquals(sub, new SubscriptionObserver(credentials, observer1, new SimpleResource("a/+"), true));
+		assertEquals(false, sub.equals(new SubscriptionObserver(credentials, observer2, new SimpleResource("a/+"),
+				false)));
+		subs.unsubscribe(new SubscriptionObserver(credentials, observer2, new SimpleResource("a/+"), false));
+		assertEquals(1, subs.getObserverCount());
+		assertEquals(2, subs.unsubscribeAll(observer1).size());
+		assertEquals(0, subs.getObserverCount());
+		assertEquals(0, subs.match(new SimpleResource("a/b/c")).size());
+		assertEquals(0, subs.unsubscribeAll(observer1).size());
+	}
+
 	private Set<String> convertToStringSet(Set<SubscriptionObserver> subs) {
 		Set<String> result = new HashSet<String>();
 		for ( SubscriptionObserver sub : subs ) {
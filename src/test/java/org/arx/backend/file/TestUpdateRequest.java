@@ -2,6 +2,7 @@ package org.arx.backend.file;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.HashSet;
@@ -127,5 +128,47 @@ public class TestUpdateRequest {
 		}
 	}
 
+	@Test
+	public void testConditionalUpdate() throws InterruptedException, IOException {
+		try {
+			Utils.write("htdocs/test", "DATA".getBytes());
+			Credentials credentials = new StringCredentials("# crud");
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			Resource resource = new SimpleResource("test");
+			new ReadRequest(credentials, resource, observer).run();
+			long version = observer.take().getData().getVersion();
+			observer.take();
+			assertTrue(version != Data.NO_VERSION);
+			// The first update with the read version succeeds
+			new UpdateRequest(credentials, resource, new ByteArrayData(null, "DUTU".getBytes(), version), observer)
+					.run();
+			assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+			assertEquals("DUTU", Utils.readString("htdocs/test"));
+			// The second update with the same version fails, even within the
+			// resolution of the file time stamps
+			new UpdateRequest(credentials, resource, new ByteArrayData(null, "DOTO".getBytes(), version), observer)
+					.run();
+			ResponseMessage message = observer.take();
+			assertEquals(MessageType.PRECONDITION_FAILED, message.getResponse());
+			assertEquals(MessageType.UPDATE, message.getRequest());
+			assertEquals("DUTU", Utils.readString("htdocs/test"));
+			// The read version has been increased
+			new ReadRequest(credentials, resource, observer).run();
+			assertTrue(observer.take().getData().getVersion() > version);
+			observer.take();
+		} finally {
+			Utils.deleteIfExists("htdocs/test");
+		}
+	}
+
+	@Test
+	public void testConditionalPattern() throws InterruptedException, IOException {
+		Credentials credentials = new StringCredentials("# crud");
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Data data = new ByteArrayData(null, "DUTU".getBytes(), 42);
+		UpdateRequest request = new UpdateRequest(credentials, new SimpleResource("a/#"), data, observer);
+		request.run();
+		assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+	}
 
 }
@@ -0,0 +1,209 @@
+package org.arx.backend.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.arx.Credentials;
+import org.arx.MessageType;
+import org.arx.Reason;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.ResponseMessage;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLogBackend {
+	private ExecutorService executor;
+	private Path dir;
+	private Map<String, String> parameters;
+	private LogBackend backend;
+	private Credentials credentials;
+
+	@Before
+	public void init() throws IOException {
+		Configuration.createInstance(Utils.HOME);
+		executor = Executors.newFixedThreadPool(4);
+		dir = Files.createTempDirectory("arx");
+		parameters = new HashMap<String, String>();
+		parameters.put(LogFactory.DIRECTORY_KEY, dir.toString());
+		parameters.put(LogFactory.SEGMENT_SIZE_KEY, "1024");
+		backend = new LogBackend(executor, parameters);
+		credentials = new StringCredentials("# crud");
+	}
+
+	@After
+	public void shutdown() throws IOException {
+		executor.shutdown();
+		backend.close();
+		delete(dir);
+	}
+
+	@Test
+	public void testCreateReadDelete() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Resource resource = new SimpleResource("a/test");
+		backend.create(credentials, resource, new ByteArrayData("text/plain", "DATA".getBytes()), observer);
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.create(credentials, resource, new ByteArrayData(null, "DATA".getBytes()), observer);
+		assertEquals(MessageType.ALREADY_EXISTS, observer.take().getResponse());
+		backend.read(credentials, resource, observer);
+		ResponseMessage message = observer.take();
+		assertEquals(Reason.INITIAL, message.getReason());
+		assertEquals("text/plain", message.getData().getMimeType());
+		assertEquals("DATA", new String(message.getData().getContent()));
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.delete(credentials, resource, observer);
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.read(credentials, resource, observer);
+		assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+	}
+
+	@Test
+	public void testPatternsAndSubscriptions() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Utils.QueingObserver subscriber = new Utils.QueingObserver();
+		backend.subscribe(credentials, new SimpleResource("a/#"), subscriber);
+		backend.save(credentials, new SimpleResource("a/b/test"), new ByteArrayData(null, "DATA".getBytes()),
+				observer);
+		observer.take();
+		assertEquals(Reason.CREATED, subscriber.take().getReason());
+		backend.save(credentials, new SimpleResource("a/c/test"), new ByteArrayData(null, "DATA".getBytes()),
+				observer);
+		observer.take();
+		assertEquals(Reason.CREATED, subscriber.take().getReason());
+		backend.update(credentials, new SimpleResource("a/+/test"), new ByteArrayData(null, "DUTU".getBytes()),
+				observer);
+		assertEquals(2, observer.take().getAffectedResources().length);
+		ResponseMessage message = subscriber.take();
+		assertEquals(Reason.UPDATED, message.getReason());
+		assertEquals("DUTU", new String(message.getData().getContent()));
+		assertEquals(Reason.UPDATED, subscriber.take().getReason());
+		backend.read(credentials, new SimpleResource("a/#"), observer);
+		assertEquals("DUTU", new String(observer.take().getData().getContent()));
+		assertEquals("DUTU", new String(observer.take().getData().getContent()));
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.delete(credentials, new SimpleResource("a/#"), observer);
+		assertEquals(2, observer.take().getAffectedResources().length);
+		assertEquals(Reason.DELETED, subscriber.take().getReason());
+		assertEquals(Reason.DELETED, subscriber.take().getReason());
+		assertNull(subscriber.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testRecovery() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		for (int i = 0; i < 100; ++i) {
+			backend.save(credentials, new SimpleResource("r/" + i), new ByteArrayData("text/plain",
+					("DATA" + i).getBytes()), observer);
+			observer.take();
+		}
+		backend.delete(credentials, new SimpleResource("r/0"), observer);
+		observer.take();
+		backend.read(credentials, new SimpleResource("r/99"), observer);
+		long version = observer.take().getData().getVersion();
+		observer.take();
+		assertTrue(segments() > 1);
+		backend.close();
+		// Simulate a record that has been torn by a crash
+		Path last = null;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				if (last == null || path.compareTo(last) > 0) {
+					last = path;
+				}
+			}
+		}
+		long size = Files.size(last);
+		Files.write(last, new byte[] { 0, 0, 0, 100, 1, 2, 3 }, StandardOpenOption.APPEND);
+		backend = new LogBackend(executor, parameters);
+		assertEquals(size, Files.size(last));
+		backend.read(credentials, new SimpleResource("r/0"), observer);
+		assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+		backend.read(credentials, new SimpleResource("r/+"), observer);
+		for (int i = 1; i < 100; ++i) {
+			ResponseMessage message = observer.take();
+			assertEquals(Reason.INITIAL, message.getReason());
+			assertEquals("text/plain", message.getData().getMimeType());
+		}
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.read(credentials, new SimpleResource("r/99"), observer);
+		ResponseMessage message = observer.take();
+		assertEquals("DATA99", new String(message.getData().getContent()));
+		assertEquals(version, message.getData().getVersion());
+		observer.take();
+		// Versions continue after the recovered versions
+		backend.save(credentials, new SimpleResource("r/99"), new ByteArrayData(null, "DUTU".getBytes()), observer);
+		observer.take();
+		backend.read(credentials, new SimpleResource("r/99"), observer);
+		assertTrue(observer.take().getData().getVersion() > version);
+		observer.take();
+	}
+
+	@Test
+	public void testCompaction() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		for (int j = 0; j < 10; ++j) {
+			for (int i = 0; i < 10; ++i) {
+				backend.save(credentials, new SimpleResource("r/" + i),
+						new ByteArrayData(null, ("DATA" + j).getBytes()), observer);
+				observer.take();
+			}
+		}
+		backend.delete(credentials, new SimpleResource("r/0"), observer);
+		observer.take();
+		int before = segments();
+		backend.compact();
+		assertTrue(segments() < before);
+		backend.read(credentials, new SimpleResource("r/+"), observer);
+		for (int i = 1; i < 10; ++i) {
+			ResponseMessage message = observer.take();
+			assertEquals("r/" + i, message.getAffectedResource().getName());
+			assertEquals("DATA9", new String(message.getData().getContent()));
+		}
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.close();
+		backend = new LogBackend(executor, parameters);
+		backend.read(credentials, new SimpleResource("r/+"), observer);
+		for (int i = 1; i < 10; ++i) {
+			assertEquals("DATA9", new String(observer.take().getData().getContent()));
+		}
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+	}
+
+	private int segments() throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (@SuppressWarnings("unused")
+			Path path : stream) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	static void delete(Path dir) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(dir);
+	}
+}
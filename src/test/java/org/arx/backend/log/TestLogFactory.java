@@ -0,0 +1,41 @@
+package org.arx.backend.log;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.arx.Endpoint;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.SimpleResource;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLogFactory {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testFactory() throws IOException {
+		Path dir = Files.createTempDirectory("arx");
+		try {
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(LogFactory.DIRECTORY_KEY, dir.toString());
+			LogFactory factory = new LogFactory();
+			Endpoint backend = factory.createBackend(null, parameters);
+			assertEquals(LogBackend.class, backend.getClass());
+			((LogBackend) backend).close();
+			assertEquals(SimpleResource.class, factory.createResource("test").getClass());
+			assertEquals(ByteArrayData.class, factory.createData(null, null).getClass());
+		} finally {
+			TestLogBackend.delete(dir);
+		}
+	}
+}
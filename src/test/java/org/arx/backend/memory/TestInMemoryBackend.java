@@ -0,0 +1,219 @@
+package org.arx.backend.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.arx.Credentials;
+import org.arx.Data;
+import org.arx.MessageType;
+import org.arx.Options;
+import org.arx.Reason;
+import org.arx.Resource;
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.ResponseMessage;
+import org.arx.util.SimpleResource;
+import org.arx.util.StringCredentials;
+import org.arx.util.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInMemoryBackend {
+	private ExecutorService executor;
+	private InMemoryBackend backend;
+	private Credentials credentials;
+
+	@Before
+	public void init() throws IOException {
+		Configuration.createInstance(Utils.HOME);
+		executor = Executors.newFixedThreadPool(4);
+		backend = new InMemoryBackend(executor, null);
+		credentials = new StringCredentials("# crud");
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testCreateReadDelete() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Resource resource = new SimpleResource("a/test");
+		backend.create(credentials, resource, new ByteArrayData("text/plain", "DATA".getBytes()), observer);
+		ResponseMessage message = observer.take();
+		assertEquals(MessageType.SUCCESS, message.getResponse());
+		assertEquals("a/test", message.getAffectedResource().getName());
+		backend.create(credentials, resource, new ByteArrayData(null, "DATA".getBytes()), observer);
+		assertEquals(MessageType.ALREADY_EXISTS, observer.take().getResponse());
+		backend.create(credentials, new SimpleResource("+/test"), new ByteArrayData(null, null), observer);
+		assertEquals(MessageType.BAD_REQUEST, observer.take().getResponse());
+		backend.create(new StringCredentials("# r"), resource, new ByteArrayData(null, null), observer);
+		assertEquals(MessageType.FORBIDDEN, observer.take().getResponse());
+		backend.read(credentials, resource, observer);
+		message = observer.take();
+		assertEquals(MessageType.DATA, message.getResponse());
+		assertEquals(Reason.INITIAL, message.getReason());
+		assertEquals("text/plain", message.getData().getMimeType());
+		assertEquals("DATA", new String(message.getData().getContent()));
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.delete(credentials, resource, observer);
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.delete(credentials, resource, observer);
+		assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+		backend.read(credentials, resource, observer);
+		assertEquals(MessageType.NOT_FOUND, observer.take().getResponse());
+	}
+
+	@Test
+	public void testPatterns() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		backend.save(credentials, new SimpleResource("a/b/c/test"), new ByteArrayData(null, "DATA".getBytes()),
+				observer);
+		observer.take();
+		backend.save(credentials, new SimpleResource("a/x/test"), new ByteArrayData(null, "DATA".getBytes()),
+				observer);
+		observer.take();
+		// Save creates a/x/c/test, because a/x exists
+		backend.save(credentials, new SimpleResource("a/+/c/test"), new ByteArrayData(null, "DUTU".getBytes()),
+				observer);
+		ResponseMessage message = observer.take();
+		assertEquals(MessageType.SUCCESS, message.getResponse());
+		assertEquals(2, message.getAffectedResources().length);
+		assertEquals("a/b/c/test", message.getAffectedResources()[0].getName());
+		assertEquals("a/x/c/test", message.getAffectedResources()[1].getName());
+		backend.update(credentials, new SimpleResource("a/+/test"), new ByteArrayData(null, "DOTO".getBytes()),
+				observer);
+		message = observer.take();
+		assertEquals(1, message.getAffectedResources().length);
+		assertEquals("a/x/test", message.getAffectedResource().getName());
+		backend.read(credentials, new SimpleResource("a/#"), observer);
+		assertEquals("DUTU", new String(observer.take().getData().getContent()));
+		assertEquals("DUTU", new String(observer.take().getData().getContent()));
+		assertEquals("DOTO", new String(observer.take().getData().getContent()));
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.delete(credentials, new SimpleResource("a/#"), observer);
+		message = observer.take();
+		assertEquals(3, message.getAffectedResources().length);
+		backend.read(credentials, new SimpleResource("a/#"), observer);
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+	}
+
+	@Test
+	public void testVersions() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Resource resource = new SimpleResource("counter");
+		backend.save(credentials, resource, new ByteArrayData(null, "1".getBytes()), observer);
+		observer.take();
+		backend.read(credentials, resource, observer);
+		long version = observer.take().getData().getVersion();
+		observer.take();
+		assertTrue(version != Data.NO_VERSION);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(Options.IF_NONE_MATCH, Long.toString(version));
+		backend.read(credentials, resource, options, observer);
+		assertEquals(Reason.NOT_MODIFIED, observer.take().getReason());
+		observer.take();
+		backend.update(credentials, resource, new ByteArrayData(null, "2".getBytes(), version), observer);
+		assertEquals(MessageType.SUCCESS, observer.take().getResponse());
+		backend.update(credentials, resource, new ByteArrayData(null, "3".getBytes(), version), observer);
+		assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+		backend.save(credentials, resource, new ByteArrayData(null, "3".getBytes(), version), observer);
+		assertEquals(MessageType.PRECONDITION_FAILED, observer.take().getResponse());
+		backend.read(credentials, resource, options, observer);
+		ResponseMessage message = observer.take();
+		assertEquals(Reason.INITIAL, message.getReason());
+		assertEquals("2", new String(message.getData().getContent()));
+		assertTrue(message.getData().getVersion() > version);
+		observer.take();
+	}
+
+	@Test
+	public void testSubscriptions() throws IOException, InterruptedException {
+		Utils.QueingObserver observer = new Utils.QueingObserver();
+		Utils.QueingObserver subscriber = new Utils.QueingObserver();
+		backend.save(credentials, new SimpleResource("a/b"), new ByteArrayData(null, "DATA".getBytes()), observer);
+		observer.take();
+		backend.subscribeStatus(credentials, new SimpleResource("a/+"), subscriber);
+		ResponseMessage message = subscriber.take();
+		assertEquals(MessageType.SUBSCRIBE_STATUS, message.getRequest());
+		assertEquals(Reason.INITIAL, message.getReason());
+		assertEquals("a/b", message.getAffectedResource().getName());
+		backend.create(credentials, new SimpleResource("a/c"), new ByteArrayData(null, "DUTU".getBytes()), observer);
+		observer.take();
+		message = subscriber.take();
+		assertEquals(Reason.CREATED, message.getReason());
+		assertEquals("a/c", message.getAffectedResource().getName());
+		assertEquals("DUTU", new String(message.getData().getContent()));
+		backend.update(credentials, new SimpleResource("a/c"), new ByteArrayData(null, "DOTO".getBytes()), observer);
+		observer.take();
+		message = subscriber.take();
+		assertEquals(Reason.UPDATED, message.getReason());
+		assertEquals("DOTO", new String(message.getData().getContent()));
+		backend.delete(credentials, new SimpleResource("a/c"), observer);
+		observer.take();
+		message = subscriber.take();
+		assertEquals(Reason.DELETED, message.getReason());
+		assertNull(message.getData());
+		backend.unsubscribe(credentials, new SimpleResource("a/+"), subscriber);
+		assertEquals(MessageType.UNSUBSCRIBE, subscriber.take().getRequest());
+		message = subscriber.take();
+		assertEquals(MessageType.SUCCESS, message.getResponse());
+		assertEquals(MessageType.SUBSCRIBE_STATUS, message.getRequest());
+		backend.save(credentials, new SimpleResource("a/b"), new ByteArrayData(null, "DATA".getBytes()), observer);
+		observer.take();
+		assertNull(subscriber.poll(100, TimeUnit.MILLISECONDS));
+		backend.subscribe(new StringCredentials("# c"), new SimpleResource("a/+"), subscriber);
+		assertEquals(MessageType.FORBIDDEN, subscriber.take().getResponse());
+	}
+
+	@Test
+	public void testSnapshot() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("arx");
+		Path file = dir.resolve("memory.snapshot");
+		try {
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(InMemoryFactory.SNAPSHOT_KEY, file.toString());
+			InMemoryBackend first = new InMemoryBackend(executor, parameters);
+			Utils.QueingObserver observer = new Utils.QueingObserver();
+			first.save(credentials, new SimpleResource("a/b"), new ByteArrayData("text/plain", "DATA".getBytes()),
+					observer);
+			observer.take();
+			first.save(credentials, new SimpleResource("a/c"), new ByteArrayData(null, new byte[0]), observer);
+			observer.take();
+			first.snapshot();
+			InMemoryBackend second = new InMemoryBackend(executor, parameters);
+			second.read(credentials, new SimpleResource("a/+"), observer);
+			ResponseMessage message = observer.take();
+			assertEquals("a/b", message.getAffectedResource().getName());
+			assertEquals("text/plain", message.getData().getMimeType());
+			assertEquals("DATA", new String(message.getData().getContent()));
+			long version = message.getData().getVersion();
+			message = observer.take();
+			assertEquals("a/c", message.getAffectedResource().getName());
+			assertNull(message.getData().getMimeType());
+			assertEquals(0, message.getData().getContent().length);
+			observer.take();
+			// Versions continue after the restored versions
+			second.save(credentials, new SimpleResource("a/b"), new ByteArrayData(null, "DUTU".getBytes()), observer);
+			observer.take();
+			second.read(credentials, new SimpleResource("a/b"), observer);
+			assertTrue(observer.take().getData().getVersion() > version);
+			observer.take();
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(dir);
+		}
+	}
+}
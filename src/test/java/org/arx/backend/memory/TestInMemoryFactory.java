@@ -0,0 +1,27 @@
+package org.arx.backend.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.arx.util.ByteArrayData;
+import org.arx.util.Configuration;
+import org.arx.util.SimpleResource;
+import org.arx.util.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInMemoryFactory {
+	@Before
+	public void init() {
+		Configuration.createInstance(Utils.HOME);
+	}
+
+	@Test
+	public void testFactory() throws IOException {
+		InMemoryFactory factory = new InMemoryFactory();
+		assertEquals(InMemoryBackend.class, factory.createBackend(null, null).getClass());
+		assertEquals(SimpleResource.class, factory.createResource("test").getClass());
+		assertEquals(ByteArrayData.class, factory.createData(null, null).getClass());
+	}
+}
@@ -24,4 +24,14 @@ public class TestByteArrayData {
 		assertNull(data.getMimeType());
 		assertEquals(0,data.getContent().length);
 	}
+
+	@Test
+	public void testVersion() {
+		Data data = new ByteArrayData("text","Test".getBytes());
+		assertEquals(Data.NO_VERSION,data.getVersion());
+		data = new ByteArrayData("text","Test".getBytes(),42);
+		assertEquals(42,data.getVersion());
+		data.setVersion(43);
+		assertEquals(43,data.getVersion());
+	}
 }
@@ -0,0 +1,118 @@
+package org.arx.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.arx.Resource;
+import org.junit.Test;
+
+public class TestConcurrentResourceTrie {
+
+	@Test
+	public void testPutGetRemove() {
+		ConcurrentResourceTrie<String> trie = new ConcurrentResourceTrie<String>();
+		assertNull(trie.put(new SimpleResource("a/b"), "1"));
+		assertEquals("1", trie.put(new SimpleResource("a/b"), "2"));
+		assertEquals("2", trie.get(new SimpleResource("a/b")));
+		assertNull(trie.get(new SimpleResource("a")));
+		assertEquals("2", trie.putIfAbsent(new SimpleResource("a/b"), "3"));
+		assertNull(trie.putIfAbsent(new SimpleResource("a"), "4"));
+		assertEquals(2, trie.size());
+		assertFalse(trie.replace(new SimpleResource("a/b"), "1", "5"));
+		assertTrue(trie.replace(new SimpleResource("a/b"), "2", "5"));
+		assertEquals("5", trie.get(new SimpleResource("a/b")));
+		assertFalse(trie.remove(new SimpleResource("a/b"), "2"));
+		assertTrue(trie.remove(new SimpleResource("a/b"), "5"));
+		assertNull(trie.get(new SimpleResource("a/b")));
+		assertEquals("4", trie.remove(new SimpleResource("a")));
+		assertNull(trie.remove(new SimpleResource("a")));
+		assertEquals(0, trie.size());
+		// Removed resources can be added again
+		assertNull(trie.put(new SimpleResource("a/b/c"), "6"));
+		assertEquals("6", trie.get(new SimpleResource("a/b/c")));
+	}
+
+	@Test
+	public void testVisit() throws IOException {
+		ConcurrentResourceTrie<String> trie = new ConcurrentResourceTrie<String>();
+		trie.put(new SimpleResource("a"), "a");
+		trie.put(new SimpleResource("a/x/c/test"), "1");
+		trie.put(new SimpleResource("a/b/c/test"), "2");
+		trie.put(new SimpleResource("a/b/test"), "3");
+		trie.put(new SimpleResource("b/test"), "4");
+		assertEquals("[a/b/c/test, a/b/test, a/x/c/test]", visit(trie, "a/#", false).toString());
+		assertEquals("[a/b/c/test, a/x/c/test]", visit(trie, "a/+/c/test", false).toString());
+		assertEquals("[b/test]", visit(trie, "+/test", false).toString());
+		assertEquals("[a]", visit(trie, "+", false).toString());
+		assertEquals("[]", visit(trie, "a/b", false).toString());
+		assertEquals("[a/b/c, a/b/test, a/x/c]", visit(trie, "a/+/+", true).toString());
+		assertEquals("[a/b/c/test, a/x/c/test]", visit(trie, "a/+/c/test", true).toString());
+		assertEquals("[a/b/d/test, a/x/d/test]", visit(trie, "a/+/d/test", true).toString());
+	}
+
+	@Test
+	public void testConcurrentModification() throws Exception {
+		final ConcurrentResourceTrie<Integer> trie = new ConcurrentResourceTrie<Integer>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 4; ++t) {
+				final int thread = t;
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < 10000; ++i) {
+							Resource resource = new SimpleResource("a/" + (i % 10) + "/" + thread);
+							trie.put(resource, i);
+							if (i % 3 == 0) {
+								trie.remove(resource);
+							}
+						}
+						trie.put(new SimpleResource("a/x/" + thread), thread);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			for (int t = 0; t < 4; ++t) {
+				assertEquals(Integer.valueOf(t), trie.get(new SimpleResource("a/x/" + t)));
+			}
+			final int[] count = new int[1];
+			trie.visit(new SimpleResource("#"), new ConcurrentResourceTrie.Visitor<Integer>() {
+				@Override
+				public void visit(Resource resource, Integer value) {
+					++count[0];
+				}
+			});
+			assertEquals(trie.size(), count[0]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<String> visit(ConcurrentResourceTrie<String> trie, String pattern, boolean all) throws IOException {
+		final List<String> result = new ArrayList<String>();
+		ConcurrentResourceTrie.Visitor<String> visitor = new ConcurrentResourceTrie.Visitor<String>() {
+			@Override
+			public void visit(Resource resource, String value) {
+				result.add(resource.getName());
+			}
+		};
+		if (all) {
+			trie.visitAll(new SimpleResource(pattern), visitor);
+		} else {
+			trie.visit(new SimpleResource(pattern), visitor);
+		}
+		return result;
+	}
+}
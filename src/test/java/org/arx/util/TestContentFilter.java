@@ -0,0 +1,76 @@
+package org.arx.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TestContentFilter {
+	private static final String SENSOR = "{\"name\": \"a/b\", \"tags\": [\"x\", {\"t\": 1}], "
+			+ "\"temperature\": 31.5, \"on\": true, \"empty\": null, \"a/b\": -2e3}";
+
+	@Test
+	public void testNumbers() {
+		assertTrue(matches("/temperature > 30", SENSOR));
+		assertTrue(matches("/temperature>=31.5", SENSOR));
+		assertTrue(matches("/temperature == 31.5", SENSOR));
+		assertFalse(matches("/temperature < 31.5", SENSOR));
+		assertFalse(matches("/temperature != 31.5", SENSOR));
+		assertTrue(matches("/a~1b <= -2000", SENSOR));
+		assertTrue(matches("/tags/1/t == 1", SENSOR));
+		assertTrue(matches(" < 100", "42"));
+		assertTrue(matches("/v == 12345678901234567890", "{\"v\": 1.2345678901234567890e19}"));
+		// Missing values and values of other types do not match
+		assertFalse(matches("/pressure > 0", SENSOR));
+		assertFalse(matches("/tags/2 > 0", SENSOR));
+		assertFalse(matches("/name > 0", SENSOR));
+		assertTrue(matches("/name != 0", SENSOR));
+		assertFalse(matches("/temperature > 30", "{\"temperature\": "));
+		assertFalse(matches("/temperature > 30", ""));
+	}
+
+	@Test
+	public void testLiterals() {
+		assertTrue(matches("/name == \"a/b\"", SENSOR));
+		assertTrue(matches("/tags/0 < \"y\"", SENSOR));
+		assertFalse(matches("/name == \"a\"", SENSOR));
+		assertTrue(matches("/on == true", SENSOR));
+		assertTrue(matches("/on != false", SENSOR));
+		assertTrue(matches("/empty == null", SENSOR));
+		assertFalse(matches("/temperature == null", SENSOR));
+	}
+
+	@Test
+	public void testPrefix() {
+		assertTrue(matches("starts-with \"ERROR\"", "ERROR: disk full"));
+		assertFalse(matches("starts-with \"ERROR\"", "INFO: disk full"));
+		assertFalse(matches("starts-with \"ERROR\"", "ERR"));
+		assertTrue(matches("starts-with \"\"", ""));
+	}
+
+	@Test
+	public void testIllegalExpressions() {
+		assertIllegal("/temperature");
+		assertIllegal("temperature > 30");
+		assertIllegal("/temperature > ");
+		assertIllegal("/temperature > {}");
+		assertIllegal("/on < true");
+		assertIllegal("starts-with 1");
+	}
+
+	private static boolean matches(String expression, String content) {
+		return ContentFilter.compile(expression).matches(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void assertIllegal(String expression) {
+		try {
+			ContentFilter.compile(expression);
+			fail(expression);
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+}
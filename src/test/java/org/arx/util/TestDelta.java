@@ -0,0 +1,73 @@
+package org.arx.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestDelta {
+	@Test
+	public void testSmallChanges() {
+		assertRoundTrip("", "");
+		assertRoundTrip("", "DATA");
+		assertRoundTrip("DATA", "");
+		assertRoundTrip("DATA", "DATA");
+		assertRoundTrip("DATA", "DUTA");
+		assertRoundTrip("DATA", "DATADATA");
+		assertRoundTrip("AAAA", "AA");
+	}
+
+	@Test
+	public void testLargeChanges() {
+		Random random = new Random(42);
+		byte[] source = new byte[100000];
+		random.nextBytes(source);
+		// Insertion
+		byte[] target = new byte[source.length + 10];
+		System.arraycopy(source, 0, target, 0, 50000);
+		System.arraycopy(source, 50000, target, 50010, 50000);
+		byte[] delta = assertRoundTrip(source, target);
+		assertTrue(delta.length < 100);
+		// Deletion
+		target = new byte[source.length - 1000];
+		System.arraycopy(source, 0, target, 0, 20000);
+		System.arraycopy(source, 21000, target, 20000, 79000);
+		delta = assertRoundTrip(source, target);
+		assertTrue(delta.length < 100);
+		// Moved block and changed bytes
+		target = new byte[source.length];
+		System.arraycopy(source, 60000, target, 0, 40000);
+		System.arraycopy(source, 0, target, 40000, 60000);
+		target[10] ^= 1;
+		target[70000] ^= 1;
+		delta = assertRoundTrip(source, target);
+		assertTrue(delta.length < 200);
+		// Unrelated content
+		random.nextBytes(target);
+		assertRoundTrip(source, target);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongSource() {
+		byte[] delta = Delta.encode("DATA".getBytes(), "DUTA".getBytes());
+		Delta.apply("DOTA".getBytes(), delta);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalDelta() {
+		byte[] delta = Delta.encode("DATA".getBytes(), "DUTA".getBytes());
+		Delta.apply("DATA".getBytes(), Arrays.copyOf(delta, delta.length - 1));
+	}
+
+	private static void assertRoundTrip(String source, String target) {
+		assertRoundTrip(source.getBytes(), target.getBytes());
+	}
+
+	private static byte[] assertRoundTrip(byte[] source, byte[] target) {
+		byte[] delta = Delta.encode(source, target);
+		assertArrayEquals(target, Delta.apply(source, delta));
+		return delta;
+	}
+}
@@ -0,0 +1,35 @@
+package org.arx.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TestJsonMergePatch {
+	@Test
+	public void testApply() {
+		// Examples of RFC 7396, appendix A
+		assertEquals("{\"a\":\"c\"}", apply("{\"a\":\"b\"}", "{\"a\":\"c\"}"));
+		assertEquals("{\"a\":\"b\",\"b\":\"c\"}", apply("{\"a\":\"b\"}", "{\"b\":\"c\"}"));
+		assertEquals("{}", apply("{\"a\":\"b\"}", "{\"a\":null}"));
+		assertEquals("{\"b\":\"c\"}", apply("{\"a\":\"b\",\"b\":\"c\"}", "{\"a\":null}"));
+		assertEquals("{\"a\":\"c\"}", apply("{\"a\":[\"b\"]}", "{\"a\":\"c\"}"));
+		assertEquals("{\"a\":[\"b\"]}", apply("{\"a\":\"c\"}", "{\"a\":[\"b\"]}"));
+		assertEquals("{\"a\":{\"b\":\"d\"}}", apply("{\"a\":{\"b\":\"c\"}}", "{\"a\":{\"b\":\"d\",\"c\":null}}"));
+		assertEquals("[\"c\",\"d\"]", apply("{\"a\":\"b\"}", "[\"c\",\"d\"]"));
+		assertEquals("{\"e\":null,\"a\":{\"bb\":{}}}", apply("{\"e\":null}", "{\"a\":{\"bb\":{\"ccc\":null}}}"));
+		// An empty document is treated as a missing document
+		assertEquals("{\"a\":1}", apply("", "{\"a\":1}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalPatch() {
+		apply("{}", "{\"a\":");
+	}
+
+	private static String apply(String document, String patch) {
+		return new String(JsonMergePatch.apply(document.getBytes(StandardCharsets.UTF_8),
+				patch.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+	}
+}
@@ -2,8 +2,13 @@ package org.arx.util;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
 import org.arx.Data;
 import org.arx.MessageType;
+import org.arx.Options;
 import org.junit.Test;
 
 public class TestRequestMessage {
@@ -36,4 +41,40 @@ public class TestRequestMessage {
 		byte[] bytes = rm.toByteArray();
 		assertArrayEquals(expected,bytes);
 	}
+
+	@Test
+	public void testVersion() throws IOException {
+		Data data = new ByteArrayData("text/plain","data".getBytes(),42);
+		RequestMessage rm = new RequestMessage(null,MessageType.UPDATE,new SimpleResource("test"),data);
+		assertEquals("42",rm.getHeaderField(Message.IF_MATCH_FIELD));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		RequestMessage result = (RequestMessage) Message.createFromStream(in);
+		assertEquals(42,result.getData().getVersion());
+		assertEquals("data", new String(result.getData().getContent()));
+	}
+
+	@Test
+	public void testPatch() throws IOException {
+		Header header = new Header();
+		header.put(Options.OFFSET, "8");
+		Data data = new ByteArrayData("text/plain","data".getBytes(),42);
+		RequestMessage rm = new RequestMessage(header,MessageType.PATCH,new SimpleResource("test"),data);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		RequestMessage result = (RequestMessage) Message.createFromStream(in);
+		assertEquals(MessageType.PATCH,result.getRequest());
+		assertEquals("8",result.getHeaderField(Options.OFFSET));
+		assertEquals(42,result.getData().getVersion());
+		assertEquals("data", new String(result.getData().getContent()));
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		Data data = new ByteArrayData("text/plain","data".getBytes());
+		RequestMessage rm = new RequestMessage(null,MessageType.APPEND,new SimpleResource("test"),data);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		RequestMessage result = (RequestMessage) Message.createFromStream(in);
+		assertEquals(MessageType.APPEND,result.getRequest());
+		assertEquals("test",result.getResource().getName());
+		assertEquals("data", new String(result.getData().getContent()));
+	}
 }
@@ -3,8 +3,13 @@ package org.arx.util;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
 import org.arx.Data;
 import org.arx.MessageType;
+import org.arx.Observer;
 import org.arx.Reason;
 import org.junit.Test;
 
@@ -43,4 +48,65 @@ public class TestResponseMessage {
 		assertArrayEquals(expected,bytes);
 	}
 
+	@Test
+	public void testVersion() throws IOException {
+		Data data = new ByteArrayData("text/plain","data".getBytes(),42);
+		ResponseMessage rm = new ResponseMessage(null,MessageType.DATA,MessageType.READ,new SimpleResource("test"),Reason.INITIAL,data,new SimpleResource("test"));
+		assertEquals("42",rm.getHeaderField(Message.VERSION_FIELD));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		ResponseMessage result = (ResponseMessage) Message.createFromStream(in);
+		assertEquals(42,result.getData().getVersion());
+		assertEquals("data", new String(result.getData().getContent()));
+	}
+
+	@Test
+	public void testOffset() throws IOException {
+		Data data = new StreamData("text/plain","data".getBytes(),42,1000);
+		ResponseMessage rm = new ResponseMessage(null,MessageType.DATA,MessageType.SUBSCRIBE,new SimpleResource("test"),Reason.APPENDED,data,new SimpleResource("test"));
+		assertEquals("1000",rm.getHeaderField(Message.OFFSET_FIELD));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		ResponseMessage result = (ResponseMessage) Message.createFromStream(in);
+		assertEquals(Reason.APPENDED,result.getReason());
+		StreamData part = (StreamData) result.getData();
+		assertEquals(42,part.getVersion());
+		assertEquals(1000,part.getOffset());
+		assertEquals(1004,part.getEndOffset());
+		assertEquals("data", new String(part.getContent()));
+	}
+
+	@Test
+	public void testSize() throws IOException {
+		Data data = new Metadata("text/plain",42,1000);
+		ResponseMessage rm = new ResponseMessage(null,MessageType.DATA,MessageType.SUBSCRIBE,new SimpleResource("test"),Reason.UPDATED,data,new SimpleResource("test"));
+		assertEquals("1000",rm.getHeaderField(Message.SIZE_FIELD));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		ResponseMessage result = (ResponseMessage) Message.createFromStream(in);
+		Metadata metadata = (Metadata) result.getData();
+		assertEquals(42,metadata.getVersion());
+		assertEquals(1000,metadata.getSize());
+		assertEquals(0,metadata.getContent().length);
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		ResponseMessage rm = new ResponseMessage(null,MessageType.DATA,MessageType.READ,new SimpleResource("test"),Reason.NOT_MODIFIED,null,new SimpleResource("test"));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		ResponseMessage result = (ResponseMessage) Message.createFromStream(in);
+		assertEquals(Reason.NOT_MODIFIED,result.getReason());
+		assertEquals(null,result.getData());
+		assertEquals("test",result.getAffectedResource().getName());
+	}
+
+	@Test
+	public void testSequence() throws IOException {
+		Header header = new Header();
+		header.put(Message.SEQUENCE_FIELD, "4711");
+		ResponseMessage rm = new ResponseMessage(header,MessageType.DATA,MessageType.SUBSCRIBE,new SimpleResource("test"),Reason.DELETED,null,new SimpleResource("test"));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(rm.toByteArray()));
+		ResponseMessage result = (ResponseMessage) Message.createFromStream(in);
+		assertEquals(4711,result.getSequence());
+		rm = new ResponseMessage(null,MessageType.DATA,MessageType.SUBSCRIBE,new SimpleResource("test"),Reason.DELETED,null,new SimpleResource("test"));
+		assertEquals(Observer.NO_SEQUENCE,rm.getSequence());
+	}
+
 }
@@ -0,0 +1,143 @@
+package org.arx.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestStripedExecutor {
+	private static final int KEYS = 16;
+	private static final int TASKS = 20000;
+
+	@Test
+	public void testStripes() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertEquals(1, new StripedExecutor(executor, 1).getStripes());
+			assertEquals(64, new StripedExecutor(executor, 64).getStripes());
+			assertEquals(128, new StripedExecutor(executor, 65).getStripes());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalStripes() {
+		new StripedExecutor(Executors.newSingleThreadExecutor(), 0);
+	}
+
+	@Test
+	public void testOrdering() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			StripedExecutor striped = new StripedExecutor(executor, 4);
+			final List<List<Integer>> results = new ArrayList<List<Integer>>();
+			for (int key = 0; key < KEYS; ++key) {
+				results.add(new ArrayList<Integer>());
+			}
+			final CountDownLatch done = new CountDownLatch(KEYS * TASKS);
+			for (int i = 0; i < TASKS; ++i) {
+				for (int key = 0; key < KEYS; ++key) {
+					final List<Integer> result = results.get(key);
+					final int value = i;
+					// Unsynchronized access is safe, because tasks of one key
+					// never run concurrently
+					striped.execute("resource/" + key, new Runnable() {
+						@Override
+						public void run() {
+							result.add(value);
+							done.countDown();
+						}
+					});
+				}
+			}
+			assertTrue(done.await(30, TimeUnit.SECONDS));
+			for (List<Integer> result : results) {
+				assertEquals(TASKS, result.size());
+				for (int i = 0; i < TASKS; ++i) {
+					assertEquals(i, result.get(i).intValue());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelStripes() throws InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			StripedExecutor striped = new StripedExecutor(executor, 2);
+			final CountDownLatch started = new CountDownLatch(2);
+			final AtomicInteger parallel = new AtomicInteger();
+			// The keys 0 and 1 are mapped to different stripes, so both tasks
+			// must be able to wait for each other
+			for (int key = 0; key < 2; ++key) {
+				striped.execute(key, new Runnable() {
+					@Override
+					public void run() {
+						started.countDown();
+						try {
+							if (started.await(10, TimeUnit.SECONDS)) {
+								parallel.incrementAndGet();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+			assertEquals(2, parallel.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testThroughput() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			StripedExecutor striped = new StripedExecutor(executor, 64);
+			long plain = measure(executor, null);
+			long sameKey = measure(striped, "resource");
+			long distinctKeys = measure(striped, null);
+			System.out.println(String.format("Executor: %1$d tasks/s, striped (one key): %2$d tasks/s, "
+					+ "striped (%3$d keys): %4$d tasks/s", plain, sameKey, KEYS, distinctKeys));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private long measure(java.util.concurrent.Executor executor, String key) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(KEYS * TASKS);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		};
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; ++i) {
+			for (int k = 0; k < KEYS; ++k) {
+				if (executor instanceof StripedExecutor) {
+					((StripedExecutor) executor).execute(key != null ? key : Integer.toString(k), task);
+				} else {
+					executor.execute(task);
+				}
+			}
+		}
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		return KEYS * TASKS * TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+}
@@ -95,6 +95,16 @@ public class Utils {
 			queue.add(new ResponseMessage(null, MessageType.DATA, request, resource, reason, data, affectedResource));
 		}
 
+		@Override
+		public void onData(MessageType request, Resource resource, Reason reason, Resource affectedResource, Data data,
+				long sequence) throws IOException {
+			Header header = new Header();
+			if (sequence != NO_SEQUENCE) {
+				header.put(Message.SEQUENCE_FIELD, Long.toString(sequence));
+			}
+			queue.add(new ResponseMessage(header, MessageType.DATA, request, resource, reason, data, affectedResource));
+		}
+
 		@Override
 		public void onError(MessageType request, Resource resource, MessageType status) throws IOException {
 			queue.add(new ResponseMessage(null, status, request, resource, null, null));